@@ -0,0 +1,97 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * A record of a single state change committed by a {@code StateStore}. Each
+ * commit is given a version that is one greater than the commit before it, so
+ * gaps in a sequence of commits can be detected. Commit timestamps never go
+ * backwards, even if the wall clock does.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see StateStore#addCommitListener(com.saylorsolutions.fnstate4j.func.CommitListener)
+ */
+public final class Commit {
+	private final long version;
+	private final long timestamp;
+	private final Action action;
+	private final State previousState;
+	private final State state;
+	private volatile StateDelta delta;
+
+	Commit(long version, long timestamp, Action action, State previousState, State state) {
+		this.version = version;
+		this.timestamp = timestamp;
+		this.action = action;
+		this.previousState = previousState;
+		this.state = state;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return When the commit was made, in epoch milliseconds.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return The {@code Action} that caused this commit, or null for the initial
+	 *         state of a {@code StateStore}.
+	 */
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * @return The state before this commit, or null for the initial state of a
+	 *         {@code StateStore}.
+	 */
+	public State getPreviousState() {
+		return previousState;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * The delta is computed on first use and shared by every caller after that.
+	 *
+	 * @return The changes made by this commit.
+	 */
+	public StateDelta getDelta() {
+		StateDelta result = this.delta;
+		if (result == null) {
+			result = StateDelta.between(previousState, state);
+			this.delta = result;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Commit [version='%d', timestamp='%d', action='%s']", version, timestamp, action);
+	}
+}
@@ -0,0 +1,53 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * Decides the value of a key that is present in more than one {@code State}
+ * given to {@code State#mergeAll}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+@FunctionalInterface
+public interface ConflictPolicy {
+	/**
+	 * Keeps the value from the state that comes last in the merge order.
+	 */
+	public static final ConflictPolicy LAST_WINS = (key, earlier, later) -> later;
+	/**
+	 * Keeps the value from the state that comes first in the merge order.
+	 */
+	public static final ConflictPolicy FIRST_WINS = (key, earlier, later) -> earlier;
+
+	/**
+	 * Called once for every pair of conflicting values. Large merges are split
+	 * into parts that are merged on separate threads and then merged with each
+	 * other, so the result must not depend on how the conflicts are grouped:
+	 * {@code (a, b), c} has to give the same result as {@code a, (b, c)}.
+	 *
+	 * @param key     The conflicting key.
+	 * @param earlier The value from the state that comes earlier in the merge
+	 *                order.
+	 * @param later   The value from the state that comes later.
+	 * @return The merged value.
+	 */
+	public Object resolve(String key, Object earlier, Object later);
+}
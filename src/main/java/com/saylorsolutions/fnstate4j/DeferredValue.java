@@ -0,0 +1,37 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * A reference to a value that is kept outside of the {@code State}'s map, such
+ * as in off-heap memory. The {@code State} accessors resolve these references
+ * transparently, so reducers and subscribers only ever see the actual value.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ValueStore
+ */
+@FunctionalInterface
+public interface DeferredValue {
+	/**
+	 * @return The referenced value, may be null.
+	 */
+	public Object resolve();
+}
@@ -0,0 +1,164 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.saylorsolutions.fnstate4j.func.Selector;
+
+/**
+ * A memoized value computed from a set of input keys or nested paths in the
+ * {@code State}. The {@code Selector} is only invoked again when the value of at
+ * least one input is no longer the same instance that was used for the last
+ * computation.
+ * Since {@code State} values are expected to be immutable, identity is enough to
+ * determine that nothing relevant has changed.
+ * <p>
+ * If no input keys are declared, then the value is recomputed whenever a
+ * different {@code State} instance is given.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ *
+ * @param <T> The type of the computed value.
+ */
+public final class DerivedValue<T> {
+	private final Selector<T> selector;
+	private final StatePath[] inputs;
+	private volatile Memo<T> memo;
+
+	public DerivedValue(Selector<T> selector, String... inputKeys) {
+		this(selector, toPaths(inputKeys));
+	}
+
+	/**
+	 * @param selector Computes the value.
+	 * @param input    A nested path the {@code Selector} reads.
+	 * @param inputs   0..n more nested paths the {@code Selector} reads.
+	 */
+	public DerivedValue(Selector<T> selector, StatePath input, StatePath... inputs) {
+		this(selector, concat(input, inputs));
+	}
+
+	private DerivedValue(Selector<T> selector, StatePath[] inputs) {
+		Objects.requireNonNull(selector, "'selector' parameter must not be null");
+		this.selector = selector;
+		this.inputs = inputs;
+		for (StatePath path : this.inputs) {
+			Objects.requireNonNull(path, "Inputs must not be null");
+		}
+	}
+
+	private static StatePath[] toPaths(String[] keys) {
+		final StatePath[] paths = new StatePath[keys == null ? 0 : keys.length];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = StatePath.of(Objects.requireNonNull(keys[i], "Input keys must not be null"));
+		}
+		return paths;
+	}
+
+	private static StatePath[] concat(StatePath first, StatePath[] others) {
+		final StatePath[] paths = new StatePath[(others == null ? 0 : others.length) + 1];
+		paths[0] = first;
+		if (others != null)
+			System.arraycopy(others, 0, paths, 1, others.length);
+		return paths;
+	}
+
+	/**
+	 * Gets the derived value for the given {@code State}, computing it only if
+	 * an input has changed since the last call.
+	 *
+	 * @param state The state to derive the value from.
+	 * @return The cached or newly computed value.
+	 */
+	public T get(State state) {
+		Objects.requireNonNull(state, "Cannot derive a value from a null State");
+		final Memo<T> current = this.memo;
+		if (current != null) {
+			if (current.state == state) {
+				return current.value;
+			}
+			if (inputs.length > 0 && sameInputs(current.state, state)) {
+				this.memo = new Memo<>(state, current.value);
+				return current.value;
+			}
+		}
+		final T value = selector.select(state);
+		this.memo = new Memo<>(state, value);
+		return value;
+	}
+
+	private boolean sameInputs(State previous, State state) {
+		for (StatePath path : inputs) {
+			if (state.changedIn(previous, path))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return A copy of the inputs this value depends on.
+	 */
+	public StatePath[] getInputs() {
+		return inputs.clone();
+	}
+
+	/**
+	 * @param key The top level key to check.
+	 * @return Whether a change to the given key may change this value.
+	 */
+	public boolean dependsOn(String key) {
+		if (inputs.length == 0)
+			return true;
+		for (StatePath path : inputs) {
+			if (path.getKey().equals(key))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Drops the cached value so that the next call to {@code get} recomputes it.
+	 */
+	public void invalidate() {
+		this.memo = null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DerivedValue [inputs='%s']", Arrays.toString(inputs));
+	}
+
+	/**
+	 * Immutable snapshot of the last computation, swapped in as a whole so that
+	 * readers on other threads never see a value paired with the wrong inputs.
+	 */
+	private static final class Memo<T> {
+		private final State state;
+		private final T value;
+
+		private Memo(State state, T value) {
+			this.state = state;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.saylorsolutions.fnstate4j.func.ActionCombiner;
+
+/**
+ * Per {@code Lane} queues of pending {@code Action}s. Lanes are drained in
+ * strict priority order, except that a lane whose oldest {@code Action} has
+ * waited at least the starvation threshold is served first, oldest first.
+ * <p>
+ * An {@code Action} queued right behind one of the same type is folded into it
+ * if a combiner is registered for the type and neither was queued as
+ * uncombinable. The combined {@code Action} keeps the earlier one's place and
+ * enqueue time.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class DispatchQueue {
+	static final long DEFAULT_STARVATION_NANOS = TimeUnit.MILLISECONDS.toNanos(500L);
+
+	private final ArrayDeque<Pending>[] lanes;
+	private final Map<String, ActionCombiner> combiners = new ConcurrentHashMap<>();
+	private long starvationNanos = DEFAULT_STARVATION_NANOS;
+	private long coalescedCount;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	DispatchQueue() {
+		this.lanes = new ArrayDeque[Lane.values().length];
+		for (int i = 0; i < this.lanes.length; i++) {
+			this.lanes[i] = new ArrayDeque<>();
+		}
+	}
+
+	/**
+	 * @return Whether the {@code Action} was queued on its own, false if it was
+	 *         folded into the last one in its lane.
+	 */
+	synchronized boolean offer(Action action, Lane lane, boolean combinable) {
+		final ArrayDeque<Pending> queue = this.lanes[lane.ordinal()];
+		final Pending last = queue.peekLast();
+		if (combinable && last != null && last.combinable && !this.combiners.isEmpty()
+				&& last.action.getType().equals(action.getType())) {
+			final ActionCombiner combiner = this.combiners.get(action.getType());
+			final Action combined = combiner == null ? null : combiner.combine(last.action, action);
+			if (combined != null) {
+				last.action = combined;
+				this.coalescedCount++;
+				return false;
+			}
+		}
+		queue.addLast(new Pending(action, lane, combinable, System.nanoTime()));
+		return true;
+	}
+
+	void setCombiner(String type, ActionCombiner combiner) {
+		if (combiner == null)
+			this.combiners.remove(type);
+		else
+			this.combiners.put(type, combiner);
+	}
+
+	synchronized long getCoalescedCount() {
+		return this.coalescedCount;
+	}
+
+	/**
+	 * @return The next {@code Action} to process, or null if every lane is empty.
+	 */
+	synchronized Pending poll() {
+		final long now = System.nanoTime();
+		ArrayDeque<Pending> starved = null;
+		ArrayDeque<Pending> first = null;
+		for (ArrayDeque<Pending> lane : this.lanes) {
+			final Pending head = lane.peekFirst();
+			if (head == null)
+				continue;
+			if (first == null)
+				first = lane;
+			if (now - head.enqueuedNanos >= this.starvationNanos
+					&& (starved == null || head.enqueuedNanos - starved.peekFirst().enqueuedNanos < 0))
+				starved = lane;
+		}
+		if (starved != null)
+			return starved.pollFirst();
+		return first == null ? null : first.pollFirst();
+	}
+
+	synchronized int size(Lane lane) {
+		return this.lanes[lane.ordinal()].size();
+	}
+
+	synchronized void setStarvationNanos(long starvationNanos) {
+		this.starvationNanos = starvationNanos;
+	}
+
+	static final class Pending {
+		Action action; // Only replaced while the queue is locked
+		final Lane lane;
+		final boolean combinable;
+		final long enqueuedNanos;
+
+		private Pending(Action action, Lane lane, boolean combinable, long enqueuedNanos) {
+			this.action = action;
+			this.lane = lane;
+			this.combinable = combinable;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * Priority of an {@code Action} dispatched with
+ * {@code StateStore#dispatch(Action, Lane)}. Queued actions in a higher lane are
+ * always processed before those in a lower lane, unless a lower lane has waited
+ * longer than the store's starvation threshold.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see StateStore#setStarvationThreshold(long, java.util.concurrent.TimeUnit)
+ */
+public enum Lane {
+	/**
+	 * Latency critical work, like reacting to user input.
+	 */
+	INTERACTIVE,
+	/**
+	 * Everything that isn't explicitly prioritized.
+	 */
+	NORMAL,
+	/**
+	 * Bulk work that may be delayed, like loading data.
+	 */
+	BACKGROUND;
+}
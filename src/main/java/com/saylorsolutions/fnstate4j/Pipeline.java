@@ -0,0 +1,107 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+import com.saylorsolutions.fnstate4j.func.Middleware;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+/**
+ * Immutable snapshot of the {@code Middleware} and {@code Reducer}s registered
+ * with a {@code StateStore}, compiled into flat chains. Registration creates a
+ * new {@code Pipeline} instead of modifying this one, so a dispatch that read
+ * the pipeline before a registration change still sees a consistent set of
+ * handlers from start to finish.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class Pipeline {
+	static final Pipeline EMPTY = new Pipeline(new Middleware[0], new Reducer[0]);
+
+	private final Middleware[] middlewares;
+	private final Reducer[] reducers;
+	private final Middleware rootMiddleware;
+	private final Reducer rootReducer;
+
+	private Pipeline(Middleware[] middlewares, Reducer[] reducers) {
+		this.middlewares = middlewares;
+		this.reducers = reducers;
+		this.rootMiddleware = Middleware.combine(Arrays.asList(middlewares));
+		this.rootReducer = Reducer.combine(Arrays.asList(reducers));
+	}
+
+	boolean process(Action action, State state) {
+		return rootMiddleware.process(action, state);
+	}
+
+	State reduce(Action action, State state) {
+		return rootReducer.reduce(action, state);
+	}
+
+	Pipeline withMiddleware(Middleware middleware) {
+		if (contains(middlewares, middleware))
+			return this;
+		return new Pipeline(append(middlewares, middleware), reducers);
+	}
+
+	Pipeline withoutMiddleware(Middleware middleware) {
+		if (!contains(middlewares, middleware))
+			return this;
+		return new Pipeline(remove(middlewares, middleware), reducers);
+	}
+
+	Pipeline withReducer(Reducer reducer) {
+		if (contains(reducers, reducer))
+			return this;
+		return new Pipeline(middlewares, append(reducers, reducer));
+	}
+
+	Pipeline withoutReducer(Reducer reducer) {
+		if (!contains(reducers, reducer))
+			return this;
+		return new Pipeline(middlewares, remove(reducers, reducer));
+	}
+
+	private static <T> boolean contains(T[] array, T element) {
+		for (T t : array) {
+			if (t.equals(element))
+				return true;
+		}
+		return false;
+	}
+
+	private static <T> T[] append(T[] array, T element) {
+		final T[] copy = Arrays.copyOf(array, array.length + 1);
+		copy[array.length] = element;
+		return copy;
+	}
+
+	private static <T> T[] remove(T[] array, T element) {
+		final T[] copy = Arrays.copyOf(array, array.length - 1);
+		int i = 0;
+		for (T t : array) {
+			if (!t.equals(element))
+				copy[i++] = t;
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,144 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on threads
+ * borrowed from a shared {@code Executor}. No thread is held while there's
+ * nothing to run, and at most {@code BATCH} tasks run before the thread is
+ * handed back, so a busy store can't starve the others sharing the pool.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class SerialExecutor implements Executor {
+	private static final int BATCH = 64;
+
+	private final Executor pool;
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+	private boolean scheduled;
+	private long completedCount;
+	private long busyNanos;
+	private volatile Thread runner;
+
+	SerialExecutor(Executor pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (this) {
+			this.tasks.addLast(task);
+			if (this.scheduled)
+				return;
+			this.scheduled = true;
+		}
+		schedule();
+	}
+
+	/**
+	 * Hands the next batch to the pool. If the pool rejects it, the queued tasks
+	 * can never run, so they're dropped and the rejection is thrown, instead of
+	 * leaving this executor scheduled forever and {@code awaitIdle} hanging.
+	 */
+	private void schedule() {
+		try {
+			this.pool.execute(this::runBatch);
+		} catch (RejectedExecutionException e) {
+			final int dropped;
+			synchronized (this) {
+				dropped = this.tasks.size();
+				this.tasks.clear();
+				this.scheduled = false;
+				notifyAll();
+			}
+			throw new RejectedExecutionException(
+					String.format("Pool rejected the executor, %d queued tasks were dropped", dropped), e);
+		}
+	}
+
+	private void runBatch() {
+		final long start = System.nanoTime();
+		this.runner = Thread.currentThread();
+		int ran = 0;
+		try {
+			Runnable task;
+			while (ran < BATCH && (task = next()) != null) {
+				ran++;
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					final Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		} finally {
+			this.runner = null;
+			final boolean more;
+			synchronized (this) {
+				this.completedCount += ran;
+				this.busyNanos += System.nanoTime() - start;
+				more = !this.tasks.isEmpty();
+				this.scheduled = more;
+				if (!more)
+					notifyAll();
+			}
+			if (more)
+				schedule();
+		}
+	}
+
+	private synchronized Runnable next() {
+		return this.tasks.pollFirst();
+	}
+
+	/**
+	 * @return Whether the calling thread is running a task of this executor.
+	 */
+	boolean isRunnerThread() {
+		return this.runner == Thread.currentThread();
+	}
+
+	/**
+	 * Blocks until every submitted task has run, including tasks submitted while
+	 * waiting.
+	 */
+	synchronized void awaitIdle() throws InterruptedException {
+		while (this.scheduled) {
+			wait();
+		}
+	}
+
+	synchronized int getQueuedCount() {
+		return this.tasks.size();
+	}
+
+	synchronized long getCompletedCount() {
+		return this.completedCount;
+	}
+
+	synchronized long getBusyNanos() {
+		return this.busyNanos;
+	}
+}
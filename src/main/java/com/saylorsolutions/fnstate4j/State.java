@@ -20,65 +20,470 @@ package com.saylorsolutions.fnstate4j;
  * #L%
  */
 
+
+import java.util.Collection;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
 
+import io.vavr.Tuple2;
 import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
 import io.vavr.collection.Map;
 import io.vavr.collection.Set;
 
 public class State {
+	private static final Object MISSING = new Object();
+	/**
+	 * How many versions {@code equals} walks back to find the other
+	 * {@code State}, before comparing every entry instead.
+	 */
+	private static final int MAX_HISTORY_WALK = 32;
+	/**
+	 * The number of entries above which {@code mergeAll} merges in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 8192;
+
 	/**
 	 * This is a VAVR Map, not a java.util.Map.
 	 */
 	private transient Map<String, Object> innerMap;
+	/**
+	 * Values of the schema keys, or null if this {@code State} has no schema. Keys
+	 * of the schema are never in {@code innerMap}.
+	 */
+	private transient final StateSlots slots;
 	private transient final State prevState;
+	private transient final ValueStore valueStore;
+	/**
+	 * What changed since {@code prevState}: the key for a put or remove, the
+	 * {@code StateDelta} that was applied, or null if unknown.
+	 */
+	private transient final Object change;
+	private transient int hash; // Cached, 0 if not computed yet
+	private transient volatile Map<String, Object> mergedMap;
 
 	public State() {
-		this(HashMap.empty(), null);
+		this(HashMap.empty(), null, null, null, null);
 	}
 
-	private State(Map<String, Object> newState, State oldState) {
+	private State(Map<String, Object> newState, StateSlots slots, State oldState, ValueStore valueStore,
+			Object change) {
 		this.innerMap = newState;
+		this.slots = slots;
 		this.prevState = oldState;
+		this.valueStore = valueStore;
+		this.change = change;
+	}
+
+	private State(Map<String, Object> newState, StateSlots slots, State oldState, Object change) {
+		this(newState, slots, oldState, oldState == null ? null : oldState.valueStore, change);
+	}
+
+	/**
+	 * Creates a {@code State} with the given entries and no history.
+	 *
+	 * @param entries The entries of the new {@code State}.
+	 * @return The created {@code State}.
+	 */
+	public static State of(Map<String, Object> entries) {
+		Objects.requireNonNull(entries, "Cannot create a State from a null Map");
+		return new State(entries, null, null, null);
+	}
+
+	static State of(Map<String, Object> entries, StateSlots slots) {
+		return new State(entries, slots, null, null);
+	}
+
+	/**
+	 * Creates a {@code State} with the same entries that hands every value put
+	 * into it, or into any {@code State} derived from it, to the given
+	 * {@code ValueStore}.
+	 *
+	 * @param valueStore Where new values are kept, or null to keep them in the
+	 *                   map itself.
+	 * @return The created {@code State}.
+	 */
+	public State withValueStore(ValueStore valueStore) {
+		return new State(this.innerMap, this.slots, this.prevState, valueStore, this.change);
+	}
+
+	ValueStore getValueStore() {
+		return this.valueStore;
+	}
+
+	/**
+	 * @return The schema this {@code State} was created from, if any.
+	 */
+	public Optional<StateSchema> getSchema() {
+		return Optional.ofNullable(this.slots == null ? null : this.slots.getSchema());
+	}
+
+	private static Object resolve(Object value) {
+		return value instanceof DeferredValue ? ((DeferredValue) value).resolve() : value;
+	}
+
+	/**
+	 * @return The slot of the key in this {@code State}'s schema, or -1.
+	 */
+	private int slotOf(String key) {
+		return this.slots == null ? -1 : this.slots.getSchema().indexOf(key);
+	}
+
+	private int slotOf(StateKey<?> key) {
+		if (this.slots == null)
+			return -1;
+		return key.getSchema() == this.slots.getSchema() ? key.getIndex() : slotOf(key.getName());
+	}
+
+	/**
+	 * @return The stored value, which may be a {@code DeferredValue}, or
+	 *         {@code MISSING}.
+	 */
+	private Object rawGet(String key) {
+		final int slot = slotOf(key);
+		if (slot < 0)
+			return innerMap.getOrElse(key, MISSING);
+		return slotGet(slot);
+	}
+
+	/**
+	 * @return The stored value, null if the slot holds null, or {@code MISSING}.
+	 */
+	private Object slotGet(int slot) {
+		final Object value = this.slots.get(slot);
+		if (value == null)
+			return MISSING;
+		return value == StateSlots.NULL ? null : value;
+	}
+
+	private static Object slotValue(Object stored) {
+		return stored == null ? StateSlots.NULL : stored;
 	}
 
 	public Optional<Object> get(String key) {
-		return innerMap.get(key).toJavaOptional();
+		final int slot = slotOf(key);
+		if (slot >= 0) {
+			final Object value = slotGet(slot);
+			return value == MISSING ? Optional.empty() : Optional.ofNullable(resolve(value));
+		}
+		return innerMap.get(key).map(State::resolve).toJavaOptional();
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> Optional<T> get(String key, Class<T> desiredType) {
-		return (Optional<T>) innerMap.get(key).toJavaOptional();
+		return (Optional<T>) get(key);
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> T getOrElse(String key, T defaultValue) {
-		return (T) innerMap.getOrElse(key, defaultValue);
+		final int slot = slotOf(key);
+		if (slot >= 0) {
+			final Object value = slotGet(slot);
+			return value == MISSING ? defaultValue : (T) resolve(value);
+		}
+		return (T) resolve(innerMap.getOrElse(key, defaultValue));
 	}
 
 	public Object getOrNull(String key) {
 		return this.getOrElse(key, null);
 	}
 
+	/**
+	 * @param key The typed key.
+	 * @return The value, or empty if it's not present.
+	 */
+	public <T> Optional<T> get(StateKey<T> key) {
+		return Optional.ofNullable(getOrNull(key));
+	}
+
+	/**
+	 * A single array access if this {@code State} was created from the key's
+	 * schema, otherwise the same as {@code getOrElse(key.getName(), defaultValue)}.
+	 *
+	 * @param key          The typed key.
+	 * @param defaultValue Returned if the value is not present.
+	 * @return The value, or the default value.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getOrElse(StateKey<T> key, T defaultValue) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		final int slot = slotOf(key);
+		if (slot < 0)
+			return getOrElse(key.getName(), defaultValue);
+		final Object value = slotGet(slot);
+		return value == MISSING ? defaultValue : (T) resolve(value);
+	}
+
+	public <T> T getOrNull(StateKey<T> key) {
+		return getOrElse(key, null);
+	}
+
+	/**
+	 * Looks up a value in nested maps. Nested values must be VAVR or
+	 * {@code java.util} maps.
+	 *
+	 * @param path The path to the value.
+	 * @return The value, or empty if any part of the path is missing.
+	 */
+	public Optional<Object> getIn(StatePath path) {
+		final Object value = lookup(path, false);
+		return value == MISSING ? Optional.empty() : Optional.ofNullable(value);
+	}
+
+	/**
+	 * @param path A top level {@code String} key followed by 0..n nested keys.
+	 * @return The value, or empty if any part of the path is missing.
+	 * @see State#getIn(StatePath)
+	 */
+	public Optional<Object> getIn(Object... path) {
+		return getIn(StatePath.of(path));
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T getInOrElse(StatePath path, T defaultValue) {
+		final Object value = lookup(path, false);
+		return value == MISSING ? defaultValue : (T) value;
+	}
+
+	/**
+	 * Compares the values at the given path by identity. Since nested maps are
+	 * persistent, this only needs to walk the path, no matter how large the
+	 * maps along it are. If both states hold the same top level value, nothing
+	 * is resolved from a {@code ValueStore} at all.
+	 *
+	 * @param other The {@code State} to compare with, may be null.
+	 * @param path  The path to compare.
+	 * @return Whether the value at the path is a different instance in the other
+	 *         {@code State}, or is only present in one of them.
+	 */
+	public boolean changedIn(State other, StatePath path) {
+		if (other == null)
+			return lookup(path, true) != MISSING;
+		// Values are immutable, so nothing below the same top level value has changed.
+		if (rawGet(path.getKey()) == other.rawGet(path.getKey()))
+			return false;
+		return lookup(path, true) != other.lookup(path, true);
+	}
+
+	private Object lookup(StatePath path, boolean raw) {
+		Objects.requireNonNull(path, "'path' parameter must not be null");
+		Object current = rawGet(path.getKey());
+		if (!raw || path.size() > 1)
+			current = resolve(current);
+		for (int i = 1; i < path.size() && current != MISSING; i++) {
+			current = nestedGet(current, path.get(i));
+		}
+		return current;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object nestedGet(Object container, Object key) {
+		if (container instanceof Map)
+			return ((Map<Object, Object>) container).getOrElse(key, MISSING);
+		if (container instanceof java.util.Map) {
+			final java.util.Map<Object, Object> map = (java.util.Map<Object, Object>) container;
+			return map.containsKey(key) ? map.get(key) : MISSING;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Sets a value in nested maps, creating any missing maps along the path. Only
+	 * the maps along the path are copied, everything else is shared with this
+	 * {@code State}.
+	 *
+	 * @param path  The path to the value.
+	 * @param value The new value.
+	 * @return A new {@code State} with the value set.
+	 * @throws IllegalStateException If a value along the path is not a VAVR map.
+	 */
+	public State putIn(StatePath path, Object value) {
+		return updateIn(path, old -> value);
+	}
+
+	/**
+	 * Replaces a value in nested maps with the result of a function, creating
+	 * any missing maps along the path. Only the maps along the path are copied.
+	 *
+	 * @param path     The path to the value.
+	 * @param function Given the current value, or null if it's missing, returns
+	 *                 the new value.
+	 * @return A new {@code State} with the value replaced, or this {@code State}
+	 *         if the function returned the same instance.
+	 * @throws IllegalStateException If a value along the path is not a VAVR map.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> State updateIn(StatePath path, Function<? super T, ?> function) {
+		Objects.requireNonNull(path, "'path' parameter must not be null");
+		Objects.requireNonNull(function, "'function' parameter must not be null");
+		final Function<Object, Object> update = (Function<Object, Object>) function;
+		final Object current = getOrNull(path.getKey());
+		final Object updated = path.size() == 1 ? update.apply(current) : updateNested(current, path, 1, update);
+		if (updated == current && (current != null || hasKey(path.getKey())))
+			return this;
+		return updated == MISSING ? remove(path.getKey()) : put(path.getKey(), updated);
+	}
+
+	/**
+	 * Removes a value from nested maps.
+	 *
+	 * @param path The path to the value.
+	 * @return A new {@code State} without the value, or this {@code State} if it
+	 *         wasn't present.
+	 */
+	public State removeIn(StatePath path) {
+		if (lookup(path, false) == MISSING)
+			return this;
+		return updateIn(path, old -> MISSING);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object updateNested(Object container, StatePath path, int index, Function<Object, Object> update) {
+		final Map<Object, Object> map;
+		if (container == null) {
+			map = HashMap.empty();
+		} else if (container instanceof Map) {
+			map = (Map<Object, Object>) container;
+		} else {
+			throw new IllegalStateException(String.format("Value at index %d of %s is not a VAVR Map", index - 1, path));
+		}
+		final Object key = path.get(index);
+		final Object child = map.getOrElse(key, null);
+		final Object updated = index == path.size() - 1 ? update.apply(child)
+				: updateNested(child, path, index + 1, update);
+		if (updated == MISSING)
+			return map.remove(key);
+		if (updated == child && map.containsKey(key))
+			return map;
+		return map.put(key, updated);
+	}
+
 	public Set<String> keySet() {
-		return innerMap.keySet();
+		if (this.slots == null)
+			return innerMap.keySet();
+		return getStateMap().keySet();
 	}
 
+	/**
+	 * Schema keys only accept values of the key's type, or null. Like any other
+	 * key, a schema key that's set to null is present and holds null, use
+	 * {@code remove} to remove it. Putting the value that's already there returns
+	 * this {@code State}.
+	 *
+	 * @throws IllegalArgumentException If the key is part of this {@code State}'s
+	 *                                  schema and the value has the wrong type.
+	 */
 	public State put(String key, Object value) {
-		return new State(innerMap.put(key, value), this);
+		return putSlot(slotOf(key), key, value);
+	}
+
+	/**
+	 * @param key   The typed key.
+	 * @param value The new value.
+	 * @return A new {@code State} with the value set.
+	 */
+	public <T> State put(StateKey<T> key, T value) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		return putSlot(slotOf(key), key.getName(), value);
+	}
+
+	private State putSlot(int slot, String key, Object value) {
+		final Object stored = store(checkType(slot, value));
+		// Putting the very same value again isn't a change, so the store can skip it.
+		if (stored == rawGet(key))
+			return this;
+		return slot < 0 ? new State(innerMap.put(key, stored), this.slots, this, key)
+				: new State(innerMap, this.slots.with(slot, slotValue(stored)), this, key);
+	}
+
+	private Object checkType(int slot, Object value) {
+		if (slot < 0 || value == null || value instanceof DeferredValue)
+			return value;
+		final StateKey<?> key = this.slots.getSchema().keyAt(slot);
+		if (!key.getType().isInstance(value))
+			throw new IllegalArgumentException(
+					String.format("Value of type %s cannot be put into %s", value.getClass().getName(), key));
+		return value;
+	}
+
+	private static int entryHash(String key, Object value) {
+		return key.hashCode() ^ Objects.hashCode(resolve(value));
+	}
+
+	private Object store(Object value) {
+		if (this.valueStore == null || value == null || value instanceof DeferredValue)
+			return value;
+		return this.valueStore.store(value);
+	}
+
+	/**
+	 * @param key The key to remove.
+	 * @return A new {@code State} without the given key, or this {@code State} if
+	 *         the key isn't present.
+	 */
+	public State remove(String key) {
+		final int slot = slotOf(key);
+		if (slot >= 0) {
+			if (slotGet(slot) == MISSING)
+				return this;
+		} else if (!innerMap.containsKey(key)) {
+			return this;
+		}
+		return slot < 0 ? new State(innerMap.remove(key), this.slots, this, key)
+				: new State(innerMap, this.slots.with(slot, null), this, key);
+	}
+
+	public State remove(StateKey<?> key) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		return remove(key.getName());
+	}
+
+	/**
+	 * Applies all of the changes in the {@code StateDelta} as a single new
+	 * version.
+	 *
+	 * @param delta The changes to apply.
+	 * @return A new {@code State} with the changes applied, or this {@code State}
+	 *         if the delta is empty.
+	 */
+	public State apply(StateDelta delta) {
+		Objects.requireNonNull(delta, "Cannot apply a null StateDelta");
+		if (delta.isEmpty())
+			return this;
+		Map<String, Object> newMap = innerMap;
+		StateSlots newSlots = this.slots;
+		for (String key : delta.getRemovedKeys()) {
+			final int slot = slotOf(key);
+			if (slot < 0)
+				newMap = newMap.remove(key);
+			else
+				newSlots = newSlots.with(slot, null);
+		}
+		for (Tuple2<String, Object> entry : delta.getPuts()) {
+			final int slot = slotOf(entry._1);
+			final Object stored = store(checkType(slot, entry._2));
+			if (slot < 0)
+				newMap = newMap.put(entry._1, stored);
+			else
+				newSlots = newSlots.with(slot, slotValue(stored));
+		}
+		return new State(newMap, newSlots, this, delta);
 	}
 
 	public boolean hasKey(String key) {
-		return this.getOrNull(key) != null;
+		final Object value = rawGet(key);
+		return value != MISSING && value != null;
 	}
 
 	public int size() {
-		return innerMap.size();
+		return innerMap.size() + (this.slots == null ? 0 : this.slots.count());
 	}
 
 	public boolean isEmpty() {
-		return innerMap.isEmpty();
+		return size() == 0;
 	}
 
 	public boolean canTimeTravel() {
@@ -89,14 +494,206 @@ public class State {
 		return Optional.ofNullable(this.prevState);
 	}
 
+	/**
+	 * Holding on to a {@code State} keeps every previous version reachable. A
+	 * detached copy shares the same entries without the history, so that it can
+	 * be kept around without holding on to every version before it.
+	 *
+	 * @return A {@code State} with the same entries and no previous state.
+	 */
+	public State detach() {
+		if (this.prevState == null)
+			return this;
+		final State detached = new State(this.innerMap, this.slots, null, this.valueStore, null);
+		detached.hash = this.hash;
+		return detached;
+	}
+
+	/**
+	 * Values that are stored in a {@code ValueStore} appear in this map as
+	 * {@code DeferredValue} references. For a {@code State} with a schema, the map
+	 * is built on first use and cached.
+	 *
+	 * @return The map backing this {@code State}.
+	 */
 	public Map<String, Object> getStateMap() {
-		return this.innerMap;
+		if (this.slots == null)
+			return this.innerMap;
+		Map<String, Object> merged = this.mergedMap;
+		if (merged == null) {
+			merged = this.innerMap;
+			for (int i = 0; i < this.slots.capacity(); i++) {
+				final Object value = slotGet(i);
+				if (value != MISSING)
+					merged = merged.put(this.slots.getSchema().keyAt(i).getName(), value);
+			}
+			this.mergedMap = merged;
+		}
+		return merged;
+	}
+
+	/**
+	 * Two states are equal if they have the same keys, and the values for each
+	 * key are equal. History, schema and {@code ValueStore} are not compared.
+	 * States that share the same entries are equal without looking at any of
+	 * them, and if one {@code State} was derived from the other in a few steps,
+	 * only the keys changed in between are compared.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof State))
+			return false;
+		final State other = (State) obj;
+		if (this.innerMap == other.innerMap && this.slots == other.slots)
+			return true;
+		if (size() != other.size())
+			return false;
+		final int thisHash = this.hash;
+		final int otherHash = other.hash;
+		if (thisHash != 0 && otherHash != 0 && thisHash != otherHash)
+			return false;
+		Boolean equal = equalAlongHistory(this, other);
+		if (equal == null)
+			equal = equalAlongHistory(other, this);
+		if (equal != null)
+			return equal;
+		for (Tuple2<String, Object> entry : getStateMap()) {
+			if (!sameValue(entry._2, other.rawGet(entry._1)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether the keys changed between the two versions have equal values,
+	 *         or null if {@code older} isn't a recent ancestor of {@code newer}
+	 *         with known changes.
+	 */
+	private static Boolean equalAlongHistory(State newer, State older) {
+		final java.util.Set<String> changed = newer.changedKeysSince(older, MAX_HISTORY_WALK);
+		if (changed == null)
+			return null;
+		for (String key : changed) {
+			if (!sameValue(newer.rawGet(key), older.rawGet(key)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Collects the keys that were put or removed between an ancestor and this
+	 * {@code State}, from the recorded changes alone.
+	 *
+	 * @param older    The ancestor.
+	 * @param maxSteps How many versions to walk back at most.
+	 * @return The changed keys, or null if {@code older} isn't found within
+	 *         {@code maxSteps} versions or a change on the way isn't known.
+	 */
+	private java.util.Set<String> changedKeysSince(State older, int maxSteps) {
+		final java.util.Set<String> changed = new java.util.HashSet<>();
+		State current = this;
+		for (int i = 0; i < maxSteps && current != older; i++) {
+			if (current.change instanceof String) {
+				changed.add((String) current.change);
+			} else if (current.change instanceof StateDelta) {
+				final StateDelta delta = (StateDelta) current.change;
+				delta.getPuts().keySet().forEach(changed::add);
+				delta.getRemovedKeys().forEach(changed::add);
+			} else {
+				return null;
+			}
+			current = current.prevState;
+			if (current == null)
+				return null;
+		}
+		return current == older ? changed : null;
+	}
+
+	/**
+	 * Builds the delta from an ancestor to this {@code State} by looking only at
+	 * the keys changed in between.
+	 *
+	 * @return The delta, or null if the changes aren't known.
+	 * @see State#changedKeysSince(State, int)
+	 */
+	StateDelta deltaSince(State older, int maxSteps) {
+		final java.util.Set<String> changed = changedKeysSince(older, maxSteps);
+		if (changed == null)
+			return null;
+		Map<String, Object> puts = HashMap.empty();
+		Set<String> removed = HashSet.empty();
+		for (String key : changed) {
+			final Object value = rawGet(key);
+			if (value == MISSING) {
+				if (older.rawGet(key) != MISSING)
+					removed = removed.add(key);
+			} else if (value != older.rawGet(key)) {
+				puts = puts.put(key, value);
+			}
+		}
+		return puts.isEmpty() && removed.isEmpty() ? StateDelta.EMPTY : StateDelta.of(puts, removed);
+	}
+
+	private static boolean sameValue(Object raw, Object otherRaw) {
+		if (raw == otherRaw)
+			return true;
+		if (raw == MISSING || otherRaw == MISSING)
+			return false;
+		return Objects.equals(resolve(raw), resolve(otherRaw));
+	}
+
+	/**
+	 * Computed on first use and cached. If a recent previous version already knows
+	 * its hash, only the entries changed since then are hashed, so values are
+	 * loaded from a {@code ValueStore} only for those keys.
+	 */
+	@Override
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			h = hashFromHistory();
+			if (h == 0) {
+				for (Tuple2<String, Object> entry : getStateMap()) {
+					h += entryHash(entry._1, entry._2);
+				}
+			}
+			this.hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * @return The hash derived from the nearest previous version with a known
+	 *         hash, or 0 if there's none within {@code MAX_HISTORY_WALK} versions.
+	 */
+	private int hashFromHistory() {
+		State known = this.prevState;
+		for (int i = 1; i < MAX_HISTORY_WALK && known != null && known.hash == 0; i++) {
+			known = known.prevState;
+		}
+		if (known == null || known.hash == 0)
+			return 0;
+		final java.util.Set<String> changed = changedKeysSince(known, MAX_HISTORY_WALK);
+		if (changed == null)
+			return 0;
+		int h = known.hash;
+		for (String key : changed) {
+			final Object old = known.rawGet(key);
+			if (old != MISSING)
+				h -= entryHash(key, old);
+			final Object value = rawGet(key);
+			if (value != MISSING)
+				h += entryHash(key, value);
+		}
+		return h;
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		this.innerMap.forEach(t -> sb.append(String.format(", ['%s':'%s']", t._1, t._2)));
+		getStateMap().forEach(t -> sb.append(String.format(", ['%s':'%s']", t._1, resolve(t._2))));
 		String mapString = sb.length() > 2 ? sb.substring(2) : sb.toString();
 		return String.format("State [entries='%s']", mapString);
 	}
@@ -113,6 +710,119 @@ public class State {
 	public static State merge(State ours, State theirs) {
 		Objects.requireNonNull(ours, "Cannot merge null State");
 		Objects.requireNonNull(theirs, "Cannot merge null State");
-		return new State(theirs.getStateMap().merge(ours.getStateMap()), null);
+		return new State(theirs.getStateMap().merge(ours.getStateMap()), null, null, null);
+	}
+
+	/**
+	 * Merges any number of states in one pass, without building an intermediate
+	 * {@code State} per pair. Merges with more than {@code PARALLEL_THRESHOLD}
+	 * entries in total are split across the common fork-join pool, by ranges of
+	 * states and, once only two are left, by ranges of key hashes. Like
+	 * {@code merge}, the result has no history.
+	 *
+	 * @param states The states to merge, in merge order.
+	 * @param policy Decides the value of keys present in more than one state.
+	 * @return The merged {@code State}.
+	 */
+	public static State mergeAll(Collection<State> states, ConflictPolicy policy) {
+		Objects.requireNonNull(states, "Cannot merge a null Collection");
+		Objects.requireNonNull(policy, "'policy' parameter must not be null");
+		final State[] array = states.toArray(new State[0]);
+		long total = 0L;
+		for (State state : array) {
+			Objects.requireNonNull(state, "Cannot merge null State");
+			total += state.size();
+		}
+		if (array.length == 0)
+			return new State();
+		if (array.length == 1)
+			return array[0].detach();
+		final MergeTask task = new MergeTask(array, 0, array.length, policy, 0, 1);
+		final java.util.Map<String, Object> merged = total > PARALLEL_THRESHOLD
+				? ForkJoinPool.commonPool().invoke(task)
+				: task.compute();
+		return new State(HashMap.ofAll(merged), null, null, null);
+	}
+
+	/**
+	 * Merges a range of states into a mutable map, splitting the range in half
+	 * until it's small enough to merge on one thread. A range of two large
+	 * states is split into partitions of their keys instead, which don't
+	 * overlap, so their results are simply added together.
+	 */
+	private static final class MergeTask extends RecursiveTask<java.util.Map<String, Object>> {
+		private static final long serialVersionUID = 1L;
+		private final State[] states;
+		private final int from;
+		private final int to;
+		private final ConflictPolicy policy;
+		private final int partition;
+		private final int partitions;
+
+		private MergeTask(State[] states, int from, int to, ConflictPolicy policy, int partition, int partitions) {
+			this.states = states;
+			this.from = from;
+			this.to = to;
+			this.policy = policy;
+			this.partition = partition;
+			this.partitions = partitions;
+		}
+
+		@Override
+		protected java.util.Map<String, Object> compute() {
+			final long entries = partitions == 1 ? entries() : 0L;
+			if (entries > PARALLEL_THRESHOLD && to - from > 2) {
+				final int middle = (from + to) >>> 1;
+				final MergeTask right = new MergeTask(states, middle, to, policy, 0, 1);
+				right.fork();
+				final java.util.Map<String, Object> merged = new MergeTask(states, from, middle, policy, 0, 1)
+						.compute();
+				right.join().forEach((key, value) -> mergeInto(merged, key, value));
+				return merged;
+			}
+			if (entries > PARALLEL_THRESHOLD && to - from > 1)
+				return computePartitions(entries);
+			final java.util.Map<String, Object> merged = new java.util.HashMap<>();
+			for (int i = from; i < to; i++) {
+				states[i].getStateMap().forEach((key, value) -> {
+					if (partitions == 1 || Math.floorMod(key.hashCode(), partitions) == partition)
+						mergeInto(merged, key, value);
+				});
+			}
+			return merged;
+		}
+
+		private java.util.Map<String, Object> computePartitions(long entries) {
+			final int count = (int) Math.min(entries / PARALLEL_THRESHOLD + 1,
+					Math.max(2, ForkJoinPool.getCommonPoolParallelism()));
+			final java.util.List<MergeTask> tasks = new java.util.ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				tasks.add(new MergeTask(states, from, to, policy, i, count));
+			}
+			invokeAll(tasks);
+			final java.util.Map<String, Object> merged = tasks.get(0).join();
+			for (int i = 1; i < count; i++) {
+				merged.putAll(tasks.get(i).join());
+			}
+			return merged;
+		}
+
+		private long entries() {
+			long total = 0L;
+			for (int i = from; i < to; i++) {
+				total += states[i].size();
+			}
+			return total;
+		}
+
+		private void mergeInto(java.util.Map<String, Object> merged, String key, Object value) {
+			if (policy == ConflictPolicy.LAST_WINS) {
+				merged.put(key, value);
+			} else if (!merged.containsKey(key)) {
+				merged.put(key, value);
+			} else if (policy != ConflictPolicy.FIRST_WINS) {
+				merged.put(key, policy.resolve(key, resolve(merged.get(key)), resolve(value)));
+			}
+		}
 	}
 }
@@ -0,0 +1,135 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+
+/**
+ * The set of changes between two versions of a {@code State}: the keys that
+ * were added or given a new value, and the keys that were removed. Applying a
+ * delta is idempotent, so applying the same delta twice has the same result as
+ * applying it once.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see State#apply(StateDelta)
+ */
+public final class StateDelta {
+	/**
+	 * A delta with no changes.
+	 */
+	public static final StateDelta EMPTY = new StateDelta(HashMap.empty(), HashSet.empty());
+	private static final int MIN_HISTORY_WALK = 64;
+
+	private final Map<String, Object> puts;
+	private final Set<String> removedKeys;
+
+	private StateDelta(Map<String, Object> puts, Set<String> removedKeys) {
+		this.puts = puts;
+		this.removedKeys = removedKeys;
+	}
+
+	/**
+	 * @param puts        The keys that were added or changed, with their new
+	 *                    values.
+	 * @param removedKeys The keys that were removed.
+	 * @return A new {@code StateDelta}.
+	 */
+	public static StateDelta of(Map<String, Object> puts, Set<String> removedKeys) {
+		Objects.requireNonNull(puts, "'puts' parameter must not be null");
+		Objects.requireNonNull(removedKeys, "'removedKeys' parameter must not be null");
+		return new StateDelta(puts, removedKeys);
+	}
+
+	/**
+	 * Computes the changes needed to turn {@code before} into {@code after}.
+	 * Values are compared by identity, since {@code State} values are expected to
+	 * be immutable. If {@code after} was derived from {@code before} by
+	 * {@code put}, {@code remove} or {@code apply}, only the keys changed in
+	 * between are looked at. Otherwise every entry of both states is compared.
+	 *
+	 * @param before The older {@code State}, may be null to compute a delta that
+	 *               contains every entry of {@code after}.
+	 * @param after  The newer {@code State}.
+	 * @return The changes between the two states.
+	 */
+	public static StateDelta between(State before, State after) {
+		Objects.requireNonNull(after, "Cannot compute a delta to a null State");
+		if (before == after)
+			return EMPTY;
+		if (before != null) {
+			// Walking further back than the state is large would cost more than comparing it.
+			final StateDelta known = after.deltaSince(before, Math.max(MIN_HISTORY_WALK, after.size()));
+			if (known != null)
+				return known;
+		}
+		final Map<String, Object> oldMap = before == null ? HashMap.empty() : before.getStateMap();
+		final Map<String, Object> newMap = after.getStateMap();
+		if (oldMap == newMap)
+			return EMPTY;
+
+		Map<String, Object> puts = HashMap.empty();
+		for (Tuple2<String, Object> entry : newMap) {
+			if (!oldMap.containsKey(entry._1) || oldMap.get(entry._1).get() != entry._2) {
+				puts = puts.put(entry._1, entry._2);
+			}
+		}
+		Set<String> removed = HashSet.empty();
+		for (Tuple2<String, Object> entry : oldMap) {
+			if (!newMap.containsKey(entry._1)) {
+				removed = removed.add(entry._1);
+			}
+		}
+		if (puts.isEmpty() && removed.isEmpty())
+			return EMPTY;
+		return new StateDelta(puts, removed);
+	}
+
+	public Map<String, Object> getPuts() {
+		return puts;
+	}
+
+	public Set<String> getRemovedKeys() {
+		return removedKeys;
+	}
+
+	/**
+	 * @param key The key to check.
+	 * @return Whether the key was added, changed, or removed.
+	 */
+	public boolean touches(String key) {
+		return puts.containsKey(key) || removedKeys.contains(key);
+	}
+
+	public boolean isEmpty() {
+		return puts.isEmpty() && removedKeys.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StateDelta [puts='%s', removedKeys='%s']", puts.keySet(), removedKeys);
+	}
+}
@@ -0,0 +1,88 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+
+/**
+ * A typed key for a {@code State} value. Keys are meant to be declared once as
+ * constants and compiled into a {@code StateSchema}, which makes reads and
+ * writes of the key on states created from that schema an array access, with no
+ * casts needed by the caller.
+ *
+ * <pre>
+ * static final StateKey&lt;Integer&gt; COUNT = StateKey.of("COUNT", Integer.class);
+ * static final StateSchema SCHEMA = StateSchema.of(COUNT);
+ * </pre>
+ *
+ * A key may also be used with any other {@code State}, in which case it falls
+ * back to the {@code String} key with the same name.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ *
+ * @param <T> The type of the value.
+ */
+public final class StateKey<T> {
+	private final String name;
+	private final Class<T> type;
+	// Written once by the schema, index first so that reading the schema makes it visible.
+	private int index = -1;
+	private volatile StateSchema schema;
+
+	private StateKey(String name, Class<T> type) {
+		this.name = name;
+		this.type = type;
+	}
+
+	public static <T> StateKey<T> of(String name, Class<T> type) {
+		Objects.requireNonNull(name, "'name' parameter must not be null");
+		Objects.requireNonNull(type, "'type' parameter must not be null");
+		return new StateKey<>(name, type);
+	}
+
+	synchronized void bind(StateSchema schema, int index) {
+		if (this.schema != null)
+			throw new IllegalStateException(String.format("%s is already part of another schema", this));
+		this.index = index;
+		this.schema = schema;
+	}
+
+	StateSchema getSchema() {
+		return this.schema;
+	}
+
+	int getIndex() {
+		return this.index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StateKey [name='%s', type='%s']", name, type.getName());
+	}
+}
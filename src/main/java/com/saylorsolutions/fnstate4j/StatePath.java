@@ -0,0 +1,116 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A path into nested state, such as {@code StatePath.of("orders", id, "status")}.
+ * The first element is a {@code State} key, and every element after it is a key
+ * into the map stored at the previous element.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see State#getIn(StatePath)
+ * @see State#updateIn(StatePath, java.util.function.Function)
+ */
+public final class StatePath {
+	private final Object[] elements;
+
+	private StatePath(Object[] elements) {
+		this.elements = elements;
+	}
+
+	/**
+	 * @param key  The top level {@code State} key.
+	 * @param keys 0..n keys into nested maps, none of which may be null.
+	 * @return The created path.
+	 */
+	public static StatePath of(String key, Object... keys) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		final Object[] elements = new Object[(keys == null ? 0 : keys.length) + 1];
+		elements[0] = key;
+		for (int i = 1; i < elements.length; i++) {
+			elements[i] = Objects.requireNonNull(keys[i - 1], "Path elements must not be null");
+		}
+		return new StatePath(elements);
+	}
+
+	/**
+	 * @param elements A top level {@code String} key followed by 0..n nested keys.
+	 * @return The created path.
+	 */
+	public static StatePath of(Object... elements) {
+		if (elements == null || elements.length == 0)
+			throw new IllegalArgumentException("A path needs at least one element");
+		if (!(elements[0] instanceof String))
+			throw new IllegalArgumentException("The first element of a path must be a String key");
+		return of((String) elements[0], Arrays.copyOfRange(elements, 1, elements.length));
+	}
+
+	/**
+	 * @return The top level {@code State} key.
+	 */
+	public String getKey() {
+		return (String) elements[0];
+	}
+
+	public Object get(int index) {
+		return elements[index];
+	}
+
+	/**
+	 * @return The number of elements, including the top level key.
+	 */
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * @param key The nested key to add.
+	 * @return A new path one level deeper than this one.
+	 */
+	public StatePath child(Object key) {
+		Objects.requireNonNull(key, "Path elements must not be null");
+		final Object[] childElements = Arrays.copyOf(elements, elements.length + 1);
+		childElements[elements.length] = key;
+		return new StatePath(childElements);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof StatePath && Arrays.equals(elements, ((StatePath) obj).elements);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(elements);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (Object element : elements) {
+			sb.append('/').append(element);
+		}
+		return String.format("StatePath [path='%s']", sb.substring(1));
+	}
+}
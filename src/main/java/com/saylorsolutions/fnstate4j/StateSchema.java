@@ -0,0 +1,112 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A fixed set of {@code StateKey}s, each assigned a slot. A {@code State}
+ * created from a schema keeps the values of those keys in a dense, chunked
+ * array instead of a map, and any other keys in a map as usual.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class StateSchema {
+	private final StateKey<?>[] keys;
+	private final Map<String, Integer> indexes;
+	private final StateSlots emptySlots;
+
+	private StateSchema(StateKey<?>[] keys) {
+		this.keys = keys;
+		final Map<String, Integer> indexes = new HashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			Objects.requireNonNull(keys[i], "Schema keys must not be null");
+			if (indexes.put(keys[i].getName(), i) != null)
+				throw new IllegalArgumentException(String.format("Duplicate key name '%s'", keys[i].getName()));
+		}
+		this.indexes = Collections.unmodifiableMap(indexes);
+		this.emptySlots = StateSlots.empty(this, keys.length);
+	}
+
+	/**
+	 * Compiles the keys into a schema. Each key may only be part of one schema.
+	 *
+	 * @param keys The keys of the schema.
+	 * @return The compiled schema.
+	 * @throws IllegalArgumentException If two keys have the same name.
+	 * @throws IllegalStateException    If a key is already part of a schema.
+	 */
+	public static StateSchema of(StateKey<?>... keys) {
+		final StateSchema schema = new StateSchema(keys.clone());
+		for (int i = 0; i < schema.keys.length; i++) {
+			schema.keys[i].bind(schema, i);
+		}
+		return schema;
+	}
+
+	/**
+	 * @return An empty {@code State} that uses this schema.
+	 */
+	public State newState() {
+		return State.of(io.vavr.collection.HashMap.empty(), this.emptySlots);
+	}
+
+	/**
+	 * @param state The state to copy.
+	 * @return A {@code State} with the same entries and value store that uses this
+	 *         schema, without history.
+	 */
+	public State of(State state) {
+		Objects.requireNonNull(state, "'state' parameter must not be null");
+		return newState().withValueStore(state.getValueStore()).apply(StateDelta.between(null, state)).detach();
+	}
+
+	/**
+	 * @param name A key name.
+	 * @return The slot of the key, or -1 if it's not part of this schema.
+	 */
+	int indexOf(String name) {
+		final Integer index = this.indexes.get(name);
+		return index == null ? -1 : index;
+	}
+
+	StateKey<?> keyAt(int index) {
+		return this.keys[index];
+	}
+
+	public int size() {
+		return this.keys.length;
+	}
+
+	public List<StateKey<?>> getKeys() {
+		return Collections.unmodifiableList(Arrays.asList(this.keys));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StateSchema [keys='%s']", Arrays.toString(keys));
+	}
+}
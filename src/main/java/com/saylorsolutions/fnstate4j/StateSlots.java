@@ -0,0 +1,91 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * Copy-on-write storage for the values of a {@code StateSchema}. Slots are split
+ * into small chunks, so that a write only copies the chunk it touches and the
+ * array of chunk references. A null slot is empty, a slot that holds null
+ * contains {@code NULL} instead.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class StateSlots {
+	private static final int CHUNK_BITS = 4;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final Object[] EMPTY_CHUNK = new Object[CHUNK_SIZE];
+	static final Object NULL = new Object();
+
+	private final StateSchema schema;
+	private final Object[][] chunks;
+	private final int count;
+
+	private StateSlots(StateSchema schema, Object[][] chunks, int count) {
+		this.schema = schema;
+		this.chunks = chunks;
+		this.count = count;
+	}
+
+	static StateSlots empty(StateSchema schema, int size) {
+		final Object[][] chunks = new Object[(size + CHUNK_MASK) >>> CHUNK_BITS][];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = EMPTY_CHUNK;
+		}
+		return new StateSlots(schema, chunks, 0);
+	}
+
+	StateSchema getSchema() {
+		return this.schema;
+	}
+
+	Object get(int index) {
+		return this.chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * @return The slots with the value set, or these slots if it's the same
+	 *         instance.
+	 */
+	StateSlots with(int index, Object value) {
+		final Object[] chunk = this.chunks[index >>> CHUNK_BITS];
+		final Object old = chunk[index & CHUNK_MASK];
+		if (old == value)
+			return this;
+		final Object[] newChunk = chunk.clone();
+		newChunk[index & CHUNK_MASK] = value;
+		final Object[][] newChunks = this.chunks.clone();
+		newChunks[index >>> CHUNK_BITS] = newChunk;
+		final int newCount = this.count + (old == null ? 1 : 0) - (value == null ? 1 : 0);
+		return new StateSlots(this.schema, newChunks, newCount);
+	}
+
+	/**
+	 * @return The number of slots that aren't empty.
+	 */
+	int count() {
+		return this.count;
+	}
+
+	int capacity() {
+		return this.schema.size();
+	}
+}
@@ -20,20 +20,35 @@ package com.saylorsolutions.fnstate4j;
  * #L%
  */
 
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+import com.saylorsolutions.fnstate4j.func.ActionCombiner;
+import com.saylorsolutions.fnstate4j.func.CascadeListener;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
 import com.saylorsolutions.fnstate4j.func.Middleware;
+import com.saylorsolutions.fnstate4j.func.NotificationScheduler;
 import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.func.Selector;
+import com.saylorsolutions.fnstate4j.metrics.FlightRecorder;
+import com.saylorsolutions.fnstate4j.metrics.FlightRecorder.Verdict;
+import com.saylorsolutions.fnstate4j.metrics.LatencyHistogram;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+import com.saylorsolutions.fnstate4j.timer.Timeout;
 
 /**
  * The {@code StateStore} is responsible for maintaining the {@code Reducer} and
@@ -43,28 +58,54 @@ import com.saylorsolutions.fnstate4j.func.Reducer;
  * @author Doug Saylor (doug at saylorsolutions.com)
  *
  */
-public class StateStore {
-	private transient State state;
-	private transient Reducer rootReducer;
-	private transient final Set<Reducer> reducers = new HashSet<>();
-	private transient Middleware rootMiddleware;
-	private transient final Set<Middleware> middlewares = new HashSet<>();
+public class StateStore implements AutoCloseable {
+	private transient volatile State state;
+	private transient volatile Commit lastCommit;
+	private transient final Object commitLock = new Object();
+	private transient final List<CommitListener> commitListeners = new CopyOnWriteArrayList<>();
+	private transient volatile Pipeline pipeline;
+	private transient final Object pipelineLock = new Object();
 	private transient final Map<UUID, Consumer<State>> subscribers = new ConcurrentHashMap<>();
+	private transient final Map<String, DerivedValue<?>> derivedValues = new ConcurrentHashMap<>();
 	private transient boolean nonBlocking; // Defaults to be blocking
-	private transient final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private transient final SerialExecutor executor;
+	private transient final StateStoreRegistry registry;
+	private transient volatile boolean closed;
+	private transient final DispatchQueue dispatchQueue = new DispatchQueue();
+	private transient final LatencyHistogram[] laneLatency = new LatencyHistogram[Lane.values().length];
+	private transient final ThreadLocal<Cascade> cascade = new ThreadLocal<>();
+	private transient final ThreadLocal<Transaction> runningTransaction = new ThreadLocal<>();
+	private transient volatile CascadeListener cascadeListener;
+	private transient final AtomicInteger maxCascadeLength = new AtomicInteger();
+	private transient final AtomicLong unchangedCount = new AtomicLong();
+	private transient volatile boolean valueEqualityCheck;
+	private transient volatile NotificationScheduler notificationScheduler;
+	private transient final Runnable notifyLatest = this::notifyLatest;
+	private transient final ConcurrentLinkedQueue<Action> dueActions = new ConcurrentLinkedQueue<>();
+	private transient final AtomicBoolean dueScheduled = new AtomicBoolean();
+	private transient volatile FlightRecorder flightRecorder;
 
 	public StateStore(State initialState, Reducer rootReducer, Middleware rootMiddleware, boolean nonBlocking) {
+		this(initialState, rootReducer, rootMiddleware, nonBlocking, null);
+	}
+
+	StateStore(State initialState, Reducer rootReducer, Middleware rootMiddleware, boolean nonBlocking,
+			StateStoreRegistry registry) {
 		super();
+		this.registry = registry;
+		this.executor = new SerialExecutor(
+				(registry == null ? StateStoreRegistry.shared() : registry).getScheduler());
 
 		Reducer newReducer = rootReducer == null ? Reducer.NO_OP : rootReducer;
 		Middleware newMiddleware = rootMiddleware == null ? Middleware.NO_OP : rootMiddleware;
 
 		this.state = initialState;
-		this.rootReducer = newReducer;
-		this.reducers.add(newReducer);
-		this.rootMiddleware = newMiddleware;
-		this.middlewares.add(newMiddleware);
+		this.lastCommit = new Commit(0L, System.currentTimeMillis(), null, null, initialState);
+		this.pipeline = Pipeline.EMPTY.withReducer(newReducer).withMiddleware(newMiddleware);
 		this.nonBlocking = nonBlocking;
+		for (int i = 0; i < this.laneLatency.length; i++) {
+			this.laneLatency[i] = new LatencyHistogram();
+		}
 	}
 
 	public StateStore(State initialState, Reducer rootReducer, Middleware rootMiddleware) {
@@ -84,6 +125,7 @@ public class StateStore {
 	 * @param action The action to be dispatched.
 	 */
 	public void dispatch(final Action action) {
+		ensureOpen();
 		internalDispatch(action, nonBlocking);
 	}
 
@@ -96,6 +138,7 @@ public class StateStore {
 	 * @see StateStore#setNonBlocking(boolean)
 	 */
 	public void blockingDispatch(final Action action) {
+		ensureOpen();
 		internalDispatch(action, false);
 	}
 
@@ -108,23 +151,594 @@ public class StateStore {
 	 * @see StateStore#setNonBlocking(boolean)
 	 */
 	public void concurrentDispatch(final Action action) {
+		ensureOpen();
 		internalDispatch(action, true);
 	}
 
+	/**
+	 * Queues an {@code Action} in the given {@code Lane} and returns immediately.
+	 * Queued actions are processed one at a time on the store's executor thread,
+	 * highest {@code Lane} first, and subscribers are notified on that thread.
+	 * Actions in the same {@code Lane} are processed in the order they were
+	 * queued.
+	 *
+	 * @param action The action to be dispatched.
+	 * @param lane   The priority of the action.
+	 * @see StateStore#setStarvationThreshold(long, TimeUnit)
+	 * @see StateStore#getLatency(Lane)
+	 */
+	public void dispatch(final Action action, final Lane lane) {
+		dispatch(action, lane, true);
+	}
+
+	/**
+	 * Like {@code dispatch(Action, Lane)}, but may keep the {@code Action} from
+	 * being combined. An uncombinable {@code Action} is neither folded into the
+	 * one queued before it, nor are later ones folded into it, so middleware that
+	 * recognizes it by identity sees the same instance.
+	 *
+	 * @param action     The action to be dispatched.
+	 * @param lane       The priority of the action.
+	 * @param combinable Whether the action may be combined with its neighbors.
+	 * @see StateStore#setCombiner(String, ActionCombiner)
+	 */
+	public void dispatch(final Action action, final Lane lane, final boolean combinable) {
+		Objects.requireNonNull(action, "Cannot dispatch a null Action");
+		Objects.requireNonNull(lane, "'lane' parameter must not be null");
+		ensureOpen();
+		// One drain per queued action, each takes whatever has the highest priority when it runs.
+		if (this.dispatchQueue.offer(action, lane, combinable))
+			this.executor.execute(this::drainOne);
+	}
+
+	/**
+	 * Lets queued actions of a type be folded together. Whenever an
+	 * {@code Action} is queued by {@code dispatch(Action, Lane)} right behind one
+	 * of the same type in the same {@code Lane}, the two are replaced by the
+	 * combiner's result, so the middleware and reducers see one dispatch instead
+	 * of two. Actions dispatched any other way are never combined.
+	 *
+	 * @param type     The {@code Action} type.
+	 * @param combiner Combines two actions of the type, or null to stop combining
+	 *                 them.
+	 * @see ActionCombiner
+	 */
+	public void setCombiner(final String type, final ActionCombiner combiner) {
+		Objects.requireNonNull(type, "'type' parameter must not be null");
+		this.dispatchQueue.setCombiner(type, combiner);
+	}
+
+	/**
+	 * @return The number of queued actions that were folded into another one.
+	 */
+	public long getCoalescedCount() {
+		return this.dispatchQueue.getCoalescedCount();
+	}
+
+	private void drainOne() {
+		final DispatchQueue.Pending pending = this.dispatchQueue.poll();
+		if (pending == null)
+			return;
+		try {
+			internalDispatch(pending.action, false);
+		} finally {
+			this.laneLatency[pending.lane.ordinal()].record(System.nanoTime() - pending.enqueuedNanos);
+		}
+	}
+
+	/**
+	 * Dispatches an {@code Action} once a delay has passed. The timer is shared by
+	 * every store of the same {@code StateStoreRegistry} and is precise to about 10
+	 * milliseconds. Actions that come due in the same tick are dispatched together
+	 * on the store's executor thread, in the order they came due.
+	 *
+	 * @param action The action to be dispatched.
+	 * @param delay  How long to wait before dispatching.
+	 * @param unit   The unit of the delay.
+	 * @return A handle to cancel the dispatch.
+	 * @throws IllegalStateException If the store is closed.
+	 */
+	public Timeout dispatchAfter(final Action action, final long delay, final TimeUnit unit) {
+		Objects.requireNonNull(action, "Cannot dispatch a null Action");
+		ensureOpen();
+		final ScheduledDispatch scheduled = new ScheduledDispatch(action);
+		scheduled.timeout = getTimer().schedule(scheduled, delay, unit);
+		return scheduled.timeout;
+	}
+
+	/**
+	 * Dispatches an {@code Action} repeatedly, at a fixed rate, until the returned
+	 * handle is cancelled or the store is closed.
+	 *
+	 * @param action       The action to be dispatched.
+	 * @param initialDelay How long to wait before the first dispatch.
+	 * @param period       The time between dispatches.
+	 * @param unit         The unit of the delay and period.
+	 * @return A handle to stop the dispatches.
+	 * @throws IllegalStateException If the store is closed.
+	 * @see StateStore#dispatchAfter(Action, long, TimeUnit)
+	 */
+	public Timeout dispatchEvery(final Action action, final long initialDelay, final long period,
+			final TimeUnit unit) {
+		Objects.requireNonNull(action, "Cannot dispatch a null Action");
+		ensureOpen();
+		final ScheduledDispatch scheduled = new ScheduledDispatch(action);
+		scheduled.timeout = getTimer().scheduleAtFixedRate(scheduled, initialDelay, period, unit);
+		return scheduled.timeout;
+	}
+
+	/**
+	 * @return The timer shared by the stores of this store's registry, which
+	 *         extensions like {@code RateShaper} may also use.
+	 * @see StateStoreRegistry#getTimer()
+	 */
+	public HashedWheelTimer getTimer() {
+		return (this.registry == null ? StateStoreRegistry.shared() : this.registry).getTimer();
+	}
+
+	private void fireDue() {
+		this.dueScheduled.set(false);
+		try {
+			Action action;
+			while ((action = this.dueActions.poll()) != null) {
+				internalDispatch(action, false);
+			}
+		} finally {
+			if (!this.dueActions.isEmpty() && this.dueScheduled.compareAndSet(false, true))
+				this.executor.execute(this::fireDue);
+		}
+	}
+
+	/**
+	 * Sets how long a queued {@code Action} may wait behind higher priority lanes.
+	 * Once the oldest action in a lane has waited this long, it's processed before
+	 * any higher priority action that was queued after it. Defaults to 500
+	 * milliseconds.
+	 *
+	 * @param threshold The maximum wait, 0 to process all lanes in queue order.
+	 * @param unit      The unit of the threshold.
+	 */
+	public void setStarvationThreshold(long threshold, TimeUnit unit) {
+		if (threshold < 0L)
+			throw new IllegalArgumentException("'threshold' parameter must not be negative");
+		this.dispatchQueue.setStarvationNanos(unit.toNanos(threshold));
+	}
+
+	/**
+	 * @param lane The lane to get metrics for.
+	 * @return The time from {@code dispatch(Action, Lane)} until subscribers were
+	 *         notified, for every {@code Action} queued in the given lane.
+	 */
+	public LatencyHistogram getLatency(Lane lane) {
+		return this.laneLatency[lane.ordinal()];
+	}
+
+	/**
+	 * @param lane The lane to check.
+	 * @return The number of actions waiting in the given lane.
+	 */
+	public int getPendingCount(Lane lane) {
+		return this.dispatchQueue.size(lane);
+	}
+
+	/**
+	 * A dispatch made while this thread is already dispatching to this store, for
+	 * example from a subscriber, is queued and returns immediately. It's processed
+	 * after the current commit, outside of the commit lock, so cascades of any
+	 * length run in constant stack depth. Queued actions are processed in the
+	 * order they were dispatched, and an exception from one of them doesn't keep
+	 * the others from being processed. The first one is rethrown afterwards.
+	 */
 	private void internalDispatch(final Action action, final boolean nonBlocking) {
-		if (this.rootMiddleware.process(action, this.state)) {
-			synchronized (this.state) {
+		final Cascade running = this.cascade.get();
+		if (running != null) {
+			running.queue(() -> process(action, nonBlocking));
+			return;
+		}
+		final Cascade started = new Cascade(action);
+		this.cascade.set(started);
+		try {
+			RuntimeException failure = null;
+			try {
+				process(action, nonBlocking);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			started.drain(failure);
+		} finally {
+			this.cascade.remove();
+			started.finish();
+		}
+	}
+
+	private void process(final Action action, final boolean nonBlocking) {
+		// Read once so that handler registration during this dispatch can't mix chains.
+		final Pipeline pipeline = this.pipeline;
+		final FlightRecorder recorder = this.flightRecorder;
+		if (recorder != null) {
+			recordedProcess(pipeline, recorder, action, nonBlocking);
+			return;
+		}
+		if (pipeline.process(action, this.state)) {
+			synchronized (this.commitLock) {
 				final State oldState = this.state;
-				this.state = this.rootReducer.reduce(action, oldState);
-				if (nonBlocking) {
-					this.subscribers.forEach((u, c) -> executor.execute(() -> c.accept(this.state)));
-				} else {
-					this.subscribers.forEach((u, c) -> c.accept(this.state));
+				final State newState = pipeline.reduce(action, oldState);
+				if (unchanged(oldState, newState))
+					return;
+				commit(action, oldState, newState);
+				notifySubscribers(nonBlocking);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@code process}, but also tells the {@code FlightRecorder} what
+	 * happened to the action and how long the reducers took.
+	 */
+	private void recordedProcess(final Pipeline pipeline, final FlightRecorder recorder, final Action action,
+			final boolean nonBlocking) {
+		long start = 0L;
+		boolean recorded = false;
+		try {
+			if (!pipeline.process(action, this.state)) {
+				recorded = true;
+				recorder.record(action, Verdict.REJECTED, 0L, getVersion());
+				return;
+			}
+			synchronized (this.commitLock) {
+				final State oldState = this.state;
+				start = System.nanoTime();
+				final State newState = pipeline.reduce(action, oldState);
+				final long reduceNanos = System.nanoTime() - start;
+				recorded = true;
+				if (unchanged(oldState, newState)) {
+					recorder.record(action, Verdict.UNCHANGED, reduceNanos, getVersion());
+					return;
 				}
+				commit(action, oldState, newState);
+				recorder.record(action, Verdict.COMMITTED, reduceNanos, getVersion());
+				notifySubscribers(nonBlocking);
+			}
+		} catch (RuntimeException | Error e) {
+			// Failures after the verdict, like a throwing subscriber, were already recorded.
+			if (!recorded)
+				recorder.record(action, Verdict.FAILED, start == 0L ? 0L : System.nanoTime() - start, getVersion());
+			throw e;
+		}
+	}
+
+	private void notifySubscribers(final boolean nonBlocking) {
+		final NotificationScheduler scheduler = this.notificationScheduler;
+		if (scheduler != null) {
+			scheduler.request(this.notifyLatest);
+			return;
+		}
+		final State current = this.state;
+		if (nonBlocking) {
+			this.subscribers.forEach((u, c) -> executor.execute(() -> c.accept(current)));
+		} else {
+			this.subscribers.forEach((u, c) -> c.accept(current));
+		}
+	}
+
+	private void notifyLatest() {
+		final State current = this.state;
+		this.subscribers.forEach((u, c) -> c.accept(current));
+	}
+
+	/**
+	 * Hands subscriber notification to the given scheduler, which decides when
+	 * and on which thread subscribers are called. This takes precedence over the
+	 * blocking and non-blocking modes.
+	 *
+	 * @param scheduler The scheduler, or null to notify subscribers as configured
+	 *                  by {@code setNonBlocking} again.
+	 * @see com.saylorsolutions.fnstate4j.ui.FrameScheduler
+	 */
+	public void setNotificationScheduler(NotificationScheduler scheduler) {
+		this.notificationScheduler = scheduler;
+	}
+
+	/**
+	 * Applies several {@code Action}s atomically. The body dispatches to the given
+	 * {@code Transaction}, which runs the middleware and reducers against a
+	 * private working state without holding any lock. When the body returns, the
+	 * working state is committed as a single new version, but only if no other
+	 * commit happened in the meantime. Otherwise the body is run again against
+	 * the new state, so it must not have side effects outside of the
+	 * {@code Transaction}.
+	 * <p>
+	 * If any {@code Action} is rejected by the middleware, the body calls
+	 * {@code Transaction#rollback()}, or the body throws an exception, nothing is
+	 * committed and subscribers are not notified.
+	 * <p>
+	 * A transaction can't be committed while this thread is already dispatching
+	 * to this store, for example from a subscriber, since that commit is still in
+	 * progress. Use {@link #transaction(Consumer, Consumer)} there instead, which
+	 * queues the transaction and reports its outcome once it has run.
+	 *
+	 * @param body Dispatches the actions that make up the transaction.
+	 * @return Whether the transaction was committed.
+	 * @throws ConcurrentModificationException If the transaction conflicted with
+	 *                                         other commits on every attempt.
+	 * @throws IllegalStateException           If this thread is already
+	 *                                         dispatching to this store.
+	 * @see Transaction#MAX_ATTEMPTS
+	 */
+	public boolean transaction(final Consumer<Transaction> body) {
+		Objects.requireNonNull(body, "'body' parameter must not be null");
+		ensureOpen();
+		if (this.cascade.get() != null)
+			throw new IllegalStateException(
+					"Can't wait for a transaction while dispatching to the same store, use transaction(body, onOutcome)");
+		final Cascade started = new Cascade(null);
+		this.cascade.set(started);
+		try {
+			boolean committed = false;
+			RuntimeException failure = null;
+			try {
+				committed = attemptTransaction(body);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			started.drain(failure);
+			return committed;
+		} finally {
+			this.cascade.remove();
+			started.finish();
+		}
+	}
+
+	/**
+	 * Like {@link #transaction(Consumer)}, but reports whether the transaction
+	 * was committed to a callback. Unlike the blocking variant, this may be
+	 * called while this thread is already dispatching to this store, for example
+	 * from a subscriber. The transaction is then queued like a dispatch, runs
+	 * after the current commit, and the callback is called once it has. A
+	 * conflict or exception is thrown from the outer dispatch in that case, and
+	 * the callback isn't called.
+	 *
+	 * @param body      Dispatches the actions that make up the transaction.
+	 * @param onOutcome Called with whether the transaction was committed.
+	 * @throws ConcurrentModificationException If the transaction conflicted with
+	 *                                         other commits on every attempt.
+	 */
+	public void transaction(final Consumer<Transaction> body, final Consumer<Boolean> onOutcome) {
+		Objects.requireNonNull(body, "'body' parameter must not be null");
+		Objects.requireNonNull(onOutcome, "'onOutcome' parameter must not be null");
+		ensureOpen();
+		final Cascade running = this.cascade.get();
+		if (running != null)
+			running.queue(() -> onOutcome.accept(attemptTransaction(body)));
+		else
+			onOutcome.accept(transaction(body));
+	}
+
+	private boolean attemptTransaction(final Consumer<Transaction> body) {
+		for (int attempt = 0; attempt < Transaction.MAX_ATTEMPTS; attempt++) {
+			final State base = this.state;
+			final Transaction tx = new Transaction(this.pipeline, base);
+			final Transaction outer = this.runningTransaction.get();
+			this.runningTransaction.set(tx);
+			try {
+				body.accept(tx);
+			} finally {
+				if (outer == null)
+					this.runningTransaction.remove();
+				else
+					this.runningTransaction.set(outer);
+			}
+			if (tx.isRollbackOnly())
+				return false;
+			if (tx.getActions().isEmpty())
+				return true;
+			final Action action = Action.create(Transaction.TRANSACTION_ACTION, tx.getActions());
+			if (compareAndCommit(base, action, tx.getState()))
+				return true;
+		}
+		throw new ConcurrentModificationException(
+				String.format("Transaction conflicted with other commits %d times", Transaction.MAX_ATTEMPTS));
+	}
+
+	/**
+	 * Middleware may use this to tell {@code Action}s that are part of a
+	 * transaction, which may be retried or rolled back, from regular dispatches.
+	 *
+	 * @return Whether the calling thread is running the body of a transaction on
+	 *         this store.
+	 */
+	public boolean isInTransaction() {
+		return this.runningTransaction.get() != null;
+	}
+
+	/**
+	 * Commits a {@code State} that was computed outside of the store, like a batch
+	 * of replayed actions, without running the middleware or reducers. Subscribers
+	 * and commit listeners see it like any other commit, with the given
+	 * {@code Action}.
+	 *
+	 * @param expected The {@code State} the new one was computed from.
+	 * @param action   The {@code Action} the commit is recorded with.
+	 * @param newState The new {@code State}.
+	 * @return Whether the new state was committed, or was unchanged. False if
+	 *         another commit happened since {@code expected}.
+	 * @throws IllegalStateException If this thread is already dispatching to this
+	 *                               store, since the commit couldn't happen before
+	 *                               returning.
+	 */
+	public boolean commitIfCurrent(final State expected, final Action action, final State newState) {
+		Objects.requireNonNull(expected, "'expected' parameter must not be null");
+		Objects.requireNonNull(action, "'action' parameter must not be null");
+		Objects.requireNonNull(newState, "'newState' parameter must not be null");
+		ensureOpen();
+		if (this.cascade.get() != null)
+			throw new IllegalStateException("Cannot commit directly while dispatching to the same StateStore");
+		final Cascade started = new Cascade(action);
+		this.cascade.set(started);
+		try {
+			boolean committed = false;
+			RuntimeException failure = null;
+			try {
+				committed = compareAndCommit(expected, action, newState);
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			started.drain(failure);
+			return committed;
+		} finally {
+			this.cascade.remove();
+			started.finish();
+		}
+	}
+
+	/**
+	 * Commits the new state only if the current state is still the expected one.
+	 * The lock is only held for the comparison and commit, never while reducing.
+	 */
+	private boolean compareAndCommit(final State expected, final Action action, final State newState) {
+		synchronized (this.commitLock) {
+			if (this.state != expected)
+				return false;
+			final FlightRecorder recorder = this.flightRecorder;
+			if (unchanged(expected, newState)) {
+				if (recorder != null)
+					recorder.record(action, Verdict.UNCHANGED, 0L, getVersion());
+				return true;
+			}
+			commit(action, expected, newState);
+			if (recorder != null)
+				recorder.record(action, Verdict.COMMITTED, 0L, getVersion());
+			notifySubscribers(this.nonBlocking);
+			return true;
+		}
+	}
+
+	/**
+	 * Records every dispatched {@code Action} from now on, with its
+	 * {@code Middleware} verdict, how long the reducers took, and the resulting
+	 * version.
+	 *
+	 * @param recorder The recorder, or null to stop recording.
+	 */
+	public void setFlightRecorder(FlightRecorder recorder) {
+		this.flightRecorder = recorder;
+	}
+
+	public Optional<FlightRecorder> getFlightRecorder() {
+		return Optional.ofNullable(this.flightRecorder);
+	}
+
+	/**
+	 * Sets the listener that is told about every dispatch that caused more
+	 * dispatches on the same thread.
+	 *
+	 * @param listener The listener, or null to remove it.
+	 */
+	public void setCascadeListener(CascadeListener listener) {
+		this.cascadeListener = listener;
+	}
+
+	/**
+	 * @return The largest number of actions processed by a single cascade so far,
+	 *         including the {@code Action} that started it.
+	 */
+	public int getMaxCascadeLength() {
+		return this.maxCascadeLength.get();
+	}
+
+	/**
+	 * Reducers that return the current {@code State} don't create a new version,
+	 * so nothing is committed and subscribers aren't notified. With the value
+	 * equality check enabled, the same goes for a {@code State} equal to the
+	 * current one, and the current instance is kept so that identity based
+	 * memoization still hits.
+	 */
+	private boolean unchanged(final State oldState, final State newState) {
+		if (newState != oldState
+				&& (!this.valueEqualityCheck || newState == null || !newState.equals(oldState)))
+			return false;
+		this.unchangedCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * By default, only a reducer returning the current {@code State} instance is
+	 * treated as unchanged. Enabling this also compares the entries of a new
+	 * {@code State} with the current one, which is done under the commit lock and
+	 * may load values from a {@code ValueStore}, so it only pays off if reducers
+	 * often rebuild equal states.
+	 *
+	 * @param valueEqualityCheck Whether a {@code State} equal to the current one
+	 *                           is treated as unchanged.
+	 */
+	public void setValueEqualityCheck(boolean valueEqualityCheck) {
+		this.valueEqualityCheck = valueEqualityCheck;
+	}
+
+	public boolean isValueEqualityCheck() {
+		return this.valueEqualityCheck;
+	}
+
+	/**
+	 * @return The number of dispatched actions that didn't change the
+	 *         {@code State}, and so weren't committed.
+	 */
+	public long getUnchangedCount() {
+		return this.unchangedCount.get();
+	}
+
+	private void commit(final Action action, final State oldState, final State newState) {
+		final Commit last = this.lastCommit;
+		// The wall clock may be set back, but commit timestamps must stay in order.
+		final long timestamp = Math.max(System.currentTimeMillis(), last.getTimestamp());
+		final Commit commit = new Commit(last.getVersion() + 1, timestamp, action, oldState, newState);
+		this.state = newState;
+		this.lastCommit = commit;
+		for (CommitListener listener : this.commitListeners) {
+			try {
+				listener.onCommit(commit);
+			} catch (RuntimeException e) {
+				// The commit has happened, so the other listeners and subscribers still need to hear about it.
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
 			}
 		}
 	}
 
+	/**
+	 * Adds a listener that is called with every {@code Commit} made after this
+	 * call returns.
+	 *
+	 * @param listener
+	 */
+	public void addCommitListener(CommitListener listener) {
+		Objects.requireNonNull(listener);
+		synchronized (this.commitLock) {
+			if (!this.commitListeners.contains(listener))
+				this.commitListeners.add(listener);
+		}
+	}
+
+	public void removeCommitListener(CommitListener listener) {
+		this.commitListeners.remove(listener);
+	}
+
+	/**
+	 * @return The most recent {@code Commit}, which pairs the current state with
+	 *         its version.
+	 */
+	public Commit getLastCommit() {
+		return this.lastCommit;
+	}
+
+	/**
+	 * @return The version of the current state. Starts at 0 and is incremented for
+	 *         every committed {@code Action}.
+	 */
+	public long getVersion() {
+		return this.lastCommit.getVersion();
+	}
+
 	public UUID subscribe(Consumer<State> subscriber) {
 		synchronized (subscribers) {
 			Optional<Entry<UUID, Consumer<State>>> existingId = findConsumerEntry(subscriber);
@@ -177,15 +791,86 @@ public class StateStore {
 	}
 
 	/**
-	 * Adds a new {@code Reducer} to the chain. Does not allow duplicates.
+	 * Gets the value for the given key from the current state. If a derived value
+	 * has been declared with this key, then its memoized value is returned
+	 * instead.
+	 *
+	 * @param key The key to look up.
+	 * @return The derived or stored value, if present.
+	 * @see StateStore#derive(String, Selector, String...)
+	 */
+	public Optional<Object> get(String key) {
+		final DerivedValue<?> derived = this.derivedValues.get(key);
+		if (derived != null)
+			return Optional.ofNullable(derived.get(this.state));
+		return this.state.get(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> Optional<T> get(String key, Class<T> desiredType) {
+		return (Optional<T>) get(key);
+	}
+
+	/**
+	 * Declares a value computed from the given input keys. The {@code Selector}
+	 * is only called again when one of the input keys refers to a different
+	 * value than it did for the last computation, no matter how many callers ask
+	 * for it in between.
+	 *
+	 * @param key       The key to expose the derived value under. Replaces any
+	 *                  existing derived value with the same key.
+	 * @param selector  Computes the value from the state.
+	 * @param inputKeys The keys that the {@code Selector} reads. If none are
+	 *                  given, the value is recomputed for every new state.
+	 * @return The {@code DerivedValue}, which subscribers may also query with the
+	 *         {@code State} they were given.
+	 */
+	public <T> DerivedValue<T> derive(String key, Selector<T> selector, String... inputKeys) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		final DerivedValue<T> derived = new DerivedValue<>(selector, inputKeys);
+		this.derivedValues.put(key, derived);
+		return derived;
+	}
+
+	/**
+	 * Declares a value computed from the given nested paths. The
+	 * {@code Selector} is only called again when one of the paths refers to a
+	 * different value than it did for the last computation.
+	 *
+	 * @param key      The key to expose the derived value under. Replaces any
+	 *                 existing derived value with the same key.
+	 * @param selector Computes the value from the state.
+	 * @param input    A nested path that the {@code Selector} reads.
+	 * @param inputs   0..n more nested paths that the {@code Selector} reads.
+	 * @return The {@code DerivedValue}.
+	 */
+	public <T> DerivedValue<T> derive(String key, Selector<T> selector, StatePath input, StatePath... inputs) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		final DerivedValue<T> derived = new DerivedValue<>(selector, input, inputs);
+		this.derivedValues.put(key, derived);
+		return derived;
+	}
+
+	/**
+	 * Removes the derived value with the given key, if it exists.
+	 *
+	 * @param key
+	 */
+	public void removeDerived(String key) {
+		this.derivedValues.remove(key);
+	}
+
+	/**
+	 * Adds a new {@code Reducer} to the end of the chain. Does not allow
+	 * duplicates. Dispatches that are already in progress keep using the chain
+	 * they started with.
 	 *
 	 * @param reducer
 	 */
 	public void addReducer(Reducer reducer) {
 		Objects.requireNonNull(reducer);
-		synchronized (this.reducers) {
-			this.reducers.add(reducer);
-			this.rootReducer = Reducer.combine(this.reducers);
+		synchronized (this.pipelineLock) {
+			this.pipeline = this.pipeline.withReducer(reducer);
 		}
 	}
 
@@ -196,22 +881,22 @@ public class StateStore {
 	 */
 	public void removeReducer(Reducer reducer) {
 		Objects.requireNonNull(reducer);
-		synchronized (this.reducers) {
-			this.reducers.remove(reducer);
-			this.rootReducer = Reducer.combine(this.reducers);
+		synchronized (this.pipelineLock) {
+			this.pipeline = this.pipeline.withoutReducer(reducer);
 		}
 	}
 
 	/**
-	 * Adds a new {@code Middleware} to the chain. Does not allow duplicates.
+	 * Adds a new {@code Middleware} to the end of the chain. Does not allow
+	 * duplicates. Dispatches that are already in progress keep using the chain
+	 * they started with.
 	 *
 	 * @param middleware
 	 */
 	public void addMiddleware(Middleware middleware) {
 		Objects.requireNonNull(middleware);
-		synchronized (this.middlewares) {
-			this.middlewares.add(middleware);
-			this.rootMiddleware = Middleware.combine(this.middlewares);
+		synchronized (this.pipelineLock) {
+			this.pipeline = this.pipeline.withMiddleware(middleware);
 		}
 	}
 
@@ -222,9 +907,128 @@ public class StateStore {
 	 */
 	public void removeMiddleware(Middleware middleware) {
 		Objects.requireNonNull(middleware);
-		synchronized (this.middlewares) {
-			this.middlewares.remove(middleware);
-			this.rootMiddleware = Middleware.combine(this.middlewares);
+		synchronized (this.pipelineLock) {
+			this.pipeline = this.pipeline.withoutMiddleware(middleware);
+		}
+	}
+
+	/**
+	 * Actions and transactions started on one thread while it's already
+	 * dispatching to this store. Only ever touched by that thread.
+	 */
+	private final class Cascade {
+		private final Action root;
+		private final long startNanos = System.nanoTime();
+		private final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+		private int length = 1;
+
+		private Cascade(Action root) {
+			this.root = root;
+		}
+
+		private void queue(Runnable step) {
+			this.queued.addLast(step);
+		}
+
+		/**
+		 * Runs every queued step, even if some of them throw, and then throws the
+		 * first failure with the others suppressed.
+		 */
+		private void drain(RuntimeException failure) {
+			try {
+				Runnable next;
+				while ((next = this.queued.pollFirst()) != null) {
+					this.length++;
+					try {
+						next.run();
+					} catch (RuntimeException e) {
+						if (failure == null)
+							failure = e;
+						else
+							failure.addSuppressed(e);
+					}
+				}
+			} finally {
+				this.queued.clear();
+			}
+			if (failure != null)
+				throw failure;
+		}
+
+		private void finish() {
+			maxCascadeLength.accumulateAndGet(this.length, Math::max);
+			final CascadeListener listener = cascadeListener;
+			if (listener != null && this.length > 1)
+				listener.onCascade(this.root, this.length, System.nanoTime() - this.startNanos);
+		}
+	}
+
+	private void ensureOpen() {
+		if (this.closed)
+			throw new IllegalStateException("StateStore is closed");
+	}
+
+	/**
+	 * Stops accepting new dispatches and waits for queued lane dispatches and
+	 * non-blocking notifications to finish. Called from one of those tasks, it
+	 * doesn't wait, since that would never return. Delayed and periodic dispatches
+	 * that haven't come due yet are dropped. Closing twice has no effect.
+	 */
+	@Override
+	public void close() {
+		if (this.closed)
+			return;
+		this.closed = true;
+		if (!this.executor.isRunnerThread()) {
+			try {
+				this.executor.awaitIdle();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (this.registry != null)
+			this.registry.unregister(this);
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * @return A snapshot of the resources this store is using.
+	 */
+	public StoreUsage getUsage() {
+		int pending = 0;
+		for (Lane lane : Lane.values()) {
+			pending += this.dispatchQueue.size(lane);
+		}
+		return new StoreUsage(getVersion(), this.subscribers.size(), this.derivedValues.size(), pending,
+				this.executor.getQueuedCount(), this.executor.getCompletedCount(), this.executor.getBusyNanos());
+	}
+
+	/**
+	 * Runs on the timer thread and only hands the action over to the executor, so
+	 * a slow reducer never holds up other timers.
+	 */
+	private final class ScheduledDispatch implements Runnable {
+		private final Action action;
+		private volatile Timeout timeout;
+
+		private ScheduledDispatch(Action action) {
+			this.action = action;
+		}
+
+		@Override
+		public void run() {
+			if (closed) {
+				final Timeout current = this.timeout;
+				if (current != null)
+					current.cancel();
+				return;
+			}
+			dueActions.add(this.action);
+			if (dueScheduled.compareAndSet(false, true))
+				executor.execute(StateStore.this::fireDue);
 		}
 	}
 
@@ -0,0 +1,190 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.saylorsolutions.fnstate4j.func.Middleware;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+
+/**
+ * Owns a fixed size pool of daemon threads that is shared by every
+ * {@code StateStore} it creates, for lane dispatches and non-blocking
+ * notifications. Each store still runs its own tasks one at a time and in order,
+ * but only borrows a thread while it has work, so the number of stores is no
+ * longer limited by the number of threads.
+ * <p>
+ * Stores created with a {@code StateStore} constructor use the
+ * {@code shared()} registry's pool, but aren't tracked by it.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class StateStoreRegistry implements AutoCloseable {
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final ScheduledThreadPoolExecutor scheduler;
+	private final Map<StateStore, Boolean> stores = new ConcurrentHashMap<>();
+	private final Object timerLock = new Object();
+	private volatile HashedWheelTimer timer;
+	private volatile boolean closed;
+
+	/**
+	 * @param threads The number of pool threads.
+	 */
+	public StateStoreRegistry(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("'threads' parameter must be at least 1");
+		final int pool = POOL_COUNT.incrementAndGet();
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.scheduler = new ScheduledThreadPoolExecutor(threads, r -> {
+			final Thread thread = new Thread(r,
+					String.format("fnstate4j-pool-%d-thread-%d", pool, threadCount.incrementAndGet()));
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @return The registry used by stores that weren't created by a registry, with
+	 *         one thread per processor. It can't be closed.
+	 */
+	public static StateStoreRegistry shared() {
+		return Shared.INSTANCE;
+	}
+
+	public StateStore create(State initialState, Reducer rootReducer, Middleware rootMiddleware) {
+		ensureOpen();
+		final StateStore store = new StateStore(initialState, rootReducer, rootMiddleware, false, this);
+		this.stores.put(store, Boolean.TRUE);
+		return store;
+	}
+
+	public StateStore create(State initialState) {
+		return create(initialState, Reducer.NO_OP, Middleware.NO_OP);
+	}
+
+	public StateStore create() {
+		return create(new State());
+	}
+
+	void unregister(StateStore store) {
+		this.stores.remove(store);
+	}
+
+	private void ensureOpen() {
+		if (this.closed)
+			throw new IllegalStateException("StateStoreRegistry is closed");
+	}
+
+	/**
+	 * The pool shared by this registry's stores. Tasks must not block for long.
+	 *
+	 * @return The shared scheduler.
+	 */
+	public ScheduledExecutorService getScheduler() {
+		return this.scheduler;
+	}
+
+	/**
+	 * The timer shared by this registry's stores for delayed and periodic
+	 * dispatches, and by extensions like {@code RateShaper}. Its thread is only
+	 * started the first time it's needed.
+	 *
+	 * @return The shared timer.
+	 */
+	public HashedWheelTimer getTimer() {
+		HashedWheelTimer current = this.timer;
+		if (current == null) {
+			synchronized (this.timerLock) {
+				current = this.timer;
+				if (current == null) {
+					ensureOpen();
+					current = new HashedWheelTimer();
+					this.timer = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return The stores created by this registry that haven't been closed.
+	 */
+	public Collection<StateStore> getStores() {
+		return Collections.unmodifiableList(new ArrayList<>(this.stores.keySet()));
+	}
+
+	public int getStoreCount() {
+		return this.stores.size();
+	}
+
+	/**
+	 * Closes every store created by this registry, waiting for their queued work
+	 * to finish, and then shuts down the pool.
+	 *
+	 * @throws IllegalStateException If this is the shared registry, which lives as
+	 *                               long as the JVM.
+	 */
+	@Override
+	public void close() {
+		if (this == Shared.INSTANCE)
+			throw new IllegalStateException("The shared StateStoreRegistry can't be closed");
+		this.closed = true;
+		for (StateStore store : getStores()) {
+			store.close();
+		}
+		synchronized (this.timerLock) {
+			if (this.timer != null)
+				this.timer.close();
+		}
+		this.scheduler.shutdown();
+		try {
+			this.scheduler.awaitTermination(10L, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StateStoreRegistry [threads='%d', stores='%d']", this.scheduler.getCorePoolSize(),
+				this.stores.size());
+	}
+
+	private static final class Shared {
+		private static final StateStoreRegistry INSTANCE = new StateStoreRegistry(
+				Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,94 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * A snapshot of the resources a {@code StateStore} is using.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see StateStore#getUsage()
+ */
+public final class StoreUsage {
+	private final long version;
+	private final int subscriberCount;
+	private final int derivedValueCount;
+	private final int pendingActionCount;
+	private final int queuedTaskCount;
+	private final long completedTaskCount;
+	private final long busyNanos;
+
+	StoreUsage(long version, int subscriberCount, int derivedValueCount, int pendingActionCount,
+			int queuedTaskCount, long completedTaskCount, long busyNanos) {
+		this.version = version;
+		this.subscriberCount = subscriberCount;
+		this.derivedValueCount = derivedValueCount;
+		this.pendingActionCount = pendingActionCount;
+		this.queuedTaskCount = queuedTaskCount;
+		this.completedTaskCount = completedTaskCount;
+		this.busyNanos = busyNanos;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public int getSubscriberCount() {
+		return subscriberCount;
+	}
+
+	public int getDerivedValueCount() {
+		return derivedValueCount;
+	}
+
+	/**
+	 * @return The number of actions waiting in any {@code Lane}.
+	 */
+	public int getPendingActionCount() {
+		return pendingActionCount;
+	}
+
+	/**
+	 * @return The number of lane dispatches and non-blocking notifications
+	 *         waiting for a pool thread.
+	 */
+	public int getQueuedTaskCount() {
+		return queuedTaskCount;
+	}
+
+	public long getCompletedTaskCount() {
+		return completedTaskCount;
+	}
+
+	/**
+	 * @return The time pool threads spent running tasks for the store.
+	 */
+	public long getBusyNanos() {
+		return busyNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"StoreUsage [version='%d', subscribers='%d', derivedValues='%d', pendingActions='%d', queuedTasks='%d', completedTasks='%d', busyNanos='%d']",
+				version, subscriberCount, derivedValueCount, pendingActionCount, queuedTaskCount, completedTaskCount,
+				busyNanos);
+	}
+}
@@ -0,0 +1,106 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Collects the {@code Action}s of a {@code StateStore} transaction and applies
+ * them to a private working state. Nothing is visible outside of the
+ * transaction until the {@code StateStore} commits it.
+ *
+ * <pre>
+ * boolean committed = store.transaction(tx -&gt; {
+ * 	tx.dispatch(Action.create("WITHDRAW", 10));
+ * 	tx.dispatch(Action.create("DEPOSIT", 10));
+ * });
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see StateStore#transaction(java.util.function.Consumer)
+ */
+public final class Transaction {
+	/**
+	 * The type of the {@code Action} recorded for a committed transaction. Its
+	 * payload is the unmodifiable list of {@code Action}s that were applied.
+	 */
+	public static final String TRANSACTION_ACTION = "@@fnstate4j/TRANSACTION";
+
+	/**
+	 * How many times a transaction body is run before giving up on conflicts.
+	 */
+	public static final int MAX_ATTEMPTS = 16;
+
+	private final Pipeline pipeline;
+	private final List<Action> actions = new ArrayList<>();
+	private State state;
+	private boolean rollbackOnly;
+
+	Transaction(Pipeline pipeline, State base) {
+		this.pipeline = pipeline;
+		this.state = base;
+	}
+
+	/**
+	 * Runs the middleware and reducers for the {@code Action} against the working
+	 * state. If the middleware rejects it, the transaction is rolled back.
+	 *
+	 * @param action The action to apply.
+	 * @return Whether the {@code Action} was accepted.
+	 */
+	public boolean dispatch(Action action) {
+		Objects.requireNonNull(action, "'action' parameter must not be null");
+		if (rollbackOnly)
+			return false;
+		if (!pipeline.process(action, state)) {
+			rollbackOnly = true;
+			return false;
+		}
+		state = pipeline.reduce(action, state);
+		actions.add(action);
+		return true;
+	}
+
+	/**
+	 * Marks the transaction so that nothing is committed.
+	 */
+	public void rollback() {
+		rollbackOnly = true;
+	}
+
+	public boolean isRollbackOnly() {
+		return rollbackOnly;
+	}
+
+	/**
+	 * @return The working state, with every accepted {@code Action} applied.
+	 */
+	public State getState() {
+		return state;
+	}
+
+	public List<Action> getActions() {
+		return Collections.unmodifiableList(actions);
+	}
+}
@@ -0,0 +1,41 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * Keeps the values put into a {@code State} somewhere other than the
+ * {@code State}'s map. A {@code ValueStore} must never change or release a value
+ * once stored, because older versions of the {@code State} may still refer to
+ * it, unless its owner explicitly asks for that, like
+ * {@code OffHeapArena#reclaim}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see State#withValueStore(ValueStore)
+ */
+@FunctionalInterface
+public interface ValueStore {
+	/**
+	 * @param value The value to store, may be null.
+	 * @return The {@code DeferredValue} to keep in the {@code State}'s map in place
+	 *         of the value, or the value itself if it's better kept in the map.
+	 */
+	public Object store(Object value);
+}
@@ -0,0 +1,356 @@
+package com.saylorsolutions.fnstate4j.expiry;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.Lane;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+import com.saylorsolutions.fnstate4j.timer.Timeout;
+
+import io.vavr.Tuple2;
+
+/**
+ * Removes keys from a store's {@code State} after a time-to-live, or once too
+ * many keys share a size budget. Keys are evicted by dispatching an
+ * {@code EVICT_ACTION} through the store, so subscribers, commit listeners, and
+ * history all see evictions like any other change.
+ * <p>
+ * A key is managed by the first rule it matches. Its time-to-live starts again
+ * whenever it's written. When a size budget is exceeded, the least recently used
+ * keys are evicted, where writing a key or calling {@code touch} counts as a
+ * use. A key that was written again after its eviction was dispatched is kept.
+ * <p>
+ * Expired keys are found on the timer thread, which only queues their eviction
+ * in the store's {@code BACKGROUND} lane, so the reducers never run on the timer
+ * thread.
+ *
+ * <pre>
+ * KeyExpiry expiry = new KeyExpiry(store).expireAfterWrite(k -&gt; k.startsWith("lookup:"), 5, TimeUnit.MINUTES);
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class KeyExpiry implements CommitListener, Closeable {
+	public static final String EVICT_ACTION = "@@fnstate4j/EVICT";
+
+	private final StateStore store;
+	private final HashedWheelTimer timer;
+	private final List<Rule> rules = new CopyOnWriteArrayList<>();
+	private final Object lock = new Object();
+	private final AtomicLong expiredCount = new AtomicLong();
+	private final AtomicLong sizeEvictedCount = new AtomicLong();
+	private final Reducer evictReducer = this::evict;
+
+	/**
+	 * Uses the timer shared by the stores of the store's registry.
+	 *
+	 * @param store The store to evict keys from.
+	 * @see StateStore#getTimer()
+	 */
+	public KeyExpiry(StateStore store) {
+		this(store, Objects.requireNonNull(store, "'store' parameter must not be null").getTimer());
+	}
+
+	/**
+	 * @param store The store to evict keys from.
+	 * @param timer The timer that drives expiry, which may be shared. It's not
+	 *              closed with this {@code KeyExpiry}.
+	 */
+	public KeyExpiry(StateStore store, HashedWheelTimer timer) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(timer, "'timer' parameter must not be null");
+		this.store = store;
+		this.timer = timer;
+		this.store.addReducer(this.evictReducer);
+		this.store.addCommitListener(this);
+	}
+
+	public KeyExpiry expireAfterWrite(Predicate<String> keys, long ttl, TimeUnit unit) {
+		return manage(keys, ttl, unit, 0);
+	}
+
+	public KeyExpiry limitSize(Predicate<String> keys, int maxKeys) {
+		return manage(keys, 0L, TimeUnit.NANOSECONDS, maxKeys);
+	}
+
+	/**
+	 * Adds a rule. Keys already in the store that match it are managed as if they
+	 * were written now.
+	 *
+	 * @param keys    Selects the keys managed by the rule.
+	 * @param ttl     How long a key lives after it was written, 0 for no limit.
+	 * @param unit    The unit of the time-to-live.
+	 * @param maxKeys How many keys the rule may manage, 0 for no limit.
+	 * @return This {@code KeyExpiry}.
+	 */
+	public KeyExpiry manage(Predicate<String> keys, long ttl, TimeUnit unit, int maxKeys) {
+		Objects.requireNonNull(keys, "'keys' parameter must not be null");
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		if (ttl < 0L || maxKeys < 0)
+			throw new IllegalArgumentException("'ttl' and 'maxKeys' parameters must not be negative");
+		final Rule rule = new Rule(keys, unit.toNanos(ttl), maxKeys);
+		final Map<String, Object> victims = new HashMap<>();
+		synchronized (this.lock) {
+			this.rules.add(rule);
+			for (Tuple2<String, Object> entry : this.store.getState().getStateMap()) {
+				if (ruleFor(entry._1) == rule)
+					written(rule, entry._1, entry._2, victims);
+			}
+		}
+		dispatch(victims, true, null);
+		return this;
+	}
+
+	@Override
+	public void onCommit(Commit commit) {
+		final Action action = commit.getAction();
+		final Eviction eviction = action != null && EVICT_ACTION.equals(action.getType())
+				&& action.getPayloadOrNull() instanceof Eviction ? (Eviction) action.getPayloadOrNull() : null;
+		track(commit.getDelta(), eviction != null && eviction.owner == this ? eviction : null);
+	}
+
+	private void track(StateDelta delta, Eviction eviction) {
+		final Map<String, Object> victims = new HashMap<>();
+		synchronized (this.lock) {
+			for (String key : delta.getRemovedKeys()) {
+				final Rule rule = ruleFor(key);
+				if (rule != null && forget(rule, key) && eviction != null)
+					(eviction.sizeBudget ? this.sizeEvictedCount : this.expiredCount).incrementAndGet();
+			}
+			for (Tuple2<String, Object> put : delta.getPuts()) {
+				final Rule rule = ruleFor(put._1);
+				if (rule != null)
+					written(rule, put._1, put._2, victims);
+			}
+		}
+		dispatch(victims, true, null);
+	}
+
+	private Rule ruleFor(String key) {
+		for (Rule rule : this.rules) {
+			if (rule.keys.test(key))
+				return rule;
+		}
+		return null;
+	}
+
+	private boolean forget(Rule rule, String key) {
+		final Entry entry = rule.entries.remove(key);
+		if (entry == null)
+			return false;
+		if (entry.timeout != null)
+			entry.timeout.cancel();
+		if (entry.evicting)
+			rule.evicting--;
+		return true;
+	}
+
+	/**
+	 * Starts managing a written key. Keys that push the rule over its size budget
+	 * are collected in {@code victims}, skipping keys whose eviction is already in
+	 * flight.
+	 */
+	private void written(Rule rule, String key, Object value, Map<String, Object> victims) {
+		forget(rule, key);
+		final Entry entry = new Entry(value);
+		if (rule.ttlNanos > 0L)
+			entry.timeout = this.timer.schedule(() -> expired(rule, key, entry), rule.ttlNanos, TimeUnit.NANOSECONDS);
+		rule.entries.put(key, entry);
+		if (rule.maxKeys == 0)
+			return;
+		final Iterator<Map.Entry<String, Entry>> eldest = rule.entries.entrySet().iterator();
+		int excess = rule.entries.size() - rule.evicting - rule.maxKeys;
+		while (excess > 0 && eldest.hasNext()) {
+			final Map.Entry<String, Entry> victim = eldest.next();
+			if (victim.getValue().evicting)
+				continue;
+			victim.getValue().evicting = true;
+			rule.evicting++;
+			victims.put(victim.getKey(), victim.getValue().value);
+			excess--;
+		}
+	}
+
+	private void expired(Rule rule, String key, Entry entry) {
+		synchronized (this.lock) {
+			if (rule.entries.get(key) != entry)
+				return;
+		}
+		final Map<String, Object> victims = new HashMap<>();
+		victims.put(key, entry.value);
+		dispatch(victims, false, Lane.BACKGROUND);
+	}
+
+	/**
+	 * @param lane The lane to queue the eviction in, or null to dispatch it on the
+	 *             calling thread.
+	 */
+	private void dispatch(Map<String, Object> victims, boolean sizeBudget, Lane lane) {
+		if (victims.isEmpty())
+			return;
+		final Action action = Action.create(EVICT_ACTION, new Eviction(this, victims, sizeBudget));
+		try {
+			if (lane == null)
+				this.store.dispatch(action);
+			else
+				this.store.dispatch(action, lane);
+		} catch (IllegalStateException e) {
+			// The store was closed, so there is nothing left to evict from.
+		}
+	}
+
+	/**
+	 * Removes a key only if it still holds the value that was written when the
+	 * eviction was decided.
+	 */
+	private State evict(Action action, State state) {
+		if (!EVICT_ACTION.equals(action.getType()) || !(action.getPayloadOrNull() instanceof Eviction))
+			return state;
+		final Eviction eviction = (Eviction) action.getPayloadOrNull();
+		if (eviction.owner != this)
+			return state;
+		State result = state;
+		for (Map.Entry<String, Object> victim : eviction.victims.entrySet()) {
+			if (result.getStateMap().getOrElse(victim.getKey(), null) == victim.getValue())
+				result = result.remove(victim.getKey());
+		}
+		return result;
+	}
+
+	/**
+	 * Marks a key as recently used, so that it's evicted after other keys when its
+	 * size budget is exceeded.
+	 *
+	 * @param key The key that was read.
+	 */
+	public void touch(String key) {
+		final Rule rule = ruleFor(key);
+		if (rule == null)
+			return;
+		synchronized (this.lock) {
+			rule.entries.get(key);
+		}
+	}
+
+	/**
+	 * @return The number of keys removed because their time-to-live passed.
+	 */
+	public long getExpiredCount() {
+		return this.expiredCount.get();
+	}
+
+	/**
+	 * @return The number of keys removed to stay within a size budget.
+	 */
+	public long getSizeEvictedCount() {
+		return this.sizeEvictedCount.get();
+	}
+
+	/**
+	 * @return The number of keys currently managed by any rule.
+	 */
+	public int getTrackedKeyCount() {
+		synchronized (this.lock) {
+			int count = 0;
+			for (Rule rule : this.rules) {
+				count += rule.entries.size();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Stops managing keys. Keys that are still in the store stay there.
+	 */
+	@Override
+	public void close() {
+		this.store.removeCommitListener(this);
+		this.store.removeReducer(this.evictReducer);
+		synchronized (this.lock) {
+			for (Rule rule : this.rules) {
+				for (Entry entry : rule.entries.values()) {
+					if (entry.timeout != null)
+						entry.timeout.cancel();
+				}
+				rule.entries.clear();
+			}
+		}
+	}
+
+	private static final class Rule {
+		private final Predicate<String> keys;
+		private final long ttlNanos;
+		private final int maxKeys;
+		// Access ordered, so the first entries are the least recently used.
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private int evicting;
+
+		private Rule(Predicate<String> keys, long ttlNanos, int maxKeys) {
+			this.keys = keys;
+			this.ttlNanos = ttlNanos;
+			this.maxKeys = maxKeys;
+		}
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private Timeout timeout;
+		private boolean evicting;
+
+		private Entry(Object value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Payload of an {@code EVICT_ACTION}: the keys to remove, with the values they
+	 * must still hold.
+	 */
+	private static final class Eviction {
+		private final KeyExpiry owner;
+		private final Map<String, Object> victims;
+		private final boolean sizeBudget;
+
+		private Eviction(KeyExpiry owner, Map<String, Object> victims, boolean sizeBudget) {
+			this.owner = owner;
+			this.victims = victims;
+			this.sizeBudget = sizeBudget;
+		}
+	}
+}
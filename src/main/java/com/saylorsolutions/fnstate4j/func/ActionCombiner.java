@@ -0,0 +1,57 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import com.saylorsolutions.fnstate4j.Action;
+
+/**
+ * Folds two queued {@code Action}s of the same type into one, so a burst of
+ * actions waiting in a {@code Lane} reaches the middleware and reducers as a
+ * single dispatch. Reducing the combined {@code Action} must have the same
+ * result as reducing both in order, and combining must be associative, since
+ * the result may be combined again with the next {@code Action} queued.
+ * <p>
+ * Combiners are called while the queue is locked, so they must be fast and
+ * must not dispatch.
+ *
+ * <pre>
+ * store.setCombiner("INCREMENT", (a, b) -&gt; Action.create("INCREMENT",
+ * 		a.getPayloadOrElse(1) + b.getPayloadOrElse(1)));
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see com.saylorsolutions.fnstate4j.StateStore#setCombiner(String, ActionCombiner)
+ */
+@FunctionalInterface
+public interface ActionCombiner {
+	/**
+	 * Keeps only the later {@code Action}, for actions that overwrite a value.
+	 */
+	public static final ActionCombiner KEEP_LATEST = (earlier, later) -> later;
+
+	/**
+	 * @param earlier The {@code Action} that was queued first.
+	 * @param later   The {@code Action} queued right after it.
+	 * @return The {@code Action} to queue in place of both, or null to keep them
+	 *         separate.
+	 */
+	public Action combine(Action earlier, Action later);
+}
@@ -0,0 +1,41 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import com.saylorsolutions.fnstate4j.Action;
+
+/**
+ * Notified when an {@code Action} caused more actions to be dispatched from
+ * subscribers or listeners on the dispatching thread. Useful to find actions
+ * that set off storms of follow up actions.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+@FunctionalInterface
+public interface CascadeListener {
+	/**
+	 * @param root   The {@code Action} that started the cascade, or null if it was
+	 *               started by committing a transaction.
+	 * @param length The number of actions processed, including the root.
+	 * @param nanos  The time it took to process all of them.
+	 */
+	public void onCascade(Action root, int length, long nanos);
+}
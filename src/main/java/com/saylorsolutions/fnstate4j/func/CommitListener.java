@@ -0,0 +1,38 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import com.saylorsolutions.fnstate4j.Commit;
+
+/**
+ * Notified of every {@code Commit} made by a {@code StateStore}, in version
+ * order. Unlike subscribers, listeners are always called on the committing
+ * thread before the next commit can start, so they should return quickly.
+ * An exception thrown by a listener doesn't undo the commit. It's handed to the
+ * committing thread's {@code UncaughtExceptionHandler}, and the other listeners
+ * and subscribers are still notified.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+@FunctionalInterface
+public interface CommitListener {
+	public void onCommit(Commit commit);
+}
@@ -20,8 +20,10 @@ package com.saylorsolutions.fnstate4j.func;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 
 import com.saylorsolutions.fnstate4j.Action;
@@ -65,14 +67,18 @@ public interface Middleware {
 	 */
 	public boolean process(Action action, State state);
 
+	/**
+	 * Chains another {@code Middleware} after this one. Chains are kept flat, so
+	 * calling {@code andThen} repeatedly doesn't add a stack frame per
+	 * {@code Middleware}.
+	 *
+	 * @param other The {@code Middleware} to call if this one accepts the
+	 *              {@code Action}.
+	 * @return The combined {@code Middleware}.
+	 */
 	public default Middleware andThen(final Middleware other) {
 		Objects.requireNonNull(other, "Cannot merge null middleware");
-
-		return (a, s) -> {
-			if (process(a, s))
-				return other.process(a, s);
-			return false;
-		};
+		return MiddlewareChain.of(Arrays.asList(this, other));
 	}
 
 	/**
@@ -88,12 +94,15 @@ public interface Middleware {
 			return NO_OP;
 		if(middlewares == null)
 			return first;
-		return Arrays.stream(middlewares).filter(m -> m != null).reduce(first, (m1, m2) -> m1.andThen(m2));
+		final List<Middleware> chain = new ArrayList<>(middlewares.length + 1);
+		chain.add(first);
+		chain.addAll(Arrays.asList(middlewares));
+		return MiddlewareChain.of(chain);
 	}
 
 	public static Middleware combine(Collection<Middleware> coll) {
 		if (coll == null || coll.isEmpty())
 			return NO_OP;
-		return coll.stream().filter(m -> m != null).reduce(NO_OP, (m1, m2) -> m1.andThen(m2));
+		return MiddlewareChain.of(coll);
 	}
 }
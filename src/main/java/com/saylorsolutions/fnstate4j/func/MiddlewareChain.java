@@ -0,0 +1,75 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+
+/**
+ * A flat chain of {@code Middleware}s. Nested chains are unwrapped when the
+ * chain is built, so that invoking n middlewares is a single loop that stops at
+ * the first one to cancel the {@code Action}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class MiddlewareChain implements Middleware {
+	private final Middleware[] middlewares;
+
+	private MiddlewareChain(Middleware[] middlewares) {
+		this.middlewares = middlewares;
+	}
+
+	/**
+	 * @param middlewares The middlewares to chain, null and {@code NO_OP} elements
+	 *                    are skipped.
+	 * @return {@code NO_OP} if nothing is left to chain, the single remaining
+	 *         {@code Middleware}, or a new chain.
+	 */
+	static Middleware of(Iterable<Middleware> middlewares) {
+		final List<Middleware> flat = new ArrayList<>();
+		for (Middleware middleware : middlewares) {
+			if (middleware instanceof MiddlewareChain) {
+				for (Middleware inner : ((MiddlewareChain) middleware).middlewares) {
+					flat.add(inner);
+				}
+			} else if (middleware != null && middleware != NO_OP) {
+				flat.add(middleware);
+			}
+		}
+		if (flat.isEmpty())
+			return NO_OP;
+		if (flat.size() == 1)
+			return flat.get(0);
+		return new MiddlewareChain(flat.toArray(new Middleware[flat.size()]));
+	}
+
+	@Override
+	public boolean process(Action action, State state) {
+		for (Middleware middleware : middlewares) {
+			if (!middleware.process(action, state))
+				return false;
+		}
+		return true;
+	}
+}
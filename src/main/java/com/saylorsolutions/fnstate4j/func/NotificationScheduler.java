@@ -0,0 +1,40 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+/**
+ * Decides when and on which thread a {@code StateStore} notifies its
+ * subscribers. The store requests a notification after every commit, and the
+ * scheduler runs the given task at some later point. Since the task always
+ * notifies subscribers with the store's current {@code State}, a scheduler may
+ * run it once for any number of requests.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+@FunctionalInterface
+public interface NotificationScheduler {
+	/**
+	 * @param notifySubscribers Notifies every subscriber with the current
+	 *                          {@code State}. Always the same instance for a given
+	 *                          store.
+	 */
+	public void request(Runnable notifySubscribers);
+}
@@ -20,8 +20,11 @@ package com.saylorsolutions.fnstate4j.func;
  * #L%
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
 import com.saylorsolutions.fnstate4j.Action;
 import com.saylorsolutions.fnstate4j.State;
@@ -35,8 +38,17 @@ public interface Reducer {
 
 	public State reduce(Action action, State state);
 
+	/**
+	 * Chains another {@code Reducer} after this one. Chains are kept flat, so
+	 * calling {@code andThen} repeatedly doesn't add a stack frame per
+	 * {@code Reducer}.
+	 *
+	 * @param other The {@code Reducer} to call with the result of this one.
+	 * @return The combined {@code Reducer}.
+	 */
 	public default Reducer andThen(Reducer other) {
-		return (a, s) -> other.reduce(a, reduce(a, s));
+		Objects.requireNonNull(other, "Cannot merge null reducer");
+		return ReducerChain.of(Arrays.asList(this, other));
 	}
 
 	/**
@@ -52,12 +64,15 @@ public interface Reducer {
 			return NO_OP;
 		if(others == null)
 			return first;
-		return Arrays.stream(others).filter(r -> r != null).reduce(first, (r1, r2) -> r1.andThen(r2));
+		final List<Reducer> chain = new ArrayList<>(others.length + 1);
+		chain.add(first);
+		chain.addAll(Arrays.asList(others));
+		return ReducerChain.of(chain);
 	}
 
 	public static Reducer combine(Collection<Reducer> coll) {
 		if (coll == null || coll.isEmpty())
 			return NO_OP;
-		return coll.stream().filter(r -> r != null).reduce(NO_OP, (r1, r2) -> r1.andThen(r2));
+		return ReducerChain.of(coll);
 	}
 }
@@ -0,0 +1,75 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+
+/**
+ * A flat chain of {@code Reducer}s. Nested chains are unwrapped when the chain
+ * is built, so that invoking n reducers is a single loop rather than n nested
+ * lambda calls.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class ReducerChain implements Reducer {
+	private final Reducer[] reducers;
+
+	private ReducerChain(Reducer[] reducers) {
+		this.reducers = reducers;
+	}
+
+	/**
+	 * @param reducers The reducers to chain, null and {@code NO_OP} elements are
+	 *                 skipped.
+	 * @return {@code NO_OP} if nothing is left to chain, the single remaining
+	 *         {@code Reducer}, or a new chain.
+	 */
+	static Reducer of(Iterable<Reducer> reducers) {
+		final List<Reducer> flat = new ArrayList<>();
+		for (Reducer reducer : reducers) {
+			if (reducer instanceof ReducerChain) {
+				for (Reducer inner : ((ReducerChain) reducer).reducers) {
+					flat.add(inner);
+				}
+			} else if (reducer != null && reducer != NO_OP) {
+				flat.add(reducer);
+			}
+		}
+		if (flat.isEmpty())
+			return NO_OP;
+		if (flat.size() == 1)
+			return flat.get(0);
+		return new ReducerChain(flat.toArray(new Reducer[flat.size()]));
+	}
+
+	@Override
+	public State reduce(Action action, State state) {
+		State current = state;
+		for (Reducer reducer : reducers) {
+			current = reducer.reduce(action, current);
+		}
+		return current;
+	}
+}
@@ -0,0 +1,41 @@
+package com.saylorsolutions.fnstate4j.func;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import com.saylorsolutions.fnstate4j.State;
+
+/**
+ * Computes a value from the {@code State}. Like a {@code Reducer}, a
+ * {@code Selector} should be a pure function so that its result may be cached
+ * until its inputs change.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ *
+ * @param <T> The type of the computed value.
+ */
+@FunctionalInterface
+public interface Selector<T> {
+	/**
+	 * @param state The state to compute the value from.
+	 * @return The computed value, may be null.
+	 */
+	public T select(State state);
+}
@@ -0,0 +1,176 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+
+/**
+ * Finds the state of a {@code StateStore} as of a version or a point in time.
+ * Every commit is recorded with its version and timestamp, both of which only
+ * grow, so either can be found with a binary search instead of walking back
+ * through previous states. States are kept detached, so the index doesn't hold
+ * on to the whole history chain.
+ * <p>
+ * At most {@code maxEntries} versions are kept, the oldest ones are dropped
+ * first. Versions that are no longer in memory can be rebuilt from an action
+ * log with a {@code JournalIndex}.
+ *
+ * <pre>
+ * HistoryIndex history = new HistoryIndex(store);
+ * Optional&lt;State&gt; anHourAgo = history.stateAt(Instant.now().minus(1, ChronoUnit.HOURS));
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see JournalIndex
+ */
+public class HistoryIndex implements CommitListener, Closeable {
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	private final StateStore store;
+	private final long[] versions;
+	private final long[] timestamps;
+	private final State[] states;
+	private int first; // Ring buffer index of the oldest entry
+	private int size;
+
+	public HistoryIndex(StateStore store) {
+		this(store, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Starts with the store's current state, and records every commit after it.
+	 *
+	 * @param store      The store to record.
+	 * @param maxEntries How many versions to keep.
+	 */
+	public HistoryIndex(StateStore store, int maxEntries) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("'maxEntries' parameter must be at least 1");
+		this.store = store;
+		this.versions = new long[maxEntries];
+		this.timestamps = new long[maxEntries];
+		this.states = new State[maxEntries];
+		// A commit racing with registration may be seen twice, the second one is ignored.
+		this.store.addCommitListener(this);
+		onCommit(this.store.getLastCommit());
+	}
+
+	@Override
+	public synchronized void onCommit(Commit commit) {
+		if (this.size > 0 && commit.getVersion() <= this.versions[index(this.size - 1)])
+			return;
+		if (this.size == this.states.length) {
+			this.states[this.first] = null;
+			this.first = index(1);
+			this.size--;
+		}
+		final int slot = index(this.size);
+		this.versions[slot] = commit.getVersion();
+		this.timestamps[slot] = commit.getTimestamp();
+		this.states[slot] = commit.getState().detach();
+		this.size++;
+	}
+
+	private int index(int offset) {
+		return (this.first + offset) % this.states.length;
+	}
+
+	/**
+	 * @return The offset of the last entry whose key is at most the target, or -1.
+	 */
+	private int floor(long[] keys, long target) {
+		int low = 0;
+		int high = this.size - 1;
+		int found = -1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (keys[index(mid)] <= target) {
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	private Optional<State> stateAtOffset(int offset) {
+		return offset < 0 ? Optional.empty() : Optional.of(this.states[index(offset)]);
+	}
+
+	/**
+	 * @param version A store version, as given by {@code Commit#getVersion()}.
+	 * @return The state as of that version, which is the newest one for versions
+	 *         that haven't been committed yet. Empty if the version is older than
+	 *         any that are recorded.
+	 */
+	public synchronized Optional<State> stateAt(long version) {
+		return stateAtOffset(floor(this.versions, version));
+	}
+
+	/**
+	 * @param instant A point in time.
+	 * @return The state that was current at that time, or empty if it's before
+	 *         the oldest recorded version.
+	 */
+	public synchronized Optional<State> stateAt(Instant instant) {
+		return stateAtOffset(floor(this.timestamps, instant.toEpochMilli()));
+	}
+
+	/**
+	 * @param instant A point in time.
+	 * @return The version that was current at that time, or -1 if it's before the
+	 *         oldest recorded version.
+	 */
+	public synchronized long versionAt(Instant instant) {
+		final int offset = floor(this.timestamps, instant.toEpochMilli());
+		return offset < 0 ? -1L : this.versions[index(offset)];
+	}
+
+	public synchronized long getOldestVersion() {
+		return this.versions[this.first];
+	}
+
+	public synchronized Instant getOldestTimestamp() {
+		return Instant.ofEpochMilli(this.timestamps[this.first]);
+	}
+
+	/**
+	 * @return How many versions are recorded.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	@Override
+	public void close() {
+		this.store.removeCommitListener(this);
+	}
+}
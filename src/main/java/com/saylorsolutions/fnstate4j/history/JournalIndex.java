@@ -0,0 +1,284 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.io.ActionLogReader;
+import com.saylorsolutions.fnstate4j.io.LoggedCommit;
+import com.saylorsolutions.fnstate4j.offheap.MappedSnapshot;
+import com.saylorsolutions.fnstate4j.replay.ReplayEngine;
+
+/**
+ * Finds the state as of a version or a point in time from an action log and
+ * any number of snapshots, for versions that a {@code HistoryIndex} no longer
+ * holds in memory. Opening the index reads the version, timestamp, and file
+ * position of every record once. A query then binary searches for the newest
+ * snapshot at or before the target, and replays only the log records between
+ * that snapshot and the target.
+ * <p>
+ * Internal actions aren't logged, so a state rebuilt from the log only matches
+ * the store's if no internal actions, like replication or key expiry, changed
+ * it. Snapshots taken with {@code MappedSnapshot#write(Path, Commit)} carry
+ * their commit's timestamp and can be found by time; others are only found by
+ * version.
+ *
+ * <pre>
+ * JournalIndex journal = new JournalIndex(logFile, new ReplayEngine(reducer));
+ * journal.addSnapshot(MappedSnapshot.open(snapshotFile));
+ * Optional&lt;State&gt; yesterday = journal.stateAt(Instant.now().minus(1, ChronoUnit.DAYS));
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see HistoryIndex
+ */
+public class JournalIndex {
+	private final Path log;
+	private final ReplayEngine engine;
+	private final State initialState;
+	private final List<MappedSnapshot> snapshots = new ArrayList<>(); // Ordered by version
+	private long[] versions = new long[64];
+	private long[] timestamps = new long[64];
+	private long[] positions = new long[64];
+	private int size;
+	private long end; // Position after the last complete record that was indexed
+
+	/**
+	 * Indexes a log that was written from an empty initial state.
+	 *
+	 * @param log    The action log.
+	 * @param engine Replays the logged actions.
+	 * @throws IOException If the log can't be read.
+	 */
+	public JournalIndex(Path log, ReplayEngine engine) throws IOException {
+		this(log, engine, new State());
+	}
+
+	/**
+	 * @param log          The action log.
+	 * @param engine       Replays the logged actions.
+	 * @param initialState The state at version 0, before the first logged action.
+	 * @throws IOException If the log can't be read.
+	 */
+	public JournalIndex(Path log, ReplayEngine engine, State initialState) throws IOException {
+		Objects.requireNonNull(log, "'log' parameter must not be null");
+		Objects.requireNonNull(engine, "'engine' parameter must not be null");
+		Objects.requireNonNull(initialState, "'initialState' parameter must not be null");
+		this.log = log;
+		this.engine = engine;
+		this.initialState = initialState;
+		try (ActionLogReader reader = new ActionLogReader(log)) {
+			this.end = reader.getPosition();
+		}
+		refresh();
+	}
+
+	/**
+	 * Indexes records appended to the log since it was last indexed.
+	 *
+	 * @return The number of records added to the index.
+	 * @throws IOException If the log can't be read.
+	 */
+	public synchronized int refresh() throws IOException {
+		final int before = this.size;
+		try (ActionLogReader reader = new ActionLogReader(this.log, this.end)) {
+			while (reader.hasNext()) {
+				final long position = reader.getPosition();
+				final LoggedCommit commit = reader.next();
+				if (this.size > 0 && commit.getVersion() <= this.versions[this.size - 1])
+					throw new IOException(String.format("Versions in '%s' are out of order at position %d",
+							this.log, position));
+				add(commit.getVersion(), commit.getTimestamp(), position);
+			}
+			this.end = reader.getPosition();
+		}
+		return this.size - before;
+	}
+
+	private void add(long version, long timestamp, long position) {
+		if (this.size == this.versions.length) {
+			final int capacity = this.size * 2;
+			this.versions = Arrays.copyOf(this.versions, capacity);
+			this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+			this.positions = Arrays.copyOf(this.positions, capacity);
+		}
+		this.versions[this.size] = version;
+		this.timestamps[this.size] = timestamp;
+		this.positions[this.size] = position;
+		this.size++;
+	}
+
+	/**
+	 * Makes a snapshot available as a starting point for replays.
+	 *
+	 * @param snapshot A snapshot of the same store the log was written from.
+	 * @return This index.
+	 */
+	public synchronized JournalIndex addSnapshot(MappedSnapshot snapshot) {
+		Objects.requireNonNull(snapshot, "'snapshot' parameter must not be null");
+		int at = this.snapshots.size();
+		while (at > 0 && this.snapshots.get(at - 1).getVersion() > snapshot.getVersion()) {
+			at--;
+		}
+		this.snapshots.add(at, snapshot);
+		return this;
+	}
+
+	/**
+	 * @return The index of the last of the first {@code count} keys that is at
+	 *         most the target, or -1.
+	 */
+	private static int floor(long[] keys, int count, long target) {
+		int low = 0;
+		int high = count - 1;
+		int found = -1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (keys[mid] <= target) {
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param instant A point in time.
+	 * @return The newest version committed at or before that time, according to
+	 *         the log and the snapshots, or -1 if there is none.
+	 */
+	public synchronized long versionAt(Instant instant) {
+		final long millis = instant.toEpochMilli();
+		final int logged = floor(this.timestamps, this.size, millis);
+		long version = logged < 0 ? -1L : this.versions[logged];
+		for (MappedSnapshot snapshot : this.snapshots) {
+			if (snapshot.getTimestamp() <= millis)
+				version = Math.max(version, snapshot.getVersion());
+		}
+		return version;
+	}
+
+	/**
+	 * @param instant A point in time.
+	 * @return The state at that time, or empty if it's before anything the log or
+	 *         snapshots know about.
+	 * @throws IOException If the log can't be read.
+	 */
+	public Optional<State> stateAt(Instant instant) throws IOException {
+		final long version = versionAt(instant);
+		return version < 0L ? Optional.empty() : stateAt(version);
+	}
+
+	/**
+	 * @param version A store version.
+	 * @return The state as of that version, which is the newest known one for
+	 *         versions past the end of the log.
+	 * @throws IOException If the log can't be read.
+	 */
+	public Optional<State> stateAt(long version) throws IOException {
+		final State base;
+		final long baseVersion;
+		final long position;
+		synchronized (this) {
+			MappedSnapshot snapshot = null;
+			for (MappedSnapshot candidate : this.snapshots) {
+				if (candidate.getVersion() <= version)
+					snapshot = candidate;
+			}
+			if (snapshot != null) {
+				base = snapshot.getState();
+				baseVersion = snapshot.getVersion();
+			} else if (version >= 0L) {
+				base = this.initialState;
+				baseVersion = 0L;
+			} else {
+				return Optional.empty();
+			}
+			final int first = floor(this.versions, this.size, baseVersion) + 1;
+			if (first >= this.size || this.versions[first] > version)
+				return Optional.of(base);
+			position = this.positions[first];
+		}
+		try (ActionLogReader reader = new ActionLogReader(this.log, position)) {
+			return Optional.of(this.engine.replay(base, new Actions(reader, version)).getState());
+		}
+	}
+
+	/**
+	 * @return The number of indexed log records.
+	 */
+	public synchronized int getCommitCount() {
+		return this.size;
+	}
+
+	/**
+	 * @return A copy of the added snapshots, oldest version first.
+	 */
+	public synchronized List<MappedSnapshot> getSnapshots() {
+		return new ArrayList<>(this.snapshots);
+	}
+
+	/**
+	 * The actions of the records up to and including a version.
+	 */
+	private static final class Actions implements Iterator<Action> {
+		private final ActionLogReader reader;
+		private final long lastVersion;
+		private Iterator<Action> current = Collections.emptyIterator();
+
+		private Actions(ActionLogReader reader, long lastVersion) {
+			this.reader = reader;
+			this.lastVersion = lastVersion;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!this.current.hasNext() && this.reader.hasNext()) {
+				final LoggedCommit commit = this.reader.next();
+				if (commit.getVersion() > this.lastVersion)
+					return false;
+				this.current = commit.getActions().iterator();
+			}
+			return this.current.hasNext();
+		}
+
+		@Override
+		public Action next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return this.current.next();
+		}
+	}
+}
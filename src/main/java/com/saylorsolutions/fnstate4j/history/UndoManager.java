@@ -0,0 +1,355 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+/**
+ * Undo and redo for a {@code StateStore}. Each commit is recorded as the
+ * {@code StateDelta} from the version before it, and after every
+ * {@code checkpointInterval - 1} deltas a detached copy of the full state is
+ * kept as well. Rebuilding any recorded version only needs the nearest
+ * checkpoint before it plus at most {@code checkpointInterval - 1} deltas.
+ * <p>
+ * At most {@code maxEntries} versions are kept. When the limit is reached, the
+ * oldest version is folded into the one after it, which becomes the new oldest
+ * checkpoint.
+ * <p>
+ * Undo, redo, and jumps are dispatched to the store as a {@code RESTORE_ACTION},
+ * so subscribers are notified like for any other change. Dispatching any other
+ * {@code Action} after an undo discards the versions that could have been
+ * redone.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class UndoManager implements CommitListener, Closeable {
+	public static final String RESTORE_ACTION = "@@fnstate4j/HISTORY_RESTORE";
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+	private final StateStore store;
+	private final int checkpointInterval;
+	private final Entry[] entries;
+	private final Reducer restoreReducer = this::restore;
+	private int first; // Ring buffer index of the oldest entry
+	private int size;
+	private int cursor; // Offset from first of the current version
+
+	public UndoManager(StateStore store) {
+		this(store, DEFAULT_MAX_ENTRIES, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	/**
+	 * @param store              The store to record.
+	 * @param maxEntries         How many versions to keep, including the current
+	 *                           one.
+	 * @param checkpointInterval How many versions apart full checkpoints are kept.
+	 */
+	public UndoManager(StateStore store, int maxEntries, int checkpointInterval) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		if (maxEntries < 2)
+			throw new IllegalArgumentException("'maxEntries' parameter must be at least 2");
+		if (checkpointInterval < 1)
+			throw new IllegalArgumentException("'checkpointInterval' parameter must be at least 1");
+		this.store = store;
+		this.checkpointInterval = checkpointInterval;
+		this.entries = new Entry[maxEntries];
+		this.store.addReducer(this.restoreReducer);
+		synchronized (this) {
+			this.store.addCommitListener(this);
+			final Commit head = this.store.getLastCommit();
+			append(new Entry(head.getVersion(), null, head.getState().detach()));
+		}
+	}
+
+	/**
+	 * Restores made by this manager only move the cursor, which the restore
+	 * reducer has already done.
+	 */
+	@Override
+	public synchronized void onCommit(Commit commit) {
+		final Object payload = commit.getAction() == null ? null : commit.getAction().getPayloadOrNull();
+		if (payload instanceof Restore && ((Restore) payload).owner == this)
+			return;
+		if (commit.getVersion() <= entry(this.size - 1).version)
+			return;
+		// New changes after an undo replace whatever could have been redone
+		while (this.size > this.cursor + 1) {
+			this.entries[index(--this.size)] = null;
+		}
+		final boolean checkpoint = deltasSinceCheckpoint() + 1 >= this.checkpointInterval;
+		append(new Entry(commit.getVersion(), commit.getDelta(), checkpoint ? commit.getState().detach() : null));
+		this.cursor = this.size - 1;
+	}
+
+	private void append(Entry entry) {
+		if (this.size == this.entries.length) {
+			// Fold the oldest version into the next one, which becomes the new base
+			final Entry next = entry(1);
+			final State base = next.checkpoint != null ? next.checkpoint
+					: entry(0).checkpoint.apply(next.delta).detach();
+			this.entries[index(1)] = new Entry(next.version, null, base);
+			this.entries[this.first] = null;
+			this.first = index(1);
+			this.size--;
+			this.cursor = Math.max(0, this.cursor - 1);
+		}
+		this.entries[index(this.size)] = entry;
+		this.size++;
+	}
+
+	/**
+	 * Counted back from the newest entry, since truncating the redo tail may have
+	 * dropped the checkpoint that a running count would expect.
+	 *
+	 * @return How many deltas follow the newest checkpoint.
+	 */
+	private int deltasSinceCheckpoint() {
+		int offset = this.size - 1;
+		while (entry(offset).checkpoint == null) {
+			offset--;
+		}
+		return this.size - 1 - offset;
+	}
+
+	private int index(int offset) {
+		return (this.first + offset) % this.entries.length;
+	}
+
+	private Entry entry(int offset) {
+		return this.entries[index(offset)];
+	}
+
+	/**
+	 * Rebuilds the state at the given offset from the nearest checkpoint at or
+	 * before it.
+	 */
+	private State materialize(int offset) {
+		final int checkpoint = checkpointBefore(offset);
+		State state = entry(checkpoint).checkpoint;
+		for (int i = checkpoint + 1; i <= offset; i++) {
+			state = state.apply(entry(i).delta);
+		}
+		return state.detach();
+	}
+
+	private int checkpointBefore(int offset) {
+		int checkpoint = offset;
+		while (entry(checkpoint).checkpoint == null) {
+			checkpoint--;
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * @return How many deltas rebuilding the version applies to its checkpoint, or
+	 *         -1 if the version isn't recorded.
+	 */
+	synchronized int getReplayLength(long version) {
+		final int offset = find(version);
+		return offset < 0 ? -1 : offset - checkpointBefore(offset);
+	}
+
+	private int find(long version) {
+		int low = 0;
+		int high = this.size - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final long midVersion = entry(mid).version;
+			if (midVersion < version)
+				low = mid + 1;
+			else if (midVersion > version)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves the cursor as well as the state. If the restored version has the same
+	 * content as the current state, nothing is committed and {@code onCommit}
+	 * never sees the restore, so waiting for the commit would leave the cursor
+	 * behind. Restores are only ever dispatched by this manager, outside of any
+	 * transaction, so the reducer runs exactly once per restore under the store's
+	 * commit lock.
+	 */
+	private State restore(Action action, State state) {
+		if (RESTORE_ACTION.equals(action.getType()) && action.getPayloadOrNull() instanceof Restore) {
+			final Restore restore = (Restore) action.getPayloadOrNull();
+			if (restore.owner == this) {
+				synchronized (this) {
+					final int offset = find(restore.version);
+					// A commit since the restore was requested may have discarded its version.
+					if (offset < 0)
+						return state;
+					this.cursor = offset;
+				}
+				return state.apply(StateDelta.between(state, restore.target));
+			}
+		}
+		return state;
+	}
+
+	public synchronized boolean canUndo() {
+		return this.cursor > 0;
+	}
+
+	public synchronized boolean canRedo() {
+		return this.cursor < this.size - 1;
+	}
+
+	/**
+	 * Restores the version before the current one.
+	 *
+	 * @return Whether there was anything to undo.
+	 */
+	public boolean undo() {
+		final Restore restore;
+		synchronized (this) {
+			if (!canUndo())
+				return false;
+			restore = restoreTo(this.cursor - 1);
+		}
+		dispatch(restore);
+		return true;
+	}
+
+	/**
+	 * Restores the version after the current one, if the last change was an undo.
+	 *
+	 * @return Whether there was anything to redo.
+	 */
+	public boolean redo() {
+		final Restore restore;
+		synchronized (this) {
+			if (!canRedo())
+				return false;
+			restore = restoreTo(this.cursor + 1);
+		}
+		dispatch(restore);
+		return true;
+	}
+
+	/**
+	 * Restores the given version, as long as it's still recorded.
+	 *
+	 * @param version A store version, as given by {@code Commit#getVersion()}.
+	 * @return Whether the version was found.
+	 */
+	public boolean jumpTo(long version) {
+		final Restore restore;
+		synchronized (this) {
+			final int offset = find(version);
+			if (offset < 0)
+				return false;
+			restore = restoreTo(offset);
+		}
+		dispatch(restore);
+		return true;
+	}
+
+	private Restore restoreTo(int offset) {
+		return new Restore(this, entry(offset).version, materialize(offset));
+	}
+
+	// Must not be called while holding this lock, since commits call back into it
+	private void dispatch(Restore restore) {
+		this.store.blockingDispatch(Action.create(RESTORE_ACTION, restore));
+	}
+
+	/**
+	 * @param version A store version, as given by {@code Commit#getVersion()}.
+	 * @return The state at that version, if it's still recorded.
+	 */
+	public synchronized Optional<State> getState(long version) {
+		final int offset = find(version);
+		return offset < 0 ? Optional.empty() : Optional.of(materialize(offset));
+	}
+
+	/**
+	 * @return The store version that undo and redo are currently relative to.
+	 */
+	public synchronized long getCurrentVersion() {
+		return entry(this.cursor).version;
+	}
+
+	public synchronized long getOldestVersion() {
+		return entry(0).version;
+	}
+
+	/**
+	 * @return How many versions are recorded, including the current one and any
+	 *         that can be redone.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	@Override
+	public void close() {
+		this.store.removeCommitListener(this);
+		this.store.removeReducer(this.restoreReducer);
+	}
+
+	private static final class Entry {
+		private final long version;
+		private final StateDelta delta;
+		private final State checkpoint;
+
+		private Entry(long version, StateDelta delta, State checkpoint) {
+			this.version = version;
+			this.delta = delta;
+			this.checkpoint = checkpoint;
+		}
+	}
+
+	/**
+	 * Payload of a {@code RESTORE_ACTION}. Tagged with its owner so that two
+	 * managers on the same store don't act on each other's restores.
+	 */
+	private static final class Restore {
+		private final UndoManager owner;
+		private final long version;
+		private final State target;
+
+		private Restore(UndoManager owner, long version, State target) {
+			this.owner = owner;
+			this.version = version;
+			this.target = target;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Restore [version='%d']", version);
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package com.saylorsolutions.fnstate4j.index;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.DeferredValue;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+
+/**
+ * A secondary index over an entity collection in the {@code State}, stored in
+ * the {@code State} next to the collection it indexes. The collection may be an
+ * {@code EntityTable} or any VAVR map of ids to entities.
+ * <p>
+ * As a {@code Reducer}, the index brings itself up to date after every action,
+ * so it should be added after the reducers that change the collection. Only
+ * entities that are no longer the same instance are indexed again; with an
+ * {@code EntityTable} they are found without scanning the collection at all.
+ * <p>
+ * The collection is matched by the reference stored in the {@code State}, so a
+ * collection kept in a {@code ValueStore} isn't decoded just to find that it
+ * hasn't changed. The index also keeps the last snapshot it built, outside of
+ * the {@code State}, so a stored snapshot that was decoded from a
+ * {@code ValueStore} or a codec as a placeholder doesn't force a rebuild. Only
+ * a collection that was itself decoded is indexed again in full, since none of
+ * its entities are the same instances any more.
+ *
+ * <pre>
+ * EntityIndex&lt;Long, Order, Status&gt; byStatus = EntityIndex.on("orders", Order::getStatus, "orders.byStatus");
+ * store.addReducer(byStatus);
+ * Set&lt;Long&gt; pending = byStatus.lookup(store.getState(), Status.PENDING);
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ *
+ * @param <K> The type of the entity ids.
+ * @param <E> The type of the entities.
+ * @param <V> The type of the indexed attribute.
+ */
+public final class EntityIndex<K, E, V> implements Reducer {
+	private final String collectionKey;
+	private final Function<? super E, ? extends V> attribute;
+	private final String indexKey;
+	private volatile Snapshot<K, V> latest;
+
+	private EntityIndex(String collectionKey, Function<? super E, ? extends V> attribute, String indexKey) {
+		this.collectionKey = collectionKey;
+		this.attribute = attribute;
+		this.indexKey = indexKey;
+	}
+
+	/**
+	 * @param collectionKey The key of the entity collection.
+	 * @param attribute     Gets the indexed value from an entity. Entities with a
+	 *                      null value are not indexed.
+	 * @param indexKey      The key the index is stored under.
+	 * @return A new {@code EntityIndex}.
+	 */
+	public static <K, E, V> EntityIndex<K, E, V> on(String collectionKey, Function<? super E, ? extends V> attribute,
+			String indexKey) {
+		Objects.requireNonNull(collectionKey, "'collectionKey' parameter must not be null");
+		Objects.requireNonNull(attribute, "'attribute' parameter must not be null");
+		Objects.requireNonNull(indexKey, "'indexKey' parameter must not be null");
+		if (collectionKey.equals(indexKey))
+			throw new IllegalArgumentException("An index cannot be stored under the key it indexes");
+		return new EntityIndex<>(collectionKey, attribute, indexKey);
+	}
+
+	@Override
+	public State reduce(Action action, State state) {
+		return update(state);
+	}
+
+	/**
+	 * @param state The {@code State} holding the collection.
+	 * @return A {@code State} with the index matching the collection, or the given
+	 *         {@code State} if it already did.
+	 */
+	public State update(State state) {
+		final Object collection = storedCollection(state);
+		final Snapshot<K, V> current = snapshotIn(state);
+		if (current != null && current.source == collection)
+			return state;
+		if (collection == null)
+			return state.remove(this.indexKey);
+		return state.put(this.indexKey, refresh(current, collection));
+	}
+
+	/**
+	 * Finds the ids of the entities with the given value. If the stored index is
+	 * behind the collection, the result is still up to date.
+	 *
+	 * @param state The {@code State} holding the collection.
+	 * @param value The attribute value to look for.
+	 * @return The matching ids, empty if there are none.
+	 */
+	public Set<K> lookup(State state, V value) {
+		return snapshotOf(state).buckets.getOrElse(value, HashSet.empty());
+	}
+
+	/**
+	 * @param state The {@code State} holding the collection.
+	 * @param value The attribute value to look for.
+	 * @return The matching entities, in no particular order.
+	 */
+	public List<E> find(State state, V value) {
+		final Map<K, E> entities = entitiesOf(resolve(storedCollection(state)));
+		final List<E> found = new ArrayList<>();
+		for (K id : lookup(state, value)) {
+			found.add(entities.getOrElse(id, null));
+		}
+		return found;
+	}
+
+	/**
+	 * @param state The {@code State} holding the collection.
+	 * @return The distinct attribute values of the indexed entities.
+	 */
+	public Set<V> values(State state) {
+		return snapshotOf(state).buckets.keySet();
+	}
+
+	public String getCollectionKey() {
+		return this.collectionKey;
+	}
+
+	public String getIndexKey() {
+		return this.indexKey;
+	}
+
+	/**
+	 * @return The collection as it's stored, which may be a {@code DeferredValue}.
+	 */
+	private Object storedCollection(State state) {
+		return state.getStateMap().getOrElse(this.collectionKey, null);
+	}
+
+	private static Object resolve(Object stored) {
+		return stored instanceof DeferredValue ? ((DeferredValue) stored).resolve() : stored;
+	}
+
+	/**
+	 * @return The snapshot stored in the {@code State} if it was built by this
+	 *         index and not decoded since, otherwise the last snapshot this index
+	 *         built, which can be refreshed to match any collection.
+	 */
+	@SuppressWarnings("unchecked")
+	private Snapshot<K, V> snapshotIn(State state) {
+		final Object stored = state.getOrNull(this.indexKey);
+		if (stored instanceof Snapshot && ((Snapshot<?, ?>) stored).owner == this)
+			return (Snapshot<K, V>) stored;
+		return this.latest;
+	}
+
+	private Snapshot<K, V> snapshotOf(State state) {
+		final Object collection = storedCollection(state);
+		final Snapshot<K, V> current = snapshotIn(state);
+		if (current != null && current.source == collection)
+			return current;
+		return refresh(current, collection);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<K, E> entitiesOf(Object collection) {
+		if (collection == null)
+			return HashMap.empty();
+		if (collection instanceof EntityTable)
+			return ((EntityTable<K, E>) collection).getEntities();
+		if (collection instanceof Map)
+			return (Map<K, E>) collection;
+		throw new IllegalStateException(
+				String.format("Value of '%s' is not an EntityTable or a VAVR Map", this.collectionKey));
+	}
+
+	/**
+	 * @param collection The collection as it's stored.
+	 */
+	@SuppressWarnings("unchecked")
+	private Snapshot<K, V> refresh(Snapshot<K, V> snapshot, Object collection) {
+		final Object resolved = resolve(collection);
+		final Map<K, E> entities = entitiesOf(resolved);
+		if (snapshot == null) {
+			final Builder builder = new Builder(HashMap.empty(), HashMap.empty());
+			for (Tuple2<K, E> entry : entities) {
+				builder.index(entry._1, entry._2);
+			}
+			return builder.build(collection);
+		}
+
+		final Builder builder = new Builder(snapshot.buckets, snapshot.values);
+		final Object source = resolve(snapshot.source);
+		final Set<K> changed = resolved instanceof EntityTable && source instanceof EntityTable
+				? ((EntityTable<K, E>) resolved).changedSince((EntityTable<K, E>) source)
+				: null;
+		if (changed != null) {
+			for (K id : changed) {
+				builder.index(id, entities.getOrElse(id, null));
+			}
+			return builder.build(collection);
+		}
+
+		final Map<K, E> previous = entitiesOf(source);
+		for (Tuple2<K, E> entry : entities) {
+			if (previous.getOrElse(entry._1, null) != entry._2)
+				builder.index(entry._1, entry._2);
+		}
+		for (Tuple2<K, E> entry : previous) {
+			if (!entities.containsKey(entry._1))
+				builder.index(entry._1, null);
+		}
+		return builder.build(collection);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("EntityIndex [collectionKey='%s', indexKey='%s']", this.collectionKey, this.indexKey);
+	}
+
+	/**
+	 * Applies changes to the persistent maps of a {@code Snapshot}.
+	 */
+	private final class Builder {
+		private Map<V, Set<K>> buckets;
+		private Map<K, V> values;
+
+		private Builder(Map<V, Set<K>> buckets, Map<K, V> values) {
+			this.buckets = buckets;
+			this.values = values;
+		}
+
+		private void index(K id, E entity) {
+			final V oldValue = this.values.getOrElse(id, null);
+			final V newValue = entity == null ? null : attribute.apply(entity);
+			if (Objects.equals(oldValue, newValue))
+				return;
+			if (oldValue != null) {
+				final Set<K> ids = this.buckets.getOrElse(oldValue, HashSet.empty()).remove(id);
+				this.buckets = ids.isEmpty() ? this.buckets.remove(oldValue) : this.buckets.put(oldValue, ids);
+				this.values = this.values.remove(id);
+			}
+			if (newValue != null) {
+				this.buckets = this.buckets.put(newValue, this.buckets.getOrElse(newValue, HashSet.empty()).add(id));
+				this.values = this.values.put(id, newValue);
+			}
+		}
+
+		private Snapshot<K, V> build(Object source) {
+			final Snapshot<K, V> built = new Snapshot<>(EntityIndex.this, source, this.buckets, this.values);
+			latest = built;
+			return built;
+		}
+	}
+
+	/**
+	 * The stored form of an index: the stored collection reference it matches,
+	 * the ids by attribute value, and the attribute value by id so that an entity
+	 * can be moved between buckets without its previous instance.
+	 * <p>
+	 * It can be serialized with the rest of the {@code State}, but only as a
+	 * placeholder: the index it belongs to isn't, so a deserialized snapshot is
+	 * never used. The index falls back to the last snapshot it built instead.
+	 */
+	private static final class Snapshot<K, V> implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final transient EntityIndex<?, ?, ?> owner;
+		private final transient Object source;
+		private final transient Map<V, Set<K>> buckets;
+		private final transient Map<K, V> values;
+
+		private Snapshot(EntityIndex<?, ?, ?> owner, Object source, Map<V, Set<K>> buckets, Map<K, V> values) {
+			this.owner = owner;
+			this.source = source;
+			this.buckets = buckets;
+			this.values = values;
+		}
+
+		@Override
+		public String toString() {
+			if (this.owner == null)
+				return "EntityIndex.Snapshot [deserialized]";
+			return String.format("EntityIndex.Snapshot [values=%d, entities=%d]", this.buckets.size(),
+					this.values.size());
+		}
+	}
+}
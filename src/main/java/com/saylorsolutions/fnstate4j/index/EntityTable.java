@@ -0,0 +1,221 @@
+package com.saylorsolutions.fnstate4j.index;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+
+/**
+ * An immutable id to entity table, meant to be stored as a {@code State}
+ * value. Each table remembers which ids were changed on the way to it, so an
+ * {@code EntityIndex} can catch up with a newer table by visiting only the
+ * changed ids instead of scanning every entity.
+ * <p>
+ * Changes are remembered as a chain of small records that don't hold on to
+ * older tables or entities. At least {@value #MAX_CHANGE_CHAIN} changes are
+ * remembered, or as many as the table has entities if that's more, since an
+ * index that fell further behind is better off comparing entities by identity.
+ * The change chain isn't serialized, so a deserialized table starts a new one.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ *
+ * @param <K> The type of the entity ids.
+ * @param <E> The type of the entities.
+ */
+public final class EntityTable<K, E> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public static final int MAX_CHANGE_CHAIN = 64;
+
+	private static final EntityTable<Object, Object> EMPTY = new EntityTable<>(HashMap.empty(), new Change<>(null, null), 0);
+
+	private final Map<K, E> entities;
+	private final transient Change<K> changes;
+	private final transient int length;
+
+	private EntityTable(Map<K, E> entities, Change<K> changes, int length) {
+		this.entities = entities;
+		this.changes = changes;
+		this.length = length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, E> EntityTable<K, E> empty() {
+		return (EntityTable<K, E>) EMPTY;
+	}
+
+	public static <K, E> EntityTable<K, E> of(Map<K, E> entities) {
+		Objects.requireNonNull(entities, "'entities' parameter must not be null");
+		return new EntityTable<>(entities, new Change<>(null, null), 0);
+	}
+
+	public Optional<E> get(K id) {
+		return Optional.ofNullable(getOrNull(id));
+	}
+
+	public E getOrNull(K id) {
+		return this.entities.getOrElse(id, null);
+	}
+
+	public boolean containsId(K id) {
+		return this.entities.containsKey(id);
+	}
+
+	/**
+	 * @param id     The id of the entity.
+	 * @param entity The entity, must not be null.
+	 * @return A new table with the entity added or replaced, or this table if the
+	 *         same instance is already stored under the id.
+	 */
+	public EntityTable<K, E> put(K id, E entity) {
+		Objects.requireNonNull(id, "'id' parameter must not be null");
+		Objects.requireNonNull(entity, "'entity' parameter must not be null");
+		if (this.entities.getOrElse(id, null) == entity)
+			return this;
+		return derive(this.entities.put(id, entity), id);
+	}
+
+	/**
+	 * @param id The id of the entity to remove.
+	 * @return A new table without the entity, or this table if it wasn't present.
+	 */
+	public EntityTable<K, E> remove(K id) {
+		if (!this.entities.containsKey(id))
+			return this;
+		return derive(this.entities.remove(id), id);
+	}
+
+	/**
+	 * Records the change, and cuts off the oldest changes once the chain is twice
+	 * as long as it needs to be, so trimming costs constant time per change.
+	 */
+	private EntityTable<K, E> derive(Map<K, E> entities, K id) {
+		final Change<K> head = new Change<>(id, this.changes);
+		final int keep = Math.max(MAX_CHANGE_CHAIN, entities.size());
+		int length = this.length + 1;
+		if (length > 2 * keep) {
+			Change<K> last = head;
+			for (int i = 1; i < keep && last.next != null; i++) {
+				last = last.next;
+			}
+			// Tables sharing the older part of the chain just fall back to comparing entities.
+			last.next = null;
+			length = keep;
+		}
+		return new EntityTable<>(entities, head, length);
+	}
+
+	/**
+	 * Collects the ids that changed between an older version of this table and
+	 * this one.
+	 *
+	 * @param older A table this one may have been derived from.
+	 * @return The changed ids, or null if {@code older} is not among the
+	 *         remembered versions of this table.
+	 */
+	Set<K> changedSince(EntityTable<K, E> older) {
+		if (older.changes == null)
+			return null;
+		Set<K> changed = HashSet.empty();
+		for (Change<K> change = this.changes; change != null; change = change.next) {
+			if (change == older.changes)
+				return changed;
+			changed = changed.add(change.id);
+		}
+		return null;
+	}
+
+	/**
+	 * @return The entities by id, as a persistent map.
+	 */
+	public Map<K, E> getEntities() {
+		return this.entities;
+	}
+
+	public int size() {
+		return this.entities.size();
+	}
+
+	public boolean isEmpty() {
+		return this.entities.isEmpty();
+	}
+
+	/**
+	 * Tables that share a change chain are compared by the changed ids only, so
+	 * comparing a table with one it was derived from doesn't scan every entity.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof EntityTable))
+			return false;
+		@SuppressWarnings("unchecked")
+		final EntityTable<K, E> other = (EntityTable<K, E>) obj;
+		if (this.entities == other.entities)
+			return true;
+		if (size() != other.size())
+			return false;
+		Set<K> changed = changedSince(other);
+		if (changed == null)
+			changed = other.changedSince(this);
+		if (changed == null)
+			return this.entities.equals(other.entities);
+		for (K id : changed) {
+			if (!Objects.equals(getOrNull(id), other.getOrNull(id)))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.entities.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("EntityTable [entities=%s]", this.entities);
+	}
+
+	private Object readResolve() {
+		return of(this.entities);
+	}
+
+	/**
+	 * One step of a change chain. The first record of a chain has no id.
+	 */
+	private static final class Change<K> {
+		private final K id;
+		// Only ever cleared, to let go of the oldest changes.
+		private volatile Change<K> next;
+
+		private Change(K id, Change<K> next) {
+			this.id = id;
+			this.next = next;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.saylorsolutions.fnstate4j.io;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.saylorsolutions.fnstate4j.Action;
+
+/**
+ * Streams the records of a log written by an {@code ActionLogWriter}, one at a
+ * time, so that logs of any size can be read. A record that was only partly
+ * written ends the log.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ActionLogWriter
+ */
+public class ActionLogReader implements Iterator<LoggedCommit>, Closeable {
+	private final DataInputStream in;
+	private LoggedCommit next;
+	private boolean done;
+	private long position; // Of the first byte not read yet
+	private long nextPosition; // Of the record returned by the next call to next
+
+	/**
+	 * @param file The log file.
+	 * @throws IOException If the file can't be opened or isn't an action log.
+	 */
+	public ActionLogReader(Path file) throws IOException {
+		this(file, ActionLogWriter.HEADER_SIZE);
+	}
+
+	/**
+	 * Starts reading at a record boundary other than the first record, for
+	 * example one found by a {@code JournalIndex}.
+	 *
+	 * @param file     The log file.
+	 * @param position The position in the file of the first record to read.
+	 * @throws IOException If the file can't be opened or isn't an action log.
+	 */
+	public ActionLogReader(Path file, long position) throws IOException {
+		if (position < ActionLogWriter.HEADER_SIZE)
+			throw new IllegalArgumentException("'position' parameter must not be inside the log header");
+		this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+		try {
+			if (this.in.readInt() != ActionLogWriter.MAGIC)
+				throw new IOException(String.format("%s is not an action log", file));
+			long remaining = position - ActionLogWriter.HEADER_SIZE;
+			while (remaining > 0L) {
+				final long skipped = this.in.skip(remaining);
+				if (skipped <= 0L)
+					throw new EOFException(String.format("%s is shorter than position %d", file, position));
+				remaining -= skipped;
+			}
+			this.position = position;
+			this.nextPosition = position;
+		} catch (IOException e) {
+			this.in.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.next == null && !this.done)
+			this.next = readRecord();
+		return this.next != null;
+	}
+
+	@Override
+	public LoggedCommit next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		final LoggedCommit record = this.next;
+		this.next = null;
+		return record;
+	}
+
+	/**
+	 * @return The position in the file of the record that {@code next} will
+	 *         return, or of the end of the complete records if there are no more.
+	 */
+	public long getPosition() {
+		hasNext();
+		return this.nextPosition;
+	}
+
+	private LoggedCommit readRecord() {
+		this.nextPosition = this.position;
+		try {
+			final int length;
+			try {
+				length = this.in.readInt();
+			} catch (EOFException e) {
+				this.done = true;
+				return null;
+			}
+			final byte[] bytes = new byte[length];
+			try {
+				this.in.readFully(bytes);
+			} catch (EOFException e) {
+				this.done = true;
+				return null;
+			}
+			this.position += Integer.BYTES + length;
+			final DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+			final long version = record.readLong();
+			final long timestamp = record.readLong();
+			final int count = record.readInt();
+			final List<Action> actions = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				actions.add(StateCodec.readAction(record));
+			}
+			return new LoggedCommit(version, timestamp, actions);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read action log", e);
+		}
+	}
+
+	/**
+	 * @return The remaining actions of the log, in order, with transactions
+	 *         flattened into the actions they're made of.
+	 */
+	public Iterator<Action> actions() {
+		return new Iterator<Action>() {
+			private Iterator<Action> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!this.current.hasNext() && ActionLogReader.this.hasNext()) {
+					this.current = ActionLogReader.this.next().getActions().iterator();
+				}
+				return this.current.hasNext();
+			}
+
+			@Override
+			public Action next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return this.current.next();
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+}
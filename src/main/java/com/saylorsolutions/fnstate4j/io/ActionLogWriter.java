@@ -0,0 +1,151 @@
+package com.saylorsolutions.fnstate4j.io;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.Transaction;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+import com.saylorsolutions.fnstate4j.replay.ReplayEngine;
+
+/**
+ * Appends the {@code Action} of every commit of a {@code StateStore} to a log
+ * file, so that it can be replayed later. The file starts with a magic number,
+ * followed by one length-prefixed record per commit, which lets a reader stop
+ * cleanly at a record that was only partly written.
+ * <p>
+ * Records are buffered until {@code flush} or {@code close} is called.
+ * Transactions and replayed batches are logged as the actions they're made of.
+ * Other internal actions, like those dispatched by replication followers, undo
+ * managers and key expiry, can't be replayed, so their commits are logged as a
+ * {@code DELTA_ACTION} with the changes they made instead.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ActionLogReader
+ */
+public class ActionLogWriter implements CommitListener, Flushable, Closeable {
+	static final int MAGIC = 0x464E414C;
+	static final int HEADER_SIZE = 4;
+	static final String INTERNAL_PREFIX = "@@fnstate4j/";
+	/**
+	 * The type of the {@code Action} logged for a commit of an internal action
+	 * that can't be replayed. Its payload is the commit's {@code StateDelta},
+	 * which {@code ReplayEngine} applies without running the middleware or
+	 * reducer.
+	 */
+	public static final String DELTA_ACTION = INTERNAL_PREFIX + "LOGGED_DELTA";
+
+	private final StateStore store;
+	private final DataOutputStream out;
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+	private final DataOutputStream recordOut = new DataOutputStream(this.record);
+	private long recordCount;
+
+	/**
+	 * Logs every commit of the store made after this call, appending to the file
+	 * if it already exists.
+	 *
+	 * @param store The store to log.
+	 * @param file  The log file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public ActionLogWriter(StateStore store, Path file) throws IOException {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		final boolean exists = Files.exists(file) && Files.size(file) > 0L;
+		final OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		if (!exists)
+			this.out.writeInt(MAGIC);
+		this.store = store;
+		this.store.addCommitListener(this);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void onCommit(Commit commit) {
+		final Action action = commit.getAction();
+		if (action == null)
+			return;
+		final List<Action> actions;
+		if (action.getType().equals(Transaction.TRANSACTION_ACTION)
+				|| action.getType().equals(ReplayEngine.REPLAY_ACTION))
+			actions = action.hasPayload() ? (List<Action>) action.getPayloadOrNull() : Collections.emptyList();
+		else if (action.getType().startsWith(INTERNAL_PREFIX))
+			actions = Collections.singletonList(Action.create(DELTA_ACTION, commit.getDelta()));
+		else
+			actions = Collections.singletonList(action);
+		append(commit.getVersion(), commit.getTimestamp(), actions);
+	}
+
+	private synchronized void append(long version, long timestamp, List<Action> actions) {
+		try {
+			this.record.reset();
+			this.recordOut.writeLong(version);
+			this.recordOut.writeLong(timestamp);
+			this.recordOut.writeInt(actions.size());
+			for (Action action : actions) {
+				StateCodec.writeAction(this.recordOut, action);
+			}
+			this.recordOut.flush();
+			this.out.writeInt(this.record.size());
+			this.record.writeTo(this.out);
+			this.recordCount++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to log committed actions", e);
+		}
+	}
+
+	/**
+	 * @return The number of records written by this writer.
+	 */
+	public synchronized long getRecordCount() {
+		return this.recordCount;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		this.out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.store.removeCommitListener(this);
+		this.out.close();
+	}
+}
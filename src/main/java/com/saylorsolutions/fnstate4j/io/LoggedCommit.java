@@ -0,0 +1,65 @@
+package com.saylorsolutions.fnstate4j.io;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+import com.saylorsolutions.fnstate4j.Action;
+
+/**
+ * One record of an action log: the {@code Action}s of a single commit, with the
+ * version and time of the commit. A transaction commit holds every
+ * {@code Action} of the transaction, any other commit holds exactly one.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class LoggedCommit {
+	private final long version;
+	private final long timestamp;
+	private final List<Action> actions;
+
+	LoggedCommit(long version, long timestamp, List<Action> actions) {
+		this.version = version;
+		this.timestamp = timestamp;
+		this.actions = Collections.unmodifiableList(actions);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return When the commit was logged, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public List<Action> getActions() {
+		return actions;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LoggedCommit [version='%d', timestamp='%d', actions='%s']", version, timestamp, actions);
+	}
+}
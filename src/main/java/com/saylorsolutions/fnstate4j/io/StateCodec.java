@@ -0,0 +1,338 @@
+package com.saylorsolutions.fnstate4j.io;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.DeferredValue;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+
+/**
+ * Binary encoding for {@code State}s, {@code StateDelta}s, and {@code Action}s.
+ * Strings, boxed primitives, and byte arrays have a compact encoding. Any other
+ * value must be {@code Serializable}, and is written with Java serialization.
+ * {@code DeferredValue}s are resolved and their value is written.
+ * <p>
+ * Serialized values may only be made of classes in an allowed package, which
+ * are {@code java.lang}, {@code java.util}, {@code java.time},
+ * {@code java.math}, VAVR, and this library by default. Other packages must be
+ * allowed with {@code allowPackages} before their classes can be read. Even
+ * with the allow-list, Java serialization runs code of the allowed classes
+ * while reading, so only decode data from a trusted source.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class StateCodec {
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte BYTES = 6;
+	private static final byte SERIALIZED = 7;
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	private static final CopyOnWriteArrayList<String> ALLOWED_PACKAGES = new CopyOnWriteArrayList<>(
+			Arrays.asList("java.lang.", "java.util.", "java.time.", "java.math.", "io.vavr.",
+					"com.saylorsolutions.fnstate4j."));
+
+	private StateCodec() {
+	}
+
+	/**
+	 * Allows classes in the given packages, and their sub-packages, to be read from
+	 * serialized values.
+	 *
+	 * @param packageNames The package names, like {@code "com.example.model"}.
+	 */
+	public static void allowPackages(String... packageNames) {
+		for (String packageName : packageNames) {
+			Objects.requireNonNull(packageName, "Package names must not be null");
+			ALLOWED_PACKAGES.addIfAbsent(packageName.endsWith(".") ? packageName : packageName + ".");
+		}
+	}
+
+	/**
+	 * @param className A class name as found in a serialized stream, which may be
+	 *                  an array type.
+	 * @return Whether the class may be read from serialized values.
+	 */
+	static boolean isAllowed(String className) {
+		String name = className;
+		while (name.startsWith("["))
+			name = name.substring(1);
+		if (name.length() == 1)
+			return true; // An array of primitives
+		if (name.startsWith("L") && name.endsWith(";"))
+			name = name.substring(1, name.length() - 1);
+		for (String allowed : ALLOWED_PACKAGES) {
+			if (name.startsWith(allowed))
+				return true;
+		}
+		return false;
+	}
+
+	public static void writeString(DataOutput out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param out   The output to write to.
+	 * @param value The value to write, may be null.
+	 * @throws IOException If the value can't be written, or isn't
+	 *                     {@code Serializable} and has no compact encoding.
+	 */
+	public static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value instanceof DeferredValue) {
+			writeValue(out, ((DeferredValue) value).resolve());
+		} else if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof byte[]) {
+			final byte[] bytes = (byte[]) value;
+			out.writeByte(BYTES);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else if (value instanceof Serializable) {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			try (ObjectOutputStream objects = new ObjectOutputStream(buffer)) {
+				objects.writeObject(value);
+			}
+			out.writeByte(SERIALIZED);
+			out.writeInt(buffer.size());
+			out.write(buffer.toByteArray());
+		} else {
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
+	public static Object readValue(DataInput in) throws IOException {
+		final byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case DOUBLE:
+			return in.readDouble();
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTES:
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return bytes;
+		case SERIALIZED:
+			final byte[] serialized = new byte[in.readInt()];
+			in.readFully(serialized);
+			try (ObjectInputStream objects = new AllowListInputStream(new ByteArrayInputStream(serialized))) {
+				return objects.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unable to decode value", e);
+			}
+		default:
+			throw new IOException(String.format("Unknown value tag '%d'", tag));
+		}
+	}
+
+	public static void writeEntries(DataOutput out, Map<String, Object> entries) throws IOException {
+		out.writeInt(entries.size());
+		for (Tuple2<String, Object> entry : entries) {
+			writeString(out, entry._1);
+			writeValue(out, entry._2);
+		}
+	}
+
+	public static Map<String, Object> readEntries(DataInput in) throws IOException {
+		final int size = in.readInt();
+		final java.util.Map<String, Object> entries = new java.util.HashMap<>(size * 2);
+		for (int i = 0; i < size; i++) {
+			final String key = readString(in);
+			entries.put(key, readValue(in));
+		}
+		return HashMap.ofAll(entries);
+	}
+
+	/**
+	 * Writes the entries of the {@code State}. History is not written.
+	 *
+	 * @param out   The output to write to.
+	 * @param state The state to write.
+	 * @throws IOException If any value can't be written.
+	 */
+	public static void writeState(DataOutput out, State state) throws IOException {
+		writeEntries(out, state.getStateMap());
+	}
+
+	public static State readState(DataInput in) throws IOException {
+		return State.of(readEntries(in));
+	}
+
+	public static void writeDelta(DataOutput out, StateDelta delta) throws IOException {
+		writeEntries(out, delta.getPuts());
+		out.writeInt(delta.getRemovedKeys().size());
+		for (String key : delta.getRemovedKeys()) {
+			writeString(out, key);
+		}
+	}
+
+	public static StateDelta readDelta(DataInput in) throws IOException {
+		final Map<String, Object> puts = readEntries(in);
+		final int removedCount = in.readInt();
+		Set<String> removed = HashSet.empty();
+		for (int i = 0; i < removedCount; i++) {
+			removed = removed.add(readString(in));
+		}
+		return StateDelta.of(puts, removed);
+	}
+
+	/**
+	 * Computes a checksum of the entries of a {@code State}, independent of the
+	 * order of its map, so that states built in different ways or processes can
+	 * be compared cheaply.
+	 *
+	 * @param state The state to check.
+	 * @return The CRC32 of the encoded entries, sorted by key.
+	 * @throws IOException If a value can't be encoded.
+	 */
+	public static long checksum(State state) throws IOException {
+		final CRC32 crc = new CRC32();
+		final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(NULL_OUTPUT, crc));
+		for (String key : new TreeSet<>(state.keySet().toJavaSet())) {
+			writeString(out, key);
+			writeValue(out, state.getOrNull(key));
+		}
+		out.flush();
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the type and payload of an {@code Action}. The payload of a logged
+	 * {@code DELTA_ACTION} is written as a delta, any other payload as a value.
+	 *
+	 * @param out    Where the action is written.
+	 * @param action The action to write.
+	 * @throws IOException If the action can't be written.
+	 * @see ActionLogWriter#DELTA_ACTION
+	 */
+	public static void writeAction(DataOutput out, Action action) throws IOException {
+		writeString(out, action.getType());
+		if (ActionLogWriter.DELTA_ACTION.equals(action.getType()))
+			writeDelta(out, (StateDelta) action.getPayloadOrNull());
+		else
+			writeValue(out, action.getPayloadOrNull());
+	}
+
+	public static Action readAction(DataInput in) throws IOException {
+		final String type = readString(in);
+		if (ActionLogWriter.DELTA_ACTION.equals(type))
+			return Action.create(type, readDelta(in));
+		return Action.create(type, readValue(in));
+	}
+
+	/**
+	 * Refuses to load classes outside of the allowed packages, before any of their
+	 * code can run.
+	 */
+	private static final class AllowListInputStream extends ObjectInputStream {
+		private AllowListInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (!isAllowed(desc.getName()))
+				throw new InvalidClassException(desc.getName(), "Class is not in an allowed package");
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			for (String name : interfaces) {
+				if (!isAllowed(name))
+					throw new InvalidClassException(name, "Interface is not in an allowed package");
+			}
+			return super.resolveProxyClass(interfaces);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package com.saylorsolutions.fnstate4j.metrics;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.saylorsolutions.fnstate4j.Action;
+
+/**
+ * A ring of the most recently dispatched {@code Action}s, with what happened to
+ * each of them, meant to stay enabled in production. Every slot is allocated up
+ * front and recording is lock free and never allocates, so the cost per action
+ * is a handful of ordered array writes.
+ * <p>
+ * A dump is a consistent copy of the entries that weren't being overwritten
+ * while it was taken, oldest first. It can be taken at any time, and is written
+ * automatically when an {@code Action} fails if {@code dumpOnError} was given
+ * somewhere to write it.
+ *
+ * <pre>
+ * FlightRecorder recorder = new FlightRecorder(4096);
+ * recorder.dumpOnError(System.err);
+ * store.setFlightRecorder(recorder);
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class FlightRecorder {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * What happened to a recorded {@code Action}.
+	 */
+	public static enum Verdict {
+		/** A new version of the {@code State} was committed. */
+		COMMITTED,
+		/** The reducers returned an equal {@code State}, so nothing was committed. */
+		UNCHANGED,
+		/** A {@code Middleware} stopped the {@code Action}. */
+		REJECTED,
+		/** A {@code Middleware} or {@code Reducer} threw. */
+		FAILED
+	}
+
+	private static final Verdict[] VERDICTS = Verdict.values();
+	private static final long WRITING = -1L;
+
+	private final int mask;
+	private final AtomicLong next = new AtomicLong();
+	/*
+	 * The sequence number of the entry in each slot, or WRITING while it's
+	 * written. The fields are atomic arrays only for their ordering guarantees, so
+	 * that a reader that saw the same sequence before and after copying a slot knows
+	 * the copy isn't torn. Only a writer lapping the whole ring while another is
+	 * still writing the same slot can mix two entries.
+	 */
+	private final AtomicLongArray published;
+	private final AtomicReferenceArray<Action> actions;
+	private final AtomicLongArray epochMillis;
+	private final AtomicLongArray reduceNanos;
+	private final AtomicLongArray versions;
+	private final AtomicLongArray threadIds;
+	private final AtomicIntegerArray verdicts;
+	private volatile Appendable errorOutput;
+
+	public FlightRecorder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity The number of actions to keep, rounded up to a power of 2.
+	 */
+	public FlightRecorder(int capacity) {
+		if (capacity < 1 || capacity > (1 << 24))
+			throw new IllegalArgumentException("'capacity' parameter must be between 1 and 2^24");
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.published.set(i, WRITING);
+		}
+		this.actions = new AtomicReferenceArray<>(size);
+		this.epochMillis = new AtomicLongArray(size);
+		this.reduceNanos = new AtomicLongArray(size);
+		this.versions = new AtomicLongArray(size);
+		this.threadIds = new AtomicLongArray(size);
+		this.verdicts = new AtomicIntegerArray(size);
+	}
+
+	/**
+	 * @param action      The dispatched action.
+	 * @param verdict     What happened to it.
+	 * @param reduceNanos How long the reducers took, 0 if they didn't run.
+	 * @param version     The store's version after the action.
+	 */
+	public void record(Action action, Verdict verdict, long reduceNanos, long version) {
+		final long sequence = this.next.getAndIncrement();
+		final int slot = (int) (sequence & this.mask);
+		this.published.set(slot, WRITING);
+		this.actions.lazySet(slot, action);
+		this.epochMillis.lazySet(slot, System.currentTimeMillis());
+		this.reduceNanos.lazySet(slot, reduceNanos);
+		this.versions.lazySet(slot, version);
+		this.threadIds.lazySet(slot, Thread.currentThread().getId());
+		this.verdicts.lazySet(slot, verdict.ordinal());
+		this.published.lazySet(slot, sequence);
+		if (verdict == Verdict.FAILED) {
+			final Appendable output = this.errorOutput;
+			if (output != null)
+				dumpFailure(output);
+		}
+	}
+
+	/**
+	 * Recording happens while the failure is being thrown, so a dump that can't be
+	 * written must not replace it.
+	 */
+	private void dumpFailure(Appendable output) {
+		try {
+			dump(output);
+		} catch (RuntimeException e) {
+			final Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	/**
+	 * A dump that can't be written is reported to the uncaught exception handler
+	 * of the thread that recorded the failure, and the failure itself is thrown
+	 * as usual.
+	 *
+	 * @param output Where to write a dump whenever an {@code Action} fails, or
+	 *               null to stop.
+	 */
+	public void dumpOnError(Appendable output) {
+		this.errorOutput = output;
+	}
+
+	/**
+	 * @return The recorded entries, oldest first.
+	 */
+	public List<Entry> snapshot() {
+		final List<Entry> entries = new ArrayList<>(getCapacity());
+		for (int slot = 0; slot < getCapacity(); slot++) {
+			final long sequence = this.published.get(slot);
+			if (sequence == WRITING)
+				continue;
+			final Entry entry = new Entry(sequence, this.actions.get(slot), this.epochMillis.get(slot),
+					this.reduceNanos.get(slot), this.versions.get(slot), this.threadIds.get(slot),
+					VERDICTS[this.verdicts.get(slot)]);
+			// Only keep the copy if the slot wasn't reused while it was read.
+			if (this.published.get(slot) == sequence)
+				entries.add(entry);
+		}
+		Collections.sort(entries, Comparator.comparingLong(Entry::getSequence));
+		return entries;
+	}
+
+	/**
+	 * Writes the recorded entries, oldest first, one per line.
+	 *
+	 * @param output Where to write the entries.
+	 * @throws UncheckedIOException If the output can't be written.
+	 */
+	public void dump(Appendable output) {
+		final List<Entry> entries = snapshot();
+		try {
+			output.append(String.format("FlightRecorder: %d of %d recorded actions%n", entries.size(),
+					this.next.get()));
+			for (Entry entry : entries) {
+				output.append(entry.toString()).append(System.lineSeparator());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write flight recorder dump", e);
+		}
+	}
+
+	/**
+	 * @return The number of actions recorded since this recorder was created,
+	 *         including the ones that were overwritten.
+	 */
+	public long getRecordedCount() {
+		return this.next.get();
+	}
+
+	public int getCapacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * A copy of one recorded {@code Action}.
+	 */
+	public static final class Entry {
+		private final long sequence;
+		private final Action action;
+		private final long epochMillis;
+		private final long reduceNanos;
+		private final long version;
+		private final long threadId;
+		private final Verdict verdict;
+
+		private Entry(long sequence, Action action, long epochMillis, long reduceNanos, long version, long threadId,
+				Verdict verdict) {
+			this.sequence = sequence;
+			this.action = action;
+			this.epochMillis = epochMillis;
+			this.reduceNanos = reduceNanos;
+			this.version = version;
+			this.threadId = threadId;
+			this.verdict = verdict;
+		}
+
+		/**
+		 * @return The position of the entry among everything recorded, starting at
+		 *         0.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		public Action getAction() {
+			return action;
+		}
+
+		public Instant getTimestamp() {
+			return Instant.ofEpochMilli(epochMillis);
+		}
+
+		public long getReduceNanos() {
+			return reduceNanos;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public long getThreadId() {
+			return threadId;
+		}
+
+		public Verdict getVerdict() {
+			return verdict;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("#%d %s v%d %s %dus thread=%d %s", sequence, getTimestamp(), version, verdict,
+					TimeUnit.NANOSECONDS.toMicros(reduceNanos), threadId, action);
+		}
+	}
+}
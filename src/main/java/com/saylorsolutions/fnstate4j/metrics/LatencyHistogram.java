@@ -0,0 +1,130 @@
+package com.saylorsolutions.fnstate4j.metrics;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, lock free histogram of durations in nanoseconds. Values are
+ * grouped into buckets that are at most 1/8 of their lower bound wide, so any
+ * reported percentile is within 12.5% of the recorded value, across the whole
+ * range of {@code long}. Recording never allocates.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos The duration to record, negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+		final long value = Math.max(0L, nanos);
+		this.buckets.incrementAndGet(indexOf(value));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+		this.max.accumulateAndGet(value, Math::max);
+	}
+
+	public void record(long duration, TimeUnit unit) {
+		record(unit.toNanos(duration));
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR_LIMIT)
+			return (int) value;
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < LINEAR_LIMIT)
+			return index;
+		final int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		final long mantissa = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+		final int shift = exponent - SUB_BUCKET_BITS;
+		return mantissa + 1 >= (1L << (63 - shift)) ? Long.MAX_VALUE : ((mantissa + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public long getMaxNanos() {
+		return this.max.get();
+	}
+
+	public double getMeanNanos() {
+		final long n = this.count.get();
+		return n == 0L ? 0.0 : (double) this.sum.get() / n;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100.
+	 * @return The upper bound of the bucket holding the given percentile, capped
+	 *         at the largest recorded value. 0 if nothing was recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0)
+			throw new IllegalArgumentException("'percentile' parameter must be between 0 and 100");
+		final long n = this.count.get();
+		if (n == 0L)
+			return 0L;
+		final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += this.buckets.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), this.max.get());
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Clears all recorded values. Values recorded concurrently may or may not
+	 * survive the reset.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets.set(i, 0L);
+		}
+		this.count.set(0L);
+		this.sum.set(0L);
+		this.max.set(0L);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LatencyHistogram [count='%d', p50='%d', p99='%d', max='%d']", getCount(),
+				getPercentileNanos(50.0), getPercentileNanos(99.0), getMaxNanos());
+	}
+}
@@ -0,0 +1,60 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a region of a chunk with absolute gets, so concurrent readers don't
+ * share a buffer position.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class ChunkInputStream extends InputStream {
+	private final ByteBuffer chunk;
+	private final int end;
+	private int position;
+
+	ChunkInputStream(ByteBuffer chunk, int offset, int length) {
+		this.chunk = chunk;
+		this.position = offset;
+		this.end = offset + length;
+	}
+
+	@Override
+	public int read() {
+		if (position >= end)
+			return -1;
+		return chunk.get(position++) & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int off, int len) {
+		if (position >= end)
+			return -1;
+		final int count = Math.min(len, end - position);
+		for (int i = 0; i < count; i++) {
+			bytes[off + i] = chunk.get(position++);
+		}
+		return count;
+	}
+}
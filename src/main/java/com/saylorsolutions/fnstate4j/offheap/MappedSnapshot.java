@@ -0,0 +1,342 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+
+/**
+ * A {@code State} snapshot file that is memory-mapped instead of read. Opening
+ * a snapshot only reads its header, and {@code get} finds a single key with a
+ * binary search of the on-disk index. The {@code State} is only built the first
+ * time {@code getState} is called, which reads every key but no values; each
+ * value is decoded the first time it's read from the {@code State} and kept on
+ * the heap after that. Values put into the {@code State} replace the mapped
+ * ones as usual, so nothing is ever written back to the file.
+ * <p>
+ * The file starts with a header holding a magic number, the format version,
+ * the store version the snapshot was taken at, and a timestamp. The encoded
+ * values follow, then the index entries of key and value position, sorted by
+ * key, and last the position of each index entry. A snapshot file is limited
+ * to 2GB, the most a single mapping can hold.
+ *
+ * <pre>
+ * MappedSnapshot.write(path, store.getState(), store.getVersion());
+ * StateStore restored = new StateStore(MappedSnapshot.open(path).getState(), reducer, null);
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class MappedSnapshot {
+	public static final int MAGIC = 0x464E5353;
+	public static final short FORMAT_VERSION = 2;
+
+	private static final int HEADER_SIZE = 34;
+	private static final int INDEX_OFFSET_POSITION = 26;
+
+	private final Path file;
+	private final ByteBuffer mapped;
+	private final long version;
+	private final long timestamp;
+	private final int entryCount;
+	private final int indexOffset;
+	private final AtomicLong decodedCount = new AtomicLong();
+	private volatile State state; // Built on first use
+
+	private MappedSnapshot(Path file, ByteBuffer mapped, long version, long timestamp, int entryCount,
+			int indexOffset) {
+		this.file = file;
+		this.mapped = mapped;
+		this.version = version;
+		this.timestamp = timestamp;
+		this.entryCount = entryCount;
+		this.indexOffset = indexOffset;
+	}
+
+	/**
+	 * Writes a snapshot to a temporary file next to the target, then moves it into
+	 * place so that readers never map a partially written snapshot.
+	 *
+	 * @param file    The snapshot file, replaced if it exists.
+	 * @param state   The state to write. History is not written.
+	 * @param version The store version the state belongs to.
+	 * @throws IOException If the file can't be written, or a value can't be
+	 *                     encoded.
+	 */
+	public static void write(Path file, State state, long version) throws IOException {
+		write(file, state, version, System.currentTimeMillis());
+	}
+
+	/**
+	 * Writes a snapshot of a committed state, stamped with the time of the commit
+	 * rather than the time it was written, so it can be found by time in a
+	 * {@code JournalIndex}.
+	 *
+	 * @param file   The snapshot file, replaced if it exists.
+	 * @param commit The commit whose state to write.
+	 * @throws IOException If the file can't be written, or a value can't be
+	 *                     encoded.
+	 * @see com.saylorsolutions.fnstate4j.history.JournalIndex
+	 */
+	public static void write(Path file, Commit commit) throws IOException {
+		Objects.requireNonNull(commit, "'commit' parameter must not be null");
+		write(file, commit.getState(), commit.getVersion(), commit.getTimestamp());
+	}
+
+	private static void write(Path file, State state, long version, long timestamp) throws IOException {
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		Objects.requireNonNull(state, "'state' parameter must not be null");
+		final Path absolute = file.toAbsolutePath();
+		final Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				final long indexOffset = writeBody(channel, state, version, timestamp);
+				final ByteBuffer patch = ByteBuffer.allocate(8).putLong(0, indexOffset);
+				channel.write(patch, INDEX_OFFSET_POSITION);
+				channel.force(true);
+			}
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static long writeBody(FileChannel channel, State state, long version, long timestamp)
+			throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeShort(FORMAT_VERSION);
+		out.writeLong(version);
+		out.writeLong(timestamp);
+		out.writeInt(state.size());
+		out.writeLong(0L); // Index offset, patched once the values are written
+
+		final List<Tuple2<String, Object>> entries = new ArrayList<>(state.size());
+		for (Tuple2<String, Object> entry : state.getStateMap()) {
+			entries.add(entry);
+		}
+		entries.sort(Comparator.comparing(entry -> entry._1));
+		final int[] positions = new int[entries.size() + 1];
+		for (int i = 0; i < entries.size(); i++) {
+			positions[i] = out.size();
+			StateCodec.writeValue(out, entries.get(i)._2);
+			if (out.size() == Integer.MAX_VALUE)
+				throw new IOException("Snapshot exceeds the 2GB that can be mapped");
+		}
+		positions[entries.size()] = out.size();
+
+		final int[] entryPositions = new int[entries.size()];
+		for (int i = 0; i < entries.size(); i++) {
+			entryPositions[i] = out.size();
+			StateCodec.writeString(out, entries.get(i)._1);
+			out.writeInt(positions[i]);
+			out.writeInt(positions[i + 1] - positions[i]);
+		}
+		final int indexOffset = out.size();
+		for (int position : entryPositions) {
+			out.writeInt(position);
+		}
+		if (out.size() == Integer.MAX_VALUE)
+			throw new IOException("Snapshot exceeds the 2GB that can be mapped");
+		out.flush();
+		return indexOffset;
+	}
+
+	/**
+	 * Maps a snapshot file. Only the header is read.
+	 *
+	 * @param file The snapshot file.
+	 * @return The opened snapshot.
+	 * @throws IOException If the file can't be mapped, or isn't a snapshot in a
+	 *                     supported format.
+	 */
+	public static MappedSnapshot open(Path file) throws IOException {
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		final MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot exceeds the 2GB that can be mapped");
+			mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC)
+			throw new IOException(String.format("'%s' is not a snapshot file", file));
+		final short format = mapped.getShort(4);
+		if (format != FORMAT_VERSION)
+			throw new IOException(String.format("Unsupported snapshot format '%d'", format));
+		final long version = mapped.getLong(6);
+		final long timestamp = mapped.getLong(14);
+		final int entryCount = mapped.getInt(22);
+		final long indexOffset = mapped.getLong(INDEX_OFFSET_POSITION);
+		if (entryCount < 0 || indexOffset < HEADER_SIZE
+				|| indexOffset + 4L * entryCount != mapped.capacity())
+			throw new IOException(String.format("Snapshot '%s' is incomplete", file));
+		return new MappedSnapshot(file, mapped, version, timestamp, entryCount, (int) indexOffset);
+	}
+
+	/**
+	 * Looks up a single key in the on-disk index, without building the
+	 * {@code State}. Once {@code getState} has been called, the value is taken
+	 * from the {@code State} instead, so it's only decoded once.
+	 *
+	 * @param key The key to look up.
+	 * @return The decoded value, empty if the key isn't in the snapshot or its
+	 *         value is null.
+	 * @throws UncheckedIOException If the index or the value is corrupt.
+	 */
+	public Optional<Object> get(String key) {
+		Objects.requireNonNull(key, "'key' parameter must not be null");
+		final State built = this.state;
+		if (built != null)
+			return built.get(key);
+		try {
+			int low = 0;
+			int high = this.entryCount - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				final DataInputStream entry = entryAt(middle);
+				final int compared = StateCodec.readString(entry).compareTo(key);
+				if (compared < 0) {
+					low = middle + 1;
+				} else if (compared > 0) {
+					high = middle - 1;
+				} else {
+					return Optional.ofNullable(valueAt(entry).resolve());
+				}
+			}
+			return Optional.empty();
+		} catch (IOException e) {
+			throw new UncheckedIOException(String.format("Snapshot '%s' has a corrupt index", this.file), e);
+		}
+	}
+
+	/**
+	 * Builds the snapshot's state on the first call, reading every key of the
+	 * index, but none of the values.
+	 *
+	 * @return The snapshot's state, with values that are decoded on first read.
+	 * @throws UncheckedIOException If the index is corrupt.
+	 */
+	public State getState() {
+		State built = this.state;
+		if (built != null)
+			return built;
+		synchronized (this) {
+			built = this.state;
+			if (built == null) {
+				try {
+					HashMap<String, Object> entries = HashMap.empty();
+					for (int i = 0; i < this.entryCount; i++) {
+						final DataInputStream entry = entryAt(i);
+						final String key = StateCodec.readString(entry);
+						entries = entries.put(key, valueAt(entry));
+					}
+					built = State.of(entries);
+				} catch (IOException e) {
+					throw new UncheckedIOException(String.format("Snapshot '%s' has a corrupt index", this.file), e);
+				}
+				this.state = built;
+			}
+			return built;
+		}
+	}
+
+	/**
+	 * @return A stream positioned at the key of the index entry with the given
+	 *         rank.
+	 */
+	private DataInputStream entryAt(int rank) throws IOException {
+		final int position = this.mapped.getInt(this.indexOffset + 4 * rank);
+		if (position < HEADER_SIZE || position >= this.indexOffset)
+			throw new IOException("Index entry out of bounds");
+		return new DataInputStream(new ChunkInputStream(this.mapped, position, this.indexOffset - position));
+	}
+
+	/**
+	 * @param entry An index entry stream that has just read the key.
+	 */
+	private MappedValue valueAt(DataInputStream entry) throws IOException {
+		final int offset = entry.readInt();
+		final int length = entry.readInt();
+		if (offset < HEADER_SIZE || length < 0 || offset + length > this.indexOffset)
+			throw new IOException("Value out of bounds");
+		return new MappedValue(this.mapped, offset, length, this.decodedCount);
+	}
+
+	public Path getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return The store version the snapshot was taken at.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return When the snapshot's state was committed, or when the snapshot was
+	 *         written if it was written from a bare {@code State}, in epoch
+	 *         milliseconds.
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * @return How many values have been decoded from the mapping so far.
+	 */
+	public long getDecodedCount() {
+		return this.decodedCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MappedSnapshot [file='%s', version='%d', entries='%d', decoded='%d']", this.file,
+				this.version, this.entryCount, this.decodedCount.get());
+	}
+}
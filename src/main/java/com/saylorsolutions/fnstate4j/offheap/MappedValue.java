@@ -0,0 +1,83 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.saylorsolutions.fnstate4j.DeferredValue;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * Reference to a value in a memory-mapped snapshot. Unlike an
+ * {@code OffHeapValue}, the value is decoded on the first call to
+ * {@code resolve} and kept on the heap from then on.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class MappedValue implements DeferredValue {
+	private static final Object UNDECODED = new Object();
+
+	private final ByteBuffer mapped;
+	private final int offset;
+	private final int length;
+	private final AtomicLong decodedCount;
+	private volatile Object value = UNDECODED;
+
+	MappedValue(ByteBuffer mapped, int offset, int length, AtomicLong decodedCount) {
+		this.mapped = mapped;
+		this.offset = offset;
+		this.length = length;
+		this.decodedCount = decodedCount;
+	}
+
+	@Override
+	public Object resolve() {
+		Object current = this.value;
+		if (current != UNDECODED)
+			return current;
+		synchronized (this) {
+			current = this.value;
+			if (current == UNDECODED) {
+				try {
+					current = StateCodec.readValue(new DataInputStream(new ChunkInputStream(mapped, offset, length)));
+				} catch (IOException e) {
+					throw new UncheckedIOException("Unable to decode mapped value", e);
+				}
+				this.value = current;
+				this.decodedCount.incrementAndGet();
+			}
+			return current;
+		}
+	}
+
+	boolean isDecoded() {
+		return this.value != UNDECODED;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MappedValue [offset='%d', length='%d', decoded='%b']", offset, length, isDecoded());
+	}
+}
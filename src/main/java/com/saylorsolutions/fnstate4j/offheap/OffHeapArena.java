@@ -0,0 +1,430 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.ValueStore;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+import io.vavr.Tuple2;
+
+/**
+ * An off-heap value cache: a {@code ValueStore} that moves large values out of
+ * the heap, by encoding them with {@code StateCodec} into large off-heap chunks,
+ * either direct {@code ByteBuffer}s or regions of a memory-mapped file.
+ * <p>
+ * This is not an off-heap {@code State}. Every entry keeps its key and map node
+ * on the heap, so the number of objects the garbage collector traces doesn't go
+ * down. What it saves is the heap taken by values that are large compared to an
+ * entry. Values whose encoding is smaller than the minimum size, including every
+ * boxed primitive by default, are kept in the map as they are, since a
+ * reference to them would cost more than the value. A stored value is replaced
+ * by a flyweight that holds nothing but the arena and a single {@code long}
+ * address. Decoding a value allocates it again, so the most recently read
+ * values are kept in a small cache, and reading the same value twice in a row
+ * usually returns the same instance.
+ * <p>
+ * The arena is append-only until {@code reclaim} is called, so older versions
+ * of a {@code State} can still read every value they refer to. Reclaiming
+ * releases every chunk that the given live states don't refer to. Direct chunks
+ * are then freed by the garbage collector, and regions of a mapped file are
+ * reused for new chunks.
+ *
+ * <pre>
+ * State state = OffHeapArena.direct(OffHeapArena.DEFAULT_CHUNK_SIZE).newState();
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class OffHeapArena implements ValueStore, Closeable {
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+	/**
+	 * Values with a smaller encoding are kept in the map by default.
+	 */
+	public static final int DEFAULT_MINIMUM_SIZE = 64;
+	/**
+	 * How many decoded values are kept on the heap.
+	 */
+	private static final int CACHE_BITS = 10;
+	public static final int CACHE_SIZE = 1 << CACHE_BITS;
+	private static final int SLOT_BITS = 20;
+	private static final int GENERATION_MASK = 0xFFF;
+
+	private final int chunkSize;
+	private final FileChannel channel;
+	private volatile int minimumSize = DEFAULT_MINIMUM_SIZE;
+	private final AtomicReferenceArray<Decoded> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+	private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(16);
+	private int[] generations = new int[16]; // Bumped whenever a slot is released
+	private int slotCount; // Slots ever used
+	private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+	private final List<long[]> freeRegions = new ArrayList<>(); // Offset and size of released file regions
+	private Chunk current;
+	private long mappedBytes;
+	private long usedBytes;
+	private long allocatedBytes;
+	private int chunkCount;
+	private long valueCount;
+	private long reclaimedChunkCount;
+
+	private OffHeapArena(int chunkSize, FileChannel channel) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("'chunkSize' parameter must be at least 1");
+		this.chunkSize = chunkSize;
+		this.channel = channel;
+	}
+
+	/**
+	 * @param chunkSize The size of each direct {@code ByteBuffer} to allocate.
+	 *                  Larger values get a chunk of their own.
+	 * @return A new arena backed by direct memory.
+	 */
+	public static OffHeapArena direct(int chunkSize) {
+		return new OffHeapArena(chunkSize, null);
+	}
+
+	/**
+	 * @param file      The file to map chunks from. It is created if necessary,
+	 *                  and truncated.
+	 * @param chunkSize The size of each region to map. Larger values get a region
+	 *                  of their own.
+	 * @return A new arena backed by a memory-mapped file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static OffHeapArena mapped(Path file, int chunkSize) throws IOException {
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		return new OffHeapArena(chunkSize, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Sets the size of the smallest encoded value that's moved off the heap.
+	 * Smaller values stay in the {@code State}'s map as they are.
+	 *
+	 * @param bytes The minimum encoded size, 0 to move every non-null value.
+	 * @return This arena.
+	 */
+	public OffHeapArena withMinimumSize(int bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("'bytes' parameter must not be negative");
+		this.minimumSize = bytes;
+		return this;
+	}
+
+	public int getMinimumSize() {
+		return this.minimumSize;
+	}
+
+	/**
+	 * @return An empty {@code State} that keeps its values in this arena.
+	 */
+	public State newState() {
+		return new State().withValueStore(this);
+	}
+
+	/**
+	 * Values are encoded on the calling thread, and the arena is only locked to
+	 * copy the encoded bytes into a chunk.
+	 *
+	 * @return A reference to the value in the arena, or the value itself if it's
+	 *         smaller than the minimum size.
+	 */
+	@Override
+	public Object store(Object value) {
+		final int minimum = this.minimumSize;
+		if (value == null || minimum > 9 && isCompact(value)
+				|| value instanceof String && ((String) value).length() * 3 + 5 < minimum)
+			return value;
+		final byte[] bytes;
+		try {
+			final ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(32, minimum));
+			final DataOutputStream out = new DataOutputStream(encoded);
+			StateCodec.writeValue(out, value);
+			out.flush();
+			if (encoded.size() < minimum)
+				return value;
+			bytes = encoded.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to encode value for off-heap storage", e);
+		}
+		return new OffHeapValue(this, append(bytes));
+	}
+
+	/**
+	 * @return Whether the value's encoding takes 9 bytes at most.
+	 */
+	private static boolean isCompact(Object value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Double
+				|| value instanceof Boolean;
+	}
+
+	private synchronized long append(byte[] bytes) {
+		final int needed = Integer.BYTES + bytes.length;
+		if (this.current == null || this.current.buffer.remaining() < needed)
+			this.current = allocate(Math.max(this.chunkSize, needed));
+		final ByteBuffer buffer = this.current.buffer;
+		final int offset = buffer.position();
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		this.current.used += needed;
+		this.usedBytes += needed;
+		this.valueCount++;
+		return address(this.current, offset);
+	}
+
+	private static long address(Chunk chunk, int offset) {
+		return (long) chunk.slot << (64 - SLOT_BITS) | (long) chunk.generation << 32 | offset;
+	}
+
+	private static int slotOf(long address) {
+		return (int) (address >>> (64 - SLOT_BITS));
+	}
+
+	private static int generationOf(long address) {
+		return (int) (address >>> 32) & GENERATION_MASK;
+	}
+
+	private Chunk allocate(int size) {
+		final Integer free = this.freeSlots.poll();
+		final int slot;
+		if (free != null) {
+			slot = free;
+		} else {
+			if (this.slotCount == 1 << SLOT_BITS)
+				throw new IllegalStateException("Off-heap arena has too many chunks, reclaim some or use larger chunks");
+			slot = this.slotCount++;
+			if (slot == this.generations.length) {
+				this.generations = Arrays.copyOf(this.generations, slot * 2);
+				final AtomicReferenceArray<Chunk> grown = new AtomicReferenceArray<>(slot * 2);
+				for (int i = 0; i < slot; i++) {
+					grown.set(i, this.chunks.get(i));
+				}
+				this.chunks = grown;
+			}
+		}
+		final long[] region = this.channel == null ? null : takeRegion(size);
+		final Chunk chunk = new Chunk(slot, this.generations[slot], map(region, size),
+				region == null ? -1L : region[0]);
+		this.chunks.set(slot, chunk);
+		this.chunkCount++;
+		this.allocatedBytes += chunk.buffer.capacity();
+		return chunk;
+	}
+
+	/**
+	 * @return The offset and size of a released region of the file that's large
+	 *         enough, or of a new region at its end.
+	 */
+	private long[] takeRegion(int size) {
+		final Iterator<long[]> regions = this.freeRegions.iterator();
+		while (regions.hasNext()) {
+			final long[] region = regions.next();
+			if (region[1] >= size) {
+				regions.remove();
+				return region;
+			}
+		}
+		final long[] region = { this.mappedBytes, size };
+		this.mappedBytes += size;
+		return region;
+	}
+
+	private ByteBuffer map(long[] region, int size) {
+		if (region == null)
+			return ByteBuffer.allocateDirect(size);
+		try {
+			return this.channel.map(MapMode.READ_WRITE, region[0], region[1]);
+		} catch (IOException e) {
+			this.freeRegions.add(region);
+			throw new UncheckedIOException("Unable to map off-heap chunk", e);
+		}
+	}
+
+	/**
+	 * Decodes the value at the address, unless it was one of the most recently
+	 * read ones.
+	 *
+	 * @throws IllegalStateException If the value's chunk has been reclaimed.
+	 */
+	Object resolve(long address) {
+		final int index = ((int) (address ^ address >>> 32) * 0x9E3779B9) >>> (32 - CACHE_BITS);
+		final Decoded cached = this.cache.get(index);
+		if (cached != null && cached.address == address)
+			return cached.value;
+		final Chunk chunk = chunkAt(address);
+		final int offset = (int) address;
+		final Object value;
+		try {
+			final int length = chunk.buffer.getInt(offset);
+			value = StateCodec.readValue(
+					new DataInputStream(new ChunkInputStream(chunk.buffer, offset + Integer.BYTES, length)));
+		} catch (IOException | RuntimeException e) {
+			// A mapped region may have been reused while it was being read.
+			chunkAt(address);
+			throw e instanceof IOException ? new UncheckedIOException("Unable to decode off-heap value", (IOException) e)
+					: (RuntimeException) e;
+		}
+		// Garbage may also decode without an error.
+		chunkAt(address);
+		this.cache.set(index, new Decoded(address, value));
+		return value;
+	}
+
+	private Chunk chunkAt(long address) {
+		final AtomicReferenceArray<Chunk> current = this.chunks;
+		final int slot = slotOf(address);
+		final Chunk chunk = slot < current.length() ? current.get(slot) : null;
+		if (chunk == null || chunk.generation != generationOf(address))
+			throw new IllegalStateException("Off-heap value has been reclaimed");
+		return chunk;
+	}
+
+	/**
+	 * Releases every chunk that none of the given states refers to, except the
+	 * one new values are being written to. Only the given states are looked at,
+	 * not their previous versions. Reading a value of a released chunk from any
+	 * other {@code State}, including previous versions and detached copies kept
+	 * by listeners, throws an {@code IllegalStateException}.
+	 *
+	 * @param live The states that must stay readable.
+	 * @return The number of chunks released.
+	 */
+	public synchronized int reclaim(Collection<State> live) {
+		Objects.requireNonNull(live, "'live' parameter must not be null");
+		final boolean[] marked = new boolean[this.slotCount];
+		for (State state : live) {
+			for (Tuple2<String, Object> entry : state.getStateMap()) {
+				if (entry._2 instanceof OffHeapValue && ((OffHeapValue) entry._2).arena == this)
+					marked[slotOf(((OffHeapValue) entry._2).address)] = true;
+			}
+		}
+		int released = 0;
+		for (int slot = 0; slot < this.slotCount; slot++) {
+			final Chunk chunk = this.chunks.get(slot);
+			if (chunk == null || marked[slot] || chunk == this.current)
+				continue;
+			this.chunks.set(slot, null);
+			this.generations[slot] = (this.generations[slot] + 1) & GENERATION_MASK;
+			this.freeSlots.add(slot);
+			if (this.channel != null)
+				this.freeRegions.add(new long[] { chunk.fileOffset, chunk.buffer.capacity() });
+			this.chunkCount--;
+			this.allocatedBytes -= chunk.buffer.capacity();
+			this.usedBytes -= chunk.used;
+			released++;
+		}
+		if (released > 0) {
+			for (int i = 0; i < CACHE_SIZE; i++) {
+				this.cache.set(i, null);
+			}
+		}
+		this.reclaimedChunkCount += released;
+		return released;
+	}
+
+	/**
+	 * @return The number of encoded bytes in chunks that haven't been reclaimed.
+	 */
+	public synchronized long getUsedBytes() {
+		return this.usedBytes;
+	}
+
+	/**
+	 * @return The number of bytes allocated or mapped for chunks that haven't been
+	 *         reclaimed.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	/**
+	 * @return The number of chunks that haven't been reclaimed.
+	 */
+	public synchronized int getChunkCount() {
+		return this.chunkCount;
+	}
+
+	public synchronized long getReclaimedChunkCount() {
+		return this.reclaimedChunkCount;
+	}
+
+	/**
+	 * @return The number of values moved off the heap so far.
+	 */
+	public synchronized long getValueCount() {
+		return this.valueCount;
+	}
+
+	/**
+	 * Closes the backing file, if any. Mapped regions stay readable until they
+	 * are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null)
+			this.channel.close();
+	}
+
+	private static final class Chunk {
+		private final int slot;
+		private final int generation;
+		private final ByteBuffer buffer;
+		private final long fileOffset; // -1 for direct chunks
+		private int used;
+
+		private Chunk(int slot, int generation, ByteBuffer buffer, long fileOffset) {
+			this.slot = slot;
+			this.generation = generation;
+			this.buffer = buffer;
+			this.fileOffset = fileOffset;
+		}
+	}
+
+	private static final class Decoded {
+		private final long address;
+		private final Object value;
+
+		private Decoded(long address, Object value) {
+			this.address = address;
+			this.value = value;
+		}
+	}
+}
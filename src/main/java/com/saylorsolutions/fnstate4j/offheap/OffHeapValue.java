@@ -0,0 +1,50 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import com.saylorsolutions.fnstate4j.DeferredValue;
+
+/**
+ * Flyweight reference to a value encoded in an {@code OffHeapArena}. It holds
+ * only the arena and the value's address, which packs the chunk slot, the
+ * slot's generation, and the offset into a single {@code long}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class OffHeapValue implements DeferredValue {
+	final OffHeapArena arena;
+	final long address;
+
+	OffHeapValue(OffHeapArena arena, long address) {
+		this.arena = arena;
+		this.address = address;
+	}
+
+	@Override
+	public Object resolve() {
+		return arena.resolve(address);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("OffHeapValue [address='%x']", address);
+	}
+}
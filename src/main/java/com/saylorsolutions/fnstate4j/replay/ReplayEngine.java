@@ -0,0 +1,293 @@
+package com.saylorsolutions.fnstate4j.replay;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.Transaction;
+import com.saylorsolutions.fnstate4j.func.Middleware;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.io.ActionLogWriter;
+
+/**
+ * Replays recorded {@code Action}s through a {@code Reducer}, much faster than
+ * dispatching them one by one. No commits are made and no subscribers are
+ * notified while replaying, and history is dropped every batch so that replays
+ * of any length run in constant memory. Logged deltas, which an
+ * {@code ActionLogWriter} records for internal actions like evictions and undo,
+ * are applied to the state as they are, without the middleware or reducer.
+ *
+ * <pre>
+ * try (ActionLogReader log = new ActionLogReader(file)) {
+ * 	ReplayResult result = new ReplayEngine(reducer).replay(new State(), log.actions());
+ * }
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see com.saylorsolutions.fnstate4j.io.ActionLogReader
+ */
+public class ReplayEngine {
+	/**
+	 * The type of the {@code Action} a batch is committed with in
+	 * {@code replayInto}. Its payload is the list of replayed actions the
+	 * middleware accepted.
+	 */
+	public static final String REPLAY_ACTION = "@@fnstate4j/REPLAY";
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+
+	private final Reducer reducer;
+	private final Middleware middleware;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	public ReplayEngine(Reducer reducer) {
+		this(reducer, Middleware.NO_OP);
+	}
+
+	/**
+	 * @param reducer    Reduces every replayed {@code Action}.
+	 * @param middleware Decides which actions are reduced, may be null.
+	 */
+	public ReplayEngine(Reducer reducer, Middleware middleware) {
+		Objects.requireNonNull(reducer, "'reducer' parameter must not be null");
+		this.reducer = reducer;
+		this.middleware = middleware == null ? Middleware.NO_OP : middleware;
+	}
+
+	/**
+	 * @param batchSize The number of actions reduced between dropping history,
+	 *                  committing to a store, or handing off to another thread.
+	 * @return This {@code ReplayEngine}.
+	 */
+	public ReplayEngine withBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("'batchSize' parameter must be at least 1");
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * @param pool The pool used by {@code replayPartitioned}, the common pool by
+	 *             default.
+	 * @return This {@code ReplayEngine}.
+	 */
+	public ReplayEngine withPool(ForkJoinPool pool) {
+		this.pool = Objects.requireNonNull(pool, "'pool' parameter must not be null");
+		return this;
+	}
+
+	/**
+	 * Replays the actions on the calling thread.
+	 *
+	 * @param initial The state to start from.
+	 * @param actions The actions to replay, in order.
+	 * @return The final state and replay statistics.
+	 */
+	public ReplayResult replay(State initial, Iterator<Action> actions) {
+		Objects.requireNonNull(initial, "'initial' parameter must not be null");
+		Objects.requireNonNull(actions, "'actions' parameter must not be null");
+		final long start = System.nanoTime();
+		final Fold fold = new Fold(initial);
+		while (actions.hasNext()) {
+			fold.apply(actions.next());
+		}
+		return fold.result(start);
+	}
+
+	/**
+	 * Replays the actions into a store, committing each batch as a single
+	 * {@code REPLAY_ACTION}, so subscribers are notified once per batch. Batches
+	 * are committed directly, so the store's own middleware and reducers don't
+	 * see them. A batch is reduced again if another thread committed to the store
+	 * in the meantime.
+	 *
+	 * @param store   The store to replay into.
+	 * @param actions The actions to replay, in order.
+	 * @return The replay statistics, with the store's state after the last batch.
+	 * @throws ConcurrentModificationException If a batch conflicted with other
+	 *                                         commits on every attempt. The
+	 *                                         batches before it stay committed.
+	 * @throws IllegalStateException           If called while dispatching to the
+	 *                                         store, like from a subscriber.
+	 * @see StateStore#commitIfCurrent(State, Action, State)
+	 */
+	public ReplayResult replayInto(StateStore store, Iterator<Action> actions) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(actions, "'actions' parameter must not be null");
+		final long start = System.nanoTime();
+		long applied = 0L;
+		long rejected = 0L;
+		final List<Action> pending = new ArrayList<>(this.batchSize);
+		while (actions.hasNext()) {
+			pending.add(actions.next());
+			if (pending.size() == this.batchSize || !actions.hasNext()) {
+				final Fold fold = commitBatch(store, pending);
+				applied += fold.applied;
+				rejected += fold.rejected;
+				pending.clear();
+			}
+		}
+		return new ReplayResult(store.getState().detach(), applied, rejected, System.nanoTime() - start);
+	}
+
+	private Fold commitBatch(StateStore store, List<Action> batch) {
+		for (int attempt = 0; attempt < Transaction.MAX_ATTEMPTS; attempt++) {
+			final State base = store.getState();
+			final Fold fold = new Fold(base, false).applyAll(batch);
+			final Action action = Action.create(REPLAY_ACTION, fold.accepted);
+			if (store.commitIfCurrent(base, action, fold.state))
+				return fold;
+		}
+		throw new ConcurrentModificationException(String.format(
+				"Replayed batch conflicted with other commits %d times", Transaction.MAX_ATTEMPTS));
+	}
+
+	/**
+	 * Splits the actions into independent partitions, like one per store or per
+	 * entity, and replays the partitions in parallel on the pool. Actions are read
+	 * on the calling thread, and each partition is reduced in order, one batch at
+	 * a time. Reading waits if too many batches are queued.
+	 *
+	 * @param initialStates The state each partition starts from. Partitions
+	 *                      without one start from an empty {@code State}.
+	 * @param actions       The actions to replay, in order.
+	 * @param partitioner   Gives the partition of an {@code Action}.
+	 * @return The result of each partition that had at least one {@code Action}
+	 *         or initial state.
+	 */
+	public <K> Map<K, ReplayResult> replayPartitioned(Map<K, State> initialStates, Iterator<Action> actions,
+			Function<? super Action, ? extends K> partitioner) {
+		Objects.requireNonNull(initialStates, "'initialStates' parameter must not be null");
+		Objects.requireNonNull(actions, "'actions' parameter must not be null");
+		Objects.requireNonNull(partitioner, "'partitioner' parameter must not be null");
+		final long start = System.nanoTime();
+		final Semaphore inFlight = new Semaphore(Math.max(2, this.pool.getParallelism() * 4));
+		final Map<K, Partition> partitions = new HashMap<>();
+		initialStates.forEach((key, state) -> partitions.put(key, new Partition(state)));
+		while (actions.hasNext()) {
+			final Action action = actions.next();
+			final Partition partition = partitions.computeIfAbsent(partitioner.apply(action),
+					key -> new Partition(new State()));
+			partition.pending.add(action);
+			if (partition.pending.size() == this.batchSize)
+				partition.submit(inFlight);
+		}
+		final Map<K, ReplayResult> results = new HashMap<>();
+		partitions.values().forEach(p -> p.submit(inFlight));
+		try {
+			partitions.forEach((key, partition) -> results.put(key, partition.tail.join().result(start)));
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * Reduces actions for one partition. Only ever used by one thread at a time.
+	 */
+	private final class Fold {
+		private final boolean detach;
+		// Only kept for batches committed to a store, which record what they applied.
+		private final List<Action> accepted;
+		private State state;
+		private long applied;
+		private long rejected;
+		private int sinceDetach;
+
+		private Fold(State initial) {
+			this(initial, true);
+		}
+
+		private Fold(State initial, boolean detach) {
+			this.state = initial;
+			this.detach = detach;
+			this.accepted = detach ? null : new ArrayList<>();
+		}
+
+		private void apply(Action action) {
+			if (ActionLogWriter.DELTA_ACTION.equals(action.getType())) {
+				this.state = this.state.apply((StateDelta) action.getPayloadOrNull());
+			} else if (middleware.process(action, this.state)) {
+				this.state = reducer.reduce(action, this.state);
+			} else {
+				this.rejected++;
+				return;
+			}
+			this.applied++;
+			if (this.accepted != null)
+				this.accepted.add(action);
+			if (this.detach && ++this.sinceDetach >= batchSize) {
+				this.state = this.state.detach();
+				this.sinceDetach = 0;
+			}
+		}
+
+		private Fold applyAll(List<Action> actions) {
+			for (Action action : actions) {
+				apply(action);
+			}
+			return this;
+		}
+
+		private ReplayResult result(long start) {
+			return new ReplayResult(this.state.detach(), this.applied, this.rejected, System.nanoTime() - start);
+		}
+	}
+
+	private final class Partition {
+		private List<Action> pending = new ArrayList<>(batchSize);
+		private CompletableFuture<Fold> tail;
+
+		private Partition(State initial) {
+			this.tail = CompletableFuture.completedFuture(new Fold(initial));
+		}
+
+		private void submit(Semaphore inFlight) {
+			if (this.pending.isEmpty())
+				return;
+			final List<Action> batch = this.pending;
+			this.pending = new ArrayList<>(batchSize);
+			inFlight.acquireUninterruptibly();
+			final CompletableFuture<Fold> next = this.tail.thenApplyAsync(fold -> fold.applyAll(batch), pool);
+			// Also released when the batch is skipped because an earlier one failed.
+			next.whenComplete((fold, e) -> inFlight.release());
+			this.tail = next;
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.saylorsolutions.fnstate4j.replay;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * The outcome of replaying a sequence of {@code Action}s.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class ReplayResult {
+	private final State state;
+	private final long appliedCount;
+	private final long rejectedCount;
+	private final long elapsedNanos;
+	private volatile Long checksum;
+
+	ReplayResult(State state, long appliedCount, long rejectedCount, long elapsedNanos) {
+		this.state = state;
+		this.appliedCount = appliedCount;
+		this.rejectedCount = rejectedCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return The final state, without history.
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return The number of actions that were reduced.
+	 */
+	public long getAppliedCount() {
+		return appliedCount;
+	}
+
+	/**
+	 * @return The number of actions rejected by the middleware.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return The number of actions processed per second, applied or rejected.
+	 */
+	public double getActionsPerSecond() {
+		if (elapsedNanos <= 0L)
+			return 0.0;
+		return (appliedCount + rejectedCount) * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos;
+	}
+
+	/**
+	 * Computed on first use.
+	 *
+	 * @return The checksum of the final state.
+	 * @throws UncheckedIOException If a value of the state can't be encoded.
+	 * @see StateCodec#checksum(State)
+	 */
+	public long getChecksum() {
+		Long value = this.checksum;
+		if (value == null) {
+			try {
+				value = StateCodec.checksum(this.state);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to compute the checksum of the replayed state", e);
+			}
+			this.checksum = value;
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ReplayResult [applied='%d', rejected='%d', elapsedNanos='%d', actionsPerSecond='%.0f']",
+				appliedCount, rejectedCount, elapsedNanos, getActionsPerSecond());
+	}
+}
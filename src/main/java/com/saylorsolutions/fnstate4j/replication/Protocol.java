@@ -0,0 +1,72 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * Wire format shared by the leader and its followers.
+ * <p>
+ * A follower opens the connection by sending {@code MAGIC} and the last version
+ * it applied, or -1 if it has nothing. Every frame the leader sends after that
+ * starts with the leader's current version, followed by a message type, the
+ * version the message brings the follower to, the commit time in epoch
+ * milliseconds, and either a full state or a delta.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+final class Protocol {
+	static final int MAGIC = 0x464E5334;
+	static final long NO_VERSION = -1L;
+	static final byte SNAPSHOT = 1;
+	static final byte DELTA = 2;
+
+	private Protocol() {
+	}
+
+	static byte[] snapshot(long version, long timestamp, State state) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+		out.writeByte(SNAPSHOT);
+		out.writeLong(version);
+		out.writeLong(timestamp);
+		StateCodec.writeState(out, state);
+		out.flush();
+		return buffer.toByteArray();
+	}
+
+	static byte[] delta(long version, long timestamp, StateDelta delta) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+		out.writeByte(DELTA);
+		out.writeLong(version);
+		out.writeLong(timestamp);
+		StateCodec.writeDelta(out, delta);
+		out.flush();
+		return buffer.toByteArray();
+	}
+}
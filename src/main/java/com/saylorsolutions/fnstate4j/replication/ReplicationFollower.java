@@ -0,0 +1,255 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Objects;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * Keeps a {@code StateStore} in sync with a {@code ReplicationLeader}. Deltas
+ * are applied in version order by dispatching them to the follower store, so
+ * its subscribers are notified as usual. If a version is skipped, the follower
+ * reconnects and asks the leader for everything after the last version it
+ * applied.
+ * <p>
+ * <b>Only connect to a trusted leader over a trusted link.</b> Values are read
+ * with {@code StateCodec}, which only loads classes from its allowed packages,
+ * but still runs their deserialization code.
+ * <p>
+ * The follower store's middleware must let the replication actions through. A
+ * snapshot or delta that isn't applied is counted as rejected, and the follower
+ * reconnects to get it again instead of moving on without it.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ReplicationLeader
+ */
+public class ReplicationFollower implements Closeable {
+	public static final String SNAPSHOT_ACTION = "@@fnstate4j/REPLICATION_SNAPSHOT";
+	public static final String DELTA_ACTION = "@@fnstate4j/REPLICATION_DELTA";
+	public static final long DEFAULT_RECONNECT_DELAY_MILLIS = 500L;
+
+	/**
+	 * Applies replicated snapshots and deltas. The follower adds a reducer that
+	 * delegates to this one to its store when it's created.
+	 */
+	public static final Reducer REPLICATION_REDUCER = (a, s) -> {
+		if (SNAPSHOT_ACTION.equals(a.getType()))
+			return a.getPayloadOrElse(s);
+		if (DELTA_ACTION.equals(a.getType()))
+			return s.apply((StateDelta) a.getPayloadOrNull());
+		return s;
+	};
+
+	private final StateStore store;
+	private final InetSocketAddress leaderAddress;
+	private final long reconnectDelayMillis;
+	private final Thread thread;
+	private final Reducer reducer = this::reduce;
+	private volatile Action lastApplied;
+	private volatile Socket socket;
+	private volatile boolean closed;
+	private volatile boolean connected;
+	private volatile long appliedVersion = Protocol.NO_VERSION;
+	private volatile long leaderVersion = Protocol.NO_VERSION;
+	private volatile long lagMillis;
+	private volatile long gapCount;
+	private volatile long snapshotCount;
+	private volatile long rejectedCount;
+
+	public ReplicationFollower(StateStore store, InetSocketAddress leaderAddress) {
+		this(store, leaderAddress, DEFAULT_RECONNECT_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param store                The store to keep in sync with the leader.
+	 * @param leaderAddress        The address the leader is listening on.
+	 * @param reconnectDelayMillis How long to wait before reconnecting after the
+	 *                             connection is lost.
+	 */
+	public ReplicationFollower(StateStore store, InetSocketAddress leaderAddress, long reconnectDelayMillis) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(leaderAddress, "'leaderAddress' parameter must not be null");
+		this.store = store;
+		this.leaderAddress = leaderAddress;
+		this.reconnectDelayMillis = reconnectDelayMillis;
+		this.store.addReducer(this.reducer);
+		this.thread = new Thread(this::run, "fnstate4j-replication-follower");
+		this.thread.setDaemon(true);
+	}
+
+	public void start() {
+		this.thread.start();
+	}
+
+	private void run() {
+		while (!this.closed) {
+			try (Socket connection = new Socket()) {
+				this.socket = connection;
+				connection.setTcpNoDelay(true);
+				connection.connect(this.leaderAddress);
+				final DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+				out.writeInt(Protocol.MAGIC);
+				out.writeLong(this.appliedVersion);
+				out.flush();
+				this.connected = true;
+				final DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				while (!this.closed) {
+					receive(in);
+				}
+			} catch (IOException e) {
+				// Reconnect below
+			} finally {
+				this.connected = false;
+			}
+			if (!this.closed) {
+				try {
+					Thread.sleep(this.reconnectDelayMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private State reduce(Action action, State state) {
+		final State result = REPLICATION_REDUCER.reduce(action, state);
+		if (SNAPSHOT_ACTION.equals(action.getType()) || DELTA_ACTION.equals(action.getType()))
+			this.lastApplied = action;
+		return result;
+	}
+
+	/**
+	 * Dispatches a replication action, and makes sure it was reduced, rather than
+	 * rejected by the store's middleware.
+	 */
+	private void apply(Action action, long version) throws IOException {
+		this.store.blockingDispatch(action);
+		if (this.lastApplied != action) {
+			this.rejectedCount++;
+			throw new IOException(String.format("Version %d was rejected by the follower store", version));
+		}
+	}
+
+	private void receive(DataInputStream in) throws IOException {
+		this.leaderVersion = in.readLong();
+		final byte type = in.readByte();
+		final long version = in.readLong();
+		final long timestamp = in.readLong();
+		if (type == Protocol.SNAPSHOT) {
+			final State snapshot = StateCodec.readState(in);
+			apply(Action.create(SNAPSHOT_ACTION, snapshot), version);
+			this.snapshotCount++;
+		} else if (type == Protocol.DELTA) {
+			final StateDelta delta = StateCodec.readDelta(in);
+			if (version <= this.appliedVersion)
+				return;
+			if (version != this.appliedVersion + 1) {
+				this.gapCount++;
+				throw new IOException(String.format("Expected version %d but received %d", this.appliedVersion + 1,
+						version));
+			}
+			apply(Action.create(DELTA_ACTION, delta), version);
+		} else {
+			throw new IOException(String.format("Unknown message type '%d'", type));
+		}
+		this.appliedVersion = version;
+		this.lagMillis = Math.max(0L, System.currentTimeMillis() - timestamp);
+	}
+
+	/**
+	 * @return The leader version of the last applied snapshot or delta, or -1 if
+	 *         nothing has been applied yet.
+	 */
+	public long getAppliedVersion() {
+		return this.appliedVersion;
+	}
+
+	/**
+	 * @return The leader's version as of the last message received, or -1 if
+	 *         nothing has been received yet.
+	 */
+	public long getLeaderVersion() {
+		return this.leaderVersion;
+	}
+
+	/**
+	 * @return How many versions behind the leader this follower was as of the last
+	 *         message received.
+	 */
+	public long getLag() {
+		return Math.max(0L, this.leaderVersion - this.appliedVersion);
+	}
+
+	/**
+	 * @return The time between the leader sending the last applied message and
+	 *         this follower applying it.
+	 */
+	public long getLagMillis() {
+		return this.lagMillis;
+	}
+
+	/**
+	 * @return How many times a skipped version caused this follower to reconnect.
+	 */
+	public long getGapCount() {
+		return this.gapCount;
+	}
+
+	public long getSnapshotCount() {
+		return this.snapshotCount;
+	}
+
+	/**
+	 * @return How many snapshots and deltas the follower store didn't apply, each
+	 *         of which made this follower reconnect.
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCount;
+	}
+
+	public boolean isConnected() {
+		return this.connected;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.store.removeReducer(this.reducer);
+		final Socket current = this.socket;
+		if (current != null)
+			current.close();
+		this.thread.interrupt();
+	}
+}
@@ -0,0 +1,348 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+
+/**
+ * Streams every {@code Commit} of a {@code StateStore} to connected
+ * {@code ReplicationFollower}s as a versioned {@code StateDelta}. The most
+ * recent deltas are kept in a bounded log, so that a follower that reconnects
+ * after a short interruption only receives what it missed. Followers that are
+ * too far behind are sent a full snapshot instead.
+ * <p>
+ * Every value in the replicated state must be encodable by {@code StateCodec}.
+ * <p>
+ * <b>Only connect followers over a trusted link.</b> Values without a compact
+ * encoding are sent with Java serialization, and nothing is authenticated or
+ * encrypted.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ReplicationFollower
+ */
+public class ReplicationLeader implements CommitListener, Closeable {
+	public static final int DEFAULT_LOG_CAPACITY = 1024;
+	private static final int FOLLOWER_QUEUE_CAPACITY = 65536;
+
+	private final StateStore store;
+	private final ServerSocket serverSocket;
+	private final int logCapacity;
+	private final Object lock = new Object();
+	private final Deque<LogEntry> log = new ArrayDeque<>(); // Guarded by lock
+	private final List<FollowerConnection> followers = new CopyOnWriteArrayList<>();
+	private volatile Commit head;
+	private long encodingFailures; // Guarded by lock
+	private IOException lastEncodingFailure; // Guarded by lock
+	private volatile boolean closed;
+
+	/**
+	 * Creates a leader listening on the loopback interface.
+	 *
+	 * @param store The store to replicate.
+	 * @param port  The port to listen on, or 0 to pick a free port.
+	 * @throws IOException If the port can't be bound.
+	 */
+	public ReplicationLeader(StateStore store, int port) throws IOException {
+		this(store, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_LOG_CAPACITY);
+	}
+
+	/**
+	 * @param store       The store to replicate.
+	 * @param bindAddress The address to listen on.
+	 * @param logCapacity How many of the most recent deltas to keep for followers
+	 *                    that reconnect.
+	 * @throws IOException If the address can't be bound.
+	 */
+	public ReplicationLeader(StateStore store, InetSocketAddress bindAddress, int logCapacity) throws IOException {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(bindAddress, "'bindAddress' parameter must not be null");
+		if (logCapacity < 1)
+			throw new IllegalArgumentException("'logCapacity' parameter must be at least 1");
+		this.store = store;
+		this.logCapacity = logCapacity;
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.bind(bindAddress);
+	}
+
+	/**
+	 * Starts replicating commits and accepting followers.
+	 */
+	public void start() {
+		synchronized (this.lock) {
+			this.store.addCommitListener(this);
+			this.head = this.store.getLastCommit();
+		}
+		final Thread acceptThread = new Thread(this::acceptLoop, "fnstate4j-replication-leader");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	/**
+	 * A commit that can't be encoded is never thrown back to the committing
+	 * thread, since the store has already moved on to it. It's reported to that
+	 * thread's {@code UncaughtExceptionHandler} instead, and every follower is
+	 * disconnected, so that they catch up from a snapshot once the state can be
+	 * encoded again.
+	 * <p>
+	 * The delta is encoded before taking the leader's lock, so a follower that's
+	 * being caught up never waits for it, and it never waits for a follower.
+	 */
+	@Override
+	public void onCommit(Commit commit) {
+		byte[] message;
+		IOException failure = null;
+		try {
+			message = Protocol.delta(commit.getVersion(), commit.getTimestamp(), commit.getDelta());
+		} catch (IOException | RuntimeException e) {
+			message = null;
+			failure = new IOException(
+					String.format("Unable to encode commit %d for replication", commit.getVersion()), e);
+		}
+		synchronized (this.lock) {
+			// A commit may race with start(), and would then already be the head.
+			if (commit.getVersion() <= this.head.getVersion())
+				return;
+			this.head = commit;
+			if (failure != null) {
+				encodingFailed(failure);
+				return;
+			}
+			this.log.addLast(new LogEntry(commit.getVersion(), message));
+			if (this.log.size() > this.logCapacity)
+				this.log.removeFirst();
+			for (FollowerConnection follower : this.followers) {
+				follower.send(message);
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock. The log can't bridge the missing
+	 * version anymore, so it's cleared.
+	 */
+	private void encodingFailed(IOException failure) {
+		this.encodingFailures++;
+		this.lastEncodingFailure = failure;
+		this.log.clear();
+		for (FollowerConnection follower : this.followers) {
+			follower.close();
+		}
+		final Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+	}
+
+	private void acceptLoop() {
+		while (!this.closed) {
+			try {
+				final Socket socket = this.serverSocket.accept();
+				final Thread connectionThread = new Thread(() -> serve(socket),
+						"fnstate4j-replication-leader-" + socket.getPort());
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			} catch (IOException e) {
+				// Closing the server socket ends the loop
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		final FollowerConnection follower = new FollowerConnection(socket);
+		try {
+			socket.setTcpNoDelay(true);
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			if (in.readInt() != Protocol.MAGIC)
+				throw new IOException("Unexpected handshake from follower");
+			final long followerVersion = in.readLong();
+			catchUp(follower, followerVersion);
+			follower.sendLoop();
+		} catch (IOException | InterruptedException e) {
+			// The follower will reconnect if it's still interested
+		} finally {
+			this.followers.remove(follower);
+			follower.close();
+		}
+	}
+
+	/**
+	 * Queues what the follower is missing, and then adds it to the followers that
+	 * receive new commits. A snapshot is encoded outside of the lock, from the head
+	 * at that time, so commits aren't held up while a follower connects. The
+	 * deltas committed while encoding are then taken from the log.
+	 */
+	private void catchUp(FollowerConnection follower, long followerVersion) throws IOException {
+		long version = followerVersion;
+		byte[] snapshot = null;
+		while (true) {
+			final Commit base;
+			synchronized (this.lock) {
+				if (queueFromLog(follower, version, snapshot)) {
+					this.followers.add(follower);
+					return;
+				}
+				base = this.head;
+			}
+			snapshot = Protocol.snapshot(base.getVersion(), base.getTimestamp(), base.getState());
+			version = base.getVersion();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock, so that no commit is sent before the
+	 * catch up messages.
+	 *
+	 * @param snapshot The encoded snapshot at {@code version}, sent first, or null
+	 *                 if {@code version} is the follower's.
+	 * @return Whether the log could bridge the gap from {@code version} to the
+	 *         head, and the missing messages were queued.
+	 */
+	private boolean queueFromLog(FollowerConnection follower, long version, byte[] snapshot) {
+		final long headVersion = this.head.getVersion();
+		if (version < 0 || version > headVersion)
+			return false;
+		if (version < headVersion) {
+			final LogEntry oldest = this.log.peekFirst();
+			if (oldest == null || oldest.version > version + 1 || this.log.peekLast().version != headVersion)
+				return false;
+		}
+		if (snapshot != null)
+			follower.send(snapshot);
+		for (LogEntry entry : this.log) {
+			if (entry.version > version)
+				follower.send(entry.message);
+		}
+		return true;
+	}
+
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return The version of the most recently replicated commit.
+	 */
+	public long getVersion() {
+		final Commit current = this.head;
+		return current == null ? this.store.getVersion() : current.getVersion();
+	}
+
+	/**
+	 * @return The number of commits that couldn't be encoded for followers.
+	 */
+	public long getEncodingFailureCount() {
+		synchronized (this.lock) {
+			return this.encodingFailures;
+		}
+	}
+
+	/**
+	 * @return The most recent commit that couldn't be encoded, if any.
+	 */
+	public Optional<IOException> getLastEncodingFailure() {
+		synchronized (this.lock) {
+			return Optional.ofNullable(this.lastEncodingFailure);
+		}
+	}
+
+	public int getFollowerCount() {
+		return this.followers.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.store.removeCommitListener(this);
+		this.serverSocket.close();
+		for (FollowerConnection follower : this.followers) {
+			follower.close();
+		}
+	}
+
+	private static final class LogEntry {
+		private final long version;
+		private final byte[] message;
+
+		private LogEntry(long version, byte[] message) {
+			this.version = version;
+			this.message = message;
+		}
+	}
+
+	private final class FollowerConnection {
+		private final Socket socket;
+		private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(FOLLOWER_QUEUE_CAPACITY);
+
+		private FollowerConnection(Socket socket) {
+			this.socket = socket;
+		}
+
+		/**
+		 * Drops the follower if it has fallen too far behind. It will catch up from a
+		 * snapshot after reconnecting.
+		 */
+		private void send(byte[] message) {
+			if (!this.queue.offer(message))
+				close();
+		}
+
+		private void sendLoop() throws IOException, InterruptedException {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+			while (!this.socket.isClosed()) {
+				final byte[] message = this.queue.poll(1L, TimeUnit.SECONDS);
+				if (message == null)
+					continue;
+				out.writeLong(getVersion());
+				out.write(message);
+				if (this.queue.isEmpty())
+					out.flush();
+			}
+		}
+
+		private void close() {
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.CommitListener;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * Publishes every committed {@code State} of a {@code StateStore} to a
+ * memory-mapped file, so that {@code SharedStateReader}s in other processes on
+ * the same host can read it without any socket or file system calls.
+ * <p>
+ * Commits are encoded and written by a background thread, never by the
+ * committing thread. If several commits are made while a state is being
+ * written, only the latest of them is published next. A state that can't be
+ * encoded, or doesn't fit, is skipped and reported to the background thread's
+ * {@code UncaughtExceptionHandler}, and readers keep seeing the last state that
+ * was published.
+ * <p>
+ * The file starts with a seqlock header. The sequence number is made odd before
+ * the state is written and even again afterwards, and readers retry if the
+ * sequence changed while they were reading. A checksum of the encoded state is
+ * also stored, since Java 8 offers no memory fences for mapped buffers.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see SharedStateReader
+ */
+public class SharedStatePublisher implements CommitListener, Closeable {
+	static final int MAGIC = 0x464E534D;
+	static final int MAGIC_OFFSET = 0;
+	static final int CAPACITY_OFFSET = 4;
+	static final int SEQUENCE_OFFSET = 8;
+	static final int VERSION_OFFSET = 16;
+	static final int LENGTH_OFFSET = 24;
+	static final int CHECKSUM_OFFSET = 28;
+	static final int HEADER_SIZE = 40;
+
+	private final StateStore store;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+	private final CRC32 checksum = new CRC32();
+	private final Thread publisherThread;
+	private final Object pendingLock = new Object();
+	private Commit pending; // Guarded by pendingLock
+	private boolean closed; // Guarded by pendingLock
+	private long sequence; // Only written by the publisher thread after construction
+	private volatile long publishedVersion = -1L;
+	private final AtomicLong failureCount = new AtomicLong();
+	private volatile Exception lastFailure;
+
+	/**
+	 * Creates the file if needed, publishes the current state, and publishes every
+	 * following commit. An existing file is never truncated, since readers may
+	 * still have it mapped. Its sequence is continued, so those readers pick up
+	 * the new states.
+	 *
+	 * @param store    The store to publish.
+	 * @param file     The file to map.
+	 * @param capacity The maximum size in bytes of an encoded state.
+	 * @throws IOException If the file can't be created or mapped, or the current
+	 *                     state can't be published.
+	 */
+	public SharedStatePublisher(StateStore store, Path file, int capacity) throws IOException {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		if (capacity < 1)
+			throw new IllegalArgumentException("'capacity' parameter must be at least 1");
+		this.store = store;
+		this.capacity = capacity;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			final boolean existing = this.channel.size() >= HEADER_SIZE;
+			this.buffer = this.channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+			if (existing && this.buffer.getInt(MAGIC_OFFSET) == MAGIC) {
+				// An odd sequence means the last publisher stopped in the middle of a write.
+				final long last = this.buffer.getLong(SEQUENCE_OFFSET);
+				this.sequence = last + (last & 1L);
+			}
+			this.buffer.putInt(CAPACITY_OFFSET, capacity);
+			this.buffer.putLong(SEQUENCE_OFFSET, this.sequence);
+			this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+			this.store.addCommitListener(this);
+			publish(this.store.getLastCommit());
+		} catch (IOException | RuntimeException e) {
+			this.store.removeCommitListener(this);
+			this.channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException("Unable to publish state", e);
+		}
+		this.publisherThread = new Thread(this::publishLoop, "fnstate4j-shared-state-publisher");
+		this.publisherThread.setDaemon(true);
+		this.publisherThread.start();
+	}
+
+	/**
+	 * Only hands the commit to the publisher thread.
+	 */
+	@Override
+	public void onCommit(Commit commit) {
+		synchronized (this.pendingLock) {
+			if (this.pending == null || commit.getVersion() > this.pending.getVersion()) {
+				this.pending = commit;
+				this.pendingLock.notifyAll();
+			}
+		}
+	}
+
+	private void publishLoop() {
+		while (true) {
+			final Commit next;
+			synchronized (this.pendingLock) {
+				while (this.pending == null && !this.closed) {
+					try {
+						this.pendingLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				// Whatever was committed before close() is still published.
+				if (this.pending == null)
+					return;
+				next = this.pending;
+				this.pending = null;
+			}
+			if (next.getVersion() <= this.publishedVersion)
+				continue;
+			try {
+				publish(next);
+			} catch (IOException | RuntimeException e) {
+				this.failureCount.incrementAndGet();
+				this.lastFailure = e;
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	private void publish(Commit commit) throws IOException {
+		this.encoded.reset();
+		final DataOutputStream out = new DataOutputStream(this.encoded);
+		StateCodec.writeState(out, commit.getState());
+		out.flush();
+		final byte[] bytes = this.encoded.toByteArray();
+		if (bytes.length > this.capacity) {
+			throw new IllegalStateException(String.format(
+					"Encoded state of version %d needs %d bytes, but only %d are available",
+					commit.getVersion(), bytes.length, this.capacity));
+		}
+		this.checksum.reset();
+		this.checksum.update(bytes, 0, bytes.length);
+
+		this.buffer.putLong(SEQUENCE_OFFSET, ++this.sequence);
+		this.buffer.putLong(VERSION_OFFSET, commit.getVersion());
+		this.buffer.putInt(LENGTH_OFFSET, bytes.length);
+		this.buffer.putLong(CHECKSUM_OFFSET, this.checksum.getValue());
+		final ByteBuffer data = this.buffer.duplicate();
+		data.position(HEADER_SIZE);
+		data.put(bytes);
+		this.buffer.putLong(SEQUENCE_OFFSET, ++this.sequence);
+		this.publishedVersion = commit.getVersion();
+	}
+
+	/**
+	 * @return The version of the most recently published state.
+	 */
+	public long getPublishedVersion() {
+		return this.publishedVersion;
+	}
+
+	/**
+	 * @return The number of commits that couldn't be published.
+	 */
+	public long getFailureCount() {
+		return this.failureCount.get();
+	}
+
+	/**
+	 * @return Why the most recent failed commit couldn't be published, if any
+	 *         failed.
+	 */
+	public Optional<Exception> getLastFailure() {
+		return Optional.ofNullable(this.lastFailure);
+	}
+
+	/**
+	 * Stops publishing, after the latest commit made before this call has been
+	 * published.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.store.removeCommitListener(this);
+		synchronized (this.pendingLock) {
+			this.closed = true;
+			this.pendingLock.notifyAll();
+		}
+		try {
+			this.publisherThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.channel.close();
+	}
+}
@@ -0,0 +1,184 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static com.saylorsolutions.fnstate4j.replication.SharedStatePublisher.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+/**
+ * Reads the latest {@code State} published by a {@code SharedStatePublisher},
+ * possibly in another process. The file is mapped read-only, so reading never
+ * makes a system call. If nothing has been published since the last read, the
+ * previously decoded {@code State} is returned after a single header read.
+ * <p>
+ * A read that can't get a consistent copy of the state within the read timeout,
+ * for example because the publisher died while writing, fails instead of
+ * retrying forever.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see SharedStatePublisher
+ */
+public class SharedStateReader implements Closeable {
+	public static final long DEFAULT_READ_TIMEOUT_MILLIS = 1000L;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final CRC32 checksum = new CRC32();
+	private final long readTimeoutNanos;
+	private long lastSequence = -1L;
+	private long lastVersion = -1L;
+	private State lastState;
+	private long retryCount;
+
+	/**
+	 * @param file A file that a {@code SharedStatePublisher} has been created for.
+	 * @throws IOException If the file can't be mapped, or was not created by a
+	 *                     {@code SharedStatePublisher}.
+	 */
+	public SharedStateReader(Path file) throws IOException {
+		this(file, DEFAULT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param file        A file that a {@code SharedStatePublisher} has been
+	 *                    created for.
+	 * @param readTimeout How long {@code getState} may retry before giving up.
+	 * @param unit        The unit of the timeout.
+	 * @throws IOException If the file can't be mapped, or was not created by a
+	 *                     {@code SharedStatePublisher}.
+	 */
+	public SharedStateReader(Path file, long readTimeout, TimeUnit unit) throws IOException {
+		Objects.requireNonNull(file, "'file' parameter must not be null");
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		if (readTimeout <= 0L)
+			throw new IllegalArgumentException("'readTimeout' parameter must be positive");
+		this.file = file;
+		this.readTimeoutNanos = unit.toNanos(readTimeout);
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		if (this.channel.size() < HEADER_SIZE) {
+			this.channel.close();
+			throw new IOException("File is too small to contain a published state");
+		}
+		this.buffer = this.channel.map(MapMode.READ_ONLY, 0, this.channel.size());
+		if (this.buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+			this.channel.close();
+			throw new IOException("File was not created by a SharedStatePublisher");
+		}
+		// A later publisher may declare a larger capacity than this mapping covers.
+		this.capacity = (int) Math.min(this.buffer.getInt(CAPACITY_OFFSET), this.channel.size() - HEADER_SIZE);
+	}
+
+	/**
+	 * @return The most recently published {@code State}, or null if nothing has
+	 *         been published yet.
+	 * @throws IllegalStateException If no consistent state could be read within
+	 *                               the read timeout.
+	 */
+	public synchronized State getState() {
+		long deadline = 0L;
+		while (true) {
+			final long sequence = this.buffer.getLong(SEQUENCE_OFFSET);
+			if (sequence == this.lastSequence)
+				return this.lastState;
+			if (sequence == 0L)
+				return null;
+			if ((sequence & 1L) == 0L && tryRead(sequence))
+				return this.lastState;
+			this.retryCount++;
+			if (deadline == 0L) {
+				deadline = System.nanoTime() + this.readTimeoutNanos;
+			} else if (System.nanoTime() - deadline > 0L) {
+				throw new IllegalStateException(String.format(
+						"No consistent state could be read from %s within %d ms, last sequence seen was %d. "
+								+ "The publisher may have stopped while writing, or published a state larger "
+								+ "than this reader has mapped.",
+						this.file, TimeUnit.NANOSECONDS.toMillis(this.readTimeoutNanos), sequence));
+			}
+			Thread.yield();
+		}
+	}
+
+	private boolean tryRead(long sequence) {
+		final long version = this.buffer.getLong(VERSION_OFFSET);
+		final int length = this.buffer.getInt(LENGTH_OFFSET);
+		final long expectedChecksum = this.buffer.getLong(CHECKSUM_OFFSET);
+		if (length < 0 || length > this.capacity)
+			return false;
+		final byte[] bytes = new byte[length];
+		final ByteBuffer data = this.buffer.duplicate();
+		data.position(HEADER_SIZE);
+		data.get(bytes);
+		if (this.buffer.getLong(SEQUENCE_OFFSET) != sequence)
+			return false;
+		this.checksum.reset();
+		this.checksum.update(bytes, 0, length);
+		if (this.checksum.getValue() != expectedChecksum)
+			return false;
+		try {
+			this.lastState = StateCodec.readState(new DataInputStream(new ByteArrayInputStream(bytes)));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to decode published state", e);
+		}
+		this.lastSequence = sequence;
+		this.lastVersion = version;
+		return true;
+	}
+
+	/**
+	 * @return The store version of the state returned by the last call to
+	 *         {@code getState}, or -1 if nothing has been read yet.
+	 */
+	public synchronized long getVersion() {
+		return this.lastVersion;
+	}
+
+	/**
+	 * @return How many times a read had to be retried because the publisher was
+	 *         writing at the same time.
+	 */
+	public synchronized long getRetryCount() {
+		return this.retryCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,330 @@
+package com.saylorsolutions.fnstate4j.shaping;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Lane;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Middleware;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+
+/**
+ * {@code Middleware} that limits how often high frequency {@code Action} types
+ * reach the reducers and subscribers. Each action type may be given one
+ * operator:
+ * <ul>
+ * <li><b>throttle</b> lets the first {@code Action} through, and drops the rest
+ * until the interval has passed.</li>
+ * <li><b>debounce</b> holds back the latest {@code Action} and dispatches it
+ * once no other {@code Action} of the type arrived for the interval.</li>
+ * <li><b>sample</b> holds back the latest {@code Action} and dispatches it at
+ * the end of each interval in which one arrived.</li>
+ * <li><b>everyNth</b> lets one {@code Action} in every n through, and drops the
+ * rest.</li>
+ * </ul>
+ * Held back {@code Action}s are timed by the wheel timer of the store's
+ * registry, and queued in the store's {@code NORMAL} lane when they are due, so
+ * the reducers never run on the timer thread. They are queued as uncombinable,
+ * so a combiner for the type can't fold them into an {@code Action} the shaper
+ * would hold back again. Types without an operator are
+ * always accepted, and so is every {@code Action} dispatched inside a
+ * transaction: a transaction body may run several times or be rolled back, and
+ * a held back {@code Action} would be dispatched outside of it.
+ *
+ * <pre>
+ * store.addMiddleware(new RateShaper(store).throttle("MOUSE_MOVE", 16, TimeUnit.MILLISECONDS)
+ * 		.sample("PRICE_TICK", 100, TimeUnit.MILLISECONDS));
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class RateShaper implements Middleware {
+	private final StateStore store;
+	private final HashedWheelTimer timer;
+	private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a shaper that uses the timer shared by the stores of the store's
+	 * registry.
+	 *
+	 * @param store The store that held back {@code Action}s are dispatched to.
+	 * @see StateStore#getTimer()
+	 */
+	public RateShaper(StateStore store) {
+		this(store, Objects.requireNonNull(store, "'store' parameter must not be null").getTimer());
+	}
+
+	/**
+	 * @param store The store that held back {@code Action}s are dispatched to.
+	 * @param timer The timer used to time held back {@code Action}s.
+	 */
+	public RateShaper(StateStore store, HashedWheelTimer timer) {
+		Objects.requireNonNull(store, "'store' parameter must not be null");
+		Objects.requireNonNull(timer, "'timer' parameter must not be null");
+		this.store = store;
+		this.timer = timer;
+	}
+
+	public RateShaper throttle(String type, long interval, TimeUnit unit) {
+		return rule(type, new Throttle(unit.toNanos(interval)));
+	}
+
+	public RateShaper debounce(String type, long interval, TimeUnit unit) {
+		return rule(type, new Debounce(unit.toNanos(interval)));
+	}
+
+	public RateShaper sample(String type, long interval, TimeUnit unit) {
+		return rule(type, new Sample(unit.toNanos(interval)));
+	}
+
+	public RateShaper everyNth(String type, int n) {
+		if (n < 1)
+			throw new IllegalArgumentException("'n' parameter must be at least 1");
+		return rule(type, new EveryNth(n));
+	}
+
+	/**
+	 * Removes the operator for the given type, so that every {@code Action} of
+	 * the type is accepted again. A held back {@code Action} is still dispatched.
+	 *
+	 * @param type The action type.
+	 * @return This {@code RateShaper}.
+	 */
+	public RateShaper remove(String type) {
+		this.rules.remove(type);
+		return this;
+	}
+
+	private RateShaper rule(String type, Rule rule) {
+		Objects.requireNonNull(type, "'type' parameter must not be null");
+		this.rules.put(type, rule);
+		return this;
+	}
+
+	@Override
+	public boolean process(Action action, State state) {
+		final Rule rule = this.rules.get(action.getType());
+		if (rule == null || this.store.isInTransaction())
+			return true;
+		synchronized (rule) {
+			if (rule.releasing.remove(action)) {
+				rule.passed++;
+				return true;
+			}
+			final boolean accepted = rule.accept(action);
+			if (accepted)
+				rule.passed++;
+			return accepted;
+		}
+	}
+
+	/**
+	 * @param type The action type.
+	 * @return The counters for the type, or all zeros if it has no operator.
+	 */
+	public Stats getStats(String type) {
+		final Rule rule = this.rules.get(type);
+		if (rule == null)
+			return new Stats(0L, 0L, 0L);
+		synchronized (rule) {
+			return new Stats(rule.passed, rule.dropped, rule.coalesced);
+		}
+	}
+
+	/**
+	 * Counters for one action type. Every {@code Action} is counted exactly once:
+	 * it's either passed to the reducers, dropped, or coalesced into a later
+	 * {@code Action} of the same type.
+	 */
+	public static final class Stats {
+		private final long passed;
+		private final long dropped;
+		private final long coalesced;
+
+		private Stats(long passed, long dropped, long coalesced) {
+			this.passed = passed;
+			this.dropped = dropped;
+			this.coalesced = coalesced;
+		}
+
+		public long getPassed() {
+			return passed;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+
+		public long getCoalesced() {
+			return coalesced;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats [passed='%d', dropped='%d', coalesced='%d']", passed, dropped, coalesced);
+		}
+	}
+
+	/**
+	 * State of one operator. All fields are guarded by the rule's monitor.
+	 */
+	private abstract class Rule {
+		// Released actions that are queued in the store, but haven't come back around yet.
+		protected final Set<Action> releasing = Collections.newSetFromMap(new IdentityHashMap<>());
+		protected long passed;
+		protected long dropped;
+		protected long coalesced;
+
+		protected abstract boolean accept(Action action);
+
+		protected void schedule(Runnable task, long delayNanos) {
+			timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Queues a held back {@code Action} in the store, which this rule will let
+		 * through when it comes back around. Runs on the timer thread, so it only
+		 * hands the {@code Action} over.
+		 */
+		protected void release(Action action) {
+			synchronized (this) {
+				releasing.add(action);
+			}
+			try {
+				store.dispatch(action, Lane.NORMAL, false);
+			} catch (IllegalStateException e) {
+				// The store was closed, so there is nothing left to dispatch to.
+				synchronized (this) {
+					releasing.remove(action);
+				}
+			}
+		}
+	}
+
+	private final class Throttle extends Rule {
+		private final long intervalNanos;
+		private long nextAllowed = Long.MIN_VALUE;
+
+		private Throttle(long intervalNanos) {
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		protected boolean accept(Action action) {
+			final long now = System.nanoTime();
+			if (nextAllowed != Long.MIN_VALUE && now - nextAllowed < 0) {
+				dropped++;
+				return false;
+			}
+			nextAllowed = now + intervalNanos;
+			return true;
+		}
+	}
+
+	private final class Debounce extends Rule {
+		private final long intervalNanos;
+		private Action pending;
+		private long lastArrival;
+
+		private Debounce(long intervalNanos) {
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		protected boolean accept(Action action) {
+			if (pending == null)
+				schedule(this::check, intervalNanos);
+			else
+				coalesced++;
+			pending = action;
+			lastArrival = System.nanoTime();
+			return false;
+		}
+
+		private void check() {
+			final Action ready;
+			synchronized (this) {
+				final long quiet = System.nanoTime() - lastArrival;
+				if (quiet < intervalNanos) {
+					schedule(this::check, intervalNanos - quiet);
+					return;
+				}
+				ready = pending;
+				pending = null;
+			}
+			release(ready);
+		}
+	}
+
+	private final class Sample extends Rule {
+		private final long intervalNanos;
+		private Action pending;
+
+		private Sample(long intervalNanos) {
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		protected boolean accept(Action action) {
+			if (pending == null)
+				schedule(this::flush, intervalNanos);
+			else
+				coalesced++;
+			pending = action;
+			return false;
+		}
+
+		private void flush() {
+			final Action ready;
+			synchronized (this) {
+				ready = pending;
+				pending = null;
+			}
+			release(ready);
+		}
+	}
+
+	private final class EveryNth extends Rule {
+		private final int n;
+		private long count;
+
+		private EveryNth(int n) {
+			this.n = n;
+		}
+
+		@Override
+		protected boolean accept(Action action) {
+			if (count++ % n == 0)
+				return true;
+			dropped++;
+			return false;
+		}
+	}
+}
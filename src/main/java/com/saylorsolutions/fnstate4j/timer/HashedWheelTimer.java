@@ -0,0 +1,229 @@
+package com.saylorsolutions.fnstate4j.timer;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timer for large numbers of short, approximate timeouts, like key expiry.
+ * Timeouts are kept in a ring of buckets, one per tick, so scheduling and
+ * cancelling take constant time no matter how many timeouts are pending. A
+ * single daemon thread advances the wheel once per tick and runs every task
+ * whose deadline has passed, so tasks run up to one tick late and must return
+ * quickly.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class HashedWheelTimer implements Closeable {
+	public static final long DEFAULT_TICK_MILLIS = 10L;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+	private static final AtomicInteger TIMER_COUNT = new AtomicInteger();
+
+	private final long tickNanos;
+	private final Timeout.Bucket[] wheel;
+	private final int mask;
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final Thread worker;
+	private final long startNanos;
+	private volatile boolean closed;
+	private long tick;
+
+	public HashedWheelTimer() {
+		this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param tickDuration The time between ticks, which is also the precision of
+	 *                     the timer.
+	 * @param unit         The unit of the tick duration.
+	 * @param wheelSize    The number of buckets, rounded up to a power of 2.
+	 *                     Timeouts further away than one turn of the wheel wait for
+	 *                     more turns.
+	 */
+	public HashedWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) {
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		if (tickDuration <= 0L)
+			throw new IllegalArgumentException("'tickDuration' parameter must be positive");
+		if (wheelSize < 1 || wheelSize > (1 << 30))
+			throw new IllegalArgumentException("'wheelSize' parameter must be between 1 and 2^30");
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Timeout.Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.wheel[i] = new Timeout.Bucket();
+		}
+		this.mask = size - 1;
+		this.startNanos = System.nanoTime();
+		this.worker = new Thread(this::run, "fnstate4j-wheel-timer-" + TIMER_COUNT.incrementAndGet());
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * @param task  The task to run on the timer thread.
+	 * @param delay How long to wait before running the task.
+	 * @param unit  The unit of the delay.
+	 * @return A handle to cancel the task.
+	 * @throws IllegalStateException If the timer is closed.
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		return add(task, delay, 0L, unit);
+	}
+
+	/**
+	 * Runs a task repeatedly until it's cancelled. Each run is scheduled one
+	 * period after the previous deadline, not after the previous run finished, so
+	 * a late tick doesn't shift later runs.
+	 *
+	 * @param task         The task to run on the timer thread.
+	 * @param initialDelay How long to wait before the first run.
+	 * @param period       The time between runs, at least one tick.
+	 * @param unit         The unit of the delay and period.
+	 * @return A handle to stop the task.
+	 * @throws IllegalStateException If the timer is closed.
+	 */
+	public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		if (period <= 0L)
+			throw new IllegalArgumentException("'period' parameter must be positive");
+		return add(task, initialDelay, Math.max(this.tickNanos, unit.toNanos(period)), unit);
+	}
+
+	private Timeout add(Runnable task, long delay, long periodNanos, TimeUnit unit) {
+		Objects.requireNonNull(task, "'task' parameter must not be null");
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		if (this.closed)
+			throw new IllegalStateException("HashedWheelTimer is closed");
+		final Timeout timeout = new Timeout(this, task, System.nanoTime() + Math.max(0L, unit.toNanos(delay)),
+				periodNanos);
+		this.pendingCount.incrementAndGet();
+		this.added.add(timeout);
+		return timeout;
+	}
+
+	void cancelled(Timeout timeout) {
+		this.pendingCount.decrementAndGet();
+		this.cancelled.add(timeout);
+	}
+
+	/**
+	 * @return The number of timeouts that haven't run or been cancelled.
+	 */
+	public int getPendingCount() {
+		return this.pendingCount.get();
+	}
+
+	public long getTickNanos() {
+		return this.tickNanos;
+	}
+
+	private void run() {
+		while (!this.closed) {
+			final long deadline = this.startNanos + (this.tick + 1) * this.tickNanos;
+			final long sleepNanos = deadline - System.nanoTime();
+			if (sleepNanos > 0L) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					if (this.closed)
+						return;
+				}
+				continue;
+			}
+			removeCancelled();
+			transferAdded();
+			expire(this.wheel[(int) (this.tick & this.mask)]);
+			this.tick++;
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = this.cancelled.poll()) != null) {
+			if (timeout.bucket != null)
+				timeout.bucket.remove(timeout);
+		}
+	}
+
+	private void transferAdded() {
+		Timeout timeout;
+		while ((timeout = this.added.poll()) != null) {
+			if (timeout.isCancelled())
+				continue;
+			final long ticks = Math.max(this.tick, (timeout.deadline - this.startNanos) / this.tickNanos);
+			timeout.remainingRounds = (ticks - this.tick) / this.wheel.length;
+			this.wheel[(int) (ticks & this.mask)].add(timeout);
+		}
+	}
+
+	private void expire(Timeout.Bucket bucket) {
+		Timeout timeout = bucket.head();
+		while (timeout != null) {
+			if (timeout.remainingRounds > 0L) {
+				timeout.remainingRounds--;
+				timeout = timeout.next;
+				continue;
+			}
+			final Timeout next = bucket.remove(timeout);
+			if (timeout.isPeriodic()) {
+				if (timeout.isPending()) {
+					runTask(timeout);
+					timeout.deadline += timeout.periodNanos;
+					// Added back through the queue, so it's never placed in the bucket being expired.
+					if (timeout.isPending())
+						this.added.add(timeout);
+				}
+			} else if (timeout.expire()) {
+				this.pendingCount.decrementAndGet();
+				runTask(timeout);
+			}
+			timeout = next;
+		}
+	}
+
+	private void runTask(Timeout timeout) {
+		try {
+			timeout.task.run();
+		} catch (RuntimeException e) {
+			final Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	/**
+	 * Stops the timer thread. Pending timeouts never run.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.worker.interrupt();
+	}
+}
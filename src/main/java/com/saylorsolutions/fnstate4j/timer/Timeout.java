@@ -0,0 +1,128 @@
+package com.saylorsolutions.fnstate4j.timer;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task scheduled on a {@code HashedWheelTimer}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class Timeout {
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	final HashedWheelTimer timer;
+	final Runnable task;
+	final long periodNanos; // 0 for a timeout that runs once
+	long deadline;
+	long remainingRounds;
+	// Bucket links, only touched by the timer's worker thread.
+	Bucket bucket;
+	Timeout next;
+	Timeout prev;
+	private final AtomicInteger status = new AtomicInteger(PENDING);
+
+	Timeout(HashedWheelTimer timer, Runnable task, long deadline, long periodNanos) {
+		this.timer = timer;
+		this.task = task;
+		this.deadline = deadline;
+		this.periodNanos = periodNanos;
+	}
+
+	/**
+	 * Prevents the task from running, if it hasn't already. A periodic task is
+	 * not run again, but a run in progress is not interrupted.
+	 *
+	 * @return Whether the task was cancelled by this call.
+	 */
+	public boolean cancel() {
+		if (!this.status.compareAndSet(PENDING, CANCELLED))
+			return false;
+		this.timer.cancelled(this);
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return this.status.get() == CANCELLED;
+	}
+
+	/**
+	 * @return Whether a task that runs once has run. Always false for a periodic
+	 *         task.
+	 */
+	public boolean isExpired() {
+		return this.status.get() == EXPIRED;
+	}
+
+	public boolean isPeriodic() {
+		return this.periodNanos > 0L;
+	}
+
+	boolean isPending() {
+		return this.status.get() == PENDING;
+	}
+
+	boolean expire() {
+		return this.status.compareAndSet(PENDING, EXPIRED);
+	}
+
+	/**
+	 * A doubly linked list of the timeouts in one slot of the wheel.
+	 */
+	static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (this.head == null) {
+				this.head = this.tail = timeout;
+			} else {
+				this.tail.next = timeout;
+				timeout.prev = this.tail;
+				this.tail = timeout;
+			}
+		}
+
+		Timeout remove(Timeout timeout) {
+			final Timeout next = timeout.next;
+			if (timeout.prev != null)
+				timeout.prev.next = next;
+			if (next != null)
+				next.prev = timeout.prev;
+			if (timeout == this.head)
+				this.head = next;
+			if (timeout == this.tail)
+				this.tail = timeout.prev;
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		Timeout head() {
+			return this.head;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.saylorsolutions.fnstate4j.ui;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.saylorsolutions.fnstate4j.StateStoreRegistry;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+
+/**
+ * The time source used by a {@code FrameScheduler}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ * @see ManualFrameClock
+ */
+public interface FrameClock {
+	/**
+	 * @return The current time in nanoseconds, only meaningful relative to other
+	 *         values from the same clock.
+	 */
+	public long nanoTime();
+
+	/**
+	 * Runs the task once, after the delay has passed.
+	 *
+	 * @param task       The task to run.
+	 * @param delayNanos The delay in nanoseconds.
+	 */
+	public void schedule(Runnable task, long delayNanos);
+
+	/**
+	 * @return A clock that uses {@code System#nanoTime()} and the timer of the
+	 *         shared {@code StateStoreRegistry}.
+	 * @see StateStoreRegistry#getTimer()
+	 */
+	public static FrameClock system() {
+		return SystemFrameClock.INSTANCE;
+	}
+
+	/**
+	 * @param timer The timer that runs scheduled tasks, like
+	 *              {@code StateStore#getTimer()} for stores of another registry.
+	 * @return A clock that uses {@code System#nanoTime()} and the given timer.
+	 */
+	public static FrameClock using(HashedWheelTimer timer) {
+		Objects.requireNonNull(timer, "'timer' parameter must not be null");
+		return new FrameClock() {
+			@Override
+			public long nanoTime() {
+				return System.nanoTime();
+			}
+
+			@Override
+			public void schedule(Runnable task, long delayNanos) {
+				timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+			}
+		};
+	}
+
+	static final class SystemFrameClock implements FrameClock {
+		private static final SystemFrameClock INSTANCE = new SystemFrameClock();
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public void schedule(Runnable task, long delayNanos) {
+			// Looked up on every call, the shared timer is only started once it's needed.
+			StateStoreRegistry.shared().getTimer().schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+}
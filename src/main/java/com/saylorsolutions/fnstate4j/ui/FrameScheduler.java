@@ -0,0 +1,140 @@
+package com.saylorsolutions.fnstate4j.ui;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import com.saylorsolutions.fnstate4j.func.NotificationScheduler;
+
+/**
+ * A {@code NotificationScheduler} that collapses every commit within a frame
+ * interval into a single notification, delivered on a target {@code Executor}
+ * like the Swing event dispatch thread or the JavaFX application thread. No
+ * matter how fast actions are dispatched, subscribers are called at most once
+ * per frame, always with the latest {@code State}.
+ * <p>
+ * The first commit after an idle period is delivered right away. Later commits
+ * wait for the rest of the frame that started with the last delivery. One
+ * scheduler may be shared by several stores, each gets its own frames.
+ *
+ * <pre>
+ * store.setNotificationScheduler(FrameScheduler.swing(16, TimeUnit.MILLISECONDS));
+ * store.setNotificationScheduler(new FrameScheduler(Platform::runLater, 16, TimeUnit.MILLISECONDS));
+ * </pre>
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public class FrameScheduler implements NotificationScheduler {
+	private final Executor target;
+	private final long frameNanos;
+	private final FrameClock clock;
+	// Keyed by each store's notification callback, weakly so that closed stores can be collected.
+	private final Map<Runnable, Frames> stores = Collections.synchronizedMap(new WeakHashMap<>());
+	private final AtomicLong frameCount = new AtomicLong();
+	private final AtomicLong collapsedCount = new AtomicLong();
+
+	public FrameScheduler(Executor target, long frameInterval, TimeUnit unit) {
+		this(target, frameInterval, unit, FrameClock.system());
+	}
+
+	/**
+	 * @param target        Where subscribers are notified.
+	 * @param frameInterval The minimum time between notifications.
+	 * @param unit          The unit of the interval.
+	 * @param clock         The time source, a {@code ManualFrameClock} in tests.
+	 */
+	public FrameScheduler(Executor target, long frameInterval, TimeUnit unit, FrameClock clock) {
+		Objects.requireNonNull(target, "'target' parameter must not be null");
+		Objects.requireNonNull(unit, "'unit' parameter must not be null");
+		Objects.requireNonNull(clock, "'clock' parameter must not be null");
+		if (frameInterval <= 0L)
+			throw new IllegalArgumentException("'frameInterval' parameter must be positive");
+		this.target = target;
+		this.frameNanos = unit.toNanos(frameInterval);
+		this.clock = clock;
+	}
+
+	/**
+	 * @param frameInterval The minimum time between notifications.
+	 * @param unit          The unit of the interval.
+	 * @return A scheduler that notifies subscribers on the Swing event dispatch
+	 *         thread.
+	 */
+	public static FrameScheduler swing(long frameInterval, TimeUnit unit) {
+		return new FrameScheduler(SwingUtilities::invokeLater, frameInterval, unit);
+	}
+
+	@Override
+	public void request(Runnable notifySubscribers) {
+		final Frames frames = this.stores.computeIfAbsent(notifySubscribers, k -> new Frames());
+		if (!frames.pending.compareAndSet(false, true)) {
+			this.collapsedCount.incrementAndGet();
+			return;
+		}
+		final long last = frames.lastFrame.get();
+		final long elapsed = this.clock.nanoTime() - last;
+		final Runnable frame = () -> this.target.execute(() -> deliver(frames, notifySubscribers));
+		if (last == Long.MIN_VALUE || elapsed >= this.frameNanos)
+			frame.run();
+		else
+			this.clock.schedule(frame, this.frameNanos - elapsed);
+	}
+
+	private void deliver(Frames frames, Runnable notifySubscribers) {
+		frames.lastFrame.set(this.clock.nanoTime());
+		// Cleared first, so that commits made while subscribers run get their own frame.
+		frames.pending.set(false);
+		this.frameCount.incrementAndGet();
+		notifySubscribers.run();
+	}
+
+	/**
+	 * @return The number of notifications delivered, to every store.
+	 */
+	public long getFrameCount() {
+		return this.frameCount.get();
+	}
+
+	/**
+	 * @return The number of commits that were folded into an already scheduled
+	 *         notification.
+	 */
+	public long getCollapsedCount() {
+		return this.collapsedCount.get();
+	}
+
+	/**
+	 * Frame state of one store.
+	 */
+	private static final class Frames {
+		private final AtomicBoolean pending = new AtomicBoolean();
+		private final AtomicLong lastFrame = new AtomicLong(Long.MIN_VALUE);
+	}
+}
@@ -0,0 +1,102 @@
+package com.saylorsolutions.fnstate4j.ui;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code FrameClock} that only moves when told to, so that frame timing can be
+ * tested deterministically without a UI toolkit. Scheduled tasks run on the
+ * thread that calls {@code advance}.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class ManualFrameClock implements FrameClock {
+	private long now;
+	private long sequence;
+	private final List<Task> tasks = new ArrayList<>();
+
+	@Override
+	public synchronized long nanoTime() {
+		return this.now;
+	}
+
+	@Override
+	public synchronized void schedule(Runnable task, long delayNanos) {
+		this.tasks.add(new Task(task, this.now + Math.max(0L, delayNanos), this.sequence++));
+	}
+
+	/**
+	 * Moves the clock forward, running every task that becomes due in order of
+	 * its due time, including tasks scheduled by those tasks.
+	 *
+	 * @param duration How far to move the clock.
+	 * @param unit     The unit of the duration.
+	 */
+	public void advance(long duration, TimeUnit unit) {
+		final long target;
+		synchronized (this) {
+			target = this.now + unit.toNanos(duration);
+		}
+		Task next;
+		while ((next = nextDue(target)) != null) {
+			next.task.run();
+		}
+		synchronized (this) {
+			this.now = target;
+		}
+	}
+
+	private synchronized Task nextDue(long target) {
+		Task next = null;
+		for (Task task : this.tasks) {
+			if (task.due <= target && (next == null || task.due < next.due
+					|| (task.due == next.due && task.sequence < next.sequence)))
+				next = task;
+		}
+		if (next != null) {
+			this.tasks.remove(next);
+			this.now = next.due;
+		}
+		return next;
+	}
+
+	/**
+	 * @return The number of tasks that haven't run yet.
+	 */
+	public synchronized int getPendingCount() {
+		return this.tasks.size();
+	}
+
+	private static final class Task {
+		private final Runnable task;
+		private final long due;
+		private final long sequence;
+
+		private Task(Runnable task, long due, long sequence) {
+			this.task = task;
+			this.due = due;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CascadeTest {
+	private static final String SEQUENCE_KEY = "SEQUENCE";
+	private static final String COUNT_KEY = "COUNT";
+	private static final String COUNT = "COUNT";
+	private List<String> reduced;
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		reduced = new ArrayList<>();
+		store = new StateStore(new State(), (a, s) -> {
+			reduced.add(a.getType());
+			final State sequenced = s.put(SEQUENCE_KEY, s.getOrElse(SEQUENCE_KEY, 0) + 1);
+			return a.getType().equals(COUNT) ? sequenced.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1) : sequenced;
+		}, null);
+	}
+
+	@Test
+	public void testDeepCascadeDoesNotOverflow() {
+		final int depth = 100_000;
+		final AtomicInteger maxStack = new AtomicInteger();
+		store.subscribe(s -> {
+			maxStack.accumulateAndGet(Thread.currentThread().getStackTrace().length, Math::max);
+			if (s.getOrElse(COUNT_KEY, 0) < depth)
+				store.dispatch(Action.create(COUNT));
+		});
+		store.dispatch(Action.create(COUNT));
+		assertEquals(Integer.valueOf(depth), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(depth, store.getMaxCascadeLength());
+		assertTrue(maxStack.get() < 100);
+	}
+
+	@Test
+	public void testNestedDispatchRunsAfterCommit() {
+		final List<Integer> seenBy = new ArrayList<>();
+		store.subscribe(s -> {
+			seenBy.add(s.getOrElse(COUNT_KEY, 0));
+			if (reduced.size() == 1) {
+				store.dispatch(Action.create("FIRST"));
+				store.dispatch(Action.create("SECOND"));
+				// Not processed yet, this subscriber is still running.
+				assertEquals(1, reduced.size());
+			}
+		});
+		store.dispatch(Action.create(COUNT));
+		assertEquals(3, reduced.size());
+		assertEquals("FIRST", reduced.get(1));
+		assertEquals("SECOND", reduced.get(2));
+		assertEquals(3, seenBy.size());
+	}
+
+	@Test
+	public void testCascadeListener() {
+		final AtomicReference<Action> root = new AtomicReference<>();
+		final AtomicInteger length = new AtomicInteger();
+		final AtomicInteger calls = new AtomicInteger();
+		store.setCascadeListener((a, n, nanos) -> {
+			root.set(a);
+			length.set(n);
+			calls.incrementAndGet();
+			assertTrue(nanos > 0L);
+		});
+		store.dispatch(Action.create("ALONE"));
+		assertEquals(0, calls.get());
+
+		store.subscribe(s -> {
+			if (s.getOrElse(COUNT_KEY, 0) < 5)
+				store.dispatch(Action.create(COUNT));
+		});
+		final Action start = Action.create("START");
+		store.dispatch(start);
+		assertEquals(1, calls.get());
+		assertSame(start, root.get());
+		assertEquals(6, length.get());
+	}
+
+	@Test
+	public void testExceptionEndsCascade() {
+		store.addReducer((a, s) -> {
+			if (a.getType().equals("FAIL"))
+				throw new IllegalStateException("fail");
+			return s;
+		});
+		try {
+			store.dispatch(Action.create("FAIL"));
+			fail("Expected the reducer exception");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		store.dispatch(Action.create(COUNT));
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse(COUNT_KEY, 0));
+	}
+
+	@Test
+	public void testExceptionDoesNotDropQueuedActions() {
+		store.addReducer((a, s) -> {
+			if (a.getType().equals("FAIL"))
+				throw new IllegalStateException("fail");
+			return s;
+		});
+		store.subscribe(s -> {
+			if (reduced.size() == 1) {
+				store.dispatch(Action.create("FAIL"));
+				store.dispatch(Action.create(COUNT));
+			}
+		});
+		try {
+			store.dispatch(Action.create(COUNT));
+			fail("Expected the reducer exception");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(COUNT_KEY, 0));
+	}
+
+	@Test
+	public void testTransactionFromSubscriberIsQueued() {
+		final AtomicInteger depth = new AtomicInteger();
+		final AtomicInteger maxDepth = new AtomicInteger();
+		final AtomicInteger committed = new AtomicInteger();
+		store.subscribe(s -> {
+			maxDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+			try {
+				if (s.getOrElse(COUNT_KEY, 0) < 3) {
+					store.transaction(tx -> tx.dispatch(Action.create(COUNT)), ok -> {
+						assertEquals(0, depth.get());
+						if (ok)
+							committed.incrementAndGet();
+					});
+					assertEquals(0, committed.get());
+				}
+			} finally {
+				depth.decrementAndGet();
+			}
+		});
+		store.dispatch(Action.create(COUNT));
+		assertEquals(Integer.valueOf(3), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(2, committed.get());
+		assertEquals(1, maxDepth.get());
+		assertEquals(3, store.getMaxCascadeLength());
+	}
+
+	@Test
+	public void testBlockingTransactionFromSubscriberIsRejected() {
+		final AtomicInteger rejected = new AtomicInteger();
+		store.subscribe(s -> {
+			try {
+				store.transaction(tx -> tx.dispatch(Action.create(COUNT)));
+			} catch (IllegalStateException e) {
+				rejected.incrementAndGet();
+			}
+		});
+		store.dispatch(Action.create(COUNT));
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(1, rejected.get());
+	}
+}
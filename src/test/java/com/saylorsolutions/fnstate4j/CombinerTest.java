@@ -0,0 +1,128 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.func.ActionCombiner;
+
+public class CombinerTest {
+	private static final String BLOCK = "BLOCK";
+	private static final String INCREMENT = "INCREMENT";
+	private static final String SET = "SET";
+	private static final String COUNT_KEY = "COUNT";
+	private CountDownLatch blocked;
+	private CountDownLatch release;
+	private AtomicInteger reductions;
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		blocked = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		reductions = new AtomicInteger();
+		store = new StateStore(new State().put(COUNT_KEY, 0), (a, s) -> {
+			switch (a.getType()) {
+			case BLOCK:
+				blocked.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return s;
+			case INCREMENT:
+				reductions.incrementAndGet();
+				return s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + a.getPayloadOrElse(1));
+			case SET:
+				reductions.incrementAndGet();
+				return s.put(COUNT_KEY, a.getPayloadOrNull());
+			default:
+				return s;
+			}
+		}, null);
+		store.setCombiner(INCREMENT,
+				(a, b) -> Action.create(INCREMENT, a.getPayloadOrElse(1) + b.getPayloadOrElse(1)));
+	}
+
+	private void blockQueue() throws InterruptedException {
+		store.dispatch(Action.create(BLOCK), Lane.NORMAL);
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+	}
+
+	private void releaseAndAwait(int expectedCount) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		store.subscribe(s -> {
+			if (Integer.valueOf(expectedCount).equals(s.getOrNull(COUNT_KEY)) && store.getPendingCount(Lane.NORMAL) == 0)
+				done.countDown();
+		});
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testAdjacentActionsCombined() throws InterruptedException {
+		blockQueue();
+		for (int i = 0; i < 10; i++) {
+			store.dispatch(Action.create(INCREMENT), Lane.NORMAL);
+		}
+		assertEquals(1, store.getPendingCount(Lane.NORMAL));
+		releaseAndAwait(10);
+		assertEquals(1, reductions.get());
+		assertEquals(9L, store.getCoalescedCount());
+	}
+
+	@Test
+	public void testOnlyAdjacentActionsCombined() throws InterruptedException {
+		blockQueue();
+		store.dispatch(Action.create(INCREMENT, 2), Lane.NORMAL);
+		store.dispatch(Action.create(INCREMENT, 3), Lane.NORMAL);
+		store.dispatch(Action.create(SET, 100), Lane.NORMAL);
+		store.dispatch(Action.create(INCREMENT, 4), Lane.NORMAL);
+		store.dispatch(Action.create(INCREMENT), Lane.BACKGROUND);
+		assertEquals(3, store.getPendingCount(Lane.NORMAL));
+		releaseAndAwait(105);
+		assertEquals(4, reductions.get());
+	}
+
+	@Test
+	public void testUnregisteredAndDeclinedActionsKeptSeparate() throws InterruptedException {
+		store.setCombiner(SET, (a, b) -> null);
+		blockQueue();
+		store.dispatch(Action.create(SET, 1), Lane.NORMAL);
+		store.dispatch(Action.create(SET, 2), Lane.NORMAL);
+		assertEquals(2, store.getPendingCount(Lane.NORMAL));
+		store.setCombiner(SET, ActionCombiner.KEEP_LATEST);
+		store.dispatch(Action.create(SET, 3), Lane.NORMAL);
+		store.setCombiner(SET, null);
+		store.dispatch(Action.create(SET, 4), Lane.NORMAL);
+		assertEquals(3, store.getPendingCount(Lane.NORMAL));
+		releaseAndAwait(4);
+		assertEquals(3, reductions.get());
+	}
+}
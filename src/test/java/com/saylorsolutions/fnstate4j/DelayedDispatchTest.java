@@ -0,0 +1,112 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.timer.Timeout;
+
+public class DelayedDispatchTest {
+	private static final String COUNT_KEY = "COUNT";
+	private StateStoreRegistry registry;
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		registry = new StateStoreRegistry(2);
+		store = registry.create(new State().put(COUNT_KEY, 0),
+				(a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1), null);
+	}
+
+	@After
+	public void teardown() {
+		registry.close();
+	}
+
+	private void awaitCount(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (store.getState().getOrElse(COUNT_KEY, 0) < count && System.nanoTime() < deadline) {
+			Thread.sleep(2);
+		}
+	}
+
+	@Test
+	public void testDispatchAfterDelay() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		store.subscribe(s -> latch.countDown());
+		long start = System.nanoTime();
+		Timeout timeout = store.dispatchAfter(Action.create("LATER"), 30, TimeUnit.MILLISECONDS);
+		assertEquals(Integer.valueOf(0), store.getState().getOrNull(COUNT_KEY));
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+		assertEquals(Integer.valueOf(1), store.getState().getOrNull(COUNT_KEY));
+		assertTrue(timeout.isExpired());
+	}
+
+	@Test
+	public void testCancelledDispatch() throws InterruptedException {
+		Timeout cancelled = store.dispatchAfter(Action.create("NEVER"), 20, TimeUnit.MILLISECONDS);
+		assertTrue(cancelled.cancel());
+		store.dispatchAfter(Action.create("MARKER"), 40, TimeUnit.MILLISECONDS);
+		awaitCount(1);
+		Thread.sleep(20);
+		assertEquals(Integer.valueOf(1), store.getState().getOrNull(COUNT_KEY));
+	}
+
+	@Test
+	public void testDispatchEvery() throws InterruptedException {
+		Timeout periodic = store.dispatchEvery(Action.create("TICK"), 0, 10, TimeUnit.MILLISECONDS);
+		awaitCount(3);
+		periodic.cancel();
+		int stopped = store.getState().getOrElse(COUNT_KEY, 0);
+		assertTrue(stopped >= 3);
+		Thread.sleep(50);
+		assertTrue(store.getState().getOrElse(COUNT_KEY, 0) <= stopped + 1);
+	}
+
+	@Test
+	public void testDueActionsAreBatched() throws InterruptedException {
+		long tasksBefore = store.getUsage().getCompletedTaskCount();
+		for (int i = 0; i < 1000; i++) {
+			store.dispatchAfter(Action.create("BULK"), 20, TimeUnit.MILLISECONDS);
+		}
+		awaitCount(1000);
+		assertEquals(Integer.valueOf(1000), store.getState().getOrNull(COUNT_KEY));
+		assertTrue(store.getUsage().getCompletedTaskCount() - tasksBefore < 100);
+	}
+
+	@Test
+	public void testClosedStoreDropsPendingDispatches() throws InterruptedException {
+		Timeout periodic = store.dispatchEvery(Action.create("TICK"), 20, 10, TimeUnit.MILLISECONDS);
+		store.dispatchAfter(Action.create("LATER"), 20, TimeUnit.MILLISECONDS);
+		store.close();
+		Thread.sleep(60);
+		assertEquals(Integer.valueOf(0), store.getState().getOrNull(COUNT_KEY));
+		assertTrue(periodic.isCancelled());
+	}
+}
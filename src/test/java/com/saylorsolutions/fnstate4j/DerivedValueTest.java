@@ -0,0 +1,112 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.func.Selector;
+
+public class DerivedValueTest {
+	private static final String PRICE_KEY = "PRICE";
+	private static final String QUANTITY_KEY = "QUANTITY";
+	private static final String OTHER_KEY = "OTHER";
+	private static final String TOTAL_KEY = "TOTAL";
+	private AtomicInteger computeCount;
+	private Selector<Integer> total;
+	private State state;
+
+	@Before
+	public void setup() {
+		computeCount = new AtomicInteger();
+		total = s -> {
+			computeCount.incrementAndGet();
+			return s.getOrElse(PRICE_KEY, 0) * s.getOrElse(QUANTITY_KEY, 0);
+		};
+		state = new State().put(PRICE_KEY, 3).put(QUANTITY_KEY, 4);
+	}
+
+	@Test
+	public void testComputedOnce() {
+		DerivedValue<Integer> derived = new DerivedValue<>(total, PRICE_KEY, QUANTITY_KEY);
+		assertEquals(Integer.valueOf(12), derived.get(state));
+		assertEquals(Integer.valueOf(12), derived.get(state));
+		assertEquals(1, computeCount.get());
+	}
+
+	@Test
+	public void testUnrelatedChangeDoesNotRecompute() {
+		DerivedValue<Integer> derived = new DerivedValue<>(total, PRICE_KEY, QUANTITY_KEY);
+		derived.get(state);
+		assertEquals(Integer.valueOf(12), derived.get(state.put(OTHER_KEY, "ignored")));
+		assertEquals(1, computeCount.get());
+	}
+
+	@Test
+	public void testInputChangeRecomputes() {
+		DerivedValue<Integer> derived = new DerivedValue<>(total, PRICE_KEY, QUANTITY_KEY);
+		derived.get(state);
+		assertEquals(Integer.valueOf(20), derived.get(state.put(PRICE_KEY, 5)));
+		assertEquals(2, computeCount.get());
+	}
+
+	@Test
+	public void testNoInputKeysRecomputesForNewState() {
+		DerivedValue<Integer> derived = new DerivedValue<>(total);
+		derived.get(state);
+		derived.get(state);
+		derived.get(state.put(OTHER_KEY, "changed"));
+		assertEquals(2, computeCount.get());
+		assertTrue(derived.dependsOn(OTHER_KEY));
+	}
+
+	@Test
+	public void testInvalidate() {
+		DerivedValue<Integer> derived = new DerivedValue<>(total, PRICE_KEY);
+		derived.get(state);
+		derived.invalidate();
+		derived.get(state);
+		assertEquals(2, computeCount.get());
+		assertFalse(derived.dependsOn(OTHER_KEY));
+	}
+
+	@Test
+	public void testStoreExposesDerivedValue() {
+		StateStore store = new StateStore(state, (a, s) -> s.put(OTHER_KEY, a.getType()), null);
+		store.derive(TOTAL_KEY, total, PRICE_KEY, QUANTITY_KEY);
+		store.subscribe(s -> store.get(TOTAL_KEY));
+		store.subscribe(s -> store.get(TOTAL_KEY));
+
+		store.dispatch(Action.create("FIRST"));
+		store.dispatch(Action.create("SECOND"));
+		assertEquals(Integer.valueOf(12), store.get(TOTAL_KEY, Integer.class).get());
+		assertEquals(1, computeCount.get());
+
+		assertEquals("SECOND", store.get(OTHER_KEY).get());
+
+		store.removeDerived(TOTAL_KEY);
+		assertFalse(store.get(TOTAL_KEY).isPresent());
+	}
+}
@@ -0,0 +1,113 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LaneTest {
+	private static final String SEQUENCE_KEY = "SEQUENCE";
+	private static final String BLOCK = "BLOCK";
+	private CountDownLatch blocked;
+	private CountDownLatch release;
+	private List<String> processed;
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		blocked = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		processed = new ArrayList<>();
+		store = new StateStore(new State(), (a, s) -> {
+			if (a.getType().equals(BLOCK)) {
+				blocked.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else {
+				processed.add(a.getType());
+			}
+			return s.put(SEQUENCE_KEY, s.getOrElse(SEQUENCE_KEY, 0) + 1);
+		}, null);
+	}
+
+	private void awaitProcessed(int count) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		store.subscribe(s -> {
+			if (processed.size() >= count + 1)
+				done.countDown();
+		});
+		store.dispatch(Action.create("DONE"), Lane.BACKGROUND);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testHigherLaneGoesFirst() throws InterruptedException {
+		store.dispatch(Action.create(BLOCK), Lane.NORMAL);
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		store.dispatch(Action.create("LOAD_1"), Lane.BACKGROUND);
+		store.dispatch(Action.create("LOAD_2"), Lane.BACKGROUND);
+		store.dispatch(Action.create("UPDATE"), Lane.NORMAL);
+		store.dispatch(Action.create("CLICK"), Lane.INTERACTIVE);
+		assertEquals(2, store.getPendingCount(Lane.BACKGROUND));
+		release.countDown();
+		awaitProcessed(4);
+		assertEquals("CLICK", processed.get(0));
+		assertEquals("UPDATE", processed.get(1));
+		assertEquals("LOAD_1", processed.get(2));
+		assertEquals("LOAD_2", processed.get(3));
+		assertEquals(0, store.getPendingCount(Lane.BACKGROUND));
+	}
+
+	@Test
+	public void testStarvationGuard() throws InterruptedException {
+		store.setStarvationThreshold(0, TimeUnit.MILLISECONDS);
+		store.dispatch(Action.create(BLOCK), Lane.NORMAL);
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		store.dispatch(Action.create("LOAD"), Lane.BACKGROUND);
+		Thread.sleep(2L);
+		store.dispatch(Action.create("CLICK"), Lane.INTERACTIVE);
+		release.countDown();
+		awaitProcessed(2);
+		assertEquals("LOAD", processed.get(0));
+		assertEquals("CLICK", processed.get(1));
+	}
+
+	@Test
+	public void testLatencyRecordedPerLane() throws InterruptedException {
+		release.countDown();
+		store.dispatch(Action.create("CLICK"), Lane.INTERACTIVE);
+		store.dispatch(Action.create("CLICK"), Lane.INTERACTIVE);
+		awaitProcessed(2);
+		assertEquals(2L, store.getLatency(Lane.INTERACTIVE).getCount());
+		assertEquals(0L, store.getLatency(Lane.NORMAL).getCount());
+		assertTrue(store.getLatency(Lane.INTERACTIVE).getMaxNanos() > 0L);
+	}
+}
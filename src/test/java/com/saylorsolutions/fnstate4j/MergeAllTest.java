@@ -0,0 +1,117 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MergeAllTest {
+	private static final String KEY = "KEY";
+
+	@Test
+	public void testPolicies() {
+		final List<State> states = Arrays.asList(new State().put(KEY, 1).put("A", "a"), new State().put(KEY, 2),
+				new State().put(KEY, 3).put("C", "c"));
+		final State last = State.mergeAll(states, ConflictPolicy.LAST_WINS);
+		assertEquals(Integer.valueOf(3), last.getOrElse(KEY, 0));
+		assertEquals(3, last.size());
+		assertFalse(last.canTimeTravel());
+
+		assertEquals(Integer.valueOf(1), State.mergeAll(states, ConflictPolicy.FIRST_WINS).getOrElse(KEY, 0));
+
+		final State summed = State.mergeAll(states, (k, a, b) -> (Integer) a + (Integer) b);
+		assertEquals(Integer.valueOf(6), summed.getOrElse(KEY, 0));
+		assertEquals("c", summed.getOrNull("C"));
+	}
+
+	@Test
+	public void testEdgeCases() {
+		assertTrue(State.mergeAll(Collections.emptyList(), ConflictPolicy.LAST_WINS).isEmpty());
+		final State single = new State().put(KEY, 1).put(KEY, 2);
+		final State merged = State.mergeAll(Collections.singletonList(single), ConflictPolicy.LAST_WINS);
+		assertEquals(single, merged);
+		assertFalse(merged.canTimeTravel());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullState() {
+		State.mergeAll(Arrays.asList(new State(), null), ConflictPolicy.LAST_WINS);
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		final int shards = 16;
+		final int keysPerShard = State.PARALLEL_THRESHOLD / 4;
+		final List<State> states = new ArrayList<>();
+		for (int shard = 0; shard < shards; shard++) {
+			final Map<String, Object> entries = new HashMap<>();
+			for (int i = 0; i < keysPerShard; i++) {
+				// Every other key overlaps with the next shard.
+				entries.put("KEY_" + (shard * keysPerShard / 2 + i), 1);
+			}
+			states.add(State.of(io.vavr.collection.HashMap.ofAll(entries)));
+		}
+		final State counted = State.mergeAll(states, (k, a, b) -> (Integer) a + (Integer) b);
+		final State last = State.mergeAll(states, ConflictPolicy.LAST_WINS);
+		assertEquals(last.size(), counted.size());
+		assertEquals(keysPerShard / 2 * (shards + 1), counted.size());
+		int total = 0;
+		for (String key : counted.keySet()) {
+			total += counted.getOrElse(key, 0);
+		}
+		assertEquals(shards * keysPerShard, total);
+		assertEquals(Integer.valueOf(2), counted.getOrElse("KEY_" + keysPerShard, 0));
+	}
+
+	@Test
+	public void testLargePairMergedByKeys() {
+		final int keys = State.PARALLEL_THRESHOLD * 2;
+		final Map<String, Object> first = new HashMap<>();
+		final Map<String, Object> second = new HashMap<>();
+		for (int i = 0; i < keys; i++) {
+			first.put("KEY_" + i, 1);
+			// Half of the keys overlap.
+			second.put("KEY_" + (keys / 2 + i), 2);
+		}
+		final List<State> states = Arrays.asList(State.of(io.vavr.collection.HashMap.ofAll(first)),
+				State.of(io.vavr.collection.HashMap.ofAll(second)));
+		final State last = State.mergeAll(states, ConflictPolicy.LAST_WINS);
+		final State firstWins = State.mergeAll(states, ConflictPolicy.FIRST_WINS);
+		final State summed = State.mergeAll(states, (k, a, b) -> (Integer) a + (Integer) b);
+		assertEquals(keys / 2 * 3, last.size());
+		assertEquals(keys / 2 * 3, summed.size());
+		assertEquals(Integer.valueOf(1), last.getOrElse("KEY_0", 0));
+		assertEquals(Integer.valueOf(2), last.getOrElse("KEY_" + keys, 0));
+		for (int i = keys / 2; i < keys; i++) {
+			assertEquals(Integer.valueOf(2), last.getOrElse("KEY_" + i, 0));
+			assertEquals(Integer.valueOf(1), firstWins.getOrElse("KEY_" + i, 0));
+			assertEquals(Integer.valueOf(3), summed.getOrElse("KEY_" + i, 0));
+		}
+	}
+}
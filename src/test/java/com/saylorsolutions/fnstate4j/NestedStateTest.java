@@ -0,0 +1,118 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+
+public class NestedStateTest {
+	private static final StatePath ORDER_1_STATUS = StatePath.of("orders", 1, "status");
+	private static final StatePath ORDER_2_STATUS = StatePath.of("orders", 2, "status");
+	private State state;
+
+	@Before
+	public void setup() {
+		state = new State().putIn(ORDER_1_STATUS, "PENDING").putIn(ORDER_2_STATUS, "SHIPPED");
+	}
+
+	@Test
+	public void testGetIn() {
+		assertEquals("PENDING", state.getIn("orders", 1, "status").get());
+		assertEquals("SHIPPED", state.getInOrElse(ORDER_2_STATUS, "NONE"));
+		assertFalse(state.getIn("orders", 3, "status").isPresent());
+		assertFalse(state.getIn("missing").isPresent());
+		assertEquals("NONE", state.getInOrElse(StatePath.of("orders", 1, "status", "deeper"), "NONE"));
+	}
+
+	@Test
+	public void testGetInJavaMap() {
+		java.util.Map<String, Object> map = new java.util.HashMap<>();
+		map.put("inner", 5);
+		assertEquals(5, new State().put("outer", map).getIn("outer", "inner").get());
+	}
+
+	@Test
+	public void testUpdateInSharesUntouchedPaths() {
+		State updated = state.updateIn(ORDER_1_STATUS, (String s) -> s + "!");
+		assertEquals("PENDING!", updated.getIn(ORDER_1_STATUS).get());
+		assertEquals("PENDING", state.getIn(ORDER_1_STATUS).get());
+		assertSame(state.getIn("orders", 2).get(), updated.getIn("orders", 2).get());
+		assertNotSame(state.getIn("orders", 1).get(), updated.getIn("orders", 1).get());
+		assertTrue(updated.changedIn(state, ORDER_1_STATUS));
+		assertTrue(updated.changedIn(state, StatePath.of("orders")));
+		assertFalse(updated.changedIn(state, ORDER_2_STATUS));
+	}
+
+	@Test
+	public void testUpdateInSameValueIsNoOp() {
+		assertSame(state, state.updateIn(ORDER_1_STATUS, s -> s));
+		assertSame(state, state.putIn(ORDER_1_STATUS, state.getIn(ORDER_1_STATUS).get()));
+	}
+
+	@Test
+	public void testRemoveIn() {
+		State removed = state.removeIn(ORDER_1_STATUS);
+		assertFalse(removed.getIn(ORDER_1_STATUS).isPresent());
+		assertTrue(removed.getIn("orders", 1).isPresent());
+		assertSame(removed, removed.removeIn(ORDER_1_STATUS));
+		assertFalse(state.removeIn(StatePath.of("orders")).hasKey("orders"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUpdateThroughNonMap() {
+		state.putIn(StatePath.of("orders", 1, "status", "deeper"), "value");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPathMustStartWithKey() {
+		StatePath.of(1, "status");
+	}
+
+	@Test
+	public void testNestedMapsAreVavrMaps() {
+		@SuppressWarnings("unchecked")
+		Map<Object, Object> orders = (Map<Object, Object>) state.getOrNull("orders");
+		assertEquals(2, orders.size());
+		assertEquals(HashMap.of("status", "PENDING"), orders.get(1).get());
+	}
+
+	@Test
+	public void testDerivedValueWithPathInput() {
+		AtomicInteger computeCount = new AtomicInteger();
+		DerivedValue<String> derived = new DerivedValue<>(s -> {
+			computeCount.incrementAndGet();
+			return s.getInOrElse(ORDER_1_STATUS, "");
+		}, ORDER_1_STATUS);
+		derived.get(state);
+		derived.get(state.putIn(ORDER_2_STATUS, "DELIVERED"));
+		assertEquals(1, computeCount.get());
+		assertEquals("DONE", derived.get(state.putIn(ORDER_1_STATUS, "DONE")));
+		assertEquals(2, computeCount.get());
+		assertTrue(derived.dependsOn("orders"));
+	}
+}
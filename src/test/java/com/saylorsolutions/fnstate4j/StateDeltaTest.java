@@ -0,0 +1,130 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateDeltaTest {
+	private State before;
+
+	@Before
+	public void setup() {
+		before = new State().put("A", "a").put("B", "b").put("C", "c");
+	}
+
+	@Test
+	public void testBetween() {
+		State after = before.put("B", "changed").remove("C").put("D", "d");
+		StateDelta delta = StateDelta.between(before, after);
+		assertEquals(2, delta.getPuts().size());
+		assertEquals("changed", delta.getPuts().get("B").get());
+		assertEquals("d", delta.getPuts().get("D").get());
+		assertTrue(delta.getRemovedKeys().contains("C"));
+		assertTrue(delta.touches("B"));
+		assertFalse(delta.touches("A"));
+	}
+
+	@Test
+	public void testApply() {
+		State after = before.put("B", "changed").remove("C").put("D", "d");
+		StateDelta delta = StateDelta.between(before, after);
+		State applied = before.apply(delta);
+		assertEquals(after.getStateMap(), applied.getStateMap());
+		assertSame(before, applied.getPreviousState().get());
+		assertEquals(applied.getStateMap(), applied.apply(delta).getStateMap());
+	}
+
+	@Test
+	public void testEmpty() {
+		assertTrue(StateDelta.between(before, before).isEmpty());
+		assertTrue(StateDelta.between(before, before.put("A", before.getOrNull("A"))).isEmpty());
+		assertSame(before, before.apply(StateDelta.EMPTY));
+	}
+
+	@Test
+	public void testBetweenFromHistory() {
+		State after = before.put("B", "changed").remove("C").put("D", "d").put("E", "e").remove("E")
+				.put("A", before.getOrNull("A"));
+		StateDelta fromHistory = StateDelta.between(before, after);
+		StateDelta full = StateDelta.between(before.detach(), after.detach());
+		assertEquals(full.getPuts(), fromHistory.getPuts());
+		assertEquals(full.getRemovedKeys(), fromHistory.getRemovedKeys());
+		assertEquals(2, fromHistory.getPuts().size());
+		assertFalse(fromHistory.touches("E"));
+	}
+
+	@Test
+	public void testBetweenUnrelatedStates() {
+		State other = new State().put("A", "a").put("B", "other");
+		StateDelta delta = StateDelta.between(before, other);
+		assertEquals(1, delta.getPuts().size());
+		assertTrue(delta.getRemovedKeys().contains("C"));
+		assertEquals(other.getStateMap(), before.apply(delta).getStateMap());
+	}
+
+	@Test
+	public void testBetweenNull() {
+		StateDelta delta = StateDelta.between(null, before);
+		assertEquals(3, delta.getPuts().size());
+		assertEquals(before.getStateMap(), new State().apply(delta).getStateMap());
+	}
+
+	@Test
+	public void testCommitDelta() {
+		StateStore store = new StateStore(before, (a, s) -> s.put("A", a.getType()), null);
+		final Commit[] last = new Commit[1];
+		store.addCommitListener(c -> last[0] = c);
+		store.dispatch(Action.create("CHANGED"));
+		assertEquals(1L, store.getVersion());
+		assertEquals(1L, last[0].getVersion());
+		assertSame(store.getState(), last[0].getState());
+		assertSame(before, last[0].getPreviousState());
+		assertEquals("CHANGED", last[0].getDelta().getPuts().get("A").get());
+		assertSame(last[0], store.getLastCommit());
+	}
+
+	@Test
+	public void testThrowingCommitListener() {
+		StateStore store = new StateStore(before, (a, s) -> s.put("A", a.getType()), null);
+		final Commit[] last = new Commit[1];
+		final int[] notified = new int[1];
+		store.addCommitListener(c -> {
+			throw new IllegalStateException("Listener failed");
+		});
+		store.addCommitListener(c -> last[0] = c);
+		store.subscribe(s -> notified[0]++);
+		final Thread thread = Thread.currentThread();
+		final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		final Throwable[] reported = new Throwable[1];
+		thread.setUncaughtExceptionHandler((t, e) -> reported[0] = e);
+		try {
+			store.dispatch(Action.create("CHANGED"));
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+		assertTrue(reported[0] instanceof IllegalStateException);
+		assertSame(store.getLastCommit(), last[0]);
+		assertEquals(1, notified[0]);
+	}
+}
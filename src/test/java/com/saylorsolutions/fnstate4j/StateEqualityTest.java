@@ -0,0 +1,117 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+
+public class StateEqualityTest {
+	private static final String NAME_KEY = "NAME";
+	private static final String COUNT_KEY = "COUNT";
+
+	@Test
+	public void testValueEquality() {
+		final State a = new State().put(NAME_KEY, "fnstate4j").put(COUNT_KEY, 1);
+		final State b = new State().put(COUNT_KEY, 1).put(NAME_KEY, new String("fnstate4j"));
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertNotEquals(a, b.put(COUNT_KEY, 2));
+		assertNotEquals(a, b.remove(COUNT_KEY));
+		assertNotEquals(a, null);
+		assertNotEquals(a, "fnstate4j");
+	}
+
+	@Test
+	public void testSameMapShortCircuit() {
+		final State state = new State().put(NAME_KEY, "fnstate4j");
+		assertEquals(state, state.detach());
+		assertEquals(state, State.of(state.getStateMap()));
+	}
+
+	@Test
+	public void testHistoryComparesChangedKeysOnly() {
+		final State base = new State().put(NAME_KEY, "fnstate4j").put(COUNT_KEY, 1);
+		final State same = base.put(COUNT_KEY, 2).put(COUNT_KEY, 1);
+		assertNotSame(base.getStateMap(), same.getStateMap());
+		assertEquals(base, same);
+		assertEquals(same, base);
+		assertNotEquals(base, base.put(COUNT_KEY, 3).put(NAME_KEY, "other").put(NAME_KEY, "fnstate4j"));
+		assertEquals(base, base.apply(StateDelta.of(HashMap.of(COUNT_KEY, 1), HashSet.empty())));
+	}
+
+	@Test
+	public void testIncrementalHashMatchesFullHash() {
+		State state = new State().put(NAME_KEY, "fnstate4j");
+		state.hashCode();
+		for (int i = 0; i < 100; i++) {
+			state = state.put("KEY_" + (i % 10), i);
+			if (i % 7 == 0)
+				state = state.remove("KEY_" + (i % 5));
+		}
+		assertEquals(State.of(state.getStateMap()).hashCode(), state.hashCode());
+	}
+
+	@Test
+	public void testStoreSkipsUnchangedStates() {
+		final StateStore store = new StateStore(new State().put(COUNT_KEY, 0), (a, s) -> {
+			if (a.getType().equals("SET"))
+				return s.put(COUNT_KEY, a.getPayloadOrElse(0));
+			return s;
+		}, null);
+		final AtomicInteger notified = new AtomicInteger();
+		store.subscribe(s -> notified.incrementAndGet());
+		final State initial = store.getState();
+
+		store.dispatch(Action.create("IGNORED"));
+		store.dispatch(Action.create("SET", 0));
+		assertSame(initial, store.getState());
+		assertEquals(0L, store.getVersion());
+		assertEquals(0, notified.get());
+		assertEquals(2L, store.getUnchangedCount());
+
+		store.dispatch(Action.create("SET", 1));
+		assertEquals(1L, store.getVersion());
+		assertEquals(1, notified.get());
+	}
+
+	@Test
+	public void testValueEqualityCheck() {
+		final StateStore store = new StateStore(new State().put(NAME_KEY, "fnstate4j"),
+				(a, s) -> s.put(NAME_KEY, a.getPayloadOrElse(null)), null);
+		assertFalse(store.isValueEqualityCheck());
+		store.dispatch(Action.create("SET", new String("fnstate4j")));
+		assertEquals(1L, store.getVersion());
+		assertEquals(0L, store.getUnchangedCount());
+
+		store.setValueEqualityCheck(true);
+		final State current = store.getState();
+		store.dispatch(Action.create("SET", new String("fnstate4j")));
+		assertSame(current, store.getState());
+		assertEquals(1L, store.getVersion());
+		assertEquals(1L, store.getUnchangedCount());
+	}
+}
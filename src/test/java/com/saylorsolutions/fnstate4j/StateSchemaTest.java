@@ -0,0 +1,137 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StateSchemaTest {
+	private static final StateKey<Integer> COUNT = StateKey.of("COUNT", Integer.class);
+	private static final StateKey<String> NAME = StateKey.of("NAME", String.class);
+	private static final StateKey<String> UNBOUND = StateKey.of("UNBOUND", String.class);
+	private static final StateSchema SCHEMA = StateSchema.of(COUNT, NAME);
+
+	@Test
+	public void testTypedAccess() {
+		final State state = SCHEMA.newState().put(COUNT, 3).put(NAME, "fnstate4j");
+		final int count = state.getOrElse(COUNT, 0);
+		assertEquals(3, count);
+		assertEquals("fnstate4j", state.getOrNull(NAME));
+		assertEquals(2, state.size());
+		assertTrue(state.getSchema().isPresent());
+		assertFalse(SCHEMA.newState().get(COUNT).isPresent());
+	}
+
+	@Test
+	public void testStringFallback() {
+		final State state = SCHEMA.newState().put("COUNT", 3).put("OTHER", true);
+		assertEquals(Integer.valueOf(3), state.getOrElse(COUNT, 0));
+		assertEquals(3, state.get("COUNT").get());
+		assertEquals(true, state.get("OTHER").get());
+		assertTrue(state.hasKey("COUNT"));
+		assertEquals(2, state.size());
+		assertTrue(state.keySet().contains("COUNT"));
+		assertTrue(state.keySet().contains("OTHER"));
+		assertFalse(state.getStateMap().containsKey("NAME"));
+
+		final State plain = new State().put(UNBOUND, "plain").put(COUNT, 5);
+		assertEquals("plain", plain.getOrNull(UNBOUND));
+		assertEquals(Integer.valueOf(5), plain.getOrElse("COUNT", 0));
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		final State first = SCHEMA.newState().put(COUNT, 1);
+		final State second = first.put(COUNT, 2).remove(NAME);
+		assertEquals(Integer.valueOf(1), first.getOrNull(COUNT));
+		assertEquals(Integer.valueOf(2), second.getOrNull(COUNT));
+		final State removed = second.remove(COUNT);
+		assertFalse(removed.hasKey("COUNT"));
+		assertEquals(0, removed.size());
+		assertSame(removed, removed.remove(COUNT));
+	}
+
+	@Test
+	public void testNullIsStoredLikeMapKeys() {
+		final State plain = new State().put("COUNT", 1).put("COUNT", null);
+		final State compiled = SCHEMA.newState().put(COUNT, 1).put("COUNT", null);
+		for (State state : new State[] { plain, compiled }) {
+			assertEquals(1, state.size());
+			assertTrue(state.keySet().contains("COUNT"));
+			assertFalse(state.hasKey("COUNT"));
+			assertNull(state.getOrElse("COUNT", 7));
+			assertFalse(state.get("COUNT").isPresent());
+			assertSame(state, state.put("COUNT", null));
+			assertEquals(0, state.remove("COUNT").size());
+		}
+		assertNull(compiled.getOrElse(COUNT, 7));
+		assertEquals(plain, compiled);
+		assertEquals(1, SCHEMA.of(plain).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongTypeRejected() {
+		SCHEMA.newState().put("COUNT", "three");
+	}
+
+	@Test
+	public void testLargeSchemaAndConversion() {
+		final StateKey<?>[] keys = new StateKey<?>[100];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = StateKey.of("KEY_" + i, Integer.class);
+		}
+		final StateSchema schema = StateSchema.of(keys);
+		State plain = new State().put("EXTRA", "x");
+		for (int i = 0; i < keys.length; i += 3) {
+			plain = plain.put("KEY_" + i, i);
+		}
+		final State compiled = schema.of(plain);
+		assertFalse(compiled.canTimeTravel());
+		assertEquals(plain, compiled);
+		assertEquals(plain.hashCode(), compiled.hashCode());
+		assertEquals(Integer.valueOf(99), compiled.getOrElse("KEY_99", 0));
+		assertTrue(StateDelta.between(plain, State.of(compiled.getStateMap())).isEmpty());
+	}
+
+	@Test
+	public void testDeltaAndEquality() {
+		final State before = SCHEMA.newState().put(COUNT, 1).put("OTHER", "a");
+		final State after = before.put(COUNT, 2).remove("OTHER").put(NAME, "n");
+		final StateDelta delta = StateDelta.between(before, after);
+		assertTrue(delta.touches("COUNT"));
+		assertTrue(delta.getRemovedKeys().contains("OTHER"));
+		final State applied = before.apply(delta);
+		assertEquals(after, applied);
+		assertNotEquals(before, applied);
+		assertEquals(before, applied.put(COUNT, 1).put("OTHER", "a").remove(NAME));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testKeyInTwoSchemas() {
+		StateSchema.of(COUNT);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateNames() {
+		StateSchema.of(StateKey.of("SAME", String.class), StateKey.of("SAME", Integer.class));
+	}
+}
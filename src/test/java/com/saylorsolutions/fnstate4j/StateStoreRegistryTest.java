@@ -0,0 +1,183 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+public class StateStoreRegistryTest {
+	private static final String COUNT_KEY = "COUNT";
+	private static final Reducer COUNTER = (a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1);
+	private StateStoreRegistry registry;
+
+	@Before
+	public void setup() {
+		registry = new StateStoreRegistry(2);
+	}
+
+	@After
+	public void cleanup() {
+		registry.close();
+	}
+
+	@Test
+	public void testManyStoresShareFewThreads() throws InterruptedException {
+		final int storeCount = 10_000;
+		final CountDownLatch notified = new CountDownLatch(storeCount);
+		final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		for (int i = 0; i < storeCount; i++) {
+			final StateStore store = registry.create(new State(), COUNTER, null);
+			store.subscribe(s -> {
+				threads.add(Thread.currentThread());
+				notified.countDown();
+			});
+			store.concurrentDispatch(Action.create("TICK"));
+		}
+		assertTrue(notified.await(10, TimeUnit.SECONDS));
+		assertEquals(storeCount, registry.getStoreCount());
+		assertTrue(threads.size() <= 2);
+		for (Thread thread : threads) {
+			assertTrue(thread.isDaemon());
+		}
+	}
+
+	@Test
+	public void testCloseDrainsQueuedWork() {
+		final StateStore store = registry.create(new State(), COUNTER, null);
+		final List<Integer> seen = new ArrayList<>();
+		store.subscribe(s -> {
+			try {
+				Thread.sleep(1L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (seen) {
+				seen.add(s.getOrElse(COUNT_KEY, 0));
+			}
+		});
+		for (int i = 0; i < 20; i++) {
+			store.dispatch(Action.create("TICK"), Lane.BACKGROUND);
+		}
+		store.close();
+		assertTrue(store.isClosed());
+		assertEquals(Integer.valueOf(20), store.getState().getOrElse(COUNT_KEY, 0));
+		synchronized (seen) {
+			assertEquals(20, seen.size());
+			assertEquals(Integer.valueOf(20), seen.get(19));
+		}
+		assertEquals(0, registry.getStoreCount());
+		assertEquals(0, store.getUsage().getQueuedTaskCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedStoreRejectsDispatch() {
+		final StateStore store = registry.create();
+		store.close();
+		store.close();
+		store.dispatch(Action.create("TICK"));
+	}
+
+	@Test
+	public void testUsage() throws InterruptedException {
+		final StateStore store = registry.create(new State(), COUNTER, null);
+		final CountDownLatch done = new CountDownLatch(3);
+		store.subscribe(s -> done.countDown());
+		store.derive("DOUBLE", s -> s.getOrElse(COUNT_KEY, 0) * 2, COUNT_KEY);
+		for (int i = 0; i < 3; i++) {
+			store.dispatch(Action.create("TICK"), Lane.NORMAL);
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		store.close();
+		final StoreUsage usage = store.getUsage();
+		assertEquals(3L, usage.getVersion());
+		assertEquals(1, usage.getSubscriberCount());
+		assertEquals(1, usage.getDerivedValueCount());
+		assertEquals(0, usage.getPendingActionCount());
+		assertEquals(3L, usage.getCompletedTaskCount());
+		assertTrue(usage.getBusyNanos() > 0L);
+	}
+
+	@Test
+	public void testRegistryCloseClosesStores() {
+		final StateStoreRegistry other = new StateStoreRegistry(1);
+		final StateStore store = other.create();
+		other.close();
+		assertTrue(store.isClosed());
+		assertTrue(other.getScheduler().isShutdown());
+		try {
+			other.create();
+			fail("Expected a closed registry to reject new stores");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSharedCannotBeClosed() {
+		StateStoreRegistry.shared().close();
+	}
+
+	@Test(timeout = 5000L)
+	public void testRejectedBatchDoesNotHang() throws InterruptedException {
+		final AtomicInteger accepted = new AtomicInteger();
+		final List<Runnable> batches = new ArrayList<>();
+		// Accepts the first batch only, so the second one is rejected.
+		final SerialExecutor executor = new SerialExecutor(r -> {
+			if (accepted.getAndIncrement() > 0)
+				throw new RejectedExecutionException("closed");
+			batches.add(r);
+		});
+		final AtomicInteger ran = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			executor.execute(ran::incrementAndGet);
+		}
+		try {
+			batches.get(0).run();
+			fail("Expected the second batch to be rejected");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+		assertEquals(64, ran.get());
+		assertEquals(0, executor.getQueuedCount());
+		executor.awaitIdle();
+		try {
+			executor.execute(ran::incrementAndGet);
+			fail("Expected the pool to reject");
+		} catch (RejectedExecutionException e) {
+			// Expected
+		}
+		executor.awaitIdle();
+	}
+}
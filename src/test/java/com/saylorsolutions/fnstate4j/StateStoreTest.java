@@ -152,6 +152,28 @@ public class StateStoreTest {
 		assertMessagePresent(state);
 	}
 
+	@Test
+	public final void testReducersRunInRegistrationOrder() {
+		this.store.addReducer((a, s) -> s.put(MESSAGE_STATE, s.getOrElse(MESSAGE_STATE, "") + "1"));
+		this.store.addReducer((a, s) -> s.put(MESSAGE_STATE, s.getOrElse(MESSAGE_STATE, "") + "2"));
+		sendUpdatedMessage();
+		assertEquals(UPDATED_MESSAGE + "12", getFreshState().getOrNull(MESSAGE_STATE));
+	}
+
+	@Test
+	public final void testRegistrationDuringDispatch() {
+		final Reducer late = (a, s) -> s.put(MESSAGE_STATE, "late");
+		this.store.addMiddleware((a, s) -> {
+			this.store.addReducer(late);
+			return true;
+		});
+		sendUpdatedMessage();
+		assertMessagePresent(getFreshState());
+
+		sendUpdatedMessage();
+		assertEquals("late", getFreshState().getOrNull(MESSAGE_STATE));
+	}
+
 	private void resetInstanceFieldMessage() {
 		testSubscribeMessage = null;
 	}
@@ -112,6 +112,23 @@ public class StateTest {
 		assertSame(orig, test.getPreviousState().get());
 	}
 
+	@Test
+	public void testDetach() {
+		State detached = state.detach();
+		assertFalse(detached.canTimeTravel());
+		assertSame(state.getStateMap(), detached.getStateMap());
+		assertSame(detached, detached.detach());
+	}
+
+	@Test
+	public void testRemove() {
+		State removed = state.remove(TEST1_KEY);
+		assertFalse(removed.hasKey(TEST1_KEY));
+		assertTrue(state.hasKey(TEST1_KEY));
+		assertSame(state, removed.getPreviousState().get());
+		assertSame(removed, removed.remove(TEST1_KEY));
+	}
+
 	private static class A {
 		public A() {
 		}
@@ -0,0 +1,141 @@
+package com.saylorsolutions.fnstate4j;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+public class TransactionTest {
+	private static final String BALANCE_KEY = "BALANCE";
+	private static final Reducer BALANCE_REDUCER = (a, s) -> {
+		if (a.getType().equals("ADD"))
+			return s.put(BALANCE_KEY, s.getOrElse(BALANCE_KEY, 0) + (Integer) a.getPayloadOrElse(0));
+		return s;
+	};
+	private StateStore store;
+	private AtomicInteger notifications;
+
+	@Before
+	public void setup() {
+		store = new StateStore(new State().put(BALANCE_KEY, 100), BALANCE_REDUCER,
+				(a, s) -> !a.getType().equals("ADD") || s.getOrElse(BALANCE_KEY, 0) + (Integer) a.getPayloadOrElse(0) >= 0);
+		notifications = new AtomicInteger();
+		store.subscribe(s -> notifications.incrementAndGet());
+	}
+
+	@Test
+	public void testCommitIsAtomic() {
+		assertTrue(store.transaction(tx -> {
+			tx.dispatch(Action.create("ADD", -30));
+			tx.dispatch(Action.create("ADD", 10));
+			assertEquals(80, tx.getState().getOrNull(BALANCE_KEY));
+			assertEquals(100, store.getState().getOrNull(BALANCE_KEY));
+		}));
+		assertEquals(80, store.getState().getOrNull(BALANCE_KEY));
+		assertEquals(1, notifications.get());
+		assertEquals(1L, store.getVersion());
+
+		Action recorded = store.getLastCommit().getAction();
+		assertEquals(Transaction.TRANSACTION_ACTION, recorded.getType());
+		assertEquals(2, ((List<?>) recorded.getPayloadOrNull()).size());
+	}
+
+	@Test
+	public void testMiddlewareRejectionRollsBack() {
+		assertFalse(store.transaction(tx -> {
+			assertTrue(tx.dispatch(Action.create("ADD", -60)));
+			assertFalse(tx.dispatch(Action.create("ADD", -60)));
+			assertFalse(tx.dispatch(Action.create("ADD", 10)));
+		}));
+		assertEquals(100, store.getState().getOrNull(BALANCE_KEY));
+		assertEquals(0, notifications.get());
+		assertEquals(0L, store.getVersion());
+	}
+
+	@Test
+	public void testExplicitRollback() {
+		assertFalse(store.transaction(tx -> {
+			tx.dispatch(Action.create("ADD", 5));
+			tx.rollback();
+		}));
+		assertEquals(100, store.getState().getOrNull(BALANCE_KEY));
+	}
+
+	@Test
+	public void testExceptionRollsBack() {
+		try {
+			store.transaction(tx -> {
+				tx.dispatch(Action.create("ADD", 5));
+				throw new IllegalStateException("Failed");
+			});
+			fail("Exception should propagate");
+		} catch (IllegalStateException e) {
+			assertEquals(100, store.getState().getOrNull(BALANCE_KEY));
+			assertEquals(0, notifications.get());
+		}
+	}
+
+	@Test
+	public void testConflictRetries() throws InterruptedException {
+		AtomicInteger attempts = new AtomicInteger();
+		assertTrue(store.transaction(tx -> {
+			if (attempts.incrementAndGet() == 1)
+				runOnOtherThread(() -> store.dispatch(Action.create("ADD", 1)));
+			tx.dispatch(Action.create("ADD", 10));
+		}));
+		assertEquals(2, attempts.get());
+		assertEquals(111, store.getState().getOrNull(BALANCE_KEY));
+		assertEquals(2L, store.getVersion());
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void testConflictGivesUp() {
+		store.transaction(tx -> {
+			runOnOtherThread(() -> store.dispatch(Action.create("ADD", 1)));
+			tx.dispatch(Action.create("ADD", 10));
+		});
+	}
+
+	@Test
+	public void testEmptyTransaction() {
+		assertTrue(store.transaction(tx -> {
+		}));
+		assertEquals(0L, store.getVersion());
+	}
+
+	private static void runOnOtherThread(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.saylorsolutions.fnstate4j.expiry;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.timer.HashedWheelTimer;
+
+public class KeyExpiryTest {
+	private static final String PUT_ACTION = "PUT";
+	private HashedWheelTimer timer;
+	private StateStore store;
+	private KeyExpiry expiry;
+
+	@Before
+	public void setup() {
+		timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64);
+		store = new StateStore(new State().put("kept", 1), (a, s) -> {
+			if (PUT_ACTION.equals(a.getType()))
+				return s.put((String) a.getPayloadOrNull(), new Object());
+			return s;
+		}, null, true);
+		expiry = new KeyExpiry(store, timer);
+	}
+
+	@After
+	public void teardown() {
+		expiry.close();
+		timer.close();
+	}
+
+	private void put(String key) {
+		store.dispatch(Action.create(PUT_ACTION, key));
+	}
+
+	private void awaitMissing(String key) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (store.getState().get(key).isPresent() && System.nanoTime() < deadline) {
+			Thread.sleep(2);
+		}
+	}
+
+	@Test
+	public void testExpiresAfterWrite() throws InterruptedException {
+		expiry.expireAfterWrite(k -> k.startsWith("tmp:"), 20, TimeUnit.MILLISECONDS);
+		put("tmp:a");
+		put("other");
+		assertEquals(1, expiry.getTrackedKeyCount());
+		awaitMissing("tmp:a");
+		assertFalse(store.getState().get("tmp:a").isPresent());
+		assertTrue(store.getState().get("other").isPresent());
+		assertTrue(store.getState().get("kept").isPresent());
+		assertEquals(1, expiry.getExpiredCount());
+		assertEquals(0, expiry.getTrackedKeyCount());
+	}
+
+	@Test
+	public void testDefaultUsesRegistryTimer() throws InterruptedException {
+		expiry.close();
+		expiry = new KeyExpiry(store).expireAfterWrite(k -> k.startsWith("tmp:"), 20, TimeUnit.MILLISECONDS);
+		put("tmp:a");
+		awaitMissing("tmp:a");
+		assertFalse(store.getState().get("tmp:a").isPresent());
+		expiry.close();
+		// Still usable, closing the expiry doesn't close the shared timer.
+		store.getTimer().schedule(() -> {
+		}, 1, TimeUnit.MILLISECONDS).cancel();
+	}
+
+	@Test
+	public void testExpiryIsNotReducedOnTimerThread() throws InterruptedException {
+		final AtomicReference<String> evictedOn = new AtomicReference<>();
+		store.addReducer((a, s) -> {
+			if (KeyExpiry.EVICT_ACTION.equals(a.getType()))
+				evictedOn.set(Thread.currentThread().getName());
+			return s;
+		});
+		expiry.expireAfterWrite(k -> k.startsWith("tmp:"), 10, TimeUnit.MILLISECONDS);
+		put("tmp:a");
+		awaitMissing("tmp:a");
+		assertFalse(store.getState().get("tmp:a").isPresent());
+		assertNotNull(evictedOn.get());
+		assertFalse(evictedOn.get().startsWith("fnstate4j-wheel-timer"));
+	}
+
+	@Test
+	public void testRewriteRestartsTtl() throws InterruptedException {
+		expiry.expireAfterWrite(k -> k.startsWith("tmp:"), 60, TimeUnit.MILLISECONDS);
+		put("tmp:a");
+		Thread.sleep(40);
+		put("tmp:a");
+		Thread.sleep(40);
+		assertTrue(store.getState().get("tmp:a").isPresent());
+		awaitMissing("tmp:a");
+		assertFalse(store.getState().get("tmp:a").isPresent());
+		assertEquals(1, expiry.getExpiredCount());
+	}
+
+	@Test
+	public void testSizeBudgetEvictsLeastRecentlyUsed() {
+		expiry.limitSize(k -> k.startsWith("lru:"), 2);
+		put("lru:a");
+		put("lru:b");
+		expiry.touch("lru:a");
+		put("lru:c");
+		State state = store.getState();
+		assertTrue(state.get("lru:a").isPresent());
+		assertFalse(state.get("lru:b").isPresent());
+		assertTrue(state.get("lru:c").isPresent());
+		assertEquals(1, expiry.getSizeEvictedCount());
+		assertEquals(2, expiry.getTrackedKeyCount());
+	}
+
+	@Test
+	public void testExistingKeysAreManaged() {
+		expiry.limitSize(k -> true, 0);
+		assertEquals(1, expiry.getTrackedKeyCount());
+		put("x");
+		assertEquals(2, expiry.getTrackedKeyCount());
+		store.dispatch(Action.create(KeyExpiry.EVICT_ACTION, "not an eviction"));
+		assertEquals(2, expiry.getTrackedKeyCount());
+	}
+}
@@ -109,4 +109,20 @@ public class MiddlewareTest {
 		assertFalse(falsy.andThen(truthy).process(testAction, testState));
 		assertTrue(truthy.andThen(truthy).process(testAction, testState));
 	}
+
+	@Test
+	public void testLongChainStopsAtFirstCancel() {
+		final int[] calls = new int[1];
+		final Middleware counting = (a, s) -> {
+			calls[0]++;
+			return true;
+		};
+		final Middleware chain = Middleware.combine(Collections.nCopies(100000, counting));
+		assertTrue(chain.process(testAction, testState));
+		assertEquals(100000, calls[0]);
+
+		calls[0] = 0;
+		assertFalse(counting.andThen((a, s) -> false).andThen(chain).process(testAction, testState));
+		assertEquals(1, calls[0]);
+	}
 }
@@ -94,4 +94,20 @@ public class ReducerTest {
 		State reducedState = increment.andThen(increment).reduce(Action.create(actionType), state);
 		assertEquals(Integer.valueOf(2), reducedState.getOrElse(stateKey, Integer.valueOf(77)));
 	}
+
+	@Test
+	public void testLongChainIsFlat() {
+		Reducer chain = Reducer.combine(Collections.nCopies(50000, increment));
+		chain = chain.andThen(Reducer.combine(Collections.nCopies(50000, increment)));
+		State reducedState = chain.reduce(Action.create(actionType), state);
+		assertEquals(Integer.valueOf(100000), reducedState.getOrElse(stateKey, Integer.valueOf(77)));
+	}
+
+	@Test
+	public void testChainOrder() {
+		final Reducer append1 = (a, s) -> s.put(stateKey, s.getOrElse(stateKey, "") + "1");
+		final Reducer append2 = (a, s) -> s.put(stateKey, s.getOrElse(stateKey, "") + "2");
+		final Reducer chain = Reducer.combine(append1, append2).andThen(Reducer.combine(append2, append1));
+		assertEquals("1221", chain.reduce(Action.create(actionType), state).getOrNull(stateKey));
+	}
 }
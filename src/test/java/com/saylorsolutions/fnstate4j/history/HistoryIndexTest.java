@@ -0,0 +1,104 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+
+public class HistoryIndexTest {
+	private static final String COUNT_KEY = "COUNT";
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		store = new StateStore(new State(), (a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1), null);
+	}
+
+	@Test
+	public void testStateAtVersion() {
+		try (HistoryIndex history = new HistoryIndex(store)) {
+			for (int i = 0; i < 5; i++) {
+				store.dispatch(Action.create("INCREMENT"));
+			}
+			final long last = store.getLastCommit().getVersion();
+			assertEquals(6, history.size());
+			assertEquals(Integer.valueOf(3), history.stateAt(last - 2).get().getOrNull(COUNT_KEY));
+			assertEquals(Integer.valueOf(5), history.stateAt(last + 10).get().getOrNull(COUNT_KEY));
+			assertFalse(history.stateAt(history.getOldestVersion() - 1).isPresent());
+		}
+	}
+
+	@Test
+	public void testStateAtInstant() throws InterruptedException {
+		try (HistoryIndex history = new HistoryIndex(store)) {
+			store.dispatch(Action.create("INCREMENT"));
+			final Commit first = store.getLastCommit();
+			Thread.sleep(5L);
+			store.dispatch(Action.create("INCREMENT"));
+			final Instant between = Instant.ofEpochMilli(first.getTimestamp());
+			assertEquals(first.getVersion(), history.versionAt(between));
+			assertEquals(Integer.valueOf(1), history.stateAt(between).get().getOrNull(COUNT_KEY));
+			assertEquals(Integer.valueOf(2), history.stateAt(Instant.now()).get().getOrNull(COUNT_KEY));
+			assertEquals(-1L, history.versionAt(history.getOldestTimestamp().minusMillis(1)));
+			assertFalse(history.stateAt(Instant.EPOCH).isPresent());
+		}
+	}
+
+	@Test
+	public void testOldestEntriesEvicted() {
+		try (HistoryIndex history = new HistoryIndex(store, 3)) {
+			for (int i = 0; i < 10; i++) {
+				store.dispatch(Action.create("INCREMENT"));
+			}
+			assertEquals(3, history.size());
+			assertEquals(store.getLastCommit().getVersion() - 2, history.getOldestVersion());
+			assertEquals(Integer.valueOf(8), history.stateAt(history.getOldestVersion()).get().getOrNull(COUNT_KEY));
+		}
+	}
+
+	@Test
+	public void testCloseStopsRecording() {
+		final HistoryIndex history = new HistoryIndex(store);
+		history.close();
+		store.dispatch(Action.create("INCREMENT"));
+		assertEquals(1, history.size());
+	}
+
+	@Test
+	public void testTimestampsNeverGoBack() {
+		long previous = store.getLastCommit().getTimestamp();
+		for (int i = 0; i < 100; i++) {
+			store.dispatch(Action.create("INCREMENT"));
+			final long timestamp = store.getLastCommit().getTimestamp();
+			assertTrue(timestamp >= previous);
+			previous = timestamp;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Commit;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.io.ActionLogWriter;
+import com.saylorsolutions.fnstate4j.offheap.MappedSnapshot;
+import com.saylorsolutions.fnstate4j.replay.ReplayEngine;
+
+public class JournalIndexTest {
+	private static final String ADD = "ADD";
+	private static final String TOTAL_KEY = "TOTAL";
+	private static final Reducer SUM = (a, s) -> {
+		if (!a.getType().equals(ADD))
+			return s;
+		return s.put(TOTAL_KEY, s.getOrElse(TOTAL_KEY, 0) + (Integer) a.getPayloadOrElse(0));
+	};
+	private Path log;
+	private Path snapshotFile;
+	private StateStore store;
+
+	@Before
+	public void setup() throws IOException {
+		log = Files.createTempFile("fnstate4j", ".log");
+		Files.delete(log);
+		snapshotFile = Files.createTempFile("fnstate4j", ".snapshot");
+		store = new StateStore(new State(), SUM, null);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(log);
+		Files.deleteIfExists(snapshotFile);
+	}
+
+	private static int total(State state) {
+		return state.getOrElse(TOTAL_KEY, 0);
+	}
+
+	@Test
+	public void testStateAtVersion() throws IOException {
+		try (ActionLogWriter writer = new ActionLogWriter(store, log)) {
+			for (int i = 1; i <= 10; i++) {
+				store.dispatch(Action.create(ADD, i));
+			}
+		}
+		final JournalIndex journal = new JournalIndex(log, new ReplayEngine(SUM));
+		assertEquals(10, journal.getCommitCount());
+		assertEquals(0, total(journal.stateAt(0L).get()));
+		assertEquals(6, total(journal.stateAt(3L).get()));
+		assertEquals(55, total(journal.stateAt(10L).get()));
+		assertEquals(55, total(journal.stateAt(100L).get()));
+		assertFalse(journal.stateAt(-1L).isPresent());
+	}
+
+	@Test
+	public void testReplayStartsFromSnapshot() throws IOException {
+		try (ActionLogWriter writer = new ActionLogWriter(store, log)) {
+			for (int i = 1; i <= 5; i++) {
+				store.dispatch(Action.create(ADD, i));
+			}
+			MappedSnapshot.write(snapshotFile, store.getLastCommit());
+			for (int i = 6; i <= 10; i++) {
+				store.dispatch(Action.create(ADD, i));
+			}
+		}
+		// A reducer that can't see the logged actions before the snapshot
+		final Reducer afterSnapshot = (a, s) -> {
+			assertTrue((Integer) a.getPayloadOrElse(0) > 5);
+			return SUM.reduce(a, s);
+		};
+		final JournalIndex journal = new JournalIndex(log, new ReplayEngine(afterSnapshot))
+				.addSnapshot(MappedSnapshot.open(snapshotFile));
+		assertEquals(15, total(journal.stateAt(5L).get()));
+		assertEquals(36, total(journal.stateAt(8L).get()));
+		assertEquals(store.getState(), journal.stateAt(10L).get());
+	}
+
+	@Test
+	public void testStateAtInstant() throws IOException, InterruptedException {
+		final Commit first;
+		try (ActionLogWriter writer = new ActionLogWriter(store, log)) {
+			store.dispatch(Action.create(ADD, 1));
+			first = store.getLastCommit();
+			Thread.sleep(5L);
+			store.dispatch(Action.create(ADD, 2));
+		}
+		final JournalIndex journal = new JournalIndex(log, new ReplayEngine(SUM));
+		final Instant between = Instant.ofEpochMilli(first.getTimestamp());
+		assertEquals(first.getVersion(), journal.versionAt(between));
+		assertEquals(1, total(journal.stateAt(between).get()));
+		assertEquals(3, total(journal.stateAt(Instant.now()).get()));
+		assertEquals(-1L, journal.versionAt(between.minusMillis(1)));
+		assertFalse(journal.stateAt(Instant.EPOCH).isPresent());
+	}
+
+	@Test
+	public void testRefreshIndexesAppendedRecords() throws IOException {
+		try (ActionLogWriter writer = new ActionLogWriter(store, log)) {
+			store.dispatch(Action.create(ADD, 1));
+			writer.flush();
+			final JournalIndex journal = new JournalIndex(log, new ReplayEngine(SUM));
+			assertEquals(1, journal.getCommitCount());
+			store.dispatch(Action.create(ADD, 2));
+			store.dispatch(Action.create(ADD, 3));
+			writer.flush();
+			assertEquals(2, journal.refresh());
+			assertEquals(0, journal.refresh());
+			assertEquals(6, total(journal.stateAt(3L).get()));
+		}
+	}
+}
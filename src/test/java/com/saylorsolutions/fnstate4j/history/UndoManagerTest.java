@@ -0,0 +1,173 @@
+package com.saylorsolutions.fnstate4j.history;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+public class UndoManagerTest {
+	private static final String TEXT_KEY = "TEXT";
+	private static final String TYPE_ACTION = "TYPE";
+	private static final Reducer TYPING_REDUCER = (a, s) -> {
+		if (a.getType().equals(TYPE_ACTION))
+			return s.put(TEXT_KEY, s.getOrElse(TEXT_KEY, "") + a.getPayloadOrElse(""));
+		return s;
+	};
+	private StateStore store;
+	private UndoManager undo;
+
+	@Before
+	public void setup() {
+		store = new StateStore(new State(), TYPING_REDUCER, null);
+		undo = new UndoManager(store, 10, 3);
+	}
+
+	@Test
+	public void testUndoRedo() {
+		type("a", "b", "c");
+		assertFalse(undo.canRedo());
+
+		assertTrue(undo.undo());
+		assertEquals("ab", text());
+		assertTrue(undo.undo());
+		assertEquals("a", text());
+		assertTrue(undo.canRedo());
+
+		assertTrue(undo.redo());
+		assertEquals("ab", text());
+		assertTrue(undo.redo());
+		assertEquals("abc", text());
+		assertFalse(undo.redo());
+	}
+
+	@Test
+	public void testUndoToInitialState() {
+		type("a");
+		assertTrue(undo.undo());
+		assertFalse(store.getState().hasKey(TEXT_KEY));
+		assertFalse(undo.undo());
+	}
+
+	@Test
+	public void testNewChangeDiscardsRedo() {
+		type("a", "b", "c");
+		undo.undo();
+		undo.undo();
+		type("x");
+		assertEquals("ax", text());
+		assertFalse(undo.canRedo());
+		assertEquals(3, undo.size());
+		undo.undo();
+		assertEquals("a", text());
+	}
+
+	@Test
+	public void testJumpTo() {
+		type("a", "b", "c", "d", "e", "f", "g");
+		assertTrue(undo.jumpTo(2L));
+		assertEquals("ab", text());
+		assertEquals(2L, undo.getCurrentVersion());
+		assertTrue(undo.jumpTo(6L));
+		assertEquals("abcdef", text());
+		assertFalse(undo.jumpTo(100L));
+	}
+
+	@Test
+	public void testGetStateFromCheckpoints() {
+		type("a", "b", "c", "d", "e", "f", "g");
+		for (long version = 1; version <= 7; version++) {
+			assertEquals("abcdefg".substring(0, (int) version), undo.getState(version).get().getOrNull(TEXT_KEY));
+			assertFalse(undo.getState(version).get().canTimeTravel());
+		}
+	}
+
+	@Test
+	public void testMaxEntries() {
+		for (int i = 0; i < 25; i++) {
+			type(Integer.toString(i % 10));
+		}
+		assertEquals(10, undo.size());
+		assertEquals(16L, undo.getOldestVersion());
+		assertFalse(undo.getState(15L).isPresent());
+		assertEquals("012345678901234", undo.getState(16L).get().getOrNull(TEXT_KEY).toString().substring(0, 15));
+		while (undo.undo()) {
+		}
+		assertEquals(16L, undo.getCurrentVersion());
+		assertEquals(16, text().length());
+	}
+
+	@Test
+	public void testCheckpointsAfterDiscardedRedo() {
+		final StateStore other = new StateStore(new State(), TYPING_REDUCER, null);
+		final UndoManager history = new UndoManager(other, 20, 4);
+		for (String c : new String[] { "a", "b", "c", "d" }) {
+			other.dispatch(Action.create(TYPE_ACTION, c));
+		}
+		history.undo();
+		for (String c : new String[] { "e", "f", "g", "h", "i" }) {
+			other.dispatch(Action.create(TYPE_ACTION, c));
+		}
+		assertEquals("abcefghi", other.getState().getOrNull(TEXT_KEY));
+		for (long version = history.getOldestVersion(); version <= other.getVersion(); version++) {
+			final int replayLength = history.getReplayLength(version);
+			assertTrue(replayLength >= -1 && replayLength <= 3);
+		}
+	}
+
+	@Test
+	public void testJumpToSameContent() {
+		type("a", "b");
+		store.addReducer((a, s) -> a.getType().equals("RESET") ? s.put(TEXT_KEY, new String("a")) : s);
+		store.dispatch(Action.create("RESET"));
+		assertEquals(3L, undo.getCurrentVersion());
+		final long version = store.getVersion();
+		assertTrue(undo.jumpTo(1L));
+		assertEquals("a", text());
+		assertEquals(1L, undo.getCurrentVersion());
+		assertTrue(version <= store.getVersion());
+		assertTrue(undo.undo());
+		assertEquals("", text());
+	}
+
+	@Test
+	public void testClose() {
+		undo.close();
+		type("a");
+		assertFalse(undo.canUndo());
+	}
+
+	private void type(String... chars) {
+		for (String c : chars) {
+			store.dispatch(Action.create(TYPE_ACTION, c));
+		}
+	}
+
+	private String text() {
+		return store.getState().getOrElse(TEXT_KEY, "");
+	}
+}
@@ -0,0 +1,246 @@
+package com.saylorsolutions.fnstate4j.index;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.DeferredValue;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.ValueStore;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
+
+public class EntityIndexTest {
+	private static final String ORDERS = "orders";
+	private static final String BY_STATUS = "orders.byStatus";
+	private AtomicInteger attributeCalls;
+	private EntityIndex<Integer, Order, String> byStatus;
+
+	private static final class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String status;
+
+		private Order(String status) {
+			this.status = status;
+		}
+	}
+
+	@Before
+	public void setup() {
+		attributeCalls = new AtomicInteger();
+		Function<Order, String> status = o -> {
+			attributeCalls.incrementAndGet();
+			return o.status;
+		};
+		byStatus = EntityIndex.on(ORDERS, status, BY_STATUS);
+	}
+
+	private static EntityTable<Integer, Order> table(int size) {
+		EntityTable<Integer, Order> table = EntityTable.empty();
+		for (int i = 0; i < size; i++) {
+			table = table.put(i, new Order(i % 2 == 0 ? "PENDING" : "SHIPPED"));
+		}
+		return table;
+	}
+
+	@Test
+	public void testBuildsIndex() {
+		State state = byStatus.update(new State().put(ORDERS, table(10)));
+		assertEquals(5, byStatus.lookup(state, "PENDING").size());
+		assertTrue(byStatus.lookup(state, "PENDING").contains(4));
+		assertEquals(0, byStatus.lookup(state, "CANCELLED").size());
+		assertEquals(HashSet.of("PENDING", "SHIPPED"), byStatus.values(state));
+		assertSame(state, byStatus.update(state));
+	}
+
+	@Test
+	public void testUpdatesOnlyChangedEntities() {
+		State state = byStatus.update(new State().put(ORDERS, table(50)));
+		attributeCalls.set(0);
+
+		EntityTable<Integer, Order> orders = state.getOrElse(ORDERS, EntityTable.empty());
+		state = byStatus.update(state.put(ORDERS, orders.put(0, new Order("SHIPPED")).remove(1)));
+		assertEquals(1, attributeCalls.get());
+		assertEquals(24, byStatus.lookup(state, "PENDING").size());
+		assertEquals(25, byStatus.lookup(state, "SHIPPED").size());
+		assertFalse(byStatus.lookup(state, "SHIPPED").contains(1));
+		assertTrue(byStatus.lookup(state, "SHIPPED").contains(0));
+	}
+
+	@Test
+	public void testFallsBackToIdentityDiff() {
+		State state = byStatus.update(new State().put(ORDERS, HashMap.of(1, new Order("PENDING"))));
+		@SuppressWarnings("unchecked")
+		HashMap<Integer, Order> orders = (HashMap<Integer, Order>) state.getOrNull(ORDERS);
+		attributeCalls.set(0);
+		state = byStatus.update(state.put(ORDERS, orders.put(2, new Order("PENDING"))));
+		assertEquals(1, attributeCalls.get());
+		assertEquals(HashSet.of(1, 2), byStatus.lookup(state, "PENDING"));
+
+		state = byStatus.update(state.remove(ORDERS));
+		assertFalse(state.hasKey(BY_STATUS));
+	}
+
+	@Test
+	public void testStaleIndexLookupIsCurrent() {
+		State state = byStatus.update(new State().put(ORDERS, table(4)));
+		EntityTable<Integer, Order> orders = state.getOrElse(ORDERS, EntityTable.empty());
+		state = state.put(ORDERS, orders.put(7, new Order("CANCELLED")));
+		assertEquals(HashSet.of(7), byStatus.lookup(state, "CANCELLED"));
+		assertEquals(1, byStatus.find(state, "CANCELLED").size());
+	}
+
+	@Test
+	public void testMaintainedByStore() {
+		StateStore store = new StateStore(new State().put(ORDERS, EntityTable.empty()), (a, s) -> {
+			EntityTable<Integer, Order> orders = s.getOrElse(ORDERS, EntityTable.empty());
+			return s.put(ORDERS, orders.put((Integer) a.getPayloadOrNull(), new Order(a.getType())));
+		}, null, true);
+		store.addReducer(byStatus);
+		for (int i = 0; i < 100; i++) {
+			store.dispatch(Action.create("PENDING", i));
+		}
+		store.dispatch(Action.create("SHIPPED", 3));
+		assertEquals(99, byStatus.lookup(store.getState(), "PENDING").size());
+		assertEquals(101, attributeCalls.get());
+	}
+
+	@Test
+	public void testLongChangeChainIsKept() {
+		EntityTable<Integer, Order> start = table(1);
+		EntityTable<Integer, Order> table = start;
+		for (int i = 0; i < EntityTable.MAX_CHANGE_CHAIN * 4; i++) {
+			table = table.put(i, new Order("PENDING"));
+		}
+		assertEquals(EntityTable.MAX_CHANGE_CHAIN * 4, table.changedSince(start).size());
+		State state = byStatus.update(new State().put(ORDERS, start));
+		state = byStatus.update(state.put(ORDERS, table));
+		assertEquals(EntityTable.MAX_CHANGE_CHAIN * 4, byStatus.lookup(state, "PENDING").size());
+	}
+
+	@Test
+	public void testChangeChainIsBounded() {
+		EntityTable<Integer, Order> start = table(1);
+		EntityTable<Integer, Order> table = start;
+		for (int i = 0; i < EntityTable.MAX_CHANGE_CHAIN * 4; i++) {
+			table = table.put(0, new Order("PENDING"));
+		}
+		assertNull(table.changedSince(start));
+		final EntityTable<Integer, Order> recent = table;
+		table = table.put(0, new Order("SHIPPED"));
+		assertEquals(HashSet.of(0), table.changedSince(recent));
+	}
+
+	@Test
+	public void testEqualsComparesChangedIds() {
+		EntityTable<Integer, Order> start = table(10);
+		final Order order = start.getOrNull(3);
+		EntityTable<Integer, Order> table = start.put(3, new Order("PENDING")).put(3, order);
+		assertNotSame(start, table);
+		assertEquals(start, table);
+		assertEquals(table, start);
+		assertNotEquals(start, start.put(4, new Order("PENDING")));
+		assertEquals(start, EntityTable.of(start.getEntities()));
+	}
+
+	@Test
+	public void testSerializedSnapshotFallsBackToLatest() throws Exception {
+		State state = byStatus.update(new State().put(ORDERS, table(10)));
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(state.getOrNull(BY_STATUS));
+		}
+		final Object snapshot;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			snapshot = in.readObject();
+		}
+		state = state.put(BY_STATUS, snapshot);
+		attributeCalls.set(0);
+		assertEquals(5, byStatus.lookup(state, "PENDING").size());
+		assertSame(state, byStatus.update(state));
+		assertEquals(0, attributeCalls.get());
+
+		// An index that never saw the collection has to build it once.
+		final EntityIndex<Integer, Order, String> fresh = EntityIndex.on(ORDERS, o -> {
+			attributeCalls.incrementAndGet();
+			return o.status;
+		}, BY_STATUS);
+		assertEquals(5, fresh.lookup(state, "PENDING").size());
+		assertEquals(10, attributeCalls.get());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object decodedCopy(Object value) {
+		if (value instanceof EntityTable) {
+			EntityTable<Integer, Order> copy = EntityTable.empty();
+			for (Tuple2<Integer, Order> entry : ((EntityTable<Integer, Order>) value).getEntities()) {
+				copy = copy.put(entry._1, new Order(entry._2.status));
+			}
+			return copy;
+		}
+		if (!(value instanceof Serializable))
+			return value;
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				out.writeObject(value);
+			}
+			try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				return in.readObject();
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Test
+	public void testDecodedCopiesAreNotRebuilt() {
+		// Hands out a new copy on every read, like an OffHeapArena.
+		final ValueStore decoding = value -> (DeferredValue) () -> decodedCopy(value);
+		State state = byStatus.update(new State().withValueStore(decoding).put(ORDERS, table(10)));
+		attributeCalls.set(0);
+		assertEquals(5, byStatus.lookup(state, "PENDING").size());
+		assertSame(state, byStatus.update(state));
+		assertEquals(0, attributeCalls.get());
+
+		// A changed collection is decoded as new instances, so it's indexed in full.
+		state = byStatus.update(state.put(ORDERS, table(12)));
+		assertEquals(12, attributeCalls.get());
+		assertEquals(6, byStatus.lookup(state, "PENDING").size());
+		assertEquals(12, attributeCalls.get());
+	}
+}
@@ -0,0 +1,112 @@
+package com.saylorsolutions.fnstate4j.io;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+
+public class StateCodecTest {
+	@Test
+	public void testStateRoundTrip() throws IOException {
+		State state = new State().put("string", "\u00e9t\u00e9").put("int", 1).put("long", 2L).put("double", 3.5)
+				.put("boolean", true).put("null", null).put("list", new java.util.ArrayList<>(Arrays.asList(1, 2)));
+		State decoded = StateCodec.readState(input(out -> StateCodec.writeState(out, state)));
+		assertEquals(state.getStateMap(), decoded.getStateMap());
+		assertFalse(decoded.canTimeTravel());
+	}
+
+	@Test
+	public void testBytes() throws IOException {
+		byte[] bytes = { 1, 2, 3 };
+		assertArrayEquals(bytes, (byte[]) StateCodec.readValue(input(out -> StateCodec.writeValue(out, bytes))));
+	}
+
+	@Test
+	public void testDeltaRoundTrip() throws IOException {
+		State before = new State().put("A", "a").put("B", "b");
+		StateDelta delta = StateDelta.between(before, before.remove("A").put("B", 2));
+		StateDelta decoded = StateCodec.readDelta(input(out -> StateCodec.writeDelta(out, delta)));
+		assertEquals(delta.getPuts(), decoded.getPuts());
+		assertEquals(delta.getRemovedKeys(), decoded.getRemovedKeys());
+	}
+
+	@Test
+	public void testActionRoundTrip() throws IOException {
+		Action decoded = StateCodec.readAction(input(out -> StateCodec.writeAction(out, Action.create("TYPE", 5))));
+		assertEquals("TYPE", decoded.getType());
+		assertEquals(5, decoded.getPayloadOrNull());
+	}
+
+	@Test(expected = NotSerializableException.class)
+	public void testNotSerializable() throws IOException {
+		StateCodec.writeValue(new DataOutputStream(new ByteArrayOutputStream()), new Object());
+	}
+
+	private static DataInputStream input(Writer writer) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		writer.write(out);
+		out.flush();
+		return new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+	}
+
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	@Test
+	public void testClassesOutsideAllowedPackagesAreRejected() throws IOException {
+		final java.awt.Point point = new java.awt.Point(1, 2);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		StateCodec.writeValue(new DataOutputStream(bytes), point);
+		try {
+			StateCodec.readValue(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("Expected java.awt.Point to be rejected");
+		} catch (InvalidClassException e) {
+			// Expected
+		}
+		StateCodec.allowPackages("java.awt");
+		assertEquals(point, StateCodec.readValue(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	@Test
+	public void testAllowedArrayTypes() {
+		assertTrue(StateCodec.isAllowed("[I"));
+		assertTrue(StateCodec.isAllowed("[[Ljava.lang.String;"));
+		assertTrue(StateCodec.isAllowed("io.vavr.collection.HashMap"));
+		assertFalse(StateCodec.isAllowed("[Lorg.example.Gadget;"));
+		assertFalse(StateCodec.isAllowed("java.langx.Gadget"));
+	}
+}
@@ -0,0 +1,152 @@
+package com.saylorsolutions.fnstate4j.metrics;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.metrics.FlightRecorder.Entry;
+import com.saylorsolutions.fnstate4j.metrics.FlightRecorder.Verdict;
+
+public class FlightRecorderTest {
+	@Test
+	public void testKeepsMostRecentInOrder() {
+		FlightRecorder recorder = new FlightRecorder(5);
+		assertEquals(8, recorder.getCapacity());
+		for (int i = 0; i < 20; i++) {
+			recorder.record(Action.create("A" + i), Verdict.COMMITTED, i, i);
+		}
+		List<Entry> entries = recorder.snapshot();
+		assertEquals(8, entries.size());
+		assertEquals("A12", entries.get(0).getAction().getType());
+		assertEquals("A19", entries.get(7).getAction().getType());
+		assertEquals(19L, entries.get(7).getVersion());
+		assertEquals(20L, recorder.getRecordedCount());
+	}
+
+	@Test
+	public void testRecordsStoreVerdicts() {
+		StateStore store = new StateStore(new State(), (a, s) -> {
+			if ("BOOM".equals(a.getType()))
+				throw new IllegalStateException("boom");
+			return "SAME".equals(a.getType()) ? s : s.put("LAST", a.getType());
+		}, (a, s) -> !"BLOCKED".equals(a.getType()));
+		FlightRecorder recorder = new FlightRecorder();
+		StringBuilder errors = new StringBuilder();
+		recorder.dumpOnError(errors);
+		store.setFlightRecorder(recorder);
+
+		store.dispatch(Action.create("FIRST"));
+		store.dispatch(Action.create("SAME"));
+		store.dispatch(Action.create("BLOCKED"));
+		try {
+			store.dispatch(Action.create("BOOM"));
+			fail("Expected the reducer to throw");
+		} catch (IllegalStateException expected) {
+		}
+
+		List<Verdict> verdicts = new ArrayList<>();
+		for (Entry entry : recorder.snapshot()) {
+			verdicts.add(entry.getVerdict());
+		}
+		assertEquals(Arrays.asList(Verdict.COMMITTED, Verdict.UNCHANGED, Verdict.REJECTED, Verdict.FAILED),
+				verdicts);
+		assertEquals(1L, recorder.snapshot().get(0).getVersion());
+		assertTrue(errors.toString(), errors.toString().contains("FAILED"));
+		assertTrue(errors.toString().contains("BOOM"));
+	}
+
+	@Test
+	public void testFailingDumpKeepsOriginalException() {
+		StateStore store = new StateStore(new State(), (a, s) -> {
+			throw new IllegalStateException("boom");
+		}, null);
+		FlightRecorder recorder = new FlightRecorder();
+		recorder.dumpOnError(new Appendable() {
+			@Override
+			public Appendable append(CharSequence csq) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public Appendable append(char c) throws IOException {
+				throw new IOException("disk full");
+			}
+		});
+		store.setFlightRecorder(recorder);
+		final List<Throwable> reported = new ArrayList<>();
+		final Thread thread = Thread.currentThread();
+		final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+		try {
+			store.dispatch(Action.create("BOOM"));
+			fail("Expected the reducer to throw");
+		} catch (IllegalStateException expected) {
+			assertEquals("boom", expected.getMessage());
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+		assertEquals(1, reported.size());
+		assertTrue(reported.get(0) instanceof UncheckedIOException);
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		FlightRecorder recorder = new FlightRecorder(256);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final Action action = Action.create("T" + t);
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					recorder.record(action, Verdict.COMMITTED, 0L, i);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (int i = 0; i < 20; i++) {
+			recorder.snapshot();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		List<Entry> entries = recorder.snapshot();
+		assertEquals(256, entries.size());
+		assertEquals(40_000L - 256L, entries.get(0).getSequence());
+		assertEquals(40_000L - 1L, entries.get(255).getSequence());
+	}
+}
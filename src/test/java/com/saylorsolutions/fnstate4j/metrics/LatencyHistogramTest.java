@@ -0,0 +1,70 @@
+package com.saylorsolutions.fnstate4j.metrics;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000L, histogram.getCount());
+		assertEquals(1_000_000L, histogram.getMaxNanos());
+		assertEquals(500_500.0, histogram.getMeanNanos(), 0.001);
+		assertWithin(500_000L, histogram.getPercentileNanos(50.0));
+		assertWithin(990_000L, histogram.getPercentileNanos(99.0));
+		assertEquals(1_000_000L, histogram.getPercentileNanos(100.0));
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(String.format("%d not within 12.5%% of %d", actual, expected),
+				Math.abs(actual - expected) <= expected / 8);
+	}
+
+	@Test
+	public void testBucketsCoverEveryValue() {
+		long previous = -1L;
+		for (long value : new long[] { 0L, 1L, 15L, 16L, 17L, 1023L, 1024L, Long.MAX_VALUE / 2, Long.MAX_VALUE }) {
+			final int index = LatencyHistogram.indexOf(value);
+			assertTrue(LatencyHistogram.upperBoundOf(index) >= value);
+			assertTrue(index >= previous);
+			previous = index;
+		}
+	}
+
+	@Test
+	public void testEmptyAndReset() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0L, histogram.getPercentileNanos(99.0));
+		histogram.record(-5L);
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(2L, histogram.getCount());
+		assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(100.0));
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMaxNanos());
+	}
+}
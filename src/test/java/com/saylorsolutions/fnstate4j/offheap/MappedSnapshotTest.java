@@ -0,0 +1,141 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.io.StateCodec;
+
+public class MappedSnapshotTest {
+	private Path file;
+	private State state;
+
+	@Before
+	public void setup() throws IOException {
+		file = Files.createTempFile("fnstate4j", ".snapshot");
+		state = new State();
+		for (int i = 0; i < 100; i++) {
+			state = state.put("key" + i, "value" + i);
+		}
+		state = state.put("number", 42).put("bytes", new byte[] { 1, 2, 3 }).put("nothing", null);
+	}
+
+	@After
+	public void teardown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MappedSnapshot.write(file, state, 17L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		assertEquals(17L, snapshot.getVersion());
+		assertTrue(snapshot.getTimestamp() > 0L);
+		assertEquals(state.size(), snapshot.getState().size());
+		assertEquals(StateCodec.checksum(state), StateCodec.checksum(snapshot.getState()));
+	}
+
+	@Test
+	public void testValuesDecodedLazilyAndOnce() throws IOException {
+		MappedSnapshot.write(file, state, 1L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		assertEquals(0L, snapshot.getDecodedCount());
+		State mapped = snapshot.getState();
+		assertEquals("value7", mapped.getOrNull("key7"));
+		assertEquals("value7", mapped.getOrNull("key7"));
+		assertEquals(Integer.valueOf(42), mapped.getOrNull("number"));
+		assertEquals(2L, snapshot.getDecodedCount());
+		assertSame(mapped.getOrNull("key7"), mapped.getOrNull("key7"));
+	}
+
+	@Test
+	public void testGetUsesIndexWithoutBuildingState() throws IOException {
+		MappedSnapshot.write(file, state, 1L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		assertEquals("value42", snapshot.get("key42").get());
+		assertEquals("value0", snapshot.get("key0").get());
+		assertEquals(Integer.valueOf(42), snapshot.get("number").get());
+		assertFalse(snapshot.get("missing").isPresent());
+		assertFalse(snapshot.get("nothing").isPresent());
+		assertEquals(4L, snapshot.getDecodedCount());
+
+		final Object decoded = snapshot.getState().getOrNull("key42");
+		assertSame(decoded, snapshot.get("key42").get());
+		assertSame(decoded, snapshot.get("key42").get());
+	}
+
+	@Test
+	public void testEmptySnapshot() throws IOException {
+		MappedSnapshot.write(file, new State(), 3L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		assertFalse(snapshot.get("key0").isPresent());
+		assertTrue(snapshot.getState().isEmpty());
+	}
+
+	@Test
+	public void testModifiedValuesMoveToHeap() throws IOException {
+		MappedSnapshot.write(file, state, 1L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		StateStore store = new StateStore(snapshot.getState(), (a, s) -> s.put("key3", a.getType()), null, true);
+		store.dispatch(Action.create("CHANGED"));
+		assertEquals("CHANGED", store.getState().getStateMap().get("key3").get());
+		Object untouched = store.getState().getStateMap().get("key4").get();
+		assertTrue(untouched instanceof MappedValue);
+		assertFalse(((MappedValue) untouched).isDecoded());
+		assertTrue(snapshot.getDecodedCount() <= 1L);
+	}
+
+	@Test
+	public void testReplacesExistingSnapshot() throws IOException {
+		MappedSnapshot.write(file, state, 1L);
+		MappedSnapshot.write(file, new State().put("only", "one"), 2L);
+		MappedSnapshot snapshot = MappedSnapshot.open(file);
+		assertEquals(2L, snapshot.getVersion());
+		assertEquals(1, snapshot.getState().size());
+		assertEquals("one", snapshot.getState().getOrNull("only"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsOtherFiles() throws IOException {
+		Files.write(file, new byte[64]);
+		MappedSnapshot.open(file);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsSharedStateFiles() throws IOException {
+		// Starts like a file written by a SharedStatePublisher.
+		final ByteBuffer header = ByteBuffer.allocate(64).putInt(0x464E534D).putShort(MappedSnapshot.FORMAT_VERSION);
+		Files.write(file, header.array());
+		MappedSnapshot.open(file);
+	}
+}
@@ -0,0 +1,182 @@
+package com.saylorsolutions.fnstate4j.offheap;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.DeferredValue;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StatePath;
+import com.saylorsolutions.fnstate4j.StateStore;
+
+public class OffHeapArenaTest {
+	@Test
+	public void testValuesAreStoredOffHeap() {
+		OffHeapArena arena = OffHeapArena.direct(256).withMinimumSize(0);
+		State state = arena.newState();
+		for (int i = 0; i < 100; i++) {
+			state = state.put("key" + i, "value" + i);
+		}
+		assertEquals(100, state.size());
+		assertEquals("value42", state.getOrNull("key42"));
+		assertEquals("value42", state.get("key42", String.class).get());
+		assertTrue(state.getStateMap().get("key42").get() instanceof DeferredValue);
+		assertEquals(100L, arena.getValueCount());
+		assertTrue(arena.getChunkCount() > 1);
+		assertTrue(arena.getUsedBytes() <= arena.getAllocatedBytes());
+	}
+
+	@Test
+	public void testOldVersionsStayReadable() {
+		State first = OffHeapArena.direct(64).withMinimumSize(0).newState().put("A", 1);
+		State second = first.put("A", 2).put("B", "b");
+		assertEquals(1, first.getOrNull("A"));
+		assertEquals(2, second.getOrNull("A"));
+		assertFalse(first.hasKey("B"));
+		assertSame(first, second.getPreviousState().get().getPreviousState().get());
+	}
+
+	@Test
+	public void testLargeValueGetsOwnChunk() {
+		OffHeapArena arena = OffHeapArena.direct(16).withMinimumSize(0);
+		State state = arena.newState().put("BIG", new byte[1024]);
+		assertEquals(1024, ((byte[]) state.getOrNull("BIG")).length);
+		assertEquals(1, arena.getChunkCount());
+	}
+
+	@Test
+	public void testNullValuesStayInMap() {
+		State state = OffHeapArena.direct(64).withMinimumSize(0).newState().put("A", null);
+		assertNull(state.getOrNull("A"));
+		assertFalse(state.hasKey("A"));
+	}
+
+	@Test
+	public void testMappedArena() throws IOException {
+		Path file = Files.createTempFile("fnstate4j", ".arena");
+		try (OffHeapArena arena = OffHeapArena.mapped(file, 128).withMinimumSize(0)) {
+			State state = arena.newState();
+			for (int i = 0; i < 50; i++) {
+				state = state.put("key" + i, (long) i);
+			}
+			assertEquals(49L, state.getOrNull("key49"));
+			assertTrue(Files.size(file) >= arena.getUsedBytes());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testStoreWithOffHeapState() {
+		StateStore store = new StateStore(OffHeapArena.direct(1024).withMinimumSize(0).newState(),
+				(a, s) -> s.put("COUNTER", s.getOrElse("COUNTER", 0) + 1), null);
+		for (int i = 0; i < 10; i++) {
+			store.dispatch(Action.create("INCREMENT"));
+		}
+		assertEquals(10, store.getState().getOrNull("COUNTER"));
+		assertTrue(store.getState().getStateMap().get("COUNTER").get() instanceof DeferredValue);
+	}
+
+	@Test
+	public void testReclaim() {
+		OffHeapArena arena = OffHeapArena.direct(64).withMinimumSize(0);
+		State old = arena.newState();
+		for (int i = 0; i < 20; i++) {
+			old = old.put("key" + i, "old value " + i);
+		}
+		State live = arena.newState().put("A", "live");
+		int chunks = arena.getChunkCount();
+		assertEquals(chunks - 1, arena.reclaim(Collections.singleton(live)));
+		assertEquals(1, arena.getChunkCount());
+		assertEquals("live", live.getOrNull("A"));
+		try {
+			old.getOrNull("key0");
+			fail("Expected a reclaimed value");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("reclaimed"));
+		}
+		State next = live.put("B", "new");
+		assertEquals("new", next.getOrNull("B"));
+		assertEquals("live", next.getOrNull("A"));
+	}
+
+	@Test
+	public void testMappedRegionsAreReused() throws IOException {
+		Path file = Files.createTempFile("fnstate4j", ".arena");
+		try (OffHeapArena arena = OffHeapArena.mapped(file, 128).withMinimumSize(0)) {
+			State state = arena.newState();
+			long size = 0L;
+			for (int round = 0; round < 5; round++) {
+				for (int i = 0; i < 50; i++) {
+					state = state.put("key" + i, (long) (round * 100 + i));
+				}
+				state = state.detach();
+				arena.reclaim(Collections.singleton(state));
+				if (round == 1)
+					size = Files.size(file);
+			}
+			assertEquals(size, Files.size(file));
+			assertEquals(449L, state.getOrNull("key49"));
+			assertTrue(arena.getReclaimedChunkCount() > 0L);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testRepeatedReadsShareInstance() {
+		State state = OffHeapArena.direct(1024).withMinimumSize(0).newState().put("MAP", map("value"));
+		assertSame(state.getOrNull("MAP"), state.getOrNull("MAP"));
+		State unrelated = state.put("OTHER", 1);
+		assertFalse(unrelated.changedIn(state, StatePath.of("MAP", "nested")));
+		assertTrue(state.put("MAP", map("changed")).changedIn(state, StatePath.of("MAP", "nested")));
+	}
+
+	@Test
+	public void testSmallValuesStayInMap() {
+		OffHeapArena arena = OffHeapArena.direct(1024);
+		assertEquals(OffHeapArena.DEFAULT_MINIMUM_SIZE, arena.getMinimumSize());
+		final String small = "small";
+		final char[] chars = new char[OffHeapArena.DEFAULT_MINIMUM_SIZE];
+		java.util.Arrays.fill(chars, 'x');
+		State state = arena.newState().put("INT", 42).put("SMALL", small).put("LARGE", new String(chars));
+		assertEquals(42, state.getStateMap().get("INT").get());
+		assertSame(small, state.getStateMap().get("SMALL").get());
+		assertTrue(state.getStateMap().get("LARGE").get() instanceof DeferredValue);
+		assertEquals(new String(chars), state.getOrNull("LARGE"));
+		assertEquals(1L, arena.getValueCount());
+		assertSame(state, state.put("SMALL", small));
+	}
+
+	private static java.util.Map<String, Object> map(Object nested) {
+		final java.util.Map<String, Object> map = new java.util.HashMap<>();
+		map.put("nested", nested);
+		return map;
+	}
+}
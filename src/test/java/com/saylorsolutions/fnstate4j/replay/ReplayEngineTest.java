@@ -0,0 +1,231 @@
+package com.saylorsolutions.fnstate4j.replay;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+import com.saylorsolutions.fnstate4j.history.UndoManager;
+import com.saylorsolutions.fnstate4j.io.ActionLogReader;
+import com.saylorsolutions.fnstate4j.io.ActionLogWriter;
+import com.saylorsolutions.fnstate4j.io.LoggedCommit;
+
+public class ReplayEngineTest {
+	private static final String ADD = "ADD";
+	private static final Reducer COUNTER = (a, s) -> {
+		if (!a.getType().equals(ADD))
+			return s;
+		final String key = "COUNTER_" + a.getPayloadOrElse(0) % 4;
+		return s.put(key, s.getOrElse(key, 0) + (Integer) a.getPayloadOrElse(0));
+	};
+	private Path file;
+
+	@Before
+	public void setup() throws IOException {
+		file = Files.createTempFile("fnstate4j", ".log");
+		Files.delete(file);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private static List<Action> actions(int count) {
+		final List<Action> actions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			actions.add(Action.create(ADD, i));
+		}
+		return actions;
+	}
+
+	@Test
+	public void testLogRoundTrip() throws IOException {
+		final StateStore store = new StateStore(new State(), COUNTER, null);
+		try (ActionLogWriter writer = new ActionLogWriter(store, file)) {
+			actions(10).forEach(store::dispatch);
+			store.transaction(tx -> {
+				tx.dispatch(Action.create(ADD, 100));
+				tx.dispatch(Action.create(ADD, 200));
+			});
+			assertEquals(11L, writer.getRecordCount());
+		}
+		try (ActionLogReader reader = new ActionLogReader(file)) {
+			final List<LoggedCommit> records = new ArrayList<>();
+			reader.forEachRemaining(records::add);
+			assertEquals(11, records.size());
+			assertEquals(1L, records.get(0).getVersion());
+			assertEquals(2, records.get(10).getActions().size());
+			assertEquals(Integer.valueOf(200), records.get(10).getActions().get(1).getPayloadOrElse(0));
+		}
+		try (ActionLogReader reader = new ActionLogReader(file)) {
+			final ReplayResult result = new ReplayEngine(COUNTER).replay(new State(), reader.actions());
+			assertEquals(12L, result.getAppliedCount());
+			assertEquals(store.getState(), result.getState());
+		}
+	}
+
+	@Test
+	public void testReplayedAndInternalCommitsAreLogged() throws IOException {
+		final StateStore store = new StateStore(new State(), COUNTER, null);
+		try (ActionLogWriter writer = new ActionLogWriter(store, file)) {
+			final UndoManager undo = new UndoManager(store);
+			actions(5).forEach(store::dispatch);
+			new ReplayEngine(COUNTER, (a, s) -> (Integer) a.getPayloadOrElse(0) % 2 == 0).withBatchSize(4)
+					.replayInto(store, actions(10).iterator());
+			assertTrue(undo.undo());
+			undo.close();
+			assertEquals(9L, writer.getRecordCount());
+		}
+		try (ActionLogReader reader = new ActionLogReader(file)) {
+			final List<LoggedCommit> records = new ArrayList<>();
+			reader.forEachRemaining(records::add);
+			// Only the accepted actions of each replayed batch.
+			assertEquals(2, records.get(5).getActions().size());
+			final Action restored = records.get(8).getActions().get(0);
+			assertEquals(ActionLogWriter.DELTA_ACTION, restored.getType());
+		}
+		try (ActionLogReader reader = new ActionLogReader(file)) {
+			final ReplayResult result = new ReplayEngine(COUNTER).replay(new State(), reader.actions());
+			assertEquals(store.getState(), result.getState());
+		}
+	}
+
+	@Test
+	public void testTruncatedRecordEndsLog() throws IOException {
+		final StateStore store = new StateStore(new State(), COUNTER, null);
+		try (ActionLogWriter writer = new ActionLogWriter(store, file)) {
+			actions(3).forEach(store::dispatch);
+		}
+		final byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 2));
+		try (ActionLogReader reader = new ActionLogReader(file)) {
+			int count = 0;
+			while (reader.hasNext()) {
+				reader.next();
+				count++;
+			}
+			assertEquals(2, count);
+		}
+	}
+
+	@Test
+	public void testReplayDropsHistoryAndCountsRejections() {
+		final ReplayResult result = new ReplayEngine(COUNTER, (a, s) -> (Integer) a.getPayloadOrElse(0) % 10 != 0)
+				.withBatchSize(100).replay(new State(), actions(10_000).iterator());
+		assertEquals(9_000L, result.getAppliedCount());
+		assertEquals(1_000L, result.getRejectedCount());
+		assertFalse(result.getState().canTimeTravel());
+		assertTrue(result.getActionsPerSecond() > 0.0);
+		assertEquals(result.getChecksum(),
+				new ReplayEngine(COUNTER, (a, s) -> (Integer) a.getPayloadOrElse(0) % 10 != 0)
+						.replay(new State(), actions(10_000).iterator()).getChecksum());
+	}
+
+	@Test
+	public void testReplayIntoStoreCommitsBatches() {
+		final StateStore store = new StateStore(new State(), null, null);
+		final AtomicInteger notified = new AtomicInteger();
+		store.subscribe(s -> notified.incrementAndGet());
+		final ReplayResult result = new ReplayEngine(COUNTER).withBatchSize(100).replayInto(store,
+				actions(1_000).iterator());
+		assertEquals(10, notified.get());
+		assertEquals(10L, store.getVersion());
+		assertEquals(1_000L, result.getAppliedCount());
+		assertEquals(new ReplayEngine(COUNTER).replay(new State(), actions(1_000).iterator()).getState(),
+				store.getState());
+		// The batches don't go through the store's reducers.
+		store.dispatch(Action.create(ADD, 1));
+		assertEquals(10L, store.getVersion());
+	}
+
+	@Test
+	public void testReplayIntoBypassesStorePipeline() {
+		final AtomicInteger reduced = new AtomicInteger();
+		final StateStore store = new StateStore(new State(), (a, s) -> {
+			reduced.incrementAndGet();
+			return s;
+		}, (a, s) -> false);
+		final ReplayResult result = new ReplayEngine(COUNTER).withBatchSize(100).replayInto(store,
+				actions(250).iterator());
+		assertEquals(0, reduced.get());
+		assertEquals(3L, store.getVersion());
+		assertEquals(250L, result.getAppliedCount());
+		assertEquals(result.getState(), store.getState());
+	}
+
+	@Test
+	public void testReplayIntoFromSubscriberFails() {
+		final StateStore store = new StateStore(new State(), COUNTER, null);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		store.subscribe(s -> {
+			try {
+				new ReplayEngine(COUNTER).replayInto(store, actions(10).iterator());
+			} catch (IllegalStateException e) {
+				failure.set(e);
+			}
+		});
+		store.dispatch(Action.create(ADD, 1));
+		assertNotNull(failure.get());
+		assertEquals(1L, store.getVersion());
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse("COUNTER_1", 0));
+	}
+
+	@Test
+	public void testPartitionedMatchesSequential() {
+		final Map<Integer, State> initial = new HashMap<>();
+		initial.put(0, new State().put("START", true));
+		final Map<Integer, ReplayResult> results = new ReplayEngine(COUNTER).withBatchSize(64)
+				.replayPartitioned(initial, actions(20_000).iterator(), a -> (Integer) a.getPayloadOrElse(0) % 4);
+		assertEquals(4, results.size());
+		final ReplayResult sequential = new ReplayEngine(COUNTER).replay(new State(), actions(20_000).iterator());
+		for (int partition = 0; partition < 4; partition++) {
+			final String key = "COUNTER_" + partition;
+			assertEquals(sequential.getState().getOrNull(key), results.get(partition).getState().getOrNull(key));
+			assertEquals(5_000L, results.get(partition).getAppliedCount());
+		}
+		assertEquals(true, results.get(0).getState().getOrNull("START"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPartitionFailurePropagates() {
+		new ReplayEngine((a, s) -> {
+			throw new IllegalStateException("fail");
+		}).withBatchSize(1).replayPartitioned(new HashMap<>(), actions(100).iterator(), a -> 0);
+	}
+}
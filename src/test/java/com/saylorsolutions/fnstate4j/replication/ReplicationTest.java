@@ -0,0 +1,223 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateDelta;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+public class ReplicationTest {
+	private static final String COUNTER_KEY = "COUNTER";
+	private static final Reducer COUNTER_REDUCER = (a, s) -> {
+		if (a.getType().equals("INCREMENT"))
+			return s.put(COUNTER_KEY, s.getOrElse(COUNTER_KEY, 0) + 1);
+		return s;
+	};
+	private StateStore leaderStore;
+	private ReplicationLeader leader;
+	private ReplicationFollower follower;
+
+	@Before
+	public void setup() throws IOException {
+		leaderStore = new StateStore(new State(), COUNTER_REDUCER, null);
+		leader = new ReplicationLeader(leaderStore, 0);
+		leader.start();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		if (follower != null)
+			follower.close();
+		leader.close();
+	}
+
+	@Test
+	public void testFollowerReceivesCommits() throws Exception {
+		StateStore followerStore = new StateStore();
+		follower = new ReplicationFollower(followerStore, address(leader.getPort()));
+		follower.start();
+		await(() -> follower.getAppliedVersion() == 0L);
+
+		for (int i = 0; i < 100; i++) {
+			leaderStore.dispatch(Action.create("INCREMENT"));
+		}
+		await(() -> follower.getAppliedVersion() == 100L);
+		assertEquals(100, followerStore.getState().getOrNull(COUNTER_KEY));
+		assertEquals(0L, follower.getLag());
+		assertEquals(1L, follower.getSnapshotCount());
+		assertEquals(0L, follower.getGapCount());
+	}
+
+	@Test
+	public void testLateFollowerCatchesUpFromSnapshot() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			leaderStore.dispatch(Action.create("INCREMENT"));
+		}
+		StateStore followerStore = new StateStore();
+		follower = new ReplicationFollower(followerStore, address(leader.getPort()));
+		follower.start();
+		await(() -> follower.getAppliedVersion() == 10L);
+		assertEquals(10, followerStore.getState().getOrNull(COUNTER_KEY));
+
+		leaderStore.dispatch(Action.create("INCREMENT"));
+		await(() -> follower.getAppliedVersion() == 11L);
+		assertEquals(11, followerStore.getState().getOrNull(COUNTER_KEY));
+		assertEquals(1L, follower.getSnapshotCount());
+	}
+
+	@Test
+	public void testGapCausesCatchUpRequest() throws Exception {
+		leader.close();
+		try (ServerSocket fakeLeader = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			StateStore followerStore = new StateStore();
+			follower = new ReplicationFollower(followerStore, address(fakeLeader.getLocalPort()), 10L);
+			follower.start();
+
+			try (Socket socket = fakeLeader.accept()) {
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(Protocol.MAGIC, in.readInt());
+				assertEquals(Protocol.NO_VERSION, in.readLong());
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				out.writeLong(7L);
+				out.write(Protocol.snapshot(5L, System.currentTimeMillis(), new State().put("A", 5)));
+				out.writeLong(7L);
+				out.write(Protocol.delta(6L, System.currentTimeMillis(), delta("A", 6)));
+				out.writeLong(7L);
+				out.write(Protocol.delta(7L, System.currentTimeMillis(), delta("A", 7)));
+				out.flush();
+				await(() -> follower.getAppliedVersion() == 7L);
+
+				out.writeLong(9L);
+				out.write(Protocol.delta(9L, System.currentTimeMillis(), delta("A", 9)));
+				out.flush();
+			}
+			try (Socket socket = fakeLeader.accept()) {
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(Protocol.MAGIC, in.readInt());
+				assertEquals(7L, in.readLong());
+			}
+			assertEquals(1L, follower.getGapCount());
+			assertEquals(7, followerStore.getState().getOrNull("A"));
+		}
+	}
+
+	@Test
+	public void testUnencodableCommitDoesNotBreakDispatch() throws Exception {
+		StateStore followerStore = new StateStore();
+		follower = new ReplicationFollower(followerStore, address(leader.getPort()));
+		follower.start();
+		await(() -> follower.getAppliedVersion() == 0L);
+
+		final Thread thread = Thread.currentThread();
+		final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		final Throwable[] reported = new Throwable[1];
+		final int[] notified = new int[1];
+		leaderStore.subscribe(s -> notified[0]++);
+		leaderStore.addReducer((a, s) -> a.getType().equals("OPAQUE") ? s.put("OPAQUE", new Object()) : s);
+		leaderStore.addReducer((a, s) -> a.getType().equals("CLEAR") ? s.remove("OPAQUE") : s);
+		thread.setUncaughtExceptionHandler((t, e) -> reported[0] = e);
+		try {
+			leaderStore.dispatch(Action.create("OPAQUE"));
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+		assertEquals(1L, leaderStore.getVersion());
+		assertEquals(1, notified[0]);
+		assertEquals(1L, leader.getEncodingFailureCount());
+		assertSame(reported[0], leader.getLastEncodingFailure().get());
+
+		leaderStore.dispatch(Action.create("CLEAR"));
+		leaderStore.dispatch(Action.create("INCREMENT"));
+		await(() -> follower.getAppliedVersion() == 3L);
+		assertEquals(1, followerStore.getState().getOrNull(COUNTER_KEY));
+	}
+
+	@Test
+	public void testRejectedDeltaIsNotApplied() throws Exception {
+		final boolean[] reject = new boolean[1];
+		StateStore followerStore = new StateStore(new State(), null,
+				(a, s) -> !(reject[0] && a.getType().equals(ReplicationFollower.DELTA_ACTION)));
+		follower = new ReplicationFollower(followerStore, address(leader.getPort()), 10L);
+		follower.start();
+		await(() -> follower.getAppliedVersion() == 0L);
+
+		reject[0] = true;
+		leaderStore.dispatch(Action.create("INCREMENT"));
+		await(() -> follower.getRejectedCount() > 0L);
+		assertEquals(0L, follower.getAppliedVersion());
+		assertNull(followerStore.getState().getOrNull(COUNTER_KEY));
+
+		reject[0] = false;
+		await(() -> follower.getAppliedVersion() == 1L);
+		assertEquals(1, followerStore.getState().getOrNull(COUNTER_KEY));
+	}
+
+	@Test
+	public void testFollowersConnectingWhileCommitting() throws Exception {
+		for (int i = 0; i < 2000; i++) {
+			leaderStore.dispatch(Action.create("INCREMENT"));
+		}
+		StateStore followerStore = new StateStore();
+		follower = new ReplicationFollower(followerStore, address(leader.getPort()));
+		follower.start();
+		for (int i = 0; i < 2000; i++) {
+			leaderStore.dispatch(Action.create("INCREMENT"));
+		}
+		await(() -> follower.getAppliedVersion() == 4000L);
+		assertEquals(4000, followerStore.getState().getOrNull(COUNTER_KEY));
+		assertEquals(0L, follower.getGapCount());
+	}
+
+	private static StateDelta delta(String key, Object value) {
+		State empty = new State();
+		return StateDelta.between(empty, empty.put(key, value));
+	}
+
+	private static InetSocketAddress address(int port) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000L;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Timed out waiting for replication");
+			Thread.sleep(5L);
+		}
+	}
+}
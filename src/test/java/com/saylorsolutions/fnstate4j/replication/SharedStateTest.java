@@ -0,0 +1,167 @@
+package com.saylorsolutions.fnstate4j.replication;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.func.Reducer;
+
+public class SharedStateTest {
+	private Path file;
+	private StateStore store;
+
+	@Before
+	public void setup() throws IOException {
+		file = Files.createTempFile("fnstate4j", ".shm");
+		store = new StateStore(new State().put("COUNTER", 0),
+				(a, s) -> s.put("COUNTER", s.getOrElse("COUNTER", 0) + 1), null);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testReaderSeesLatestState() throws Exception {
+		try (SharedStatePublisher publisher = new SharedStatePublisher(store, file, 4096);
+				SharedStateReader reader = new SharedStateReader(file)) {
+			assertEquals(0, reader.getState().getOrNull("COUNTER"));
+			assertEquals(0L, reader.getVersion());
+
+			store.dispatch(Action.create("INCREMENT"));
+			store.dispatch(Action.create("INCREMENT"));
+			await(() -> publisher.getPublishedVersion() == 2L);
+			State state = reader.getState();
+			assertEquals(2, state.getOrNull("COUNTER"));
+			assertEquals(2L, reader.getVersion());
+			assertSame(state, reader.getState());
+		}
+	}
+
+	@Test
+	public void testConcurrentReadsAreConsistent() throws Exception {
+		try (SharedStatePublisher publisher = new SharedStatePublisher(store, file, 4096);
+				SharedStateReader reader = new SharedStateReader(file)) {
+			final Thread writer = new Thread(() -> {
+				for (int i = 0; i < 2000; i++) {
+					store.dispatch(Action.create("INCREMENT"));
+				}
+			});
+			writer.start();
+			int last = 0;
+			while (writer.isAlive() || last < 2000) {
+				int counter = reader.getState().getOrElse("COUNTER", -1);
+				assertTrue(counter >= last);
+				assertEquals(reader.getVersion(), (long) counter);
+				last = counter;
+			}
+			writer.join();
+		}
+	}
+
+	@Test
+	public void testStateTooLargeIsSkipped() throws Exception {
+		try (SharedStatePublisher publisher = new SharedStatePublisher(store, file, 64);
+				SharedStateReader reader = new SharedStateReader(file)) {
+			final Reducer large = (a, s) -> a.getType().equals("LARGE") ? s.put("LARGE", new byte[128]) : s;
+			store.addReducer(large);
+			final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+			Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
+			});
+			try {
+				store.dispatch(Action.create("LARGE"));
+				await(() -> publisher.getFailureCount() == 1L);
+			} finally {
+				Thread.setDefaultUncaughtExceptionHandler(handler);
+			}
+			assertTrue(publisher.getLastFailure().get() instanceof IllegalStateException);
+			assertEquals(1L, store.getVersion());
+			assertEquals(0, reader.getState().getOrNull("COUNTER"));
+			assertEquals(0L, reader.getVersion());
+		}
+	}
+
+	@Test
+	public void testExistingFileIsContinued() throws Exception {
+		try (SharedStatePublisher publisher = new SharedStatePublisher(store, file, 4096)) {
+			store.dispatch(Action.create("INCREMENT"));
+			await(() -> publisher.getPublishedVersion() == 1L);
+		}
+		try (SharedStateReader reader = new SharedStateReader(file)) {
+			assertEquals(1, reader.getState().getOrNull("COUNTER"));
+			StateStore other = new StateStore(new State().put("COUNTER", 10));
+			try (SharedStatePublisher publisher = new SharedStatePublisher(other, file, 4096)) {
+				assertEquals(10, reader.getState().getOrNull("COUNTER"));
+			}
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void testInterruptedWriteTimesOut() throws IOException {
+		try (SharedStatePublisher publisher = new SharedStatePublisher(store, file, 4096)) {
+			// Nothing to do, just leaves a published state behind
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				SharedStateReader reader = new SharedStateReader(file, 50L, TimeUnit.MILLISECONDS)) {
+			final MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, SharedStatePublisher.HEADER_SIZE);
+			buffer.putLong(SharedStatePublisher.SEQUENCE_OFFSET, buffer.getLong(SharedStatePublisher.SEQUENCE_OFFSET) + 1L);
+			try {
+				reader.getState();
+				fail("Expected the read to time out");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("No consistent state"));
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotPublished() throws IOException {
+		Files.write(file, new byte[64]);
+		new SharedStateReader(file).close();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000L;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline)
+				fail("Timed out waiting for publication");
+			Thread.sleep(5L);
+		}
+	}
+}
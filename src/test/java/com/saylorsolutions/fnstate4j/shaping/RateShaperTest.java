@@ -0,0 +1,184 @@
+package com.saylorsolutions.fnstate4j.shaping;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.Lane;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+
+public class RateShaperTest {
+	private static final String TYPE = "MOVE";
+	private static final String COUNT_KEY = "COUNT";
+	private static final String LAST_KEY = "LAST";
+	private StateStore store;
+
+	@Before
+	public void setup() {
+		store = new StateStore(new State(), (a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1)
+				.put(LAST_KEY, a.getPayloadOrElse(null)), null);
+	}
+
+	private void dispatchAll(int count) {
+		for (int i = 1; i <= count; i++) {
+			store.dispatch(Action.create(TYPE, i));
+		}
+	}
+
+	private void awaitCount(int expected) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while (store.getState().getOrElse(COUNT_KEY, 0) < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5L);
+		}
+	}
+
+	@Test
+	public void testUnshapedTypesPass() {
+		store.addMiddleware(new RateShaper(store).everyNth("OTHER", 10));
+		dispatchAll(5);
+		assertEquals(Integer.valueOf(5), store.getState().getOrElse(COUNT_KEY, 0));
+	}
+
+	@Test
+	public void testThrottle() {
+		final RateShaper shaper = new RateShaper(store).throttle(TYPE, 1, TimeUnit.HOURS);
+		store.addMiddleware(shaper);
+		dispatchAll(100);
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse(LAST_KEY, 0));
+		assertEquals(1L, shaper.getStats(TYPE).getPassed());
+		assertEquals(99L, shaper.getStats(TYPE).getDropped());
+	}
+
+	@Test
+	public void testEveryNth() {
+		final RateShaper shaper = new RateShaper(store).everyNth(TYPE, 10);
+		store.addMiddleware(shaper);
+		dispatchAll(100);
+		assertEquals(Integer.valueOf(10), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(Integer.valueOf(91), store.getState().getOrElse(LAST_KEY, 0));
+		assertEquals(90L, shaper.getStats(TYPE).getDropped());
+	}
+
+	@Test
+	public void testDebounceKeepsLatest() throws InterruptedException {
+		final RateShaper shaper = new RateShaper(store).debounce(TYPE, 50, TimeUnit.MILLISECONDS);
+		store.addMiddleware(shaper);
+		dispatchAll(100);
+		assertEquals(Integer.valueOf(0), store.getState().getOrElse(COUNT_KEY, 0));
+		awaitCount(1);
+		Thread.sleep(100L);
+		assertEquals(Integer.valueOf(1), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(Integer.valueOf(100), store.getState().getOrElse(LAST_KEY, 0));
+		assertEquals(1L, shaper.getStats(TYPE).getPassed());
+		assertEquals(99L, shaper.getStats(TYPE).getCoalesced());
+	}
+
+	@Test
+	public void testSampleEmitsLatestPerInterval() throws InterruptedException {
+		final RateShaper shaper = new RateShaper(store).sample(TYPE, 20, TimeUnit.MILLISECONDS);
+		store.addMiddleware(shaper);
+		dispatchAll(50);
+		awaitCount(1);
+		assertEquals(Integer.valueOf(50), store.getState().getOrElse(LAST_KEY, 0));
+		store.dispatch(Action.create(TYPE, 51));
+		awaitCount(2);
+		assertEquals(Integer.valueOf(51), store.getState().getOrElse(LAST_KEY, 0));
+		final RateShaper.Stats stats = shaper.getStats(TYPE);
+		assertEquals(2L, stats.getPassed());
+		assertEquals(49L, stats.getCoalesced());
+		assertEquals(0L, stats.getDropped());
+	}
+
+	@Test
+	public void testTransactionsAreNotShaped() throws InterruptedException {
+		final RateShaper shaper = new RateShaper(store).debounce(TYPE, 20, TimeUnit.MILLISECONDS);
+		store.addMiddleware(shaper);
+		assertTrue(store.transaction(tx -> {
+			assertTrue(store.isInTransaction());
+			tx.dispatch(Action.create(TYPE, 1));
+			tx.dispatch(Action.create(TYPE, 2));
+		}));
+		assertFalse(store.isInTransaction());
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(COUNT_KEY, 0));
+		assertFalse(store.transaction(tx -> {
+			tx.dispatch(Action.create(TYPE, 3));
+			tx.rollback();
+		}));
+		Thread.sleep(100L);
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(LAST_KEY, 0));
+		assertEquals(0L, shaper.getStats(TYPE).getCoalesced());
+	}
+
+	@Test
+	public void testReleasedActionsAreNotCombined() throws InterruptedException {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch unblock = new CountDownLatch(1);
+		store = new StateStore(new State(), (a, s) -> {
+			if (!"BLOCK".equals(a.getType()))
+				return s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1).put(LAST_KEY, a.getPayloadOrElse(null));
+			blocked.countDown();
+			try {
+				unblock.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return s;
+		}, null);
+		store.setCombiner(TYPE, (first, second) -> second);
+		final RateShaper shaper = new RateShaper(store).debounce(TYPE, 20, TimeUnit.MILLISECONDS);
+		store.addMiddleware(shaper);
+		store.dispatch(Action.create("BLOCK"), Lane.NORMAL);
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		store.dispatch(Action.create(TYPE, 1));
+		final long deadline = System.currentTimeMillis() + 5000L;
+		while (store.getPendingCount(Lane.NORMAL) == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5L);
+		}
+		// Queued right behind the released action, which would fold it in without the guard.
+		store.dispatch(Action.create(TYPE, 2), Lane.NORMAL);
+		unblock.countDown();
+		awaitCount(2);
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(COUNT_KEY, 0));
+		assertEquals(Integer.valueOf(2), store.getState().getOrElse(LAST_KEY, 0));
+		assertEquals(0L, store.getCoalescedCount());
+		assertEquals(2L, shaper.getStats(TYPE).getPassed());
+	}
+
+	@Test
+	public void testRemoveRule() {
+		final RateShaper shaper = new RateShaper(store).throttle(TYPE, 1, TimeUnit.HOURS);
+		store.addMiddleware(shaper);
+		dispatchAll(10);
+		shaper.remove(TYPE);
+		dispatchAll(10);
+		assertEquals(Integer.valueOf(11), store.getState().getOrElse(COUNT_KEY, 0));
+	}
+}
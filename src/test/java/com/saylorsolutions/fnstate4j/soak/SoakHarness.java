@@ -0,0 +1,509 @@
+package com.saylorsolutions.fnstate4j.soak;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+import com.saylorsolutions.fnstate4j.metrics.LatencyHistogram;
+
+/**
+ * Drives a {@code StateStore} with several producer threads for a long time and
+ * reports throughput, dispatch-to-notify latency, heap, and GC activity at a
+ * fixed interval. Meant to be run by hand, for example:
+ *
+ * <pre>
+ * java -cp ... com.saylorsolutions.fnstate4j.soak.SoakHarness --producers=4 --rate=20000 --duration=3600 \
+ *     --subscribers=8 --subscriberMicros=50 --keys=100000 --mix=SET:70,REMOVE:10,BULK:15,NOOP:5
+ * </pre>
+ *
+ * Producers send at a fixed rate, and latency is measured from when each action
+ * was scheduled to be sent rather than when it actually was. A store that stalls
+ * the producers is then charged for every action that should have been sent
+ * during the stall, which corrects for coordinated omission. Latency is sampled
+ * by the first subscriber. Commits that didn't get a notification of their own,
+ * because it was coalesced into a later one, are counted as the difference
+ * between commits and calls to that subscriber.
+ * <p>
+ * Live heap is the heap in use right after the most recent collection, so steady
+ * growth over the run points to a leak rather than to garbage that hasn't been
+ * collected yet.
+ *
+ * @author Doug Saylor (doug at saylorsolutions.com)
+ */
+public final class SoakHarness {
+	private static final String PROBE_KEY = "@@soak/PROBE";
+	private static final String SET_ACTION = "SET";
+	private static final String REMOVE_ACTION = "REMOVE";
+	private static final String BULK_ACTION = "BULK";
+	private static final String NOOP_ACTION = "NOOP";
+	private static final int BULK_SIZE = 16;
+
+	private final Options options;
+	private final PrintStream out;
+	private final LatencyHistogram interval = new LatencyHistogram();
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong commits = new AtomicLong();
+	private final AtomicLong notifications = new AtomicLong();
+	private final AtomicReference<Probe> lastProbe = new AtomicReference<>();
+	private volatile boolean running;
+
+	public SoakHarness(Options options, PrintStream out) {
+		this.options = options;
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		new SoakHarness(Options.parse(args), System.out).run();
+	}
+
+	/**
+	 * Runs for the configured duration, printing a line per reporting interval
+	 * and a summary at the end.
+	 *
+	 * @return The totals of the run.
+	 * @throws InterruptedException If interrupted while waiting for the run to
+	 *                              finish.
+	 */
+	public Result run() throws InterruptedException {
+		final StateStore store = new StateStore(initialState(), SoakHarness::reduce, null, options.nonBlocking);
+		store.addCommitListener(commit -> commits.incrementAndGet());
+		for (int i = 0; i < options.subscribers; i++) {
+			store.subscribe(i == 0 ? this::sample : this::work);
+		}
+		out.printf("Soak: %s%n", options);
+
+		final long start = System.nanoTime();
+		final long end = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+		final Sample baseline = Sample.take();
+		final List<Thread> producers = new ArrayList<>();
+		running = true;
+		for (int i = 0; i < options.producers; i++) {
+			final Thread producer = new Thread(() -> produce(store, start), "soak-producer-" + i);
+			producer.setDaemon(true);
+			producers.add(producer);
+			producer.start();
+		}
+
+		final long reportNanos = TimeUnit.SECONDS.toNanos(options.reportSeconds);
+		Sample previous = baseline;
+		long lastCount = 0L;
+		long lastReport = start;
+		final List<Long> liveHeap = new ArrayList<>();
+		while (System.nanoTime() < end) {
+			final long wake = Math.min(lastReport + reportNanos, end);
+			while (System.nanoTime() < wake) {
+				TimeUnit.NANOSECONDS.sleep(Math.max(1L, wake - System.nanoTime()));
+			}
+			final long now = System.nanoTime();
+			final Sample sample = Sample.take();
+			final long count = dispatched.get();
+			report(now - start, (count - lastCount) * 1e9 / (now - lastReport), interval, sample, previous);
+			liveHeap.add(sample.liveHeap);
+			interval.reset();
+			previous = sample;
+			lastCount = count;
+			lastReport = now;
+		}
+		running = false;
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		store.close();
+
+		final long elapsed = System.nanoTime() - start;
+		final long coalesced = Math.max(0L, commits.get() - notifications.get());
+		final Result result = new Result(dispatched.get(), coalesced, dispatched.get() * 1e9 / elapsed, total,
+				previous.liveHeap - baseline.liveHeap, previous.gcCount - baseline.gcCount,
+				previous.gcMillis - baseline.gcMillis, liveHeap);
+		out.printf("Total: %,d actions, %,.0f ops/s, %,d coalesced notifications%n", result.getDispatched(),
+				result.getThroughput(), result.getCoalesced());
+		out.printf("Latency: p50=%s p99=%s p999=%s max=%s%n", millis(total.getPercentileNanos(50.0)),
+				millis(total.getPercentileNanos(99.0)), millis(total.getPercentileNanos(99.9)),
+				millis(total.getMaxNanos()));
+		out.printf("Live heap growth: %,d KB, GC: %d collections (%d ms)%n", result.getLiveHeapGrowth() / 1024,
+				result.getGcCount(), result.getGcMillis());
+		return result;
+	}
+
+	private State initialState() {
+		final java.util.Map<String, Object> entries = new java.util.HashMap<>(options.keys * 2);
+		for (int i = 0; i < options.keys; i++) {
+			entries.put(key(i), i);
+		}
+		return State.of(io.vavr.collection.HashMap.ofAll(entries));
+	}
+
+	private static String key(int index) {
+		return "key" + index;
+	}
+
+	private static State reduce(Action action, State state) {
+		if (!(action.getPayloadOrNull() instanceof Probe))
+			return state;
+		final Probe probe = (Probe) action.getPayloadOrNull();
+		switch (action.getType()) {
+		case SET_ACTION:
+			return state.put(key(probe.key), probe.intended).put(PROBE_KEY, probe);
+		case REMOVE_ACTION:
+			return state.remove(key(probe.key)).put(PROBE_KEY, probe);
+		case BULK_ACTION:
+			State result = state;
+			for (int i = 0; i < BULK_SIZE; i++) {
+				result = result.put(key(probe.key + i), probe.intended);
+			}
+			return result.put(PROBE_KEY, probe);
+		default:
+			return state;
+		}
+	}
+
+	private void produce(StateStore store, long start) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final long period = options.rate > 0 ? options.producers * 1_000_000_000L / options.rate : 0L;
+		long intended = start;
+		while (running) {
+			if (period > 0L) {
+				intended += period;
+				final long wait = intended - System.nanoTime();
+				if (wait > 0L)
+					LockSupport.parkNanos(wait);
+			} else {
+				intended = System.nanoTime();
+			}
+			final String type = options.pick(random.nextInt(options.totalWeight));
+			store.dispatch(Action.create(type, new Probe(intended, random.nextInt(options.keys))));
+			dispatched.incrementAndGet();
+		}
+	}
+
+	private void sample(State state) {
+		final long now = System.nanoTime();
+		notifications.incrementAndGet();
+		final Object value = state.getOrNull(PROBE_KEY);
+		if (!(value instanceof Probe))
+			return;
+		final Probe probe = (Probe) value;
+		// Notifications of racing commits can all see the latest State, which is only sampled once.
+		if (lastProbe.getAndSet(probe) == probe)
+			return;
+		interval.record(now - probe.intended);
+		total.record(now - probe.intended);
+		work(state);
+	}
+
+	private void work(State state) {
+		if (options.subscriberMicros > 0L) {
+			final long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(options.subscriberMicros);
+			while (System.nanoTime() < until) {
+				// Simulates a subscriber that is busy rendering or serializing.
+			}
+		}
+	}
+
+	private void report(long elapsed, double throughput, LatencyHistogram latency, Sample sample, Sample previous) {
+		out.printf("[%6ds] %,10.0f ops/s  p50=%s p99=%s p999=%s max=%s  heap=%,dKB live=%,dKB  gc=%d (%dms)%n",
+				TimeUnit.NANOSECONDS.toSeconds(elapsed), throughput, millis(latency.getPercentileNanos(50.0)),
+				millis(latency.getPercentileNanos(99.0)), millis(latency.getPercentileNanos(99.9)),
+				millis(latency.getMaxNanos()), sample.usedHeap / 1024, sample.liveHeap / 1024,
+				sample.gcCount - previous.gcCount, sample.gcMillis - previous.gcMillis);
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3fms", nanos / 1e6);
+	}
+
+	/**
+	 * The action payload.
+	 */
+	private static final class Probe {
+		private final long intended;
+		private final int key;
+
+		private Probe(long intended, int key) {
+			this.intended = intended;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Heap and GC counters at one point in time.
+	 */
+	private static final class Sample {
+		private final long usedHeap;
+		private final long liveHeap;
+		private final long gcCount;
+		private final long gcMillis;
+
+		private Sample(long usedHeap, long liveHeap, long gcCount, long gcMillis) {
+			this.usedHeap = usedHeap;
+			this.liveHeap = liveHeap;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+		}
+
+		private static Sample take() {
+			long used = 0L;
+			long live = 0L;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() != MemoryType.HEAP)
+					continue;
+				used += pool.getUsage().getUsed();
+				final MemoryUsage afterGc = pool.getCollectionUsage();
+				live += afterGc == null ? 0L : afterGc.getUsed();
+			}
+			long count = 0L;
+			long millis = 0L;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				count += Math.max(0L, gc.getCollectionCount());
+				millis += Math.max(0L, gc.getCollectionTime());
+			}
+			return new Sample(used, live, count, millis);
+		}
+	}
+
+	/**
+	 * The settings of a run, parsed from {@code --name=value} arguments.
+	 */
+	public static final class Options {
+		private int producers = 4;
+		private int rate = 10_000;
+		private long durationSeconds = 60L;
+		private long reportSeconds = 10L;
+		private int subscribers = 4;
+		private long subscriberMicros = 0L;
+		private int keys = 10_000;
+		private boolean nonBlocking = false;
+		private final Map<String, Integer> mix = new LinkedHashMap<>();
+		private int totalWeight;
+
+		public Options() {
+			withMix("SET:70,REMOVE:10,BULK:15,NOOP:5");
+		}
+
+		public static Options parse(String[] args) {
+			final Options options = new Options();
+			for (String arg : args) {
+				final int split = arg.indexOf('=');
+				if (!arg.startsWith("--") || split < 0)
+					throw new IllegalArgumentException(String.format("Expected --name=value, got '%s'", arg));
+				final String value = arg.substring(split + 1);
+				switch (arg.substring(2, split)) {
+				case "producers":
+					options.producers = Integer.parseInt(value);
+					break;
+				case "rate":
+					options.rate = Integer.parseInt(value);
+					break;
+				case "duration":
+					options.durationSeconds = Long.parseLong(value);
+					break;
+				case "report":
+					options.reportSeconds = Long.parseLong(value);
+					break;
+				case "subscribers":
+					options.subscribers = Integer.parseInt(value);
+					break;
+				case "subscriberMicros":
+					options.subscriberMicros = Long.parseLong(value);
+					break;
+				case "keys":
+					options.keys = Integer.parseInt(value);
+					break;
+				case "nonBlocking":
+					options.nonBlocking = Boolean.parseBoolean(value);
+					break;
+				case "mix":
+					options.withMix(value);
+					break;
+				default:
+					throw new IllegalArgumentException(String.format("Unknown option '%s'", arg));
+				}
+			}
+			return options.validate();
+		}
+
+		private Options validate() {
+			if (producers < 1 || subscribers < 1 || keys < BULK_SIZE || durationSeconds < 1L || reportSeconds < 1L)
+				throw new IllegalArgumentException("Producers, subscribers, duration, and report must be positive, "
+						+ "and there must be at least " + BULK_SIZE + " keys");
+			return this;
+		}
+
+		/**
+		 * @param mix Comma separated {@code TYPE:weight} pairs, where the types are
+		 *            SET, REMOVE, BULK, and NOOP.
+		 */
+		public Options withMix(String mix) {
+			this.mix.clear();
+			this.totalWeight = 0;
+			for (String part : mix.split(",")) {
+				final String[] pair = part.trim().split(":");
+				final String type = pair[0].toUpperCase();
+				if (!SET_ACTION.equals(type) && !REMOVE_ACTION.equals(type) && !BULK_ACTION.equals(type)
+						&& !NOOP_ACTION.equals(type))
+					throw new IllegalArgumentException(String.format("Unknown action type '%s'", pair[0]));
+				final int weight = pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+				if (weight > 0) {
+					this.mix.put(type, weight);
+					this.totalWeight += weight;
+				}
+			}
+			if (this.totalWeight == 0)
+				throw new IllegalArgumentException("The action mix must have a positive weight");
+			return this;
+		}
+
+		public Options withProducers(int producers, int rate) {
+			this.producers = producers;
+			this.rate = rate;
+			return validate();
+		}
+
+		public Options withSubscribers(int subscribers, long subscriberMicros) {
+			this.subscribers = subscribers;
+			this.subscriberMicros = subscriberMicros;
+			return validate();
+		}
+
+		public Options withDuration(long durationSeconds, long reportSeconds) {
+			this.durationSeconds = durationSeconds;
+			this.reportSeconds = reportSeconds;
+			return validate();
+		}
+
+		public Options withKeys(int keys) {
+			this.keys = keys;
+			return validate();
+		}
+
+		public Options withNonBlocking(boolean nonBlocking) {
+			this.nonBlocking = nonBlocking;
+			return this;
+		}
+
+		private String pick(int roll) {
+			for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+				roll -= entry.getValue();
+				if (roll < 0)
+					return entry.getKey();
+			}
+			return NOOP_ACTION;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("producers=%d rate=%d/s duration=%ds subscribers=%d (%dus) keys=%d mix=%s%s",
+					producers, rate, durationSeconds, subscribers, subscriberMicros, keys, mix,
+					nonBlocking ? " nonBlocking" : "");
+		}
+	}
+
+	/**
+	 * The totals of a run.
+	 */
+	public static final class Result {
+		private final long dispatched;
+		private final long coalesced;
+		private final double throughput;
+		private final LatencyHistogram latency;
+		private final long liveHeapGrowth;
+		private final long gcCount;
+		private final long gcMillis;
+		private final List<Long> liveHeapSamples;
+
+		private Result(long dispatched, long coalesced, double throughput, LatencyHistogram latency,
+				long liveHeapGrowth, long gcCount, long gcMillis, List<Long> liveHeapSamples) {
+			this.dispatched = dispatched;
+			this.coalesced = coalesced;
+			this.throughput = throughput;
+			this.latency = latency;
+			this.liveHeapGrowth = liveHeapGrowth;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+			this.liveHeapSamples = liveHeapSamples;
+		}
+
+		/**
+		 * @return The number of actions dispatched.
+		 */
+		public long getDispatched() {
+			return this.dispatched;
+		}
+
+		public long getCoalesced() {
+			return this.coalesced;
+		}
+
+		/**
+		 * @return Actions per second over the whole run.
+		 */
+		public double getThroughput() {
+			return this.throughput;
+		}
+
+		/**
+		 * @return Dispatch-to-notify latency over the whole run.
+		 */
+		public LatencyHistogram getLatency() {
+			return this.latency;
+		}
+
+		/**
+		 * @return How much the live heap grew during the run, in bytes.
+		 */
+		public long getLiveHeapGrowth() {
+			return this.liveHeapGrowth;
+		}
+
+		public long getGcCount() {
+			return this.gcCount;
+		}
+
+		public long getGcMillis() {
+			return this.gcMillis;
+		}
+
+		/**
+		 * @return The live heap at each report, in bytes.
+		 */
+		public List<Long> getLiveHeapSamples() {
+			return this.liveHeapSamples;
+		}
+	}
+}
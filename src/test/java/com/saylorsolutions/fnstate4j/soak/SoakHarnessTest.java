@@ -0,0 +1,58 @@
+package com.saylorsolutions.fnstate4j.soak;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class SoakHarnessTest {
+	@Test
+	public void testShortRun() throws InterruptedException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SoakHarness.Options options = SoakHarness.Options
+				.parse(new String[] { "--duration=1", "--report=1", "--keys=1000", "--mix=SET:3,BULK:1,NOOP:1" })
+				.withProducers(2, 2000).withSubscribers(2, 5);
+		SoakHarness.Result result = new SoakHarness(options, new PrintStream(output)).run();
+
+		assertTrue(result.getDispatched() > 0L);
+		assertTrue(result.getLatency().getCount() > 0L);
+		// Blocking dispatches notify once per commit, and NOOP actions don't commit.
+		assertEquals(0L, result.getCoalesced());
+		assertEquals(1, result.getLiveHeapSamples().size());
+		String report = output.toString();
+		assertTrue(report, report.contains("p999="));
+		assertTrue(report, report.contains("Live heap growth"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnknownOption() {
+		SoakHarness.Options.parse(new String[] { "--threads=4" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnknownActionType() {
+		new SoakHarness.Options().withMix("SET:1,DROP:1");
+	}
+}
@@ -0,0 +1,108 @@
+package com.saylorsolutions.fnstate4j.timer;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+	private HashedWheelTimer timer;
+
+	@Before
+	public void setup() {
+		timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@After
+	public void teardown() {
+		timer.close();
+	}
+
+	@Test
+	public void testFiresAfterDelay() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		Timeout timeout = timer.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+	}
+
+	@Test
+	public void testCancelledTaskDoesNotRun() throws InterruptedException {
+		CountDownLatch fired = new CountDownLatch(1);
+		CountDownLatch marker = new CountDownLatch(1);
+		Timeout timeout = timer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+		assertTrue(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		timer.schedule(marker::countDown, 30, TimeUnit.MILLISECONDS);
+		assertTrue(marker.await(5, TimeUnit.SECONDS));
+		assertEquals(1, fired.getCount());
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testDelaysLongerThanOneRotation() throws InterruptedException {
+		List<Integer> order = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(3);
+		timer.schedule(() -> { order.add(3); latch.countDown(); }, 60, TimeUnit.MILLISECONDS);
+		timer.schedule(() -> { order.add(1); latch.countDown(); }, 2, TimeUnit.MILLISECONDS);
+		timer.schedule(() -> { order.add(2); latch.countDown(); }, 25, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2, 3), order);
+	}
+
+	@Test
+	public void testPeriodicUntilCancelled() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(3);
+		Timeout timeout = timer.scheduleAtFixedRate(() -> {
+			runs.incrementAndGet();
+			latch.countDown();
+		}, 0, 5, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(timeout.isPeriodic());
+		assertFalse(timeout.isExpired());
+		assertEquals(1, timer.getPendingCount());
+		assertTrue(timeout.cancel());
+		int stopped = runs.get();
+		Thread.sleep(30);
+		assertTrue(runs.get() <= stopped + 1);
+		assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testScheduleAfterClose() {
+		timer.close();
+		timer.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+	}
+}
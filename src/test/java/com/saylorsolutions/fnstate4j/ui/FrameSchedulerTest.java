@@ -0,0 +1,142 @@
+package com.saylorsolutions.fnstate4j.ui;
+
+/*-
+ * #%L
+ * Functional State for Java
+ * %%
+ * Copyright (C) 2019 Joseph D. Saylor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.saylorsolutions.fnstate4j.Action;
+import com.saylorsolutions.fnstate4j.State;
+import com.saylorsolutions.fnstate4j.StateStore;
+
+public class FrameSchedulerTest {
+	private static final String COUNT_KEY = "COUNT";
+	private ManualFrameClock clock;
+	private List<Runnable> uiQueue;
+	private List<Integer> delivered;
+	private StateStore store;
+	private FrameScheduler scheduler;
+
+	@Before
+	public void setup() {
+		clock = new ManualFrameClock();
+		uiQueue = new ArrayList<>();
+		delivered = new ArrayList<>();
+		store = new StateStore(new State(), (a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1), null);
+		scheduler = new FrameScheduler(uiQueue::add, 16, TimeUnit.MILLISECONDS, clock);
+		store.setNotificationScheduler(scheduler);
+		store.subscribe(s -> delivered.add(s.getOrElse(COUNT_KEY, 0)));
+	}
+
+	private void runUiQueue() {
+		final List<Runnable> tasks = new ArrayList<>(uiQueue);
+		uiQueue.clear();
+		tasks.forEach(Runnable::run);
+	}
+
+	private void dispatch(int count) {
+		for (int i = 0; i < count; i++) {
+			store.dispatch(Action.create("TICK"));
+		}
+	}
+
+	@Test
+	public void testCommitsCollapsedPerFrame() {
+		dispatch(1);
+		assertEquals(1, uiQueue.size());
+		runUiQueue();
+		assertEquals(1, delivered.size());
+
+		dispatch(100);
+		assertTrue(uiQueue.isEmpty());
+		clock.advance(10, TimeUnit.MILLISECONDS);
+		assertTrue(uiQueue.isEmpty());
+		clock.advance(6, TimeUnit.MILLISECONDS);
+		runUiQueue();
+		assertEquals(2, delivered.size());
+		assertEquals(Integer.valueOf(101), delivered.get(1));
+		assertEquals(2L, scheduler.getFrameCount());
+		assertEquals(99L, scheduler.getCollapsedCount());
+	}
+
+	@Test
+	public void testLatestStateDeliveredWhenTargetRuns() {
+		dispatch(1);
+		dispatch(5);
+		runUiQueue();
+		assertEquals(Integer.valueOf(6), delivered.get(0));
+		clock.advance(16, TimeUnit.MILLISECONDS);
+		// Folded into the frame that already delivered them.
+		runUiQueue();
+		assertEquals(1, delivered.size());
+	}
+
+	@Test
+	public void testIdleStartsFrameImmediately() {
+		dispatch(1);
+		runUiQueue();
+		clock.advance(1, TimeUnit.SECONDS);
+		dispatch(1);
+		assertEquals(1, uiQueue.size());
+		runUiQueue();
+		assertEquals(Integer.valueOf(2), delivered.get(1));
+		assertEquals(0, clock.getPendingCount());
+	}
+
+	@Test
+	public void testSharedBetweenStores() {
+		final List<Integer> otherDelivered = new ArrayList<>();
+		final StateStore other = new StateStore(new State(),
+				(a, s) -> s.put(COUNT_KEY, s.getOrElse(COUNT_KEY, 0) + 1), null);
+		other.setNotificationScheduler(scheduler);
+		other.subscribe(s -> otherDelivered.add(s.getOrElse(COUNT_KEY, 0)));
+		dispatch(3);
+		other.dispatch(Action.create("TICK"));
+		other.dispatch(Action.create("TICK"));
+		assertEquals(2, uiQueue.size());
+		runUiQueue();
+		assertEquals(Integer.valueOf(3), delivered.get(0));
+		assertEquals(Integer.valueOf(2), otherDelivered.get(0));
+		assertEquals(2L, scheduler.getFrameCount());
+		assertEquals(3L, scheduler.getCollapsedCount());
+	}
+
+	@Test
+	public void testSystemClock() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Executor direct = Runnable::run;
+		store.setNotificationScheduler(new FrameScheduler(direct, 5, TimeUnit.MILLISECONDS));
+		store.subscribe(s -> {
+			if (s.getOrElse(COUNT_KEY, 0) == 50)
+				done.countDown();
+		});
+		dispatch(50);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+}